@@ -37,7 +37,7 @@ import fr.soleil.tango.clientapi.TangoAttribute;
  * 
  * @author erwin.de.ley@isencia.be
  */
-public class AttributeBaseConverter implements com.isencia.passerelle.message.type.TypeConverter {
+public class AttributeBaseConverter implements com.isencia.passerelle.message.type.SelectiveTypeConverter {
     static Logger logger = LoggerFactory.getLogger(AttributeBaseConverter.class);
 
     public Token convertPasserelleTokenToPtolemyToken(final PasserelleToken passerelleMsgToken, final Type targetType)
@@ -305,6 +305,23 @@ public class AttributeBaseConverter implements com.isencia.passerelle.message.ty
         return true;
     }
 
+    public boolean canConvert(final Class fromContentType, final Type toType) {
+        return isTargetTypeCompatible(toType) && isAttributeType(fromContentType);
+    }
+
+    public boolean canConvert(final Type fromType, final Class toContentType) {
+        // only Passerelle msgs containing an attribute are supported
+        return false;
+    }
+
+    public boolean canConvert(final Class fromContentType, final Class toContentType) {
+        return isAttributeType(fromContentType);
+    }
+
+    private boolean isAttributeType(final Class contentType) {
+        return contentType == null || TangoAttribute.class.isAssignableFrom(contentType);
+    }
+
     /**
      * From a Passerelle msg with an Attribute in there to one with some other content type
      */
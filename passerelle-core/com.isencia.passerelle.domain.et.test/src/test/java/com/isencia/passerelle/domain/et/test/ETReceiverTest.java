@@ -0,0 +1,93 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.domain.et.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import ptolemy.actor.TypedAtomicActor;
+import ptolemy.actor.TypedCompositeActor;
+import ptolemy.data.IntToken;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+import com.isencia.passerelle.core.Port;
+import com.isencia.passerelle.domain.et.ETDirector;
+import com.isencia.passerelle.domain.et.SendEvent;
+import com.isencia.passerelle.domain.et.impl.ETReceiver;
+import com.isencia.passerelle.runtime.Event;
+
+/**
+ * Checks that the ET receiver generates a separate <code>SendEvent</code> per token, as events remain in use after
+ * they have been dispatched and can therefore not be pooled.
+ */
+public class ETReceiverTest extends TestCase {
+
+  private RecordingETDirector director;
+  private Port input;
+  private ETReceiver receiver;
+
+  @Override
+  protected void setUp() throws Exception {
+    TypedCompositeActor flow = new TypedCompositeActor();
+    director = new RecordingETDirector(flow, "director");
+    input = new Port(new TypedAtomicActor(flow, "actor"), "input", true, false);
+    receiver = new ETReceiver(input, director);
+  }
+
+  public void testSendEventPerToken() throws Exception {
+    IntToken first = new IntToken(1);
+    IntToken second = new IntToken(2);
+    receiver.put(first);
+    receiver.put(null);
+    receiver.put(second);
+    assertEquals("One event per non-null token", 2, director.events.size());
+    assertTrue(receiver.hasToken(2));
+
+    SendEvent firstEvent = (SendEvent) director.events.get(0);
+    SendEvent secondEvent = (SendEvent) director.events.get(1);
+    assertNotSame("Events must not be reused", firstEvent, secondEvent);
+    assertSame(input, firstEvent.getReceivingPort());
+    assertEquals(input.getFullName(), secondEvent.getProperty(Event.SUBJECT));
+
+    // e.g. an actor's input context marks its event as processed, while the next one is still pending
+    firstEvent.setProcessed(true);
+    assertFalse(secondEvent.isProcessed());
+    assertSame("An event must keep its token after later puts", first, firstEvent.getMessage());
+    assertSame(second, secondEvent.getMessage());
+
+    SendEvent retryCopy = firstEvent.copy();
+    assertNotSame(firstEvent, retryCopy);
+    assertSame(first, retryCopy.getMessage());
+    assertSame(first, receiver.get());
+    assertSame(second, receiver.get());
+  }
+
+  /**
+   * Records the events i.o. dispatching them.
+   */
+  private static class RecordingETDirector extends ETDirector {
+    final List<Event> events = new ArrayList<Event>();
+
+    RecordingETDirector(CompositeEntity container, String name) throws IllegalActionException, NameDuplicationException {
+      super(container, name);
+    }
+
+    @Override
+    public void enqueueEvent(Event event) {
+      events.add(event);
+    }
+  }
+}
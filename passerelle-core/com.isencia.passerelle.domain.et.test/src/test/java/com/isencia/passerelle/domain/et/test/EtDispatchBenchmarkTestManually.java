@@ -0,0 +1,107 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.domain.et.test;
+
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+import com.isencia.passerelle.actor.v5.Actor;
+import com.isencia.passerelle.domain.et.ETDirector;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.model.FlowManager;
+import com.isencia.passerelle.testsupport.FlowStatisticsAssertion;
+import com.isencia.passerelle.testsupport.actor.Delay;
+import com.isencia.passerelle.testsupport.actor.Forwarder;
+import com.isencia.passerelle.testsupport.actor.MessageHistoryStack;
+import com.isencia.passerelle.testsupport.actor.TextSource;
+
+/**
+ * Compares the throughput of the ET domain for different nrs of dispatch threads, on flows like the ones in
+ * <code>EtDomainModelExecutionsTest</code>, but with more messages and branches.
+ * <p>
+ * Not part of the automated test suites, as it just reports timings.
+ * </p>
+ */
+public class EtDispatchBenchmarkTestManually extends TestCase {
+
+  private final static int NR_OF_MESSAGES = 1000;
+  private final static int NR_OF_BRANCHES = 4;
+  private final static int CHAIN_LENGTH = 3;
+
+  private FlowManager flowMgr;
+
+  protected void setUp() throws Exception {
+    flowMgr = new FlowManager();
+  }
+
+  public void testForwardersThroughput() throws Exception {
+    for (int threadCount : new int[] { 1, 2, 4, 8 }) {
+      long duration = runBranchedChains("forwarders" + threadCount, threadCount, false);
+      System.out.println("Forwarders - " + threadCount + " dispatch threads : " + duration + " ms for " + NR_OF_MESSAGES + " msgs, "
+          + (NR_OF_MESSAGES * 1000L / Math.max(1, duration)) + " msgs/s");
+    }
+  }
+
+  public void testDelaysThroughput() throws Exception {
+    for (int threadCount : new int[] { 1, 2, 4, 8 }) {
+      long duration = runBranchedChains("delays" + threadCount, threadCount, true);
+      System.out.println("Delays (1ms) - " + threadCount + " dispatch threads : " + duration + " ms for " + NR_OF_MESSAGES + " msgs, "
+          + (NR_OF_MESSAGES * 1000L / Math.max(1, duration)) + " msgs/s");
+    }
+  }
+
+  private long runBranchedChains(String name, int threadCount, boolean withDelays) throws Exception {
+    Flow flow = new Flow(name, null);
+    flow.setDirector(new ETDirector(flow, "director"));
+
+    Map<String, String> props = new HashMap<String, String>();
+    props.put("director." + ETDirector.NR_OF_DISPATCH_THREADS_PARAMNAME, Integer.toString(threadCount));
+    props.put("director." + ETDirector.DISPATCH_TIMEOUT_PARAMNAME, "250");
+
+    Actor src = new TextSource(flow, "src");
+    StringBuilder values = new StringBuilder();
+    for (int i = 0; i < NR_OF_MESSAGES; ++i) {
+      values.append(i > 0 ? "," : "").append("msg").append(i);
+    }
+    props.put("src.values", values.toString());
+
+    MessageHistoryStack[] sinks = new MessageHistoryStack[NR_OF_BRANCHES];
+    for (int b = 0; b < NR_OF_BRANCHES; ++b) {
+      Actor previous = src;
+      for (int c = 0; c < CHAIN_LENGTH; ++c) {
+        String actorName = "step" + b + "_" + c;
+        Actor step = withDelays ? new Delay(flow, actorName) : new Forwarder(flow, actorName);
+        if (withDelays) {
+          props.put(actorName + ".time(ms)", "1");
+        }
+        flow.connect(previous, step);
+        previous = step;
+      }
+      sinks[b] = new MessageHistoryStack(flow, "sink" + b);
+      flow.connect(previous, sinks[b]);
+    }
+
+    long start = System.currentTimeMillis();
+    flowMgr.executeBlockingLocally(flow, props);
+    long duration = System.currentTimeMillis() - start;
+
+    FlowStatisticsAssertion assertion = new FlowStatisticsAssertion();
+    for (MessageHistoryStack sink : sinks) {
+      assertion.expectMsgReceiptCount(sink, (long) NR_OF_MESSAGES);
+    }
+    assertion.assertFlow(flow);
+    return duration;
+  }
+}
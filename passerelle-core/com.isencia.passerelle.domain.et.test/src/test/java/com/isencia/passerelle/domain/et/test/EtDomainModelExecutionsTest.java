@@ -133,6 +133,18 @@ public class EtDomainModelExecutionsTest extends TestCase {
     assertFalse("Director must maintain event history", d.getEventHistory().isEmpty());
   }
 
+  public void testChainedDelaysETWithBoundedEventHistory() throws Exception {
+    flow = new Flow("testChainedDelaysETWithBoundedEventHistory", null);
+    Map<String, String> props = new HashMap<String, String>();
+    props.put("director." + ETDirector.KEEP_EVENT_HISTORY_PARAMNAME, "true");
+    props.put("director." + ETDirector.EVENT_HISTORY_SIZE_PARAMNAME, "5");
+    props.put("director.Nr of dispatch threads", "2");
+    props.put("director.Dispatch timeout(ms)", "250");
+    ETDirector d = new ETDirector(flow, "director");
+    __testChainedDelays(false, d, props);
+    assertEquals("Director must only keep the most recent events", 5, d.getEventHistory().size());
+  }
+
   public void testChainedDelaysET2ThreadsWithoutEventHistory() throws Exception {
     flow = new Flow("testChainedDelaysET2ThreadsWithoutEventHistory", null);
     Map<String, String> props = new HashMap<String, String>();
@@ -0,0 +1,64 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.domain.et.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import junit.framework.TestCase;
+import com.isencia.passerelle.domain.et.impl.EventRingBuffer;
+
+public class EventRingBufferTest extends TestCase {
+
+  public void testMostRecentFirst() {
+    EventRingBuffer<Integer> buffer = new EventRingBuffer<Integer>(3);
+    for (int i = 1; i <= 5; ++i) {
+      buffer.add(i);
+    }
+    assertEquals(Arrays.asList(5, 4, 3), buffer.snapshot());
+    assertEquals(3, buffer.size());
+    assertEquals(2, buffer.getOverwrittenCount());
+  }
+
+  public void testClear() {
+    EventRingBuffer<Integer> buffer = new EventRingBuffer<Integer>(3);
+    buffer.add(1);
+    buffer.add(2);
+    buffer.clear();
+    assertTrue(buffer.snapshot().isEmpty());
+    buffer.add(3);
+    assertEquals(Arrays.asList(3), buffer.snapshot());
+  }
+
+  public void testSnapshotWhileAdding() throws Exception {
+    final EventRingBuffer<Integer> buffer = new EventRingBuffer<Integer>(100);
+    final CountDownLatch done = new CountDownLatch(4);
+    for (int t = 0; t < 4; ++t) {
+      new Thread() {
+        public void run() {
+          for (int i = 0; i < 100000; ++i) {
+            buffer.add(i);
+          }
+          done.countDown();
+        }
+      }.start();
+    }
+    while (done.getCount() > 0) {
+      List<Integer> snapshot = buffer.snapshot();
+      assertTrue("Snapshot exceeds capacity " + snapshot.size(), snapshot.size() <= 100);
+    }
+    assertEquals(100, buffer.snapshot().size());
+  }
+}
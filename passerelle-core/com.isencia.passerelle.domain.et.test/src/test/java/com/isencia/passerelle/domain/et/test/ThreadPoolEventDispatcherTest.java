@@ -0,0 +1,185 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.domain.et.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import ptolemy.actor.Actor;
+import ptolemy.actor.TypedAtomicActor;
+import ptolemy.actor.TypedCompositeActor;
+import com.isencia.passerelle.domain.et.EventHandler;
+import com.isencia.passerelle.domain.et.FireEvent;
+import com.isencia.passerelle.domain.et.impl.ThreadPoolEventDispatcher;
+import com.isencia.passerelle.runtime.Event;
+
+/**
+ * Checks that the events of each actor are handled one by one and in order, while the events of different actors are
+ * handled in parallel.
+ */
+public class ThreadPoolEventDispatcherTest extends TestCase {
+
+  private static final int ACTOR_COUNT = 3;
+  private static final int EVENT_COUNT = 200;
+
+  private List<Actor> actors;
+  private RecordingHandler handler;
+  private ThreadPoolEventDispatcher dispatcher;
+
+  @Override
+  protected void setUp() throws Exception {
+    TypedCompositeActor flow = new TypedCompositeActor();
+    actors = new ArrayList<Actor>();
+    for (int i = 0; i < ACTOR_COUNT; ++i) {
+      actors.add(new TypedAtomicActor(flow, "actor" + i));
+    }
+    handler = new RecordingHandler();
+    dispatcher = new ThreadPoolEventDispatcher("test", 4, handler);
+    dispatcher.initialize();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    dispatcher.shutdownNow();
+  }
+
+  public void testPerLaneOrderingAndCompletion() throws Exception {
+    for (int seq = 0; seq < EVENT_COUNT; ++seq) {
+      for (Actor actor : actors) {
+        dispatcher.accept(new SequencedFireEvent(actor, seq));
+      }
+    }
+    dispatchAll();
+    assertFalse("Parallel handling of one actor's events", handler.overlapDetected);
+    for (Actor actor : actors) {
+      assertEquals("Events of " + actor.getName() + " out of order", expectedSequence(EVENT_COUNT), handler.getHandled(actor));
+    }
+  }
+
+  public void testBusyActorRetriesInOrder() throws Exception {
+    Actor busyActor = actors.get(0);
+    handler.busyUntil = System.currentTimeMillis() + 100;
+    handler.busyActor = busyActor;
+    for (int seq = 0; seq < 10; ++seq) {
+      for (Actor actor : actors) {
+        dispatcher.accept(new SequencedFireEvent(actor, seq));
+      }
+    }
+    dispatchAll();
+    for (Actor actor : actors) {
+      assertEquals("Events of " + actor.getName() + " out of order", expectedSequence(10), handler.getHandled(actor));
+    }
+    // without back-off, a lane retries its busy actor continuously
+    assertTrue("Busy actor retried too often : " + handler.retryCount.get(), handler.retryCount.get() < 50);
+  }
+
+  private void dispatchAll() throws InterruptedException {
+    long end = System.currentTimeMillis() + 10000;
+    while (dispatcher.hasWork()) {
+      assertTrue("Events should be handled in time", System.currentTimeMillis() < end);
+      dispatcher.dispatch(100);
+    }
+  }
+
+  private static List<Integer> expectedSequence(int count) {
+    List<Integer> result = new ArrayList<Integer>();
+    for (int i = 0; i < count; ++i) {
+      result.add(i);
+    }
+    return result;
+  }
+
+  private static class SequencedFireEvent extends FireEvent {
+    private static final long serialVersionUID = 1L;
+    final int seq;
+
+    SequencedFireEvent(Actor target, int seq) {
+      super(target);
+      this.seq = seq;
+    }
+
+    @Override
+    public FireEvent copy() {
+      return new SequencedFireEvent(getTarget(), seq);
+    }
+  }
+
+  private static class RecordingHandler implements EventHandler {
+    private final Map<Actor, List<Integer>> handled = new HashMap<Actor, List<Integer>>();
+    private final Map<Actor, AtomicInteger> busyCounts = new HashMap<Actor, AtomicInteger>();
+    volatile boolean overlapDetected;
+    volatile Actor busyActor;
+    volatile long busyUntil;
+    final AtomicInteger retryCount = new AtomicInteger();
+
+    public void initialize() {
+    }
+
+    public HandleType canHandleAs(Event event, boolean isRetry) {
+      return event instanceof SequencedFireEvent ? HandleType.EFFECT : HandleType.SKIP;
+    }
+
+    public HandleResult handle(Event event, boolean isRetry) throws Exception {
+      SequencedFireEvent fireEvent = (SequencedFireEvent) event;
+      Actor actor = fireEvent.getTarget();
+      if (isRetry) {
+        retryCount.incrementAndGet();
+      }
+      if (actor == busyActor && System.currentTimeMillis() < busyUntil) {
+        return HandleResult.RETRY;
+      }
+      AtomicInteger busyCount = getBusyCount(actor);
+      if (busyCount.incrementAndGet() > 1) {
+        overlapDetected = true;
+      }
+      try {
+        Thread.yield();
+        synchronized (handled) {
+          List<Integer> sequence = handled.get(actor);
+          if (sequence == null) {
+            sequence = new ArrayList<Integer>();
+            handled.put(actor, sequence);
+          }
+          sequence.add(fireEvent.seq);
+        }
+      } finally {
+        busyCount.decrementAndGet();
+      }
+      return HandleResult.DONE;
+    }
+
+    List<Integer> getHandled(Actor actor) {
+      synchronized (handled) {
+        List<Integer> sequence = handled.get(actor);
+        return sequence != null ? new ArrayList<Integer>(sequence) : Collections.<Integer> emptyList();
+      }
+    }
+
+    private AtomicInteger getBusyCount(Actor actor) {
+      synchronized (busyCounts) {
+        AtomicInteger result = busyCounts.get(actor);
+        if (result == null) {
+          result = new AtomicInteger();
+          busyCounts.put(actor, result);
+        }
+        return result;
+      }
+    }
+  }
+}
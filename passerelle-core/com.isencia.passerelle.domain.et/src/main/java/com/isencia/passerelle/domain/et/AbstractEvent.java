@@ -26,8 +26,21 @@ public abstract class AbstractEvent extends SimpleEvent {
   private static final long serialVersionUID = 6094980381771564552L;
 
   protected AbstractEvent(NamedObj subject, String topic, Date creationTS) {
+    this(subject, subject.getFullName(), topic, creationTS);
+  }
+
+  /**
+   * Allows to pass the subject's full name, e.g. when it has been cached by the event's creator, 
+   * as building it for each event is relatively expensive.
+   * 
+   * @param subject
+   * @param subjectFullName
+   * @param topic
+   * @param creationTS
+   */
+  protected AbstractEvent(NamedObj subject, String subjectFullName, String topic, Date creationTS) {
     super(subject, topic, creationTS, 0L);
-    setProperty(SUBJECT, subject.getFullName());
+    setProperty(SUBJECT, subjectFullName);
   }
 
   /**
@@ -59,6 +59,7 @@ public class ETDirector extends Director implements PasserelleDirector {
   public static final String KEEP_EVENT_HISTORY_PARAMNAME = "Keep event history";
   public static final String DISPATCH_TIMEOUT_PARAMNAME = "Dispatch timeout(ms)";
   public static final String NR_OF_DISPATCH_THREADS_PARAMNAME = "Nr of dispatch threads";
+  public static final String EVENT_HISTORY_SIZE_PARAMNAME = "Event history size";
 
   private final static Logger LOGGER = LoggerFactory.getLogger(ETDirector.class);
 
@@ -79,6 +80,7 @@ public class ETDirector extends Director implements PasserelleDirector {
   public Parameter dispatchTimeoutParameter;
 
   public Parameter eventHistoryParameter;
+  public Parameter eventHistorySizeParameter;
 
   /**
    * @param container
@@ -94,6 +96,7 @@ public class ETDirector extends Director implements PasserelleDirector {
     
     eventHistoryParameter = new Parameter(this, KEEP_EVENT_HISTORY_PARAMNAME, BooleanToken.FALSE);
     new CheckBoxStyle(eventHistoryParameter, "check");
+    eventHistorySizeParameter = new Parameter(this, EVENT_HISTORY_SIZE_PARAMNAME, new IntToken(SimpleEventDispatcher.DEFAULT_EVENT_HISTORY_SIZE));
     
     // to trigger the creation of our default adapter
     getAdapter(null);
@@ -165,6 +168,10 @@ public class ETDirector extends Director implements PasserelleDirector {
 
     int threadCount = ((IntToken) dispatchThreadsParameter.getToken()).intValue();
     boolean needEventLog = ((BooleanToken)eventHistoryParameter.getToken()).booleanValue();
+    int eventLogSize = ((IntToken) eventHistorySizeParameter.getToken()).intValue();
+    if (eventLogSize <= 0) {
+      throw new IllegalActionException(eventHistorySizeParameter, "Event history size must be > 0");
+    }
 
     List<EventHandler> eventHandlers = new ArrayList<EventHandler>();
     eventHandlers.add(new SendEventHandler(this));
@@ -181,6 +188,7 @@ public class ETDirector extends Director implements PasserelleDirector {
     dispatcher.initialize();
     dispatchReporter = (EventDispatchReporter) dispatcher;
     dispatchReporter.enableEventHistory(needEventLog);
+    dispatchReporter.setEventHistorySize(eventLogSize);
     notDone = true;
   }
 
@@ -201,7 +209,7 @@ public class ETDirector extends Director implements PasserelleDirector {
   }
 
   @Override
-  public synchronized void fire() throws IllegalActionException {
+  public void fire() throws IllegalActionException {
     try {
       int timeout = ((IntToken) dispatchTimeoutParameter.getToken()).intValue();
       // The order is important here, although maybe optimistic to rely on it
@@ -37,6 +37,21 @@ public interface EventDispatchReporter {
    * @param enable true if the reporter should maintain a full event history.
    */
   void enableEventHistory(boolean enable);
+
+  /**
+   * Sets the maximum number of entries that are kept in the event history, and also for the unhandled events and the event errors.
+   * When more entries are added, the oldest ones are discarded.
+   * <p>
+   * Changing the size discards all current entries, so this should be done before events are being dispatched.
+   * </p>
+   * @param size must be &gt; 0
+   */
+  void setEventHistorySize(int size);
+
+  /**
+   * @return the maximum number of entries kept in the event history
+   */
+  int getEventHistorySize();
   
   
   /**
@@ -45,7 +60,8 @@ public interface EventDispatchReporter {
   List<Event> getPendingEvents();
   
   /**
-   * @return a list of all events, most recent first.
+   * The result is a snapshot copy, so it can be obtained and iterated safely while events are being dispatched.
+   * @return a list of all events, most recent first, limited to the configured history size.
    */
   List<Event> getEventHistory();
   
@@ -59,7 +75,7 @@ public interface EventDispatchReporter {
    * You should expect that all unhandled events are also present in the result of <code>getEventHistory()</code>
    * and that all events in the result of <code>getEventErrors()</code> are contained in the
    * list of unhandled events as well.
-   * @return a list of unhandled events, most recent first.
+   * @return a snapshot list of unhandled events, most recent first.
    */
   List<Event> getUnhandledEvents();
   
@@ -69,7 +85,7 @@ public interface EventDispatchReporter {
    * on concrete domain implementations. In such cases, a same event could lead to several processing errors,
    * and you could find multiple entries in the resulting list.
    * 
-   * @return events for which processing failed
+   * @return a snapshot list of events for which processing failed, most recent first
    */
   List<EventError> getEventErrors();
   
@@ -48,7 +48,7 @@ public class SendEvent extends AbstractEvent {
   private Port receivingPort;
   private Token token;
   // flag to indicate if this event has already been processed or not
-  private boolean processed;
+  private volatile boolean processed;
   
   public SendEvent(Token token, Port sendingPort, Port receivingPort) {
    this(token, sendingPort, receivingPort, new Date());
@@ -60,6 +60,21 @@ public class SendEvent extends AbstractEvent {
     this.sendingPort = sendingPort;
     this.receivingPort = receivingPort;
   }
+
+  /**
+   * For high-volume event sources that can cache the receiving port's full name.
+   * 
+   * @param token
+   * @param sendingPort
+   * @param receivingPort
+   * @param receivingPortFullName
+   */
+  public SendEvent(Token token, Port sendingPort, Port receivingPort, String receivingPortFullName) {
+    super(receivingPort, receivingPortFullName, TOPIC, new Date());
+    this.token = token;
+    this.sendingPort = sendingPort;
+    this.receivingPort = receivingPort;
+  }
   
   public SendEvent copy() {
     return new SendEvent(token, sendingPort, receivingPort);
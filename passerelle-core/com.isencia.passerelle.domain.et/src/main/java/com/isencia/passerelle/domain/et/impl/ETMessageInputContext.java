@@ -1,6 +1,7 @@
 package com.isencia.passerelle.domain.et.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import com.isencia.passerelle.domain.et.SendEvent;
 import com.isencia.passerelle.message.ManagedMessage;
@@ -8,21 +9,31 @@ import com.isencia.passerelle.message.MessageInputContext;
 
 public class ETMessageInputContext extends MessageInputContext {
 
-  private List<SendEvent> sendEvents = new ArrayList<SendEvent>();
+  // most contexts are never merged, so the list is only created when a second event must be added
+  private SendEvent sendEvent;
+  private List<SendEvent> sendEvents;
 
   public ETMessageInputContext(SendEvent sendEvent, int portIndex, String portName, ManagedMessage msg) {
     super(portIndex, portName, msg);
-    this.sendEvents.add(sendEvent);
+    this.sendEvent = sendEvent;
   }
 
   public List<SendEvent> getSendEvents() {
-    return sendEvents;
+    if (sendEvents != null) {
+      return sendEvents;
+    } else {
+      return Collections.singletonList(sendEvent);
+    }
   }
 
   @Override
   public boolean merge(MessageInputContext other) {
     boolean result = super.merge(other);
     if (result && other instanceof ETMessageInputContext) {
+      if (sendEvents == null) {
+        sendEvents = new ArrayList<SendEvent>();
+        sendEvents.add(sendEvent);
+      }
       this.sendEvents.addAll(((ETMessageInputContext) other).getSendEvents());
     }
     return result;
@@ -31,7 +42,7 @@ public class ETMessageInputContext extends MessageInputContext {
   @Override
   public void setProcessed(boolean processed) {
     super.setProcessed(processed);
-    for (SendEvent sendEvent : sendEvents) {
+    for (SendEvent sendEvent : getSendEvents()) {
       sendEvent.setProcessed(processed);
     }
   }
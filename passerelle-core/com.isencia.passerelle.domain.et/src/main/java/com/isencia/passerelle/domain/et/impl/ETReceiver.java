@@ -15,7 +15,9 @@
 
 package com.isencia.passerelle.domain.et.impl;
 
-import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import ptolemy.actor.AbstractReceiver;
 import ptolemy.actor.IOPort;
 import ptolemy.actor.NoTokenException;
@@ -33,17 +35,33 @@ import com.isencia.passerelle.message.MessageInputContext;
 import com.isencia.passerelle.message.MessageProvider;
 
 /**
+ * A receiver for the ET domain, that generates a <code>SendEvent</code> for each received token.
+ * <p>
+ * With multiple dispatch threads, tokens can be put by the lanes of several sending actors concurrently,
+ * while they are taken by the lane of the receiving actor. So tokens are kept in a lock-free queue.
+ * </p>
+ * <p>
+ * A new <code>SendEvent</code> is created for each token, i.o. reusing pooled instances. After being dispatched, an event
+ * remains referenced by the dispatcher's event history, by retry copies and by the receiving actor's input contexts, so
+ * recycling it would corrupt those.
+ * </p>
+ * 
  * @author delerw
  */
 public class ETReceiver extends AbstractReceiver implements MessageProvider {
 
-  private LinkedList<Token> tokens = new LinkedList<Token>();
+  private Queue<Token> tokens = new ConcurrentLinkedQueue<Token>();
+  // ConcurrentLinkedQueue.size() is not a constant-time operation
+  private AtomicInteger tokenCount = new AtomicInteger();
   
   private ETDirector director;
 
   // When this receiver is linked to a collecting MessageBuffer, 
   // all tokens that are put() here are directly forwarded to the buffer.
-  private MessageBuffer buffer;
+  private volatile MessageBuffer buffer;
+
+  // the full name of the receiving port, cached as it is needed for each SendEvent
+  private volatile String containerFullName;
 
   public ETReceiver(ETDirector director) {
     this.director = director;
@@ -61,7 +79,12 @@ public class ETReceiver extends AbstractReceiver implements MessageProvider {
   /** Clear this receiver of any contained tokens.
    */
   public void clear() {
-      tokens.clear();
+    Token token = tokens.poll();
+    while (token != null) {
+      tokenCount.decrementAndGet();
+      token = tokens.poll();
+    }
+    containerFullName = null;
   }
 
   /**
@@ -73,10 +96,13 @@ public class ETReceiver extends AbstractReceiver implements MessageProvider {
   public Token get() throws NoTokenException {
     if (buffer != null) {
       throw new UnsupportedOperationException("get() not supported for shared buffer");
-    } else if (tokens.isEmpty()) {
+    }
+    Token token = tokens.poll();
+    if (token == null) {
       throw new NoTokenException(getContainer(), "No more tokens in the ET receiver.");
     }
-    return (Token) tokens.removeFirst();
+    tokenCount.decrementAndGet();
+    return token;
   }
 
   @Override
@@ -96,36 +122,42 @@ public class ETReceiver extends AbstractReceiver implements MessageProvider {
 
   @Override
   public boolean hasToken(int numberOfTokens) {
-    return (tokens.size() >= numberOfTokens);
+    return (tokenCount.get() >= numberOfTokens);
   }
 
   @Override
   public void put(Token token) throws IllegalActionException{
+    if(token==null) {
+      return;
+    }
     // Is it possible to determine the sending port here?
     // I don't think so...
     // Alternatively we could generate this event in the sending Port??
-    SendEvent evt = new SendEvent(token, null, (Port) getContainer());
-    if(token==null) {
-      return;
-    } else if (buffer != null) {
+    Port receivingPort = (Port) getContainer();
+    String receivingPortName = containerFullName;
+    if (receivingPortName == null) {
+      receivingPortName = receivingPort.getFullName();
+      containerFullName = receivingPortName;
+    }
+    SendEvent evt = new SendEvent(token, null, receivingPort, receivingPortName);
+    MessageBuffer buffer = this.buffer;
+    if (buffer != null) {
       try {
-        if (getContainer() instanceof Port) {
-          Port _p = (Port) getContainer();
-          try {
-            token = _p.convertTokenForMe(token);
-            _p.getStatistics().acceptReceivedMessage(null);
-          } catch (Exception e) {
-            throw new RuntimeException("Failed to convert token " + token, e);
-          }
+        try {
+          token = receivingPort.convertTokenForMe(token);
+          receivingPort.getStatistics().acceptReceivedMessage(null);
+        } catch (Exception e) {
+          throw new RuntimeException("Failed to convert token " + token, e);
         }
         ManagedMessage msg = MessageHelper.getMessageFromToken(token);
-        MessageInputContext ctxt = new ETMessageInputContext(evt, 0, getContainer().getName(), msg);
+        MessageInputContext ctxt = new ETMessageInputContext(evt, 0, receivingPort.getName(), msg);
         buffer.offer(ctxt);
       } catch (PasserelleException e) {
         throw new RuntimeException("Failed to interpret token " + token, e);
       }
     } else {
       tokens.add(token);
+      tokenCount.incrementAndGet();
     }
     try {
       director.enqueueEvent(evt);
@@ -135,6 +167,7 @@ public class ETReceiver extends AbstractReceiver implements MessageProvider {
   }
 
   public synchronized void requestFinish() {
+    MessageBuffer buffer = this.buffer;
     if (buffer != null) buffer.unregisterMessageProvider(this);
   }
 
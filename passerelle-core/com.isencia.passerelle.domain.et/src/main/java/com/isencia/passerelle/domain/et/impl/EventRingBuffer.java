@@ -0,0 +1,118 @@
+/* Copyright 2011 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+
+package com.isencia.passerelle.domain.et.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-capacity history of the most recent entries, e.g. events handled by an event dispatcher.
+ * <p>
+ * Adding an entry never blocks and never allocates more than one small slot object : when the buffer is full, the oldest
+ * entry is overwritten. Adding and reading can be done concurrently from any number of threads, without locking.
+ * </p>
+ * <p>
+ * Readers obtain a snapshot copy via <code>snapshot()</code>. Entries that are being written while the snapshot is taken
+ * may be missing from it, but a snapshot never contains an entry twice or an entry that was already cleared.
+ * </p>
+ */
+public class EventRingBuffer<E> {
+
+  private static class Slot<E> {
+    final long sequence;
+    final E entry;
+
+    Slot(long sequence, E entry) {
+      this.sequence = sequence;
+      this.entry = entry;
+    }
+  }
+
+  private final int capacity;
+  private final AtomicReferenceArray<Slot<E>> slots;
+  // sequence number for the next entry
+  private final AtomicLong nextSequence = new AtomicLong();
+  // entries with a lower sequence number have been cleared
+  private volatile long firstSequence;
+
+  /**
+   * @param capacity
+   *          the maximum number of entries that are kept, must be > 0
+   */
+  public EventRingBuffer(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be > 0 : " + capacity);
+    }
+    this.capacity = capacity;
+    this.slots = new AtomicReferenceArray<Slot<E>>(capacity);
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Adds an entry, overwriting the oldest one if the buffer is full.
+   * 
+   * @param entry
+   */
+  public void add(E entry) {
+    long sequence = nextSequence.getAndIncrement();
+    slots.set((int) (sequence % capacity), new Slot<E>(sequence, entry));
+  }
+
+  /**
+   * @return the number of entries currently kept in the buffer
+   */
+  public int size() {
+    return (int) Math.min(capacity, nextSequence.get() - firstSequence);
+  }
+
+  /**
+   * @return the number of entries that were added since the last clear, but that are no longer kept because the
+   *         buffer's capacity was exceeded
+   */
+  public long getOverwrittenCount() {
+    return Math.max(0, nextSequence.get() - firstSequence - capacity);
+  }
+
+  /**
+   * @return a copy of the current entries, most recent first
+   */
+  public List<E> snapshot() {
+    long last = nextSequence.get() - 1;
+    long first = Math.max(firstSequence, last - capacity + 1);
+    List<E> result = new ArrayList<E>((int) Math.max(0, last - first + 1));
+    for (long sequence = last; sequence >= first; --sequence) {
+      Slot<E> slot = slots.get((int) (sequence % capacity));
+      // skip slots that are still being written, or that have already been overwritten by a more recent entry
+      if (slot != null && slot.sequence == sequence) {
+        result.add(slot.entry);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Discards all current entries.
+   */
+  public void clear() {
+    // no need to wipe the slots, older entries are skipped by their sequence number
+    firstSequence = nextSequence.get();
+  }
+}
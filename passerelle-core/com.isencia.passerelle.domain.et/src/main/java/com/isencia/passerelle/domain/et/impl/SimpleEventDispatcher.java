@@ -16,7 +16,6 @@
 package com.isencia.passerelle.domain.et.impl;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -37,6 +36,10 @@ import com.isencia.passerelle.domain.et.EventRefusedException;
 /**
  * A basic implementation of an event dispatcher, based on a BlockingQueue and a method for dispatching the oldest queued event. The method must be invoked by
  * some external component (e.g. the model director).
+ * <p>
+ * The event history, unhandled events and event errors are kept in fixed-size ring buffers, so only the most recent entries are kept for a long-running flow.
+ * The reporting methods return snapshot copies, that can be obtained safely while events are being dispatched.
+ * </p>
  * 
  * @author delerw
  */
@@ -44,10 +47,12 @@ public class SimpleEventDispatcher implements EventDispatcher, EventDispatchRepo
 
   private final static Logger LOGGER = LoggerFactory.getLogger(SimpleEventDispatcher.class);
 
+  public final static int DEFAULT_EVENT_HISTORY_SIZE = 1000;
+
   private String name;
 
-  private static class EventEntry {
-    Event event;
+  protected static class EventEntry {
+    final Event event;
     boolean retry;
     public EventEntry(Event event) {
       this.event = event;
@@ -56,9 +61,9 @@ public class SimpleEventDispatcher implements EventDispatcher, EventDispatchRepo
   }
   
   private BlockingQueue<EventEntry> eventQ = new LinkedBlockingQueue<EventEntry>();
-  private List<Event> eventHistory = new LinkedList<Event>();
-  private List<Event> unhandledEvents = new LinkedList<Event>();
-  private List<EventError> eventErrors = new LinkedList<EventError>();
+  private volatile EventRingBuffer<Event> eventHistory = new EventRingBuffer<Event>(DEFAULT_EVENT_HISTORY_SIZE);
+  private volatile EventRingBuffer<Event> unhandledEvents = new EventRingBuffer<Event>(DEFAULT_EVENT_HISTORY_SIZE);
+  private volatile EventRingBuffer<EventError> eventErrors = new EventRingBuffer<EventError>(DEFAULT_EVENT_HISTORY_SIZE);
 
   private EventHandler eventHandlers[];
 
@@ -81,6 +86,19 @@ public class SimpleEventDispatcher implements EventDispatcher, EventDispatchRepo
   public void enableEventHistory(boolean enable) {
     this.keepHistory = enable;
   }
+
+  public void setEventHistorySize(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Event history size must be > 0 : " + size);
+    }
+    eventHistory = new EventRingBuffer<Event>(size);
+    unhandledEvents = new EventRingBuffer<Event>(size);
+    eventErrors = new EventRingBuffer<EventError>(size);
+  }
+
+  public int getEventHistorySize() {
+    return eventHistory.getCapacity();
+  }
   
   public String getName() {
     return name;
@@ -118,66 +136,89 @@ public class SimpleEventDispatcher implements EventDispatcher, EventDispatchRepo
   public boolean hasWork() {
     return !eventQ.isEmpty();
   }
-  
+
+  protected boolean isActive() {
+    return active;
+  }
+
+  protected boolean isForcedShutdown() {
+    return forcedShutdown;
+  }
+
   public boolean dispatch(long timeOut) throws InterruptedException {
     if (forcedShutdown) {
       throw new IllegalStateException("Dispatcher forced to shutdown");
     }
+    EventEntry eventEntry = eventQ.poll(timeOut, TimeUnit.MILLISECONDS);
+    return eventEntry != null && dispatch(eventEntry);
+  }
+
+  /**
+   * Offers the given event to the handlers, and registers it in the history, unhandled events or errors.
+   * 
+   * @param eventEntry
+   * @return true if the event was handled or must be retried, i.e. when there's possibly more work
+   */
+  protected boolean dispatch(EventEntry eventEntry) {
     boolean possiblyMoreWork = false;
     boolean eventHandled = false;
-    EventEntry eventEntry = null;
-    Event event = null;
+    Event event = eventEntry.event;
     try {
-      eventEntry = eventQ.poll(timeOut, TimeUnit.MILLISECONDS);
-      if (eventEntry != null) {
-        event = eventEntry.event;
-        boolean eventEffected = false;
-        for (EventHandler evtHandler : eventHandlers) {
-          try {
-            HandleType handleType = evtHandler.canHandleAs(event, eventEntry.retry);
-            if (HandleType.SKIP.equals(handleType)
-                || (eventEffected && HandleType.EFFECT.equals(handleType)) ) {
-              continue;
-            } else {
-              HandleResult result = evtHandler.handle(event, eventEntry.retry);
-              if (HandleResult.DONE.equals(result)) {
-                eventHandled = true;
-                possiblyMoreWork = true;
-                eventEffected = HandleType.EFFECT.equals(handleType);
-              } else if (!eventEffected && HandleResult.RETRY.equals(result)){
-                // interrupt current handling loop and add event to Q again for later retry
-                possiblyMoreWork = true;
-                EventEntry newEventEntry = new EventEntry(((AbstractEvent)event).copy());
-                newEventEntry.retry=true;
-                eventQ.add(newEventEntry);
-                break;
-              }
+      boolean eventEffected = false;
+      for (EventHandler evtHandler : eventHandlers) {
+        try {
+          HandleType handleType = evtHandler.canHandleAs(event, eventEntry.retry);
+          if (HandleType.SKIP.equals(handleType)
+              || (eventEffected && HandleType.EFFECT.equals(handleType)) ) {
+            continue;
+          } else {
+            HandleResult result = evtHandler.handle(event, eventEntry.retry);
+            if (HandleResult.DONE.equals(result)) {
+              eventHandled = true;
+              possiblyMoreWork = true;
+              eventEffected = HandleType.EFFECT.equals(handleType);
+            } else if (!eventEffected && HandleResult.RETRY.equals(result)){
+              // interrupt current handling loop and add event to Q again for later retry
+              possiblyMoreWork = true;
+              EventEntry newEventEntry = new EventEntry(((AbstractEvent)event).copy());
+              newEventEntry.retry=true;
+              retry(newEventEntry);
+              break;
             }
-          } catch (Exception e) {
-            eventErrors.add(0, new EventError(event, e));
           }
+        } catch (Exception e) {
+          eventErrors.add(new EventError(event, e));
         }
       }
     } finally {
       if (event != null) {
         if (eventHandled) {
           if(keepHistory) {
-            eventHistory.add(0, event);
+            eventHistory.add(event);
           }
         } else {
-          unhandledEvents.add(0, event);
+          unhandledEvents.add(event);
         }
       }
     }
     return possiblyMoreWork;
   }
 
+  /**
+   * Queues an event again, after a handler indicated that it must be retried later.
+   * 
+   * @param eventEntry
+   */
+  protected void retry(EventEntry eventEntry) {
+    eventQ.add(eventEntry);
+  }
+
   public List<Event> getEventHistory() {
-    return eventHistory;
+    return eventHistory.snapshot();
   }
 
   public List<Event> getUnhandledEvents() {
-    return unhandledEvents;
+    return unhandledEvents.snapshot();
   }
   
   public List<Event> getPendingEvents() {
@@ -189,7 +230,7 @@ public class SimpleEventDispatcher implements EventDispatcher, EventDispatchRepo
   }
 
   public List<EventError> getEventErrors() {
-    return eventErrors;
+    return eventErrors.snapshot();
   }
 
   public void clearEvents() {
@@ -16,18 +16,44 @@
 package com.isencia.passerelle.domain.et.impl;
 
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import com.isencia.passerelle.runtime.Event;
+import ptolemy.actor.Actor;
+import com.isencia.passerelle.core.ErrorCode;
 import com.isencia.passerelle.domain.et.EventHandler;
+import com.isencia.passerelle.domain.et.EventRefusedException;
+import com.isencia.passerelle.domain.et.FireEvent;
+import com.isencia.passerelle.domain.et.SendEvent;
+import com.isencia.passerelle.runtime.Event;
 
 /**
+ * An event dispatcher that handles events for different actors in parallel on a thread pool, while events for a same actor
+ * are handled one by one in the order in which they were accepted.
+ * <p>
+ * Each actor gets a "lane" with its pending events. A lane is scheduled on the pool as soon as an event arrives for it, and
+ * remains scheduled as long as it has pending events. So events are handled continuously, without waiting for the
+ * director's <code>dispatch()</code> calls. Only events that arrive before the director's first <code>dispatch()</code> call,
+ * e.g. during the model's initialization, remain queued until then.
+ * </p>
+ * <p>
+ * Events that do not target an actor, e.g. flow execution events, are queued and handled on the director's thread in
+ * <code>dispatch()</code>, as for the <code>SimpleEventDispatcher</code>. There <code>dispatch()</code> also waits until
+ * all lanes are idle or the time-out has passed, so the director does not need to poll.
+ * </p>
+ * <p>
+ * When an event must be retried because its actor is busy, the lane is parked for a short while, with a delay that
+ * increases as long as the actor remains busy, i.o. taking up a pool thread to retry it immediately.
+ * </p>
  * 
  * @author delerw
  */
@@ -35,77 +61,270 @@ public class ThreadPoolEventDispatcher extends SimpleEventDispatcher {
 
   private final static Logger LOGGER = LoggerFactory.getLogger(ThreadPoolEventDispatcher.class);
 
-  // theadpool for the eventQSinks
-  private ExecutorService queueDepletionExecutor;
+  // max nr of events handled for a lane before giving other lanes a chance on the pool
+  private final static int LANE_BATCH_SIZE = 16;
+  // delays for parking a lane when its actor is busy
+  private final static long MIN_RETRY_DELAY_MILLIS = 1;
+  private final static long MAX_RETRY_DELAY_MILLIS = 50;
+
+  private final ScheduledExecutorService laneExecutor;
 
-  public ThreadPoolEventDispatcher(String name, int threadCount, EventHandler... handlers) {
+  private final Map<Actor, Lane> lanes = new ConcurrentHashMap<Actor, Lane>();
+  // nr of events accepted in the lanes, and not yet handled
+  private final AtomicInteger pendingLaneEventCount = new AtomicInteger();
+  // monitor to wake up a waiting dispatch() when all lanes have become idle or when an event arrives for the director's thread
+  private final Object activityMonitor = new Object();
+  // lanes are only scheduled once the director has started dispatching
+  private volatile boolean dispatching;
+
+  public ThreadPoolEventDispatcher(final String name, int threadCount, EventHandler... handlers) {
     super(name, handlers);
 
-    queueDepletionExecutor = Executors.newFixedThreadPool(threadCount);
+    laneExecutor = Executors.newScheduledThreadPool(threadCount, new ThreadFactory() {
+      private final AtomicInteger threadNumber = new AtomicInteger();
+
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name + "-dispatcher-" + threadNumber.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
   }
 
   protected Logger getLogger() {
     return LOGGER;
   }
-  
+
+  @Override
+  public void initialize() {
+    lanes.clear();
+    pendingLaneEventCount.set(0);
+    dispatching = false;
+    super.initialize();
+  }
+
+  @Override
+  public void accept(Event e) throws EventRefusedException {
+    Actor actor = getTargetActor(e);
+    if (actor == null) {
+      super.accept(e);
+      signalActivity();
+    } else {
+      if (!isActive()) {
+        throw new EventRefusedException(e, ErrorCode.FLOW_STATE_ERROR, "Dispatcher inactive " + getName(), new IllegalStateException());
+      }
+      pendingLaneEventCount.incrementAndGet();
+      try {
+        getLane(actor).add(new EventEntry(e));
+      } catch (RejectedExecutionException e1) {
+        pendingLaneEventCount.decrementAndGet();
+        throw new EventRefusedException(e, ErrorCode.FLOW_EXECUTION_ERROR, "Error accepting event " + getName(), e1);
+      }
+    }
+  }
+
+  @Override
+  public boolean hasWork() {
+    return pendingLaneEventCount.get() > 0 || super.hasWork();
+  }
+
+  @Override
+  protected int getPendingEventCount() {
+    return pendingLaneEventCount.get() + super.getPendingEventCount();
+  }
+
+  @Override
+  public List<Event> getPendingEvents() {
+    List<Event> result = super.getPendingEvents();
+    for (Lane lane : lanes.values()) {
+      for (EventEntry eventEntry : lane.eventQ) {
+        result.add(eventEntry.event);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Handles the events that do not target an actor. When there are none, waits until all lanes are idle or until the
+   * time-out has passed.
+   * 
+   * @return true if there's possibly more work, i.e. when an event was handled or when some lanes are still busy
+   */
+  @Override
+  public boolean dispatch(long timeOut) throws InterruptedException {
+    if (isForcedShutdown()) {
+      throw new IllegalStateException("Dispatcher forced to shutdown");
+    }
+    if (!dispatching) {
+      dispatching = true;
+      for (Lane lane : lanes.values()) {
+        if (!lane.eventQ.isEmpty()) {
+          lane.schedule();
+        }
+      }
+    }
+    long deadline = System.currentTimeMillis() + timeOut;
+    synchronized (activityMonitor) {
+      long remaining = timeOut;
+      while (!super.hasWork() && pendingLaneEventCount.get() > 0 && remaining > 0) {
+        activityMonitor.wait(remaining);
+        remaining = deadline - System.currentTimeMillis();
+      }
+    }
+    long remaining = Math.max(0, deadline - System.currentTimeMillis());
+    boolean hasDispatchedSomething = super.dispatch(pendingLaneEventCount.get() > 0 ? 0 : remaining);
+    boolean possiblyMoreWork = hasDispatchedSomething || hasWork();
+    getLogger().trace("{} possiblyMoreWork {}", this, possiblyMoreWork);
+    return possiblyMoreWork;
+  }
+
+  @Override
+  protected void retry(EventEntry eventEntry) {
+    Actor actor = getTargetActor(eventEntry.event);
+    if (actor == null) {
+      super.retry(eventEntry);
+    } else {
+      // put it in front, to maintain the order of the actor's events
+      pendingLaneEventCount.incrementAndGet();
+      getLane(actor).eventQ.addFirst(eventEntry);
+    }
+  }
+
   @Override
   public void shutdown() {
-    queueDepletionExecutor.shutdown();
+    laneExecutor.shutdown();
     super.shutdown();
   }
-  
+
   @Override
   public List<Event> shutdownNow() {
-    queueDepletionExecutor.shutdownNow();
-    return super.shutdownNow();
+    laneExecutor.shutdownNow();
+    List<Event> pendingEvents = super.shutdownNow();
+    for (Lane lane : lanes.values()) {
+      for (EventEntry eventEntry : lane.eventQ) {
+        pendingEvents.add(eventEntry.event);
+      }
+    }
+    return pendingEvents;
   }
 
   @Override
-  public boolean dispatch(long timeOut) throws InterruptedException {
-    int evtCount = getPendingEventCount();
-    boolean hasDispatchedSomething = false;
-    if (evtCount > 0) {
-      CompletionService<Boolean> execComplSvc = new ExecutorCompletionService<Boolean>(queueDepletionExecutor);
-      for (int i = 0; i < evtCount; ++i) {
-        execComplSvc.submit(new EventQueueSink(timeOut));
-      }
-      for (int i = 0; i < evtCount; ++i) {
-        try {
-          // Watch out! Order of the RHS is important.
-          // The ...get() must come first as we want to ensure that we wait for ALL tasks to have completed.
-          // If it would be at the end, the Java logical expression evaluation would no longer execute it once
-          // the hasDispatchedSomething has become true!
-          hasDispatchedSomething = execComplSvc.take().get() || hasDispatchedSomething;
-        } catch (ExecutionException e) {
-          // TODO Auto-generated catch block
-          e.printStackTrace();
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    return !isActive() && laneExecutor.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * @param event
+   * @return the actor whose events must be handled in the same order as they were accepted, or null if the event must be
+   *         handled on the director's thread
+   */
+  protected Actor getTargetActor(Event event) {
+    if (event instanceof SendEvent) {
+      return (Actor) ((SendEvent) event).getReceivingPort().getContainer();
+    } else if (event instanceof FireEvent) {
+      return ((FireEvent) event).getTarget();
+    } else {
+      return null;
+    }
+  }
+
+  private Lane getLane(Actor actor) {
+    Lane lane = lanes.get(actor);
+    if (lane == null) {
+      synchronized (lanes) {
+        lane = lanes.get(actor);
+        if (lane == null) {
+          lane = new Lane();
+          lanes.put(actor, lane);
         }
       }
-    } else {
-      // block the calling thread until an event has arrived, or timeout is passed
-      // if an event arrives, it will also be processed in the calling thread...
-      super.dispatch(timeOut);
     }
-    getLogger().debug(this + " hasDispatchedSomething " + hasDispatchedSomething);
-    return hasDispatchedSomething;
+    return lane;
+  }
+
+  private void signalActivity() {
+    synchronized (activityMonitor) {
+      activityMonitor.notifyAll();
+    }
   }
 
-  private class EventQueueSink implements Callable<Boolean> {
-    private long timeout;
+  private void laneEventDone() {
+    if (pendingLaneEventCount.decrementAndGet() == 0) {
+      signalActivity();
+    }
+  }
+
+  /**
+   * The pending events for one actor. A lane is scheduled at most once at any time on the pool, which guarantees that its
+   * events are handled one by one.
+   */
+  private class Lane implements Runnable {
+    private final LinkedBlockingDeque<EventEntry> eventQ = new LinkedBlockingDeque<EventEntry>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // only accessed by the lane's run(), which is never executed concurrently
+    private long retryDelayMillis;
 
-    public EventQueueSink(long timeout) {
-      this.timeout = timeout;
+    void add(EventEntry eventEntry) {
+      eventQ.add(eventEntry);
+      if (dispatching) {
+        schedule();
+      }
     }
 
-    public Boolean call() throws Exception {
-      String name = getName() + " - " + Thread.currentThread().getName();
-      getLogger().trace("Starting dispatch {}", name);
-      try {
-        boolean hasDispatchedSomething = ThreadPoolEventDispatcher.super.dispatch(timeout);
-        getLogger().debug(name + " hasDispatchedSomething " + hasDispatchedSomething);
-        return hasDispatchedSomething;
-      } finally {
-        getLogger().trace("Finished dispatch {}", name);
+    void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        try {
+          laneExecutor.execute(this);
+        } catch (RejectedExecutionException e) {
+          scheduled.set(false);
+          throw e;
+        }
+      }
+    }
+
+    public void run() {
+      boolean actorBusy = false;
+      for (int i = 0; i < LANE_BATCH_SIZE && !isForcedShutdown(); ++i) {
+        EventEntry eventEntry = eventQ.poll();
+        if (eventEntry == null) {
+          break;
+        }
+        try {
+          dispatch(eventEntry);
+        } catch (RuntimeException e) {
+          getLogger().error("Error dispatching " + eventEntry.event, e);
+        } finally {
+          laneEventDone();
+        }
+        EventEntry next = eventQ.peekFirst();
+        if (next != null && next.retry) {
+          // the actor is busy, so let the other lanes go first
+          actorBusy = true;
+          break;
+        }
+      }
+      if (actorBusy && !isForcedShutdown()) {
+        retryDelayMillis = Math.min(Math.max(MIN_RETRY_DELAY_MILLIS, retryDelayMillis * 2), MAX_RETRY_DELAY_MILLIS);
+        try {
+          // the lane remains scheduled while it is parked, so new events for the actor do not wake it up
+          laneExecutor.schedule(this, retryDelayMillis, TimeUnit.MILLISECONDS);
+          return;
+        } catch (RejectedExecutionException e) {
+          getLogger().warn("{} - dropping {} events after shutdown", getName(), eventQ.size());
+          scheduled.set(false);
+          return;
+        }
+      } else {
+        retryDelayMillis = 0;
+      }
+      scheduled.set(false);
+      // events may have arrived between the last poll and resetting the flag
+      if (!eventQ.isEmpty() && !isForcedShutdown()) {
+        try {
+          schedule();
+        } catch (RejectedExecutionException e) {
+          getLogger().warn("{} - dropping {} events after shutdown", getName(), eventQ.size());
+        }
       }
     }
   }
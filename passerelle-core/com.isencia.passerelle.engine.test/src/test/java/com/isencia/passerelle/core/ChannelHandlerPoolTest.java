@@ -0,0 +1,106 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import junit.framework.TestCase;
+import org.slf4j.MDC;
+
+public class ChannelHandlerPoolTest extends TestCase {
+
+  public void testMDCPropagation() throws Exception {
+    ChannelHandlerPool pool = new ChannelHandlerPool(2, 0);
+    final AtomicReference<String> seenValue = new AtomicReference<String>();
+    final CountDownLatch done = new CountDownLatch(1);
+    MDC.put("flow", "testFlow");
+    try {
+      pool.execute(new Runnable() {
+        public void run() {
+          seenValue.set(MDC.get("flow"));
+          done.countDown();
+        }
+      });
+    } finally {
+      MDC.remove("flow");
+    }
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals("Submitter's MDC should be visible in the pool thread", "testFlow", seenValue.get());
+  }
+
+  public void testOverflowToDedicatedThread() throws Exception {
+    ChannelHandlerPool pool = new ChannelHandlerPool(1, 2);
+    final CountDownLatch started = new CountDownLatch(3);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(3);
+    for (int i = 0; i < 3; ++i) {
+      pool.execute(new BlockingTask(started, release, done));
+    }
+    assertTrue("Blocking handlers should not wait for a pool thread", started.await(5, TimeUnit.SECONDS));
+    assertEquals(1, pool.getActiveCount());
+    assertEquals(2, pool.getOverflowCount());
+    assertEquals(2, pool.getActiveOverflowCount());
+    release.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+  }
+
+  public void testOverflowLimit() throws Exception {
+    ChannelHandlerPool pool = new ChannelHandlerPool(1, 1);
+    final CountDownLatch started = new CountDownLatch(2);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(2);
+    pool.execute(new BlockingTask(started, release, done));
+    pool.execute(new BlockingTask(started, release, done));
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    try {
+      pool.execute(new BlockingTask(started, release, done));
+      fail("Handlers beyond the overflow limit should be rejected");
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    assertEquals(1, pool.getActiveOverflowCount());
+    release.countDown();
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    long end = System.currentTimeMillis() + 5000;
+    while (pool.getActiveOverflowCount() > 0) {
+      assertTrue("Finished overflow threads should be released", System.currentTimeMillis() < end);
+      Thread.sleep(10);
+    }
+  }
+
+  private static class BlockingTask implements Runnable {
+    private final CountDownLatch started;
+    private final CountDownLatch release;
+    private final CountDownLatch done;
+
+    BlockingTask(CountDownLatch started, CountDownLatch release, CountDownLatch done) {
+      this.started = started;
+      this.release = release;
+      this.done = done;
+    }
+
+    public void run() {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        // test will fail
+      }
+      done.countDown();
+    }
+  }
+}
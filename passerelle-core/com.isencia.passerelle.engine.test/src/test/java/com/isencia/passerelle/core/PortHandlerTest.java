@@ -0,0 +1,171 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import ptolemy.actor.IOPortEvent;
+import ptolemy.actor.Receiver;
+import ptolemy.actor.TypedAtomicActor;
+import ptolemy.actor.TypedCompositeActor;
+import ptolemy.actor.TypedIOPort;
+import ptolemy.actor.process.ProcessReceiver;
+import ptolemy.data.IntToken;
+import ptolemy.data.Token;
+import ptolemy.kernel.util.DebugEvent;
+import ptolemy.kernel.util.DebugListener;
+import com.isencia.passerelle.domain.cap.BlockingQueueReceiver;
+import com.isencia.passerelle.domain.cap.Director;
+import com.isencia.passerelle.domain.cap.OverflowPolicy;
+
+/**
+ * Checks that a PortHandler on a multi-channel port of a process domain gets its tokens from notifying receivers,
+ * without channel handler threads, and that the receivers' queue settings still apply.
+ */
+public class PortHandlerTest extends TestCase {
+
+  private Port input;
+
+  @Override
+  protected void setUp() throws Exception {
+    TypedCompositeActor flow = new TypedCompositeActor();
+    new Director(flow, "director");
+    TypedAtomicActor source = new TypedAtomicActor(flow, "source");
+    TypedAtomicActor sink = new TypedAtomicActor(flow, "sink");
+    input = new Port(sink, "input", true, false);
+    input.setMultiport(true);
+    flow.connect(new TypedIOPort(source, "output1", false, true), input);
+    flow.connect(new TypedIOPort(source, "output2", false, true), input);
+    input.createReceivers();
+  }
+
+  public void testTokensFromAllChannels() throws Exception {
+    receiver(1).put(new IntToken(0));
+    PortHandler handler = new PortHandler(input);
+    handler.start();
+    assertNull("Notifying receivers should replace the channel handlers", handler.channelHandlers);
+    receiver(0).put(new IntToken(1));
+    assertEquals("Tokens queued before the start should be handed over", new IntToken(0), handler.getToken());
+    assertEquals(new IntToken(1), handler.getToken());
+
+    finish(0);
+    receiver(1).put(new IntToken(2));
+    assertEquals(new IntToken(2), handler.getToken());
+    finish(1);
+    assertNull("Handler should be exhausted when all channels are finished", handler.getToken());
+  }
+
+  public void testListenerNotifications() throws Exception {
+    final AtomicInteger received = new AtomicInteger();
+    final CountDownLatch noMoreTokens = new CountDownLatch(1);
+    final PortHandler[] handler = new PortHandler[1];
+    handler[0] = new PortHandler(input, new PortListener() {
+      public void tokenReceived() {
+        Token token = handler[0].getToken();
+        if (token != null) {
+          received.incrementAndGet();
+        }
+      }
+
+      public void noMoreTokens() {
+        noMoreTokens.countDown();
+      }
+    });
+    handler[0].start();
+    for (int i = 0; i < 10; ++i) {
+      receiver(i % 2).put(new IntToken(i));
+    }
+    finish(0);
+    finish(1);
+    assertTrue("Listener should be notified when all channels are finished", noMoreTokens.await(5, TimeUnit.SECONDS));
+    assertEquals("Listener should be notified of each token", 10, received.get());
+  }
+
+  public void testDebugEventsSent() throws Exception {
+    final List<IOPortEvent> events = new ArrayList<IOPortEvent>();
+    input.addDebugListener(new DebugListener() {
+      public void event(DebugEvent event) {
+        if (event instanceof IOPortEvent) {
+          events.add((IOPortEvent) event);
+        }
+      }
+
+      public void message(String message) {
+      }
+    });
+    PortHandler handler = new PortHandler(input);
+    handler.start();
+    receiver(1).put(new IntToken(1));
+    assertEquals(new IntToken(1), handler.getToken());
+    assertEquals("A debug event should be sent for each token that is read", 1, events.size());
+    assertEquals(IOPortEvent.GET_END, events.get(0).getEventType());
+    assertEquals(1, events.get(0).getChannel());
+    assertEquals(new IntToken(1), events.get(0).getToken());
+  }
+
+  public void testReceiverCapacityAndPolicyApply() throws Exception {
+    BlockingQueueReceiver dropping = (BlockingQueueReceiver) receiver(0);
+    dropping.setCapacity(2);
+    dropping.setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+    final BlockingQueueReceiver blocking = (BlockingQueueReceiver) receiver(1);
+    blocking.setCapacity(1);
+    blocking.setOverflowPolicy(OverflowPolicy.BLOCK);
+    // sets up the port's queue statistics
+    input.initialize();
+    PortHandler handler = new PortHandler(input);
+    handler.start();
+
+    for (int i = 0; i < 3; ++i) {
+      dropping.put(new IntToken(i));
+    }
+    assertEquals("Tokens should stay in the receiver until they are read", 2, dropping.size());
+    assertEquals("Full receiver should drop the newest token", 1, dropping.getDroppedTokenCount());
+    assertEquals(2, input.getQueueStatistics().getNrEnqueuedMessages());
+
+    blocking.put(new IntToken(10));
+    final CountDownLatch putDone = new CountDownLatch(1);
+    new Thread() {
+      public void run() {
+        blocking.put(new IntToken(11));
+        putDone.countDown();
+      }
+    }.start();
+    assertFalse("Writer should block on a full receiver", putDone.await(200, TimeUnit.MILLISECONDS));
+
+    assertEquals(new IntToken(0), handler.getToken());
+    assertEquals(new IntToken(1), handler.getToken());
+    assertEquals(new IntToken(10), handler.getToken());
+    assertTrue("Writer should be unblocked when the handler reads a token", putDone.await(5, TimeUnit.SECONDS));
+    assertEquals(new IntToken(11), handler.getToken());
+    assertEquals(4, input.getQueueStatistics().getNrDequeuedMessages());
+    assertEquals(0, input.getQueueStatistics().getSize());
+
+    finish(0);
+    finish(1);
+    assertNull(handler.getToken());
+  }
+
+  private Receiver receiver(int channel) throws Exception {
+    return input.getReceivers()[channel][0];
+  }
+
+  private void finish(int channel) throws Exception {
+    ((ProcessReceiver) receiver(channel)).requestFinish();
+  }
+}
@@ -0,0 +1,216 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import ptolemy.actor.NoRoomException;
+import ptolemy.actor.TypedAtomicActor;
+import ptolemy.actor.TypedCompositeActor;
+import ptolemy.actor.TypedIOPort;
+import ptolemy.data.IntToken;
+import com.isencia.passerelle.core.PasserelleToken;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageFactory;
+
+public class BlockingQueueReceiverTest extends TestCase {
+
+  private BlockingQueueReceiver receiver;
+
+  @Override
+  protected void setUp() throws Exception {
+    TypedCompositeActor flow = new TypedCompositeActor();
+    new Director(flow, "director");
+    TypedAtomicActor actor = new TypedAtomicActor(flow, "actor");
+    TypedIOPort input = new TypedIOPort(actor, "input", true, false);
+    receiver = new BlockingQueueReceiver(input);
+    receiver.setCapacity(2);
+  }
+
+  public void testUnboundedByDefault() throws Exception {
+    BlockingQueueReceiver unbounded = new BlockingQueueReceiver(receiver.getContainer());
+    for (int i = 0; i < 100; ++i) {
+      unbounded.put(new IntToken(i));
+    }
+    assertEquals(100, unbounded.size());
+    assertTrue(unbounded.hasRoom());
+  }
+
+  public void testReject() throws Exception {
+    fill();
+    assertFalse(receiver.hasRoom());
+    try {
+      receiver.put(new IntToken(3));
+      fail("Full queue should reject token");
+    } catch (NoRoomException e) {
+      // expected
+    }
+  }
+
+  public void testDropOldest() throws Exception {
+    receiver.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+    fill();
+    receiver.put(new IntToken(3));
+    assertEquals(2, receiver.size());
+    assertEquals(1, receiver.getDroppedTokenCount());
+    assertEquals(new IntToken(2), receiver.get());
+    assertEquals(new IntToken(3), receiver.get());
+  }
+
+  public void testDropNewest() throws Exception {
+    receiver.setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+    fill();
+    receiver.put(new IntToken(3));
+    assertEquals(2, receiver.size());
+    assertEquals(1, receiver.getDroppedTokenCount());
+    assertEquals(new IntToken(1), receiver.get());
+    assertEquals(new IntToken(2), receiver.get());
+  }
+
+  public void testSpillToDisk() throws Exception {
+    receiver.setOverflowPolicy(OverflowPolicy.SPILL_TO_DISK);
+    for (int i = 1; i <= 10; ++i) {
+      receiver.put(new IntToken(i));
+    }
+    assertEquals("Spilled tokens should be counted", 10, receiver.size());
+    for (int i = 1; i <= 10; ++i) {
+      assertEquals("Spilled tokens should be retrieved in order", new IntToken(i), receiver.get());
+    }
+    assertEquals(0, receiver.size());
+  }
+
+  public void testSpilledTokensDeliveredAfterFinish() throws Exception {
+    receiver.setOverflowPolicy(OverflowPolicy.SPILL_TO_DISK);
+    for (int i = 1; i <= 10; ++i) {
+      receiver.put(new IntToken(i));
+    }
+    receiver.requestFinish();
+    for (int i = 1; i <= 10; ++i) {
+      assertEquals("Spilled tokens should still be retrieved after a finish request", new IntToken(i), receiver.get());
+    }
+    assertNull("Finished receiver should return null once all tokens have been retrieved", receiver.get());
+  }
+
+  public void testSpillMessageTokens() throws Exception {
+    receiver.setOverflowPolicy(OverflowPolicy.SPILL_TO_DISK);
+    final ManagedMessage[] messages = new ManagedMessage[10];
+    for (int i = 0; i < messages.length; ++i) {
+      messages[i] = MessageFactory.getInstance().createMessage();
+      messages[i].setBodyContentPlainText("message " + i);
+      messages[i].addBodyHeader("X-Index", Integer.toString(i));
+    }
+    final CountDownLatch putDone = new CountDownLatch(1);
+    Thread writer = new Thread() {
+      public void run() {
+        for (ManagedMessage message : messages) {
+          receiver.put(new PasserelleToken(message));
+        }
+        putDone.countDown();
+      }
+    };
+    writer.start();
+    assertTrue("Message tokens should be spilled, not block the writer", putDone.await(5, TimeUnit.SECONDS));
+    assertEquals(10, receiver.size());
+    for (int i = 0; i < messages.length; ++i) {
+      ManagedMessage message = ((PasserelleToken) receiver.get()).getMessage();
+      assertEquals(messages[i].getID(), message.getID());
+      assertEquals("message " + i, message.getBodyContentAsString());
+      assertEquals(Integer.toString(i), message.getBodyHeader("X-Index")[0]);
+    }
+  }
+
+  public void testUnreadableSpilledTokenSkipped() throws Exception {
+    receiver.setOverflowPolicy(OverflowPolicy.SPILL_TO_DISK);
+    fill();
+    receiver.put(new UnreadableToken());
+    receiver.put(new IntToken(4));
+    assertEquals(4, receiver.size());
+    assertEquals(new IntToken(1), receiver.get());
+    assertEquals("Unreadable spilled token should be skipped", 2, receiver.size());
+    assertEquals(new IntToken(2), receiver.get());
+    assertEquals(new IntToken(4), receiver.get());
+    assertEquals(0, receiver.size());
+  }
+
+  public void testBlock() throws Exception {
+    receiver.setOverflowPolicy(OverflowPolicy.BLOCK);
+    fill();
+    final CountDownLatch putDone = new CountDownLatch(1);
+    Thread writer = new Thread() {
+      public void run() {
+        receiver.put(new IntToken(3));
+        putDone.countDown();
+      }
+    };
+    writer.start();
+    assertFalse("Writer should block on a full queue", putDone.await(200, TimeUnit.MILLISECONDS));
+    assertTrue(receiver.isWriteBlocked());
+    assertEquals(new IntToken(1), receiver.get());
+    assertTrue("Writer should be unblocked after a get", putDone.await(5, TimeUnit.SECONDS));
+    assertFalse(receiver.isWriteBlocked());
+    assertEquals(2, receiver.size());
+  }
+
+  public void testIncreaseCapacityUnblocksWriter() throws Exception {
+    receiver.setOverflowPolicy(OverflowPolicy.BLOCK);
+    fill();
+    final CountDownLatch putDone = new CountDownLatch(1);
+    Thread writer = new Thread() {
+      public void run() {
+        receiver.put(new IntToken(3));
+        putDone.countDown();
+      }
+    };
+    writer.start();
+    assertFalse("Writer should block on a full queue", putDone.await(200, TimeUnit.MILLISECONDS));
+    assertEquals(1, receiver.increaseCapacity().size());
+    assertEquals(4, receiver.getCapacity());
+    assertTrue("Writer should be unblocked after capacity increase", putDone.await(5, TimeUnit.SECONDS));
+    assertEquals(3, receiver.size());
+  }
+
+  public void testRequestFinishUnblocksWriter() throws Exception {
+    receiver.setOverflowPolicy(OverflowPolicy.BLOCK);
+    fill();
+    final CountDownLatch putDone = new CountDownLatch(1);
+    Thread writer = new Thread() {
+      public void run() {
+        receiver.put(new IntToken(3));
+        putDone.countDown();
+      }
+    };
+    writer.start();
+    assertFalse("Writer should block on a full queue", putDone.await(200, TimeUnit.MILLISECONDS));
+    receiver.requestFinish();
+    assertTrue("Writer should be unblocked after finish request", putDone.await(5, TimeUnit.SECONDS));
+  }
+
+  private static class UnreadableToken extends IntToken {
+    private static final long serialVersionUID = 1L;
+
+    private void readObject(ObjectInputStream in) throws IOException {
+      throw new InvalidObjectException("unreadable");
+    }
+  }
+
+  private void fill() {
+    receiver.put(new IntToken(1));
+    receiver.put(new IntToken(2));
+  }
+}
@@ -0,0 +1,106 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import junit.framework.TestCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ptolemy.actor.TypedAtomicActor;
+import ptolemy.actor.TypedCompositeActor;
+import com.isencia.passerelle.message.MessageFactory;
+import com.isencia.passerelle.message.MessageInputContext;
+
+/**
+ * Logs the throughput of the actor message queues for a flow with many actors, as a simple benchmark for the
+ * contention between the queues.
+ * <p>
+ * Not part of the automated test suites, as it just reports timings.
+ * </p>
+ */
+public class CapActorMessageQueueBenchmarkTestManually extends TestCase {
+  private final static Logger LOGGER = LoggerFactory.getLogger(CapActorMessageQueueBenchmarkTestManually.class);
+
+  private final static int ACTOR_COUNT = 64;
+  private final static int MSGS_PER_ACTOR = 20000;
+
+  private TypedCompositeActor flow;
+
+  @Override
+  protected void setUp() throws Exception {
+    flow = new TypedCompositeActor();
+    new CapDirector(flow, "director");
+  }
+
+  public void testThroughputManyActors() throws Exception {
+    final CapActorMessageQueue[] queues = new CapActorMessageQueue[ACTOR_COUNT];
+    for (int i = 0; i < ACTOR_COUNT; ++i) {
+      queues[i] = new CapActorMessageQueue(new TypedAtomicActor(flow, "actor" + i), 16);
+    }
+    final MessageInputContext ctxt = newContext();
+    final CountDownLatch startSignal = new CountDownLatch(1);
+    final CountDownLatch doneSignal = new CountDownLatch(2 * ACTOR_COUNT);
+    final AtomicLong received = new AtomicLong();
+    for (int i = 0; i < ACTOR_COUNT; ++i) {
+      final CapActorMessageQueue queue = queues[i];
+      new Thread() {
+        public void run() {
+          try {
+            startSignal.await();
+            for (int m = 0; m < MSGS_PER_ACTOR; ++m) {
+              queue.put(ctxt);
+            }
+          } catch (InterruptedException e) {
+            // test will fail
+          } finally {
+            doneSignal.countDown();
+          }
+        }
+      }.start();
+      new Thread() {
+        public void run() {
+          try {
+            startSignal.await();
+            int count = 0;
+            while (count < MSGS_PER_ACTOR) {
+              if (queue.poll() != null) {
+                count++;
+              } else {
+                Thread.yield();
+              }
+            }
+            received.addAndGet(count);
+          } catch (InterruptedException e) {
+            // test will fail
+          } finally {
+            doneSignal.countDown();
+          }
+        }
+      }.start();
+    }
+    long start = System.nanoTime();
+    startSignal.countDown();
+    assertTrue("All msgs should be delivered", doneSignal.await(120, TimeUnit.SECONDS));
+    long durationNanos = System.nanoTime() - start;
+    assertEquals((long) ACTOR_COUNT * MSGS_PER_ACTOR, received.get());
+    LOGGER.info("{} actors : {} msgs/s", ACTOR_COUNT, (received.get() * 1000000000L) / Math.max(1, durationNanos));
+  }
+
+  private static MessageInputContext newContext() {
+    return new MessageInputContext(0, "input", MessageFactory.getInstance().createMessage());
+  }
+}
@@ -0,0 +1,218 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import ptolemy.actor.TypedAtomicActor;
+import ptolemy.actor.TypedCompositeActor;
+import ptolemy.actor.process.ProcessReceiver;
+import ptolemy.actor.process.TerminateProcessException;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+import com.isencia.passerelle.message.MessageFactory;
+import com.isencia.passerelle.message.MessageInputContext;
+
+/**
+ * Checks the blocking behaviour of the actor message queues.
+ */
+public class CapActorMessageQueueTest extends TestCase {
+  private TypedCompositeActor flow;
+
+  @Override
+  protected void setUp() throws Exception {
+    flow = new TypedCompositeActor();
+    new CapDirector(flow, "director");
+  }
+
+  public void testPutBlocksWhenFull() throws Exception {
+    final CapActorMessageQueue queue = new CapActorMessageQueue(new TypedAtomicActor(flow, "actor"), 2);
+    queue.put(newContext());
+    queue.put(newContext());
+    final CountDownLatch putDone = new CountDownLatch(1);
+    Thread writer = new Thread() {
+      public void run() {
+        try {
+          queue.put(newContext());
+          putDone.countDown();
+        } catch (InterruptedException e) {
+          // test will fail
+        }
+      }
+    };
+    writer.start();
+    assertFalse("Writer should block on a full queue", putDone.await(200, TimeUnit.MILLISECONDS));
+    assertNotNull(queue.poll());
+    assertTrue("Writer should be unblocked after a poll", putDone.await(5, TimeUnit.SECONDS));
+    assertEquals(2, queue.size());
+  }
+
+  public void testIncreaseCapacityUnblocksWriter() throws Exception {
+    final CapActorMessageQueue queue = new CapActorMessageQueue(new TypedAtomicActor(flow, "actor"), 1);
+    queue.put(newContext());
+    final CountDownLatch putDone = new CountDownLatch(1);
+    Thread writer = new Thread() {
+      public void run() {
+        try {
+          queue.put(newContext());
+          putDone.countDown();
+        } catch (InterruptedException e) {
+          // test will fail
+        }
+      }
+    };
+    writer.start();
+    assertFalse("Writer should block on a full queue", putDone.await(200, TimeUnit.MILLISECONDS));
+    assertEquals(1, queue.increaseCapacity().size());
+    assertEquals(2, queue.getCapacity());
+    assertTrue("Writer should be unblocked after capacity increase", putDone.await(5, TimeUnit.SECONDS));
+    assertEquals(2, queue.size());
+  }
+
+  public void testDrainTo() throws Exception {
+    final CapActorMessageQueue queue = new CapActorMessageQueue(new TypedAtomicActor(flow, "actor"), 16);
+    for (int i = 0; i < 5; ++i) {
+      queue.put(newContext());
+    }
+    List<MessageInputContext> batch = new ArrayList<MessageInputContext>();
+    assertEquals("Drain should respect max elements", 3, queue.drainTo(batch, 3));
+    assertEquals(3, batch.size());
+    assertEquals("Drain without limit should take all remaining msgs", 2, queue.drainTo(batch, -1));
+    assertTrue(queue.isEmpty());
+
+    batch.clear();
+    new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(50);
+          queue.put(newContext());
+        } catch (InterruptedException e) {
+          // test will fail
+        }
+      }
+    }.start();
+    assertEquals("Timed drain should wait for msgs", 1, queue.drainTo(batch, 1, 5, TimeUnit.SECONDS));
+    long start = System.currentTimeMillis();
+    assertEquals(0, queue.drainTo(batch, 1, 100, TimeUnit.MILLISECONDS));
+    assertTrue("Timed drain should wait for the timeout", System.currentTimeMillis() - start >= 90);
+  }
+
+  public void testTerminateWakesUpWaitingThreads() throws Exception {
+    final CapActorMessageQueue queue = new CapActorMessageQueue(new TypedAtomicActor(flow, "actor"), 1);
+    final CountDownLatch drainDone = new CountDownLatch(1);
+    new Thread() {
+      public void run() {
+        try {
+          queue.drainTo(new ArrayList<MessageInputContext>(), 1, 10, TimeUnit.SECONDS);
+        } catch (TerminateProcessException e) {
+          drainDone.countDown();
+        } catch (InterruptedException e) {
+          // test will fail
+        }
+      }
+    }.start();
+    Thread.sleep(100);
+    queue.terminate();
+    assertTrue("Terminate should wake up a timed drain", drainDone.await(5, TimeUnit.SECONDS));
+
+    final CapActorMessageQueue fullQueue = new CapActorMessageQueue(new TypedAtomicActor(flow, "actor2"), 1);
+    fullQueue.put(newContext());
+    final CountDownLatch putDone = new CountDownLatch(1);
+    new Thread() {
+      public void run() {
+        try {
+          fullQueue.put(newContext());
+        } catch (TerminateProcessException e) {
+          putDone.countDown();
+        } catch (InterruptedException e) {
+          // test will fail
+        }
+      }
+    }.start();
+    assertFalse("Writer should block on a full queue", putDone.await(200, TimeUnit.MILLISECONDS));
+    fullQueue.terminate();
+    assertTrue("Terminate should release a blocked writer", putDone.await(5, TimeUnit.SECONDS));
+    assertNull(fullQueue.getPendingWriter());
+  }
+
+  public void testQueueRemainsWriteBlockedWhileWritersPending() throws Exception {
+    flow = new TypedCompositeActor();
+    final RecordingCapDirector director = new RecordingCapDirector(flow, "director");
+    final CapActorMessageQueue queue = new CapActorMessageQueue(new TypedAtomicActor(flow, "actor"), 1);
+    queue.put(newContext());
+    final CountDownLatch putDone = new CountDownLatch(2);
+    for (int i = 0; i < 2; ++i) {
+      new Thread() {
+        public void run() {
+          try {
+            queue.put(newContext());
+            putDone.countDown();
+          } catch (InterruptedException e) {
+            // test will fail
+          }
+        }
+      }.start();
+    }
+    long end = System.currentTimeMillis() + 5000;
+    while (queue.getPendingWriter() == null || director.blockedQueue == null) {
+      assertTrue("Writers should block on a full queue", System.currentTimeMillis() < end);
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+    // room for one more msg, so one writer gets unblocked and the other one remains blocked
+    queue.setCapacity(2);
+    end = System.currentTimeMillis() + 5000;
+    while (putDone.getCount() > 1) {
+      assertTrue("One writer should be unblocked", System.currentTimeMillis() < end);
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+    assertEquals(1, putDone.getCount());
+    assertTrue("Queue should remain write-blocked for the director", director.isWriteBlocked(director.blockedQueue));
+
+    assertNotNull(queue.poll());
+    assertTrue("Other writer should be unblocked after a poll", putDone.await(5, TimeUnit.SECONDS));
+    assertFalse("Queue should no longer be write-blocked for the director", director.isWriteBlocked(director.blockedQueue));
+  }
+
+  private static MessageInputContext newContext() {
+    return new MessageInputContext(0, "input", MessageFactory.getInstance().createMessage());
+  }
+
+  /**
+   * Gives access to the director's registration of write-blocked queues.
+   */
+  private static class RecordingCapDirector extends CapDirector {
+    private volatile ProcessReceiver blockedQueue;
+
+    RecordingCapDirector(CompositeEntity container, String name) throws IllegalActionException, NameDuplicationException {
+      super(container, name);
+    }
+
+    @Override
+    public synchronized void threadBlocked(Thread thread, ProcessReceiver receiver, boolean readOrWrite) {
+      super.threadBlocked(thread, receiver, readOrWrite);
+      blockedQueue = receiver;
+    }
+
+    synchronized boolean isWriteBlocked(ProcessReceiver queue) {
+      return _writeBlockedQueues.containsKey(queue);
+    }
+  }
+}
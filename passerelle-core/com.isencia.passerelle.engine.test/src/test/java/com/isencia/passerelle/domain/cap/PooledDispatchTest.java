@@ -0,0 +1,100 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.domain.cap;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import junit.framework.TestCase;
+import ptolemy.kernel.CompositeEntity;
+import ptolemy.kernel.util.IllegalActionException;
+import ptolemy.kernel.util.NameDuplicationException;
+import com.isencia.passerelle.actor.ProcessingException;
+import com.isencia.passerelle.actor.v5.ActorContext;
+import com.isencia.passerelle.actor.v5.ProcessRequest;
+import com.isencia.passerelle.actor.v5.ProcessResponse;
+import com.isencia.passerelle.core.PortFactory;
+import com.isencia.passerelle.core.PortMode;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.model.FlowManager;
+import com.isencia.passerelle.testsupport.FlowStatisticsAssertion;
+import com.isencia.passerelle.testsupport.actor.Forwarder;
+import com.isencia.passerelle.testsupport.actor.MessageHistoryStack;
+import com.isencia.passerelle.testsupport.actor.TextSource;
+
+/**
+ * Checks that actors with PUSH inputs are iterated on the dispatch pool when the director is in "Pooled" dispatch mode.
+ */
+public class PooledDispatchTest extends TestCase {
+
+  private final static Set<String> processingThreads = Collections.synchronizedSet(new HashSet<String>());
+
+  @Override
+  protected void setUp() throws Exception {
+    processingThreads.clear();
+  }
+
+  public void testPooledChain() throws Exception {
+    Map<String, String> props = new HashMap<String, String>();
+    props.put("director." + Director.DISPATCH_MODE_PARAM, Director.DISPATCH_MODE_POOLED);
+    props.put("director." + Director.DISPATCH_POOL_SIZE_PARAM, "2");
+    runChain("testPooledChain", props);
+    for (String threadName : processingThreads) {
+      assertTrue("Pushed messages should be processed on the dispatch pool, not on " + threadName, threadName.startsWith("ForkJoinPool"));
+    }
+  }
+
+  public void testThreadPerActorChain() throws Exception {
+    runChain("testThreadPerActorChain", new HashMap<String, String>());
+    for (String threadName : processingThreads) {
+      assertFalse("Default mode should keep a thread per actor", threadName.startsWith("ForkJoinPool"));
+    }
+  }
+
+  private void runChain(String name, Map<String, String> props) throws Exception {
+    Flow flow = new Flow(name, null);
+    flow.setDirector(new Director(flow, "director"));
+    TextSource src = new TextSource(flow, "src");
+    Forwarder fwd1 = new PushForwarder(flow, "fwd1");
+    Forwarder fwd2 = new PushForwarder(flow, "fwd2");
+    MessageHistoryStack sink = new MessageHistoryStack(flow, "sink");
+    flow.connect(src, fwd1);
+    flow.connect(fwd1, fwd2);
+    flow.connect(fwd2, sink);
+    props.put("src.values", "a,b,c,d,e,f,g,h,i,j");
+
+    new FlowManager().executeBlockingLocally(flow, props);
+
+    new FlowStatisticsAssertion().expectMsgReceiptCount(sink, 10L).assertFlow(flow);
+    assertFalse(processingThreads.isEmpty());
+  }
+
+  @SuppressWarnings("serial")
+  public static class PushForwarder extends Forwarder {
+    public PushForwarder(CompositeEntity container, String name) throws IllegalActionException, NameDuplicationException {
+      super(container, name);
+      input.setContainer(null);
+      input = PortFactory.getInstance().createInputPort(this, "input", PortMode.PUSH, null);
+    }
+
+    @Override
+    protected void process(ActorContext ctxt, ProcessRequest request, ProcessResponse response) throws ProcessingException {
+      processingThreads.add(Thread.currentThread().getName());
+      super.process(ctxt, request, response);
+    }
+  }
+}
@@ -21,6 +21,17 @@ import com.isencia.passerelle.actor.ActorApiTest;
 import com.isencia.passerelle.actor.ActorOrientedClasstest;
 import com.isencia.passerelle.actorproviders.ActorProviderTest;
 import com.isencia.passerelle.clone.CloneTest;
+import com.isencia.passerelle.core.ChannelHandlerPoolTest;
+import com.isencia.passerelle.core.PortHandlerTest;
+import com.isencia.passerelle.domain.cap.BlockingQueueReceiverTest;
+import com.isencia.passerelle.domain.cap.CapActorMessageQueueTest;
+import com.isencia.passerelle.domain.cap.PooledDispatchTest;
+import com.isencia.passerelle.message.LightweightMessageTest;
+import com.isencia.passerelle.message.MessageFactoryConcurrencyTest;
+import com.isencia.passerelle.message.SimpleActorMessageQueueTest;
+import com.isencia.passerelle.message.type.TypeConversionChainTest;
+import com.isencia.passerelle.statistics.LatencyHistogramTest;
+import com.isencia.passerelle.statistics.QueueStatisticsTest;
 import com.isencia.passerelle.validation.ModelValidationServiceTest;
 import com.isencia.passerelle.validation.VersionSpecificationTest;
 
@@ -36,6 +47,17 @@ public class AllTests {
     suite.addTestSuite(LibraryBuilderTrial.class);
     suite.addTestSuite(ModelValidationServiceTest.class);
     suite.addTestSuite(VersionSpecificationTest.class);
+    suite.addTestSuite(LightweightMessageTest.class);
+    suite.addTestSuite(MessageFactoryConcurrencyTest.class);
+    suite.addTestSuite(BlockingQueueReceiverTest.class);
+    suite.addTestSuite(CapActorMessageQueueTest.class);
+    suite.addTestSuite(SimpleActorMessageQueueTest.class);
+    suite.addTestSuite(ChannelHandlerPoolTest.class);
+    suite.addTestSuite(PortHandlerTest.class);
+    suite.addTestSuite(PooledDispatchTest.class);
+    suite.addTestSuite(LatencyHistogramTest.class);
+    suite.addTestSuite(QueueStatisticsTest.class);
+    suite.addTestSuite(TypeConversionChainTest.class);
     //$JUnit-END$
     return suite;
   }
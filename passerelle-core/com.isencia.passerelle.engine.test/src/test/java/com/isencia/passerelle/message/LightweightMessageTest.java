@@ -0,0 +1,168 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message;
+
+import javax.mail.Header;
+import javax.mail.Part;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMultipart;
+import junit.framework.TestCase;
+import com.isencia.passerelle.message.internal.LightweightMessageContainer;
+
+public class LightweightMessageTest extends TestCase {
+
+  private boolean lightweightSetting;
+
+  @Override
+  protected void setUp() throws Exception {
+    lightweightSetting = MessageFactory.getInstance().isLightweightMessages();
+    MessageFactory.getInstance().setLightweightMessages(true);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    MessageFactory.getInstance().setLightweightMessages(lightweightSetting);
+  }
+
+  public void testFactoryCreatesLightweightMessage() {
+    ManagedMessage msg = MessageFactory.getInstance().createMessage();
+    assertTrue("Factory should create lightweight messages", (msg instanceof LightweightMessageContainer));
+    assertNotNull("Message should have an ID", msg.getID());
+    assertEquals("Message should have initial version", Long.valueOf(1), msg.getVersion());
+    assertNotNull("Message should have a creation timestamp", msg.getCreationTimeStamp());
+  }
+
+  public void testHeaders() {
+    LightweightMessageContainer msg = (LightweightMessageContainer) MessageFactory.getInstance().createMessage();
+    msg.addHeader("hello", "world");
+    msg.addHeader("hello", "again");
+    assertEquals("Multi-valued header should contain all values", 2, msg.getHeader("hello").length);
+    assertEquals("First value should be returned as single header", "world", msg.getSingleHeader("hello"));
+    msg.setHeader("hello", "there");
+    assertEquals("Set header should replace all values", 1, msg.getHeader("hello").length);
+    assertEquals("there", msg.getSingleHeader("hello"));
+    msg.removeHeader("hello");
+    assertFalse("Header should be removed", msg.hasHeader("hello"));
+    assertNull(msg.getHeader("hello"));
+  }
+
+  public void testSequenceAndCauses() {
+    ManagedMessage msg = MessageFactory.getInstance().createMessageInSequence(Long.valueOf(5), Long.valueOf(2), true);
+    assertTrue(msg.isPartOfSequence());
+    assertEquals(Long.valueOf(5), msg.getSequenceID());
+    assertEquals(Long.valueOf(2), msg.getSequencePosition());
+    assertTrue(msg.isSequenceEnd());
+    msg.addCauseID(Long.valueOf(1));
+    assertTrue(msg.hasCauses());
+  }
+
+  public void testBodyContentWithoutMimeView() throws Exception {
+    LightweightMessageContainer msg = (LightweightMessageContainer) MessageFactory.getInstance().createMessage();
+    assertEquals("Initial body should be empty text", "", msg.getBodyContent());
+    Object content = new Object();
+    msg.setBodyContent(content, ManagedMessage.objectContentType);
+    assertSame("Body content should be kept as-is", content, msg.getBodyContent());
+    assertEquals(ManagedMessage.objectContentType, msg.getBodyContentType());
+    msg.setBodyContentPlainText("hello");
+    assertEquals("hello", msg.getBodyContentAsString());
+    assertTrue(MessageHelper.hasTextContent(msg));
+    msg.setBodyHeader("my-header", "my-value");
+    assertEquals("my-value", msg.getBodyHeader("MY-HEADER")[0]);
+    assertFalse("No MIME body part should have been built", msg.hasMimeView());
+  }
+
+  public void testCopy() throws Exception {
+    LightweightMessageContainer msg = (LightweightMessageContainer) MessageFactory.getInstance().createMessage();
+    msg.setBodyContentPlainText("hello");
+    msg.addHeader("hello", "world");
+    ManagedMessage copy = MessageFactory.getInstance().copyMessage(msg);
+    assertTrue("Copy should be lightweight as well", (copy instanceof LightweightMessageContainer));
+    assertEquals("Copy should have same ID", msg.getID(), copy.getID());
+    assertEquals("Copy should have incremented version", Long.valueOf(2), copy.getVersion());
+    assertEquals("hello", copy.getBodyContent());
+    ((LightweightMessageContainer) copy).setHeader("hello", "there");
+    assertEquals("Original headers should not be impacted by changes on copy", "world", msg.getSingleHeader("hello"));
+  }
+
+  public void testCopyOnWrite() throws Exception {
+    LightweightMessageContainer msg = (LightweightMessageContainer) MessageFactory.getInstance().createMessage();
+    msg.addHeader("hello", "world");
+    msg.setBodyHeader("my-header", "my-value");
+    LightweightMessageContainer copy = (LightweightMessageContainer) MessageFactory.getInstance().copyMessage(msg);
+
+    msg.addHeader("hello", "again");
+    msg.setBodyHeader("my-header", "other-value");
+    assertEquals("Copy headers should not be impacted by changes on original", 1, copy.getHeader("hello").length);
+    assertEquals("my-value", copy.getBodyHeader("my-header")[0]);
+
+    copy.addHeader("hello", "copy");
+    assertEquals("Shared header values should be retained when adding", 2, copy.getHeader("hello").length);
+    assertEquals("world", copy.getHeader("hello")[0]);
+    assertEquals(2, msg.getHeader("hello").length);
+    assertEquals("again", msg.getHeader("hello")[1]);
+
+    copy.removeHeader("hello");
+    assertFalse(copy.hasHeader("hello"));
+    assertTrue(msg.hasHeader("hello"));
+    assertEquals("Original should keep its version", Long.valueOf(1), msg.getVersion());
+    assertEquals(Long.valueOf(2), copy.getVersion());
+  }
+
+  public void testCausedCopy() throws Exception {
+    ManagedMessage msg = MessageFactory.getInstance().createMessage();
+    ManagedMessage caused = MessageFactory.getInstance().createCausedCopyMessage(msg);
+    ManagedMessage causedTwice = MessageFactory.getInstance().createCausedCopyMessage(caused);
+    assertFalse("Caused copy should have a new ID", msg.getID().equals(caused.getID()));
+    assertFalse("Original should not get causes", msg.hasCauses());
+    assertEquals(msg.getID(), caused.getCauseIDs()[0]);
+    assertEquals(1, caused.getCauseIDs().length);
+    assertEquals(2, causedTwice.getCauseIDs().length);
+    assertEquals(caused.getID(), causedTwice.getCauseIDs()[1]);
+    int headerCount = 0;
+    for (Object header : caused.getAllHeaders()) {
+      if (ManagedMessage.SystemHeader.HEADER_ID.equals(((Header) header).getName())) {
+        headerCount++;
+      }
+    }
+    assertEquals("Overridden headers should only be listed once", 1, headerCount);
+  }
+
+  public void testMimeView() throws Exception {
+    LightweightMessageContainer msg = (LightweightMessageContainer) MessageFactory.getInstance().createMessage();
+    msg.setBodyContentPlainText("hello");
+    msg.setBodyHeader("my-header", "my-value");
+    Part body = msg.getBody();
+    assertTrue("MIME body part should have been built", msg.hasMimeView());
+    assertEquals("hello", body.getContent());
+    assertEquals("my-value", body.getHeader("my-header")[0]);
+    assertEquals("hello", MessageHelper.getFilteredContent(msg, new String[] { "text/plain" })[0]);
+
+    MimeMultipart multipart = new MimeMultipart();
+    MimeBodyPart part = new MimeBodyPart();
+    part.setText("part");
+    multipart.addBodyPart(part);
+    msg.setBodyContent(multipart);
+    assertSame(multipart, msg.getBodyContent());
+  }
+
+  public void testToXml() throws Exception {
+    LightweightMessageContainer msg = (LightweightMessageContainer) MessageFactory.getInstance().createMessage();
+    msg.setBodyContentPlainText("hello");
+    String xml = msg.toString();
+    assertTrue("XML should contain body content", xml.contains("hello"));
+    assertTrue("XML should contain message ID header", xml.contains(ManagedMessage.SystemHeader.HEADER_ID));
+    assertFalse("Serializing to XML should not build a MIME body part", msg.hasMimeView());
+  }
+}
@@ -0,0 +1,81 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs the message creation throughput of the <code>MessageFactory</code> for an increasing number of threads, as a
+ * simple benchmark for the factory's scaling across cores.
+ * <p>
+ * Not part of the automated test suites, as it just reports timings.
+ * </p>
+ */
+public class MessageFactoryBenchmarkTestManually extends TestCase {
+  private final static Logger LOGGER = LoggerFactory.getLogger(MessageFactoryBenchmarkTestManually.class);
+
+  private final static int MSGS_PER_THREAD = 20000;
+
+  public void testThroughputScaling() throws Exception {
+    int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    for (int threadCount = 1; threadCount <= maxThreads; threadCount *= 2) {
+      long start = System.nanoTime();
+      runConcurrently(threadCount, new Callable<Void>() {
+        public Void call() throws Exception {
+          for (int i = 0; i < MSGS_PER_THREAD; ++i) {
+            ManagedMessage msg = MessageFactory.getInstance().createMessage();
+            MessageFactory.getInstance().createCausedCopyMessage(msg);
+          }
+          return null;
+        }
+      });
+      long durationNanos = System.nanoTime() - start;
+      long msgsPerSecond = (2L * threadCount * MSGS_PER_THREAD * 1000000000L) / Math.max(1, durationNanos);
+      LOGGER.info("{} threads : {} msgs/s", threadCount, msgsPerSecond);
+    }
+  }
+
+  private void runConcurrently(int threadCount, final Callable<Void> task) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      List<Future<Void>> results = new ArrayList<Future<Void>>(threadCount);
+      for (int i = 0; i < threadCount; ++i) {
+        results.add(executor.submit(new Callable<Void>() {
+          public Void call() throws Exception {
+            startSignal.await();
+            return task.call();
+          }
+        }));
+      }
+      startSignal.countDown();
+      for (Future<Void> result : results) {
+        result.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
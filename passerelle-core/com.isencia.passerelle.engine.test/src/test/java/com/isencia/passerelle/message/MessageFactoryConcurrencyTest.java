@@ -0,0 +1,85 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Checks that concurrent message creation yields unique IDs.
+ */
+public class MessageFactoryConcurrencyTest extends TestCase {
+
+  private final static int MSGS_PER_THREAD = 20000;
+
+  public void testUniqueIDsAcrossThreads() throws Exception {
+    final int threadCount = 8;
+    final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    final Set<Long> seqIds = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    runConcurrently(threadCount, new Callable<Void>() {
+      public Void call() throws Exception {
+        for (int i = 0; i < MSGS_PER_THREAD; ++i) {
+          ManagedMessage msg = MessageFactory.getInstance().createMessage();
+          assertTrue("Duplicate message ID " + msg.getID(), ids.add(msg.getID()));
+          assertTrue("Duplicate sequence ID", seqIds.add(MessageFactory.getInstance().createSequenceID()));
+        }
+        return null;
+      }
+    });
+    assertEquals(threadCount * MSGS_PER_THREAD, ids.size());
+    assertEquals(threadCount * MSGS_PER_THREAD, seqIds.size());
+  }
+
+  public void testTimestampFormatting() throws Exception {
+    Date now = new Date();
+    Date parsed = MessageFactory.parseTimestamp(MessageFactory.formatTimestamp(now));
+    assertEquals("Timestamps should have a resolution of seconds", now.getTime() / 1000, parsed.getTime() / 1000);
+    ManagedMessage msg = MessageFactory.getInstance().createMessage();
+    assertNotNull("Creation timestamp should be parseable", msg.getCreationTimeStamp());
+  }
+
+  private void runConcurrently(int threadCount, final Callable<Void> task) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      List<Future<Void>> results = new ArrayList<Future<Void>>(threadCount);
+      for (int i = 0; i < threadCount; ++i) {
+        results.add(executor.submit(new Callable<Void>() {
+          public Void call() throws Exception {
+            startSignal.await();
+            return task.call();
+          }
+        }));
+      }
+      startSignal.countDown();
+      for (Future<Void> result : results) {
+        result.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import ptolemy.actor.TypedAtomicActor;
+import ptolemy.actor.TypedCompositeActor;
+import ptolemy.actor.process.TerminateProcessException;
+
+/**
+ * Checks the timed drain and the termination of the default actor message queue.
+ */
+public class SimpleActorMessageQueueTest extends TestCase {
+  private SimpleActorMessageQueue queue;
+
+  @Override
+  protected void setUp() throws Exception {
+    queue = new SimpleActorMessageQueue(new TypedAtomicActor(new TypedCompositeActor(), "actor"));
+  }
+
+  public void testTimedDrain() throws Exception {
+    List<MessageInputContext> batch = new ArrayList<MessageInputContext>();
+    new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(50);
+          queue.put(newContext());
+          queue.put(newContext());
+        } catch (InterruptedException e) {
+          // test will fail
+        }
+      }
+    }.start();
+    assertEquals("Timed drain should wait for msgs", 2, queue.drainTo(batch, 2, 5, TimeUnit.SECONDS));
+    assertEquals(2, batch.size());
+    long start = System.currentTimeMillis();
+    assertEquals(0, queue.drainTo(batch, 1, 100, TimeUnit.MILLISECONDS));
+    assertTrue("Timed drain should wait for the timeout", System.currentTimeMillis() - start >= 90);
+  }
+
+  public void testTerminateWakesUpTimedDrain() throws Exception {
+    final CountDownLatch drainDone = new CountDownLatch(1);
+    new Thread() {
+      public void run() {
+        try {
+          queue.drainTo(new ArrayList<MessageInputContext>(), -1, 10, TimeUnit.SECONDS);
+        } catch (TerminateProcessException e) {
+          drainDone.countDown();
+        } catch (InterruptedException e) {
+          // test will fail
+        }
+      }
+    }.start();
+    Thread.sleep(100);
+    queue.terminate();
+    assertTrue("Terminate should wake up a timed drain", drainDone.await(5, TimeUnit.SECONDS));
+    try {
+      queue.put(newContext());
+      fail("Put on a terminated queue should fail");
+    } catch (TerminateProcessException e) {
+      // expected
+    }
+  }
+
+  private static MessageInputContext newContext() {
+    return new MessageInputContext(0, "input", MessageFactory.getInstance().createMessage());
+  }
+}
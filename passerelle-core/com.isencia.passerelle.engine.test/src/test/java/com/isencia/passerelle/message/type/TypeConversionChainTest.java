@@ -0,0 +1,149 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.type;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import ptolemy.data.ArrayToken;
+import ptolemy.data.IntToken;
+import ptolemy.data.StringToken;
+import ptolemy.data.Token;
+import ptolemy.data.type.ArrayType;
+import ptolemy.data.type.BaseType;
+import ptolemy.data.type.Type;
+import com.isencia.passerelle.core.PasserelleException;
+import com.isencia.passerelle.core.PasserelleToken;
+import com.isencia.passerelle.ext.TypeConverterProvider;
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageFactory;
+
+public class TypeConversionChainTest extends TestCase {
+
+  private TypeConversionChain chain = TypeConversionChain.getInstance();
+  private List<TypeConverter> converters = new ArrayList<TypeConverter>();
+  private CountingConverter countingConverter = new CountingConverter();
+
+  @Override
+  protected void setUp() throws Exception {
+    converters.add(countingConverter);
+    converters.add(new ArrayConverter());
+    converters.add(new BooleanConverter());
+    converters.add(new IntegerConverter());
+    converters.add(new LongConverter());
+    converters.add(new DoubleConverter());
+    converters.add(new StringConverter());
+    chain.setConverterProvider(new TypeConverterProvider() {
+      public String getName() {
+        return "TEST";
+      }
+
+      public List<TypeConverter> getTypeConverters() {
+        return converters;
+      }
+    });
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    chain.setConverterProvider(null);
+  }
+
+  public void testConversionSkipsIncompatibleConverters() throws Exception {
+    for (int i = 0; i < 10; ++i) {
+      Token result = chain.convertPasserelleTokenToPtolemyToken(newToken(Integer.toString(i)), BaseType.INT);
+      assertEquals(new IntToken(i), result);
+    }
+    assertEquals(new StringToken("a"), chain.convertPasserelleTokenToPtolemyToken(newToken("a"), BaseType.STRING));
+    assertEquals("Incompatible converters should not be tried", 0, countingConverter.conversions.get());
+  }
+
+  public void testCanConvert() throws Exception {
+    assertTrue(chain.canConvert(String.class, BaseType.INT));
+    assertFalse(chain.canConvert(Thread.class, BaseType.INT));
+    assertTrue(chain.canConvert(BaseType.INT, Integer.class));
+    assertFalse(chain.canConvert(BaseType.COMPLEX, null));
+    assertTrue(chain.canConvert(String.class, Long.class));
+    assertFalse(new IntegerConverter().canConvert(String.class, BaseType.DOUBLE));
+  }
+
+  public void testModifiedConverterList() throws Exception {
+    assertEquals(new IntToken(1), chain.convertPasserelleTokenToPtolemyToken(newToken("1"), BaseType.INT));
+    converters.remove(3);
+    try {
+      chain.convertPasserelleTokenToPtolemyToken(newToken("1"), BaseType.INT);
+      fail("Removed converter should no longer be used");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    converters.add(new IntegerConverter());
+    assertEquals(new IntToken(1), chain.convertPasserelleTokenToPtolemyToken(newToken("1"), BaseType.INT));
+  }
+
+  public void testPlainConverterIsAlwaysTried() throws Exception {
+    final AtomicInteger conversions = new AtomicInteger();
+    converters.add(0, new TypeConverter() {
+      public Token convertPasserelleTokenToPtolemyToken(PasserelleToken passerelleMsgToken, Type targetType) {
+        conversions.incrementAndGet();
+        throw new UnsupportedOperationException();
+      }
+
+      public PasserelleToken convertPtolemyTokenToPasserelleToken(Token origToken, Class targetContentType) {
+        throw new UnsupportedOperationException();
+      }
+
+      public PasserelleToken convertPasserelleMessageContent(PasserelleToken origToken, Class targetContentType) {
+        throw new UnsupportedOperationException();
+      }
+    });
+    assertEquals(new IntToken(1), chain.convertPasserelleTokenToPtolemyToken(newToken("1"), BaseType.INT));
+    assertEquals(new IntToken(2), chain.convertPasserelleTokenToPtolemyToken(newToken("2"), BaseType.INT));
+    assertEquals("Converters without canConvert() checks should be tried", 2, conversions.get());
+    assertTrue(chain.canConvert(Thread.class, BaseType.INT));
+  }
+
+  public void testArrayElementsConvertedToElementType() throws Exception {
+    ManagedMessage msg = MessageFactory.getInstance().createMessage();
+    msg.setBodyContent(new String[] { "1", "2" }, ManagedMessage.objectContentType);
+    Token result = chain.convertPasserelleTokenToPtolemyToken(new PasserelleToken(msg), new ArrayType(BaseType.INT));
+    assertEquals(new ArrayToken(new Token[] { new IntToken(1), new IntToken(2) }), result);
+  }
+
+  private static PasserelleToken newToken(String content) throws Exception {
+    ManagedMessage msg = MessageFactory.getInstance().createMessage();
+    msg.setBodyContentPlainText(content);
+    return new PasserelleToken(msg);
+  }
+
+  /**
+   * Only supports conversions to a BaseType.UNSIGNED_BYTE, and counts the conversions that are tried on it.
+   */
+  private static class CountingConverter extends StringConverter {
+    private AtomicInteger conversions = new AtomicInteger();
+
+    @Override
+    public Token convertPasserelleTokenToPtolemyToken(PasserelleToken passerelleMsgToken, Type targetType) throws UnsupportedOperationException,
+        PasserelleException {
+      conversions.incrementAndGet();
+      return super.convertPasserelleTokenToPtolemyToken(passerelleMsgToken, targetType);
+    }
+
+    @Override
+    protected boolean areTypesCompatible(Class fromType, Type toType) {
+      return BaseType.UNSIGNED_BYTE.equals(toType);
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.statistics;
+
+import java.util.concurrent.CountDownLatch;
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; ++i) {
+      histogram.recordNanos(i * 1000L);
+    }
+    assertEquals(1000, histogram.getCount());
+    assertWithinPrecision(500000, histogram.getPercentileNanos(50));
+    assertWithinPrecision(990000, histogram.getPercentileNanos(99));
+    assertWithinPrecision(999000, histogram.getPercentileNanos(99.9));
+    assertWithinPrecision(1000000, histogram.getPercentileNanos(100));
+  }
+
+  public void testEmptyAndReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentileNanos(99));
+    assertEquals(0, histogram.getRecentPercentileNanos(99));
+    histogram.recordNanos(5000);
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentileNanos(99));
+  }
+
+  public void testRecentWindow() throws Exception {
+    // 100ms windows
+    LatencyHistogram histogram = new LatencyHistogram(100000000L);
+    histogram.recordNanos(1000000000L);
+    assertEquals(1, histogram.getRecentCount());
+    Thread.sleep(250);
+    histogram.recordNanos(1000);
+    assertEquals("Outdated values should no longer be in the recent view", 1, histogram.getRecentCount());
+    assertWithinPrecision(1000, histogram.getRecentPercentileNanos(99));
+    assertWithinPrecision(1000000000L, histogram.getPercentileNanos(99));
+  }
+
+  public void testConcurrentRecording() throws Exception {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final CountDownLatch done = new CountDownLatch(4);
+    for (int t = 0; t < 4; ++t) {
+      new Thread() {
+        public void run() {
+          for (int i = 0; i < 100000; ++i) {
+            histogram.recordNanos(i);
+          }
+          done.countDown();
+        }
+      }.start();
+    }
+    done.await();
+    assertEquals(400000, histogram.getCount());
+  }
+
+  private void assertWithinPrecision(long expected, long actual) {
+    assertTrue("Expected " + expected + " but was " + actual, actual >= expected && actual <= expected * 1.04);
+  }
+}
@@ -0,0 +1,108 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.statistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+import ptolemy.actor.TypedAtomicActor;
+import ptolemy.actor.TypedCompositeActor;
+import com.isencia.passerelle.domain.cap.Director;
+import com.isencia.passerelle.domain.cap.PooledDispatchTest.PushForwarder;
+import com.isencia.passerelle.message.MessageFactory;
+import com.isencia.passerelle.message.MessageInputContext;
+import com.isencia.passerelle.message.SimpleActorMessageQueue;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.model.FlowManager;
+import com.isencia.passerelle.testsupport.actor.Forwarder;
+import com.isencia.passerelle.testsupport.actor.MessageHistoryStack;
+import com.isencia.passerelle.testsupport.actor.TextSource;
+
+public class QueueStatisticsTest extends TestCase {
+
+  public void testDepthAndCounts() {
+    QueueStatistics statistics = new QueueStatistics(".flow.actor", 10);
+    assertEquals(".flow.actor" + QueueStatistics.NAME_SUFFIX, statistics.getName());
+    for (int i = 0; i < 5; ++i) {
+      statistics.acceptEnqueued();
+    }
+    statistics.acceptDequeued(2000000);
+    statistics.acceptDequeued(-1);
+    statistics.acceptDiscarded(2);
+    assertEquals(1, statistics.getSize());
+    assertEquals("The max size should be the high-water mark", 5, statistics.getMaxSize());
+    assertEquals(5, statistics.getNrEnqueuedMessages());
+    assertEquals(2, statistics.getNrDequeuedMessages());
+    assertEquals(2, statistics.getNrDiscardedMessages());
+    assertTrue(statistics.getEnqueueRate() > 0);
+    assertTrue("Unknown wait times should not be recorded", statistics.getWaitTimeP50Micros() >= 1900);
+
+    statistics.reset();
+    assertEquals("Reset should not affect the live depth", 1, statistics.getSize());
+    assertEquals(0, statistics.getNrEnqueuedMessages());
+    assertEquals(0, statistics.getWaitTimeP99Micros());
+  }
+
+  public void testSimpleActorMessageQueue() throws Exception {
+    TypedCompositeActor flow = new TypedCompositeActor();
+    SimpleActorMessageQueue queue = new SimpleActorMessageQueue(new TypedAtomicActor(flow, "actor"));
+    for (int i = 0; i < 6; ++i) {
+      queue.put(new MessageInputContext(0, "input", MessageFactory.getInstance().createMessage()));
+    }
+    Thread.sleep(10);
+    queue.poll();
+    List<MessageInputContext> batch = new ArrayList<MessageInputContext>();
+    queue.drainTo(batch, 3);
+    queue.clear();
+    QueueStatistics statistics = queue.getStatistics();
+    assertEquals(0, statistics.getSize());
+    assertEquals(6, statistics.getMaxSize());
+    assertEquals(6, statistics.getNrEnqueuedMessages());
+    assertEquals(4, statistics.getNrDequeuedMessages());
+    assertEquals(2, statistics.getNrDiscardedMessages());
+    assertTrue("Time in queue should be measured", statistics.getWaitTimeP50Micros() >= 9000);
+  }
+
+  public void testPushAndPullInputQueues() throws Exception {
+    Flow flow = new Flow("testPushAndPullInputQueues", null);
+    flow.setDirector(new Director(flow, "director"));
+    TextSource src = new TextSource(flow, "src");
+    Forwarder pull = new Forwarder(flow, "pull");
+    Forwarder push = new PushForwarder(flow, "push");
+    MessageHistoryStack sink = new MessageHistoryStack(flow, "sink");
+    flow.connect(src, pull);
+    flow.connect(pull, push);
+    flow.connect(push, sink);
+    Map<String, String> props = new HashMap<String, String>();
+    props.put("src.values", "a,b,c,d,e,f,g,h,i,j");
+
+    new FlowManager().executeBlockingLocally(flow, props);
+
+    assertQueueStatistics(pull, pull.input.getFullName());
+    assertQueueStatistics(push, push.getFullName());
+  }
+
+  private void assertQueueStatistics(Forwarder actor, String ownerName) {
+    List<QueueStatistics> queues = actor.getQueueStatistics();
+    assertEquals(1, queues.size());
+    QueueStatistics statistics = queues.get(0);
+    assertEquals(ownerName + QueueStatistics.NAME_SUFFIX, statistics.getName());
+    assertEquals(10, statistics.getNrEnqueuedMessages());
+    assertEquals(10, statistics.getNrDequeuedMessages());
+    assertEquals(0, statistics.getSize());
+  }
+}
@@ -62,10 +62,12 @@ import com.isencia.passerelle.domain.cap.BlockingQueueReceiver;
 import com.isencia.passerelle.ext.DirectorAdapter;
 import com.isencia.passerelle.ext.ErrorControlStrategy;
 import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageBuffer;
 import com.isencia.passerelle.message.MessageException;
 import com.isencia.passerelle.message.MessageFactory;
 import com.isencia.passerelle.message.interceptor.IMessageCreator;
 import com.isencia.passerelle.statistics.ActorStatistics;
+import com.isencia.passerelle.statistics.QueueStatistics;
 import com.isencia.passerelle.statistics.StatisticsServiceFactory;
 
 /**
@@ -275,14 +277,16 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
    */
   public Parameter receiverQueueWarningSizeParam;
   /**
-   * Parameter to set a max capacity for input port queues. When a queue reaches its max capacity, any new tokens trying
-   * to reach the input port will be refused, and a NoRoomException will be thrown.
+   * Parameter to set a max capacity for input port queues. When a queue reaches its max capacity, new tokens trying to
+   * reach the input port are handled according to the director's receiver queue overflow policy. With the default
+   * policy, they will be refused and a NoRoomException will be thrown.
    * <p>
    * Should only be used in very specific cases, as it does not correspond to the theoretical semantics of Kahn process
    * networks, the basis for Passerelle's execution model (cfr Ptolemy project docs).
    * </p>
    * <p>
-   * Default value = -1 indicates that received queues have unlimited capacity.
+   * Default value = -1 indicates that the director's default capacity is used, which is unlimited unless configured
+   * otherwise.
    * </p>
    */
   public Parameter receiverQueueCapacityParam;
@@ -378,6 +382,30 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
     return statistics;
   }
 
+  /**
+   * @return the statistics of the queues where this actor's input messages are waiting : the actor's message queue for
+   *         its PUSH inputs, if any, and the receiver queues of its PULL inputs.
+   */
+  @SuppressWarnings("unchecked")
+  public List<QueueStatistics> getQueueStatistics() {
+    List<QueueStatistics> result = new ArrayList<QueueStatistics>();
+    MessageBuffer buffer = (this instanceof MessageBuffer) ? (MessageBuffer) this : null;
+    boolean hasBufferedInputs = false;
+    for (Object p : inputPortList()) {
+      if (p instanceof Port) {
+        Port port = (Port) p;
+        if (port.getQueueStatistics() != null) {
+          result.add(port.getQueueStatistics());
+        }
+        hasBufferedInputs |= (buffer != null && buffer.acceptInputPort(port));
+      }
+    }
+    if (hasBufferedInputs && buffer.getMessageQueue() != null) {
+      result.add(buffer.getMessageQueue().getStatistics());
+    }
+    return result;
+  }
+
   /**
    * Utility method to log informational messages. <br/>
    * The idea is to harmonize the log message, if in 'info' level add the actor name and if in 'trace' or 'debug' level
@@ -487,7 +515,10 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
     if (rcver instanceof BlockingQueueReceiver) {
       BlockingQueueReceiver qRcvr = (BlockingQueueReceiver) rcver;
       int qCapacity = receiverQueueCapacityParam != null ? ((IntToken) receiverQueueCapacityParam.getToken()).intValue() : -1;
-      qRcvr.setCapacity(qCapacity);
+      // -1 means that the director's default capacity is used
+      if (qCapacity != -1) {
+        qRcvr.setCapacity(qCapacity);
+      }
 
       int qWarningSize = receiverQueueWarningSizeParam != null ? ((IntToken) receiverQueueWarningSizeParam.getToken()).intValue() : -1;
       qRcvr.setSizeWarningThreshold(qWarningSize);
@@ -541,6 +572,9 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
 
     statistics.reset();
     StatisticsServiceFactory.getService().registerStatistics(statistics);
+    for (QueueStatistics queueStatistics : getQueueStatistics()) {
+      StatisticsServiceFactory.getService().registerStatistics(queueStatistics);
+    }
 
     // audit logging for state per actor is on debug
     // NDC is not yet active during initialize, so we
@@ -880,6 +914,9 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
     getLogger().trace("{} - wrapup() - entry", getFullName());
 
     StatisticsServiceFactory.getService().unregisterStatistics(statistics);
+    for (QueueStatistics queueStatistics : getQueueStatistics()) {
+      StatisticsServiceFactory.getService().unregisterStatistics(queueStatistics);
+    }
 
     try {
       getLogger().trace("{} doWrapUp() - entry", getFullName());
@@ -986,10 +1023,18 @@ public abstract class Actor extends TypedAtomicActor implements IMessageCreator
     if (!isFinishRequested()) {
       requestFinish();
     }
+    stopInputQueues();
     doStop();
     getLogger().trace("{} - stop() - exit", getFullName());
   }
 
+  /**
+   * Infrastructure hook, invoked from stop() before doStop(), to terminate any internal input message queues, so threads
+   * waiting on them are woken up. Actor implementations should use doStop() instead.
+   */
+  protected void stopInputQueues() {
+  }
+
   /**
    * Template method implementation for stopFire().
    * 
@@ -21,6 +21,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ptolemy.actor.Director;
@@ -128,8 +129,12 @@ public abstract class Actor extends com.isencia.passerelle.actor.Actor implement
   private ProcessRequest currentProcessRequest;
   private ProcessResponse currentProcessResponse;
 
-  // parameter to specify an optionl buffer time between actor processing iterations.
+  // parameter to specify an optional buffer time between actor processing iterations,
+  // i.e. the max time to wait for more pushed msgs, before processing the received ones.
   public Parameter bufferTimeParameter;
+  // parameter to specify the max nr of pushed msgs that can be processed in one iteration.
+  // Default -1 means all msgs that are available.
+  public Parameter maxBatchSizeParameter;
 
   /**
    * @param container
@@ -142,6 +147,8 @@ public abstract class Actor extends com.isencia.passerelle.actor.Actor implement
 
     bufferTimeParameter = new Parameter(this, "Buffer time (ms)", new IntToken(0));
     registerExpertParameter(bufferTimeParameter);
+    maxBatchSizeParameter = new Parameter(this, "Max batch size (-1)", new IntToken(-1));
+    registerExpertParameter(maxBatchSizeParameter);
   }
 
   @Override
@@ -185,6 +192,14 @@ public abstract class Actor extends com.isencia.passerelle.actor.Actor implement
     }
   }
 
+  @Override
+  protected void stopInputQueues() {
+    super.stopInputQueues();
+    if (pushedMessages != null) {
+      pushedMessages.terminate();
+    }
+  }
+
   @Override
   protected void doPreInitialize() throws InitializationException {
     super.doPreInitialize();
@@ -293,20 +308,8 @@ public abstract class Actor extends com.isencia.passerelle.actor.Actor implement
         }
       }
       if (readyToFire && (!pushedMessages.isEmpty() || !msgProviders.isEmpty())) {
-        try {
-          // TODO check if it's not nicer to maintain buffer time from 1st preFire() call
-          // to when readyToFire, i.o. adding it after the time we've already been waiting
-          // for all PULL ports having a message.
-          int bufferTime = ((IntToken) bufferTimeParameter.getToken()).intValue();
-          if (bufferTime > 0) {
-            getLogger().debug("{} - doPreFire() - sleeping for buffer time {}", getFullName(), bufferTime);
-            Thread.sleep(bufferTime);
-          }
-        } catch (Exception e) {
-          getLogger().warn(getFullName() + " - Failed to enforce buffer time", e);
-        }
         // we've got at least one PUSH port that registered a msg provider
-        // so we need to include all pushed msgs in the request as well
+        // so we need to include the pushed msgs in the request as well
         addPushedMessages(currentProcessRequest);
       }
       readyToFire = readyToFire && currentProcessRequest.hasSomethingToProcess();
@@ -413,8 +416,9 @@ public abstract class Actor extends com.isencia.passerelle.actor.Actor implement
   }
 
   /**
-   * Overridable method to allow custom collecting and addition of received pushed input messages. By default, this just reads whatever's received (possibly
-   * nothing). But alternatively, this could e.g. block till at least one pushed msg was received etc. (check e.g. BufferedInputsActor).
+   * Overridable method to allow custom collecting and addition of received pushed input messages. By default, this reads a batch of whatever's received
+   * (possibly nothing), of at most the configured max batch size. When a buffer time is configured, it waits up to that time for more msgs to arrive, until
+   * the max batch size is reached. Alternatively, this could e.g. block till at least one pushed msg was received etc. (check e.g. BufferedInputsActor).
    * 
    * @param req
    * @throws ProcessingException
@@ -423,9 +427,26 @@ public abstract class Actor extends com.isencia.passerelle.actor.Actor implement
     getLogger().trace("{} - addPushedMessages() - entry", getFullName());
     int msgCtr = 0;
     try {
-      while (!pushedMessages.isEmpty()) {
-        req.addInputContext(pushedMessages.poll());
-        msgCtr++;
+      int bufferTime = 0;
+      int maxBatchSize = -1;
+      try {
+        bufferTime = ((IntToken) bufferTimeParameter.getToken()).intValue();
+        maxBatchSize = ((IntToken) maxBatchSizeParameter.getToken()).intValue();
+      } catch (Exception e) {
+        getLogger().warn(getFullName() + " - Failed to read buffer time or max batch size", e);
+      }
+      List<MessageInputContext> batch = new ArrayList<MessageInputContext>();
+      if (bufferTime > 0) {
+        getLogger().debug("{} - addPushedMessages() - waiting for buffer time {}", getFullName(), bufferTime);
+        msgCtr = pushedMessages.drainTo(batch, maxBatchSize, bufferTime, TimeUnit.MILLISECONDS);
+      } else if (!pushedMessages.isEmpty()) {
+        msgCtr = pushedMessages.drainTo(batch, maxBatchSize);
+      }
+      long now = System.nanoTime();
+      for (int i = 0; i < batch.size(); ++i) {
+        MessageInputContext ctxt = batch.get(i);
+        getStatistics().acceptQueueWait(now - ctxt.getCreationNanos());
+        req.addInputContext(ctxt);
       }
     } catch (InterruptedException e) {
       throw new ProcessingException(ErrorCode.RUNTIME_PERFORMANCE_INFO, "Msg Queue lock interrupted...", this, null);
@@ -0,0 +1,161 @@
+/* Copyright 2011 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.core;
+
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+/**
+ * A thread pool, shared by all flow executions in a JVM, on which the <code>ChannelHandler</code>s of
+ * <code>PortHandler</code>s can be run when their director has the "Pooled channel handlers" option set.
+ * <p>
+ * Pool threads are created on demand and are removed again after being idle for a while, up to a maximum that can be set
+ * via the system property <code>com.isencia.passerelle.channelhandler.pool.maxsize</code> (default 256).
+ * </p>
+ * <p>
+ * A channel handler occupies its thread as long as its channel is active. So when the pool is exhausted, a handler is
+ * not queued (it might never get a thread in time) but is started on a dedicated thread, as in the non-pooled mode.
+ * The number of such overflow threads is limited as well, via the system property
+ * <code>com.isencia.passerelle.channelhandler.pool.maxoverflow</code> (default 256). Beyond that, handlers are rejected.
+ * </p>
+ * <p>
+ * The logging MDC of the submitting thread is copied to the pool thread for the duration of the task.
+ * </p>
+ */
+public class ChannelHandlerPool {
+  private final static Logger LOGGER = LoggerFactory.getLogger(ChannelHandlerPool.class);
+
+  public final static String MAX_SIZE_PROPERTY = "com.isencia.passerelle.channelhandler.pool.maxsize";
+  public final static String MAX_OVERFLOW_PROPERTY = "com.isencia.passerelle.channelhandler.pool.maxoverflow";
+  private final static int DEFAULT_MAX_SIZE = 256;
+  private final static int DEFAULT_MAX_OVERFLOW = 256;
+  private final static long KEEP_ALIVE_SECONDS = 60;
+
+  private final static ChannelHandlerPool INSTANCE = new ChannelHandlerPool(Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE), Integer.getInteger(
+      MAX_OVERFLOW_PROPERTY, DEFAULT_MAX_OVERFLOW));
+
+  private final ThreadPoolExecutor executor;
+  private final int maxOverflow;
+  private final AtomicInteger overflowCount = new AtomicInteger();
+  private final AtomicInteger activeOverflowCount = new AtomicInteger();
+
+  ChannelHandlerPool(int maxSize, int maxOverflow) {
+    this.maxOverflow = Math.max(0, maxOverflow);
+    executor = new ThreadPoolExecutor(0, Math.max(1, maxSize), KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+        new ThreadFactory() {
+          private final AtomicInteger threadNumber = new AtomicInteger();
+
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Passerelle-ChannelHandler-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          }
+        });
+  }
+
+  public static ChannelHandlerPool getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Runs the given task on a pool thread, or on a new dedicated thread when all pool threads are busy.
+   *
+   * @param task
+   * @throws RejectedExecutionException when all pool threads and the max nr of overflow threads are busy
+   */
+  public void execute(Runnable task) {
+    final Runnable mdcTask = new MDCPropagatingTask(task);
+    try {
+      executor.execute(mdcTask);
+    } catch (RejectedExecutionException e) {
+      if (activeOverflowCount.incrementAndGet() > maxOverflow) {
+        activeOverflowCount.decrementAndGet();
+        throw new RejectedExecutionException("Channel handler pool exhausted at " + executor.getMaximumPoolSize() + " threads and " + maxOverflow
+            + " overflow threads");
+      }
+      if (overflowCount.getAndIncrement() == 0) {
+        LOGGER.warn("Channel handler pool exhausted at {} threads, using dedicated threads for extra handlers", executor.getMaximumPoolSize());
+      }
+      new Thread(new Runnable() {
+        public void run() {
+          try {
+            mdcTask.run();
+          } finally {
+            activeOverflowCount.decrementAndGet();
+          }
+        }
+      }, "Passerelle-ChannelHandler-overflow").start();
+    }
+  }
+
+  /**
+   * @return the number of pool threads that are currently running a channel handler
+   */
+  public int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * @return the number of channel handlers that are currently running on a dedicated thread
+   */
+  public int getActiveOverflowCount() {
+    return activeOverflowCount.get();
+  }
+
+  /**
+   * @return the number of channel handlers that had to be run on a dedicated thread because the pool was exhausted
+   */
+  public int getOverflowCount() {
+    return overflowCount.get();
+  }
+
+  private static class MDCPropagatingTask implements Runnable {
+    private final Runnable task;
+    @SuppressWarnings("rawtypes")
+    private final Map context;
+
+    MDCPropagatingTask(Runnable task) {
+      this.task = task;
+      this.context = MDC.getCopyOfContextMap();
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void run() {
+      Map previousContext = MDC.getCopyOfContextMap();
+      if (context != null) {
+        MDC.setContextMap(context);
+      } else {
+        MDC.clear();
+      }
+      try {
+        task.run();
+      } finally {
+        if (previousContext != null) {
+          MDC.setContextMap(previousContext);
+        } else {
+          MDC.clear();
+        }
+      }
+    }
+  }
+}
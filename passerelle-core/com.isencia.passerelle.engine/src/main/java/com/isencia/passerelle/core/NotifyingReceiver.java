@@ -0,0 +1,46 @@
+/* Copyright 2011 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.core;
+
+import ptolemy.actor.Receiver;
+import ptolemy.data.Token;
+
+/**
+ * A receiver that can notify a {@link ReceiverListener} of its tokens as they arrive. This allows a
+ * {@link PortHandler} to wait for tokens on all channels of a port at once, without a reader thread per channel.
+ */
+public interface NotifyingReceiver extends Receiver {
+
+  /**
+   * Sets the listener that is notified of each token stored in the receiver from now on. The listener is notified of
+   * tokens that are already queued in the receiver immediately. If the receiver has already been requested to finish,
+   * the listener is notified of that as well.
+   * <p>
+   * The listener is removed again when the receiver is reset or has finished.
+   * </p>
+   * 
+   * @param listener
+   */
+  void setReceiverListener(ReceiverListener listener);
+
+  /**
+   * Takes the next token from the receiver, without waiting for one to arrive. Meant for a single reader, typically
+   * after it has been notified via {@link ReceiverListener#tokenAvailable(Receiver)}. As for <code>get()</code>, the
+   * token is only handed over when the model is not paused.
+   * 
+   * @return the next token, or null if the receiver has no queued tokens
+   */
+  Token pollToken();
+}
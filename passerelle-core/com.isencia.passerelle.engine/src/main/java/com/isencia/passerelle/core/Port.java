@@ -23,6 +23,7 @@ import ptolemy.actor.IOPortEvent;
 import ptolemy.actor.IORelation;
 import ptolemy.actor.NoRoomException;
 import ptolemy.actor.NoTokenException;
+import ptolemy.actor.QueueReceiver;
 import ptolemy.actor.Receiver;
 import ptolemy.actor.TypedIOPort;
 import ptolemy.actor.process.ProcessReceiver;
@@ -40,6 +41,7 @@ import com.isencia.passerelle.message.MessageBuffer;
 import com.isencia.passerelle.message.MessageProvider;
 import com.isencia.passerelle.message.type.TypeConversionChain;
 import com.isencia.passerelle.statistics.PortStatistics;
+import com.isencia.passerelle.statistics.QueueStatistics;
 import com.isencia.passerelle.statistics.StatisticsServiceFactory;
 
 /**
@@ -56,6 +58,8 @@ public class Port extends TypedIOPort {
   private static final Receiver[][] _EMPTY_RECEIVER_ARRAY = new Receiver[0][0];
 
   private PortStatistics statistics;
+  // only for PULL input ports with queueing receivers; aggregated over all channels
+  private volatile QueueStatistics queueStatistics;
 
   /**
    * For an input port, when not null, this buffer is used as a common queue for each Receiver on each input channel.
@@ -141,6 +145,7 @@ public class Port extends TypedIOPort {
   public Object clone(Workspace workspace) throws CloneNotSupportedException {
     Port port = (Port) super.clone(workspace);
     port.statistics = new PortStatistics(port);
+    port.queueStatistics = null;
     port.modeAttr = null;
     port.operationalSourcePorts = null;
     // TODO check what must be done with buffer
@@ -167,6 +172,15 @@ public class Port extends TypedIOPort {
     return statistics;
   }
 
+  /**
+   * 
+   * @return the statistics of the receiver queues of this input port, or null if the port does not queue messages
+   *         in its receivers, e.g. for a PUSH port that hands its messages to its actor's queue.
+   */
+  public QueueStatistics getQueueStatistics() {
+    return queueStatistics;
+  }
+
   @Override
   public void attributeChanged(Attribute attribute) throws IllegalActionException {
     if ("portMode".equalsIgnoreCase(attribute.getName())) {
@@ -813,9 +827,11 @@ public class Port extends TypedIOPort {
   public synchronized void initialize() {
     operationalSourcePorts = new HashSet<IOPort>();
     operationalSourcePorts.addAll(this.sourcePortList());
+    boolean buffered = false;
     if (isInput() && getContainer() instanceof MessageBuffer) {
       MessageBuffer _msgBfr = (MessageBuffer) getContainer();
       if (_msgBfr.acceptInputPort(this)) {
+        buffered = true;
         Receiver[][] receivers = getReceivers();
         for (int i = 0; i < receivers.length; i++) {
           Receiver[] receivers2 = receivers[i];
@@ -834,6 +850,15 @@ public class Port extends TypedIOPort {
 //     as children of the actor statistics
      statistics.reset();
      StatisticsServiceFactory.getService().registerStatistics(statistics);
+     queueStatistics = null;
+     // the queue statistics are registered by the actor, together with the ones of its message queue
+     if (isInput() && !(this instanceof ControlPort) && !buffered) {
+       Receiver[][] receivers = getReceivers();
+       if (receivers.length > 0 && receivers[0].length > 0 && receivers[0][0] instanceof QueueReceiver) {
+         // the capacity is the one of each channel's receiver
+         queueStatistics = new QueueStatistics(getFullName(), ((QueueReceiver) receivers[0][0]).getCapacity());
+       }
+     }
   }
 
   public synchronized void notifySourcePortFinished(Port port) {
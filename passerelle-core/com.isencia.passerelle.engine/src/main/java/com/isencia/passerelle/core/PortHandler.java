@@ -15,16 +15,29 @@
 
 package com.isencia.passerelle.core;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ptolemy.actor.Actor;
+import ptolemy.actor.Director;
+import ptolemy.actor.IOPortEvent;
 import ptolemy.actor.NoTokenException;
+import ptolemy.actor.QueueReceiver;
+import ptolemy.actor.Receiver;
 import ptolemy.actor.process.TerminateProcessException;
 import ptolemy.data.Token;
 import ptolemy.kernel.util.IllegalActionException;
 import ptolemy.kernel.util.Nameable;
 import ptolemy.kernel.util.NamedObj;
+import com.isencia.passerelle.director.DirectorUtils;
+import com.isencia.passerelle.director.PasserelleDirector;
 import com.isencia.passerelle.domain.cap.ProcessThread;
 import com.isencia.passerelle.util.LoggerManager;
 
@@ -59,6 +72,12 @@ import com.isencia.passerelle.util.LoggerManager;
  * it will generate <code>ChannelHandler</code>s per input channel when needed. In an event domain, it will just iterate over the channels without needing extra
  * threads.
  * </p>
+ * <p>
+ * When all receivers of the port are {@link NotifyingReceiver}s, as is the case for Passerelle's process domains, no <code>ChannelHandler</code>s are needed.
+ * The receivers then notify the PortHandler of each stored token, so the actor can wait for a token on any channel in one blocking call. The tokens stay in
+ * the receivers until they are read, so the receivers' capacity and overflow handling still apply. When a {@link PortListener} is registered, one dispatcher
+ * thread per port takes the tokens one by one and notifies it of each.
+ * </p>
  * 
  * @author erwin
  */
@@ -76,6 +95,17 @@ public class PortHandler {
   protected Thread[] channelHandlers = null;
   protected boolean started = false;
 
+  // the receivers that are still handing over tokens, when notifying receivers are used i.o. channel handlers.
+  // guarded by channelLock
+  private Set<Receiver> activeReceivers;
+  // the receivers that have a token available, once per token, in the order in which the tokens arrived,
+  // when notifying receivers are used
+  private BlockingQueue<Receiver> readyReceivers;
+  // the channel index of each notifying receiver, for the port's debug events
+  private Map<Receiver, Integer> receiverChannels;
+  // queued in readyReceivers after all receivers have finished
+  private final static Receiver ALL_FINISHED = new QueueReceiver();
+
   // A counter for channels that are still active
   // When this counter reaches 0 again, it means the handler
   // can stop.
@@ -177,12 +207,17 @@ public class PortHandler {
     if (mustUseHandlers()) {
       // messages will be in the queue
       try {
-        token = (Token) queue.take();
-        if (Token.NIL.equals(token) || PasserelleToken.POISON_PILL.equals(token)) {
-          // indicates a terminating system
-          queue.offer(token);
-          LOGGER.debug("{} - getToken() - got a termination token {}", getPort().getFullName(), token);
-          token = null;
+        if (readyReceivers != null && listener == null) {
+          // notifying receivers without a listener, so the tokens can be taken from them directly
+          token = takeFromReceivers();
+        } else {
+          token = (Token) queue.take();
+          if (Token.NIL.equals(token) || PasserelleToken.POISON_PILL.equals(token)) {
+            // indicates a terminating system
+            queue.offer(token);
+            LOGGER.debug("{} - getToken() - got a termination token {}", getPort().getFullName(), token);
+            token = null;
+          }
         }
       } catch (InterruptedException e) {
         LOGGER.error("Token queue access was interrupted", e);
@@ -263,12 +298,21 @@ public class PortHandler {
     // construction time and start time
     channelCount = getWidth();
 
-    if (mustUseHandlers()) {
+    List<NotifyingReceiver> notifyingReceivers = null;
+    if (mustUseHandlers() && (notifyingReceivers = getNotifyingReceivers()) != null) {
+      startReceiverNotifications(notifyingReceivers);
+    } else if (mustUseHandlers()) {
       channelHandlers = new Thread[getWidth()];
+      boolean pooled = isPooledChannelHandlers();
 
       for (int i = 0; i < getWidth(); i++) {
         channelHandlers[i] = createChannelHandler(i);
-        channelHandlers[i].start();
+        if (pooled) {
+          // the handler thread is not started, its run() is executed on a pool thread
+          ChannelHandlerPool.getInstance().execute(channelHandlers[i]);
+        } else {
+          channelHandlers[i].start();
+        }
       }
     }
 
@@ -296,8 +340,63 @@ public class PortHandler {
     return inProcessDomain && (getWidth() > 1);
   }
 
+  /**
+   * @return the receivers of all channels of the port, or null if there are none or if some of them are not able to notify the handler of received tokens.
+   */
+  protected List<NotifyingReceiver> getNotifyingReceivers() {
+    Receiver[][] receivers = ioPort.getReceivers();
+    List<NotifyingReceiver> result = new ArrayList<NotifyingReceiver>();
+    for (Receiver[] channelReceivers : receivers) {
+      if (channelReceivers == null || channelReceivers.length != 1 || !(channelReceivers[0] instanceof NotifyingReceiver)) {
+        return null;
+      }
+      result.add((NotifyingReceiver) channelReceivers[0]);
+    }
+    return result.isEmpty() ? null : result;
+  }
+
+  private void startReceiverNotifications(List<NotifyingReceiver> receivers) {
+    synchronized (channelLock) {
+      activeReceivers = new HashSet<Receiver>(receivers);
+    }
+    receiverChannels = new HashMap<Receiver, Integer>();
+    for (int i = 0; i < receivers.size(); ++i) {
+      receiverChannels.put(receivers.get(i), i);
+    }
+    readyReceivers = new LinkedBlockingQueue<Receiver>();
+    if (listener != null) {
+      Runnable dispatcher = new TokenDispatcher();
+      if (isPooledChannelHandlers()) {
+        ChannelHandlerPool.getInstance().execute(dispatcher);
+      } else {
+        new Thread(dispatcher, "PortHandler-" + ioPort.getFullName()).start();
+      }
+    }
+    ReceiverListener receiverListener = new ReceiverSignalHandler();
+    for (NotifyingReceiver receiver : receivers) {
+      receiver.setReceiverListener(receiverListener);
+    }
+  }
+
+  /**
+   * @return true if the director of the port's actor is configured to run channel handlers on the shared
+   *         {@link ChannelHandlerPool}
+   */
+  protected boolean isPooledChannelHandlers() {
+    Nameable actor = ioPort.getContainer();
+    if (actor instanceof Actor) {
+      Director director = ((Actor) actor).getDirector();
+      if (director instanceof PasserelleDirector) {
+        return DirectorUtils.getAdapter(director, null).isPooledChannelHandlers();
+      }
+    }
+    return false;
+  }
+
   /**
    * Override to provide alternative implementation.
+   * When channel handlers are pooled, the returned thread is not started but its <code>run()</code> is executed on a
+   * pool thread.
    * 
    * @param index
    * @return
@@ -306,6 +405,104 @@ public class PortHandler {
     return new ChannelHandler(index);
   }
 
+  /**
+   * Takes the next token from the notifying receivers, in the order in which the tokens arrived. Blocks until a token
+   * is available or until all receivers have finished.
+   * 
+   * @return the next token, or null when all receivers have finished and all their tokens have been taken
+   * @throws InterruptedException
+   */
+  private Token takeFromReceivers() throws InterruptedException {
+    while (true) {
+      Receiver receiver = readyReceivers.take();
+      if (receiver == ALL_FINISHED) {
+        // the channels are only marked as finished once all their tokens have been taken
+        synchronized (channelLock) {
+          channelCount = 0;
+        }
+        readyReceivers.offer(ALL_FINISHED);
+        return null;
+      }
+      Token token = ((NotifyingReceiver) receiver).pollToken();
+      if (token == null || token.isNil()) {
+        // e.g. the receiver's queue was cleared after the notification
+        continue;
+      }
+      if (PasserelleToken.POISON_PILL.equals(token)) {
+        // indicates a terminating system
+        readyReceivers.offer(ALL_FINISHED);
+        LOGGER.debug("{} - takeFromReceivers() - got a termination token {}", getPort().getFullName(), token);
+        return null;
+      }
+      if (ioPort.isDebugged()) {
+        ioPort.event(new IOPortEvent(ioPort, IOPortEvent.GET_END, receiverChannels.get(receiver), true, token));
+      }
+      try {
+        token = ioPort.convertTokenForMe(token);
+      } catch (IllegalActionException e) {
+        throw new RuntimeException("Failed to convert token " + token, e);
+      }
+      ioPort.getStatistics().acceptReceivedMessage(null);
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(ioPort.getFullName() + " - takeFromReceivers() - got token : " + token);
+      }
+      return token;
+    }
+  }
+
+  /**
+   * Receives the notifications of the port's notifying receivers, in the threads of the senders.
+   */
+  private final class ReceiverSignalHandler implements ReceiverListener {
+    public void tokenAvailable(Receiver receiver) {
+      readyReceivers.offer(receiver);
+    }
+
+    public void receiverFinished(Receiver receiver) {
+      boolean allFinished = false;
+      synchronized (channelLock) {
+        if (!activeReceivers.remove(receiver)) {
+          return;
+        }
+        allFinished = activeReceivers.isEmpty();
+      }
+      if (allFinished) {
+        LOGGER.debug("{} - all receivers finished", ioPort.getFullName());
+        // queued after the notifications of the remaining tokens, so these are still taken first
+        readyReceivers.offer(ALL_FINISHED);
+      }
+    }
+  }
+
+  /**
+   * Takes the received tokens one by one from the receivers, passes them to the handler's queue and notifies the
+   * listener, outside of the senders' threads. The next token is only taken after the listener has been notified of the
+   * previous one.
+   */
+  private final class TokenDispatcher implements Runnable {
+    public void run() {
+      try {
+        LoggerManager.pushMDC(ProcessThread.ACTOR_MDC_NAME, actorInfo);
+        LOGGER.debug("{} - TokenDispatcher - run() - entry", ioPort.getFullName());
+        Token token = null;
+        while ((token = takeFromReceivers()) != null) {
+          queue.offer(token);
+          listener.tokenReceived();
+        }
+        queue.offer(Token.NIL);
+        listener.noMoreTokens();
+        LOGGER.debug("{} - TokenDispatcher - run() - exit", ioPort.getFullName());
+      } catch (InterruptedException e) {
+        LOGGER.warn(ioPort.getFullName() + " - TokenDispatcher interrupted");
+      } catch (Throwable t) { // NOSONAR - need to make sure any exception that breaks the run() loop is logged
+        LOGGER.error(ioPort.getFullName() + " - Error in TokenDispatcher", t);
+        throw new RuntimeException(t);
+      } finally {
+        LoggerManager.popMDC(ProcessThread.ACTOR_MDC_NAME);
+      }
+    }
+  }
+
   public final class ChannelHandler extends Thread {
     private Token token = null;
     private boolean terminated = false;
@@ -0,0 +1,48 @@
+/* Copyright 2011 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.core;
+
+import ptolemy.actor.Receiver;
+
+/**
+ * A listener that is signalled by a {@link NotifyingReceiver} when a token arrives, i.o. having to poll the receiver
+ * for new tokens.
+ * <p>
+ * The callbacks are invoked in the thread of the token's sender, so implementations should not block and should not
+ * do any significant processing.
+ * </p>
+ */
+public interface ReceiverListener {
+
+  /**
+   * Invoked each time a token has been stored in the receiver, after the listener has been registered. The token stays
+   * in the receiver, subject to its capacity and overflow handling, until it is taken via
+   * {@link NotifyingReceiver#pollToken()}.
+   * <p>
+   * This is invoked in the thread of the sender, possibly while holding the receiver's lock, so it should not block.
+   * </p>
+   * 
+   * @param receiver
+   */
+  void tokenAvailable(Receiver receiver);
+
+  /**
+   * Invoked when the receiver has been requested to finish. After this, no more tokens will become available, but the
+   * ones that were notified before can still be taken.
+   * 
+   * @param receiver
+   */
+  void receiverFinished(Receiver receiver);
+}
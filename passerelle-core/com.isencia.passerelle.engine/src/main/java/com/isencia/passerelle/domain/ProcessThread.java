@@ -100,41 +100,13 @@ public class ProcessThread extends ptolemy.actor.process.ProcessThread {
     Workspace workspace = _director.workspace();
     boolean iterate = true;
     Throwable thrownWhenIterate = null;
-    Throwable thrownWhenWrapup = null;
     try {
       // Initialize the actor.
       getActor().initialize();
 
       // While postfire() returns true and stop() is not called.
       while (iterate) {
-
-        // check for synchronization/stepping/... of this actor's
-        // iterations
-        // ExecutionControlStrategy.IterationPermission itrPerm = _director.requestNextIteration(getActor());
-//        try {
-          // NOTE: Possible race condition... actor.stop()
-          // might be called before we get to this.
-          // This will cause postfire() on the actor
-          // to return false, which will stop its execution.
-          checkIfPaused(workspace);
-
-          if (_director.isStopRequested()) {
-            break;
-          }
-
-          // container is checked for null to detect the
-          // deletion of the actor from the topology.
-          if (((Entity) getActor()).getContainer() != null) {
-            if (_directorAdapter.hasFiringEventListeners()) {
-              iterate = doActorIterationWithEvents(workspace);
-            } else {
-              iterate = doActorIterationWithoutEvents(workspace);
-            }
-          }
-//        } 
-//        finally {
-          // _director.iterationFinished(getActor(), itrPerm);
-//        }
+        iterate = doIteration(workspace);
       }
       logger.debug("{} - Clean termination of ProcessThread",getActor().getFullName());
     } catch (Throwable t) { // NOSONAR - need to make sure any exception that breaks the run() loop is logged
@@ -142,70 +114,120 @@ public class ProcessThread extends ptolemy.actor.process.ProcessThread {
       logger.debug(getActor().getFullName() + " - Error in ProcessThread " + t);
       //t.printStackTrace();
     } finally {
-      // This is synchronized to prevent a race condition
-      // where the director might conclude before the
-      // call to wrapup() below.
-      synchronized (_director) {
-        try {
-          // NOTE: Deadlock risk here if wrapup is done inside
-          // a block synchronized on the _director, as it used to be.
-          // Holding a lock on the _director during wrapup()
-          // might cause deadlock with hierarchical models where
-          // wrapup() waits for internal actors to conclude,
-          // doing a wait() on its own internal director,
-          // or trying to acquire a write lock on the workspace.
-          // Meanwhile, this thread will hold a lock on this
-          // outside director, which may prevent the other
-          // threads from releasing their write lock!
-          wrapup();
-        } catch (IllegalActionException e) {
-          thrownWhenWrapup = e;
-        } finally {
-          // Let the director know that this thread stopped.
-          // This must occur after the call to wrapup above.
-          synchronized (_director) {
-              _director.removeThread(this);
-          }
-          if (_debugging) {
-            _debug("-- Thread stopped.");
+      terminateProcess(thrownWhenIterate);
+      LoggerManager.clearContext(ctxt);
+    }
+  }
+
+  /**
+   * Performs one iteration of the actor, unless a stop has been requested.
+   * 
+   * @param workspace
+   * @return false if the actor must not be iterated anymore
+   * @throws IllegalActionException
+   */
+  protected boolean doIteration(Workspace workspace) throws IllegalActionException {
+    // check for synchronization/stepping/... of this actor's
+    // iterations
+    // NOTE: Possible race condition... actor.stop()
+    // might be called before we get to this.
+    // This will cause postfire() on the actor
+    // to return false, which will stop its execution.
+    checkIfPaused(workspace);
+
+    if (_director.isStopRequested()) {
+      return false;
+    }
+
+    // container is checked for null to detect the
+    // deletion of the actor from the topology.
+    if (((Entity) getActor()).getContainer() != null) {
+      if (_directorAdapter.hasFiringEventListeners()) {
+        return doActorIterationWithEvents(workspace);
+      } else {
+        return doActorIterationWithoutEvents(workspace);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Wraps up the actor after its last iteration, notifies the director that this process has stopped
+   * and reports any errors that occurred.
+   * 
+   * @param thrownWhenIterate the error that broke the actor's iterations, or null if it finished normally
+   */
+  protected void terminateProcess(Throwable thrownWhenIterate) {
+    Throwable thrownWhenWrapup = null;
+    // This is synchronized to prevent a race condition
+    // where the director might conclude before the
+    // call to wrapup() below.
+    synchronized (_director) {
+      try {
+        // NOTE: Deadlock risk here if wrapup is done inside
+        // a block synchronized on the _director, as it used to be.
+        // Holding a lock on the _director during wrapup()
+        // might cause deadlock with hierarchical models where
+        // wrapup() waits for internal actors to conclude,
+        // doing a wait() on its own internal director,
+        // or trying to acquire a write lock on the workspace.
+        // Meanwhile, this thread will hold a lock on this
+        // outside director, which may prevent the other
+        // threads from releasing their write lock!
+        wrapup();
+      } catch (IllegalActionException e) {
+        thrownWhenWrapup = e;
+      } finally {
+        // Let the director know that this thread stopped.
+        // This must occur after the call to wrapup above.
+        synchronized (_director) {
+            _director.removeThread(this);
+        }
+        if (_debugging) {
+          _debug("-- Thread stopped.");
         }
 
-          boolean rethrow = false;
+        boolean rethrow = false;
 
-          if (thrownWhenIterate instanceof TerminateProcessException) {
-            // Process was terminated.
-            _debug("-- Blocked Receiver call threw TerminateProcessException.");
-          } else if (thrownWhenIterate instanceof InterruptedException) {
-            // Process was terminated by call to stop();
-            _debug("-- Thread was interrupted: " + thrownWhenIterate);
-          } else if (thrownWhenIterate instanceof InterruptedIOException
-              || ((thrownWhenIterate != null) && thrownWhenIterate.getCause() instanceof InterruptedIOException)) {
-            // PSDF has problems here when run with JavaScope
-            _debug("-- IO was interrupted: " + thrownWhenIterate);
-          } else if (thrownWhenIterate instanceof IllegalActionException) {
-            _debug("-- Exception: " + thrownWhenIterate);
-            _manager.notifyListenersOfException((IllegalActionException) thrownWhenIterate);
-          } else if (thrownWhenIterate != null) {
-            rethrow = true;
-          }
+        if (thrownWhenIterate instanceof TerminateProcessException) {
+          // Process was terminated.
+          _debug("-- Blocked Receiver call threw TerminateProcessException.");
+        } else if (thrownWhenIterate instanceof InterruptedException) {
+          // Process was terminated by call to stop();
+          _debug("-- Thread was interrupted: " + thrownWhenIterate);
+        } else if (thrownWhenIterate instanceof InterruptedIOException
+            || ((thrownWhenIterate != null) && thrownWhenIterate.getCause() instanceof InterruptedIOException)) {
+          // PSDF has problems here when run with JavaScope
+          _debug("-- IO was interrupted: " + thrownWhenIterate);
+        } else if (thrownWhenIterate instanceof IllegalActionException) {
+          _debug("-- Exception: " + thrownWhenIterate);
+          _manager.notifyListenersOfException((IllegalActionException) thrownWhenIterate);
+        } else if (thrownWhenIterate != null) {
+          rethrow = true;
+        }
 
-          if (thrownWhenWrapup instanceof IllegalActionException) {
-            _debug("-- Exception: " + thrownWhenWrapup);
-            _manager.notifyListenersOfException((IllegalActionException) thrownWhenWrapup);
-          } else if (thrownWhenWrapup != null) {
-            // Must be a runtime exception.
-            // Call notifyListenerOfThrowable() here so that
-            // the stacktrace appears in the UI and not in stderr.
-            _manager.notifyListenersOfThrowable(thrownWhenWrapup);
-          } else if (rethrow) {
-            _manager.notifyListenersOfThrowable(thrownWhenIterate);
-          }
+        if (thrownWhenWrapup instanceof IllegalActionException) {
+          _debug("-- Exception: " + thrownWhenWrapup);
+          _manager.notifyListenersOfException((IllegalActionException) thrownWhenWrapup);
+        } else if (thrownWhenWrapup != null) {
+          // Must be a runtime exception.
+          // Call notifyListenerOfThrowable() here so that
+          // the stacktrace appears in the UI and not in stderr.
+          _manager.notifyListenersOfThrowable(thrownWhenWrapup);
+        } else if (rethrow) {
+          _manager.notifyListenersOfThrowable(thrownWhenIterate);
         }
       }
-      LoggerManager.clearContext(ctxt);
     }
   }
 
+  /**
+   * @return the execution context that is set as logging context while the actor is iterated
+   */
+  protected ExecutionContext getExecutionContext() {
+    return ctxt;
+  }
+
   protected void checkIfPaused(Workspace workspace) {
     if (_director.isStopFireRequested()) {
       // And wait until the flag has been cleared.
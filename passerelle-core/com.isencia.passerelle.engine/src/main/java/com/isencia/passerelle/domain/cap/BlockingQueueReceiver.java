@@ -15,33 +15,53 @@
 
 package com.isencia.passerelle.domain.cap;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ptolemy.actor.Actor;
 import ptolemy.actor.CompositeActor;
 import ptolemy.actor.IOPort;
 import ptolemy.actor.Manager;
 import ptolemy.actor.QueueReceiver;
 import ptolemy.actor.process.BoundaryDetector;
+import ptolemy.actor.process.ProcessDirector;
 import ptolemy.actor.process.ProcessReceiver;
 import ptolemy.data.Token;
 import ptolemy.kernel.util.IllegalActionException;
 import ptolemy.kernel.util.Workspace;
+import com.isencia.passerelle.core.NotifyingReceiver;
 import com.isencia.passerelle.core.PasserelleException;
 import com.isencia.passerelle.core.Port;
+import com.isencia.passerelle.core.ReceiverListener;
 import com.isencia.passerelle.message.ManagedMessage;
 import com.isencia.passerelle.message.MessageBuffer;
 import com.isencia.passerelle.message.MessageHelper;
 import com.isencia.passerelle.message.MessageInputContext;
 import com.isencia.passerelle.message.MessageProvider;
+import com.isencia.passerelle.statistics.QueueStatistics;
 
 /**
- * DOCUMENT ME!
+ * The receiver for the Passerelle process domain.
+ * <p>
+ * By default the receiver's queue is unbounded. A capacity can be set, together with an {@link OverflowPolicy} that
+ * determines what happens with new tokens when the queue is full. When writers are blocked on a full queue, this is
+ * reported to the director, which can then resolve an artificial deadlock by increasing the capacity of the queue (cfr
+ * {@link #increaseCapacity()}).
+ * </p>
  * 
  * @version $Id: BlockingQueueReceiver.java,v 1.6 2005/10/28 14:06:18 erwin Exp $
  * @author Dirk Jacobs
  */
-public class BlockingQueueReceiver extends QueueReceiver implements ProcessReceiver, MessageProvider {
+public class BlockingQueueReceiver extends QueueReceiver implements ProcessReceiver, MessageProvider, NotifyingReceiver {
   // ~ Instance variables _____________________________________________________________________________________________________________________________________
 
   private final static Logger logger = LoggerFactory.getLogger(BlockingQueueReceiver.class);
@@ -52,6 +72,17 @@ public class BlockingQueueReceiver extends QueueReceiver implements ProcessRecei
   private int sizeWarningThreshold;
 
   private MessageBuffer buffer;
+  private ReceiverListener listener;
+
+  private OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+  // threads that are blocked on a put() on a full queue, and that have been reported as blocked to the director
+  private Set<Thread> blockedWriters = new HashSet<Thread>();
+  // only used for the SPILL_TO_DISK policy
+  private TokenSpillFile spillFile;
+  private AtomicLong droppedTokenCount = new AtomicLong();
+  // the times at which the queued tokens were stored, including the spilled ones and in the same order, 
+  // to measure the time tokens spend in the queue
+  private Deque<Long> enqueueTimes = new ArrayDeque<Long>();
 
   // ~ Constructors ___________________________________________________________________________________________________________________________________________
 
@@ -82,6 +113,26 @@ public class BlockingQueueReceiver extends QueueReceiver implements ProcessRecei
     if (buffer != null) buffer.registerMessageProvider(this);
   }
 
+  /**
+   * Notifies the given listener of all queued and future tokens. The tokens remain in this receiver's queue, subject to
+   * its capacity and overflow policy, until they are taken via <code>pollToken()</code>.
+   * 
+   * @param listener
+   */
+  public synchronized void setReceiverListener(ReceiverListener listener) {
+    this.listener = listener;
+    if (listener != null) {
+      int queued = super.size() + (spillFile != null ? spillFile.size() : 0);
+      for (int i = 0; i < queued; ++i) {
+        listener.tokenAvailable(this);
+      }
+      if (_terminate) {
+        listener.receiverFinished(this);
+        this.listener = null;
+      }
+    }
+  }
+
   /**
    * DOCUMENT ME!
    * 
@@ -161,10 +212,10 @@ public class BlockingQueueReceiver extends QueueReceiver implements ProcessRecei
   }
 
   /**
-   * @return false
+   * @return true if at least one thread is blocked on writing to this receiver's full queue
    */
-  public boolean isWriteBlocked() {
-    return false;
+  public synchronized boolean isWriteBlocked() {
+    return !blockedWriters.isEmpty();
   }
 
   /**
@@ -189,13 +240,45 @@ public class BlockingQueueReceiver extends QueueReceiver implements ProcessRecei
         }
 
         if (super.hasToken()) {
-          result = super.get();
+          result = takeToken();
         }
       }
     }
     return result;
   }
 
+  /**
+   * Takes the next token from the queue without waiting for one, even when the receiver has been requested to finish.
+   * While the model is paused, it waits until it is resumed.
+   * 
+   * @return the next token, or null if the queue is empty
+   */
+  public synchronized Token pollToken() {
+    if (buffer != null) {
+      throw new UnsupportedOperationException("pollToken() not supported for shared buffer");
+    }
+    Workspace workspace = getContainer().workspace();
+    while (isPaused()) {
+      try {
+        workspace.wait(this, 1000);
+      } catch (InterruptedException e) {
+      }
+    }
+    return super.hasToken() ? takeToken() : null;
+  }
+
+  /**
+   * Must be called while holding this receiver's lock, when the queue is not empty.
+   */
+  private Token takeToken() {
+    Token result = super.get();
+    tokenDequeued();
+    refillFromSpillFile();
+    // Wake up writers that are blocked on a full queue
+    notifyAll();
+    return result;
+  }
+
   private boolean isPaused() {
     try {
       Manager manager = ((CompositeActor) getContainer().toplevel()).getManager();
@@ -206,23 +289,29 @@ public class BlockingQueueReceiver extends QueueReceiver implements ProcessRecei
   }
 
   /**
-   * Passerelle BlockingQueueReceiver always has place for more. No Max capacity, just a warning level notification.
+   * Only a bounded receiver with the REJECT overflow policy can refuse tokens. For the other policies, put() always
+   * accepts a token, possibly after blocking or after dropping a token.
    * 
-   * @return true
+   * @return false if the receiver would throw a NoRoomException on a put()
    */
   @Override
   public boolean hasRoom() {
-    return true;
+    return hasRoom(1);
   }
 
   /**
-   * Passerelle BlockingQueueReceiver always has place for more. No Max capacity, just a warning level notification.
+   * Only a bounded receiver with the REJECT overflow policy can refuse tokens. For the other policies, put() always
+   * accepts a token, possibly after blocking or after dropping a token.
    * 
-   * @return true
+   * @return false if the receiver would throw a NoRoomException on a put() of the given nr of tokens
    */
   @Override
-  public boolean hasRoom(int tokens) {
-    return true;
+  public synchronized boolean hasRoom(int tokens) {
+    if (buffer != null || overflowPolicy != OverflowPolicy.REJECT || super.getCapacity() == INFINITE_CAPACITY) {
+      return true;
+    } else {
+      return super.size() + tokens <= super.getCapacity();
+    }
   }
 
   /**
@@ -263,31 +352,86 @@ public class BlockingQueueReceiver extends QueueReceiver implements ProcessRecei
     }
   }
 
+  /**
+   * Sets the max nr of tokens in the receiver's queue. When the queue is full, new tokens are handled according to the
+   * receiver's overflow policy.
+   * 
+   * @param capacity the max nr of tokens, or INFINITE_CAPACITY for an unbounded queue
+   */
   @Override
-  public void setCapacity(int capacity) throws IllegalActionException {
+  public synchronized void setCapacity(int capacity) throws IllegalActionException {
     if (buffer != null) {
       throw new UnsupportedOperationException("setCapacity() not supported for shared buffer");
     } else {
       super.setCapacity(capacity);
+      notifyAll();
+    }
+  }
+
+  /**
+   * Doubles the capacity of a bounded queue, and wakes up any blocked writers. Used by the director to resolve an
+   * artificial deadlock, i.e. when all active threads are blocked and some of them are blocked on a full queue.
+   * 
+   * @return the threads that were blocked on writing to this receiver. They are no longer considered as blocked on
+   *         this receiver, so the caller should notify the director that they are unblocked.
+   * @throws IllegalActionException
+   */
+  public synchronized Collection<Thread> increaseCapacity() throws IllegalActionException {
+    int capacity = super.getCapacity();
+    if (capacity != INFINITE_CAPACITY) {
+      super.setCapacity(capacity > 0 ? capacity * 2 : 1);
     }
+    Collection<Thread> result = new ArrayList<Thread>(blockedWriters);
+    blockedWriters.clear();
+    notifyAll();
+    return result;
   }
 
+  /**
+   * @return the number of tokens in the receiver, including the ones that have been spilled to disk.
+   */
   @Override
   public int size() {
     if (buffer != null) {
       return buffer.getMessageQueue().size();
     } else {
-      return super.size();
+      synchronized (this) {
+        return super.size() + (spillFile != null ? spillFile.size() : 0);
+      }
     }
   }
 
+  /**
+   * @param overflowPolicy determines how new tokens are handled when the queue is full. When null, the default REJECT
+   *          policy is set.
+   */
+  public synchronized void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy != null ? overflowPolicy : OverflowPolicy.REJECT;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * @return the number of tokens that have been dropped due to the DROP_OLDEST or DROP_NEWEST overflow policy
+   */
+  public long getDroppedTokenCount() {
+    return droppedTokenCount.get();
+  }
+
   /**
    * Store the token in the queue. If the size warning threshold has been reached, a warning msg is logged.
+   * <p>
+   * When the queue is full, the token is handled according to the overflow policy. For the BLOCK policy, the calling
+   * thread blocks until there is room in the queue, or until the receiver has been requested to finish.
+   * </p>
    * 
    * @param token
    */
   @Override
   public void put(Token token) {
+    boolean mustBlock = false;
     synchronized (this) {
       if (_terminate) {
         return;
@@ -309,22 +453,281 @@ public class BlockingQueueReceiver extends QueueReceiver implements ProcessRecei
           } catch (PasserelleException e) {
             throw new RuntimeException("Failed to interpret token " + token, e);
           }
+        } else if (isFull()) {
+          mustBlock = !handleOverflow(token);
         } else {
           // token can be put in the queue;
           super.put(token);
+          tokenEnqueued();
         }
       }
-      // Wake up all threads waiting on a write to this receiver;
-      notifyAll();
-      if (getSizeWarningThreshold() != QueueReceiver.INFINITE_CAPACITY && size() >= getSizeWarningThreshold()) {
-        logger.warn(getContainer().getFullName() + " - reached/passed warning threshold size " + getSizeWarningThreshold());
+      if (!mustBlock) {
+        tokenStored();
+      }
+    }
+    if (mustBlock) {
+      // wait for room in the queue, outside of this receiver's lock
+      putBlocking(token);
+    }
+  }
+
+  /**
+   * Waits till there is room in the queue. Blocked writers are reported to the director, outside of this receiver's
+   * lock, so the director can detect and resolve artificial deadlocks.
+   * 
+   * @param token
+   */
+  private void putBlocking(Token token) {
+    // for actors iterated on a pool, the director knows the actor's process, not the pool thread
+    Thread writer = PooledProcessThread.currentProcess();
+    Workspace workspace = getContainer().workspace();
+    try {
+      while (true) {
+        boolean reportBlocked = false;
+        synchronized (this) {
+          if (_terminate) {
+            return;
+          } else if (!isFull()) {
+            super.put(token);
+            tokenEnqueued();
+            tokenStored();
+            return;
+          } else if (blockedWriters.add(writer)) {
+            reportBlocked = true;
+          } else {
+            try {
+              workspace.wait(this, 1000);
+            } catch (InterruptedException e) {
+            }
+          }
+        }
+        if (reportBlocked) {
+          ProcessDirector director = getProcessDirector();
+          if (director != null) {
+            director.threadBlocked(writer, this);
+          }
+        }
+      }
+    } finally {
+      boolean reportUnblocked = false;
+      synchronized (this) {
+        reportUnblocked = blockedWriters.remove(writer);
+      }
+      if (reportUnblocked) {
+        ProcessDirector director = getProcessDirector();
+        if (director != null) {
+          director.threadUnblocked(writer, this);
+        }
+      }
+    }
+  }
+
+  /**
+   * Applies the overflow policy to a token for which there is no room in the queue.
+   * 
+   * @param token
+   * @return false if the caller must block till there is room in the queue
+   */
+  private boolean handleOverflow(Token token) {
+    switch (overflowPolicy) {
+    case DROP_NEWEST:
+      droppedTokenCount.incrementAndGet();
+      logger.debug("{} - queue full, dropped newest token", getContainer().getFullName());
+      return true;
+    case DROP_OLDEST:
+      if (super.hasToken()) {
+        super.get();
+        tokensDiscarded(1);
+        super.put(token);
+        // the new token takes the place of the dropped one, also for the listener
+        recordEnqueued();
+      }
+      droppedTokenCount.incrementAndGet();
+      logger.debug("{} - queue full, dropped oldest token", getContainer().getFullName());
+      return true;
+    case SPILL_TO_DISK:
+      if (spillFile == null) {
+        spillFile = new TokenSpillFile(getContainer().getFullName());
+      }
+      if (spillFile.offer(token)) {
+        tokenEnqueued();
+        return true;
+      }
+      return false;
+    case BLOCK:
+      return false;
+    default:
+      // REJECT : throws a NoRoomException
+      super.put(token);
+      tokenEnqueued();
+      return true;
+    }
+  }
+
+  /**
+   * @return true if a new token can not be added to the queue directly. Once tokens have been spilled to disk, new
+   *         tokens must be spilled as well, to preserve their order.
+   */
+  private boolean isFull() {
+    return !super.hasRoom() || (spillFile != null && !spillFile.isEmpty());
+  }
+
+  /**
+   * Removes the tokens from the queue, but not the ones that have been spilled to disk.
+   */
+  @Override
+  public synchronized void clear() {
+    int count = super.size();
+    super.clear();
+    tokensDiscarded(count);
+    notifyAll();
+  }
+
+  private QueueStatistics getQueueStatistics() {
+    IOPort port = getContainer();
+    return (port instanceof Port) ? ((Port) port).getQueueStatistics() : null;
+  }
+
+  /**
+   * Must be called while holding this receiver's lock, each time a token is stored in the queue or spilled to disk.
+   */
+  private void tokenEnqueued() {
+    recordEnqueued();
+    if (listener != null) {
+      listener.tokenAvailable(this);
+    }
+  }
+
+  private void recordEnqueued() {
+    enqueueTimes.add(System.nanoTime());
+    QueueStatistics statistics = getQueueStatistics();
+    if (statistics != null) {
+      statistics.acceptEnqueued();
+    }
+  }
+
+  /**
+   * Must be called while holding this receiver's lock, each time a token is taken from the queue.
+   */
+  private void tokenDequeued() {
+    Long enqueueTime = enqueueTimes.poll();
+    QueueStatistics statistics = getQueueStatistics();
+    if (statistics != null) {
+      statistics.acceptDequeued(enqueueTime != null ? System.nanoTime() - enqueueTime : -1);
+    }
+  }
+
+  /**
+   * Must be called while holding this receiver's lock, when the oldest tokens have been removed without being read.
+   */
+  private void tokensDiscarded(int count) {
+    for (int i = 0; i < count; ++i) {
+      enqueueTimes.poll();
+    }
+    QueueStatistics statistics = getQueueStatistics();
+    if (statistics != null) {
+      statistics.acceptDiscarded(count);
+    }
+  }
+
+  /**
+   * Must be called while holding this receiver's lock, after a token was taken from the queue. Moves the oldest
+   * spilled token to the queue, and deletes the spill file once all spilled tokens have been read.
+   */
+  private void refillFromSpillFile() {
+    if (spillFile != null) {
+      int spilledCount = spillFile.size();
+      try {
+        Token spilled = spillFile.poll();
+        if (spilled != null) {
+          super.put(spilled);
+        }
+      } catch (IOException e) {
+        if (spillFile.size() < spilledCount) {
+          logger.error(getContainer().getFullName() + " - lost a token that was spilled to disk", e);
+          spilledTokenLost();
+        } else {
+          logger.error(getContainer().getFullName() + " - unable to read the tokens that were spilled to disk, discarding them", e);
+          closeSpillFile();
+          return;
+        }
+      }
+      if (spillFile.isEmpty()) {
+        spillFile.close();
+        spillFile = null;
+      }
+    }
+  }
+
+  /**
+   * Must be called while holding this receiver's lock, when the oldest spilled token could not be read.
+   */
+  private void spilledTokenLost() {
+    // the spilled tokens were enqueued after the ones in the queue
+    int position = super.size();
+    Iterator<Long> enqueueTimeItr = enqueueTimes.iterator();
+    for (int i = 0; enqueueTimeItr.hasNext(); ++i) {
+      enqueueTimeItr.next();
+      if (i == position) {
+        enqueueTimeItr.remove();
+        break;
+      }
+    }
+    QueueStatistics statistics = getQueueStatistics();
+    if (statistics != null) {
+      statistics.acceptDiscarded(1);
+    }
+  }
+
+  /**
+   * Discards the tokens that have been spilled to disk and deletes the spill file. Called by the director on wrapup,
+   * for tokens that were not read anymore.
+   */
+  public synchronized void discardSpilledTokens() {
+    closeSpillFile();
+  }
+
+  /**
+   * Must be called while holding this receiver's lock. The spilled tokens are lost.
+   */
+  private void closeSpillFile() {
+    if (spillFile != null) {
+      int count = spillFile.size();
+      spillFile.close();
+      spillFile = null;
+      // the spilled tokens are the newest ones
+      for (int i = 0; i < count; ++i) {
+        enqueueTimes.pollLast();
+      }
+      QueueStatistics statistics = getQueueStatistics();
+      if (statistics != null) {
+        statistics.acceptDiscarded(count);
       }
     }
   }
 
+  private void tokenStored() {
+    // Wake up all threads waiting on a write to this receiver;
+    notifyAll();
+    if (getSizeWarningThreshold() != QueueReceiver.INFINITE_CAPACITY && size() >= getSizeWarningThreshold()) {
+      logger.warn(getContainer().getFullName() + " - reached/passed warning threshold size " + getSizeWarningThreshold());
+    }
+  }
+
+  private ProcessDirector getProcessDirector() {
+    IOPort port = getContainer();
+    if (port != null && port.getContainer() instanceof Actor) {
+      ptolemy.actor.Director director = ((Actor) port.getContainer()).getExecutiveDirector();
+      if (director instanceof ProcessDirector) {
+        return (ProcessDirector) director;
+      }
+    }
+    return null;
+  }
+
   /**
    * Sets the terminate flag. From then, no new tokens are stored and after all tokens have been retrieved, a null token is returned as an indicator that this
-   * receiver is finished.
+   * receiver is finished. Tokens that have been spilled to disk can still be retrieved.
    */
   public synchronized void requestFinish() {
     if (logger.isTraceEnabled()) {
@@ -332,16 +735,30 @@ public class BlockingQueueReceiver extends QueueReceiver implements ProcessRecei
     }
     _terminate = true;
     notifyAll();
-    if (buffer != null) buffer.unregisterMessageProvider(this);
+    if (buffer != null) {
+      buffer.unregisterMessageProvider(this);
+      if (buffer.getMessageQueue() instanceof PooledActorMessageQueue) {
+        // the actor must check whether all its inputs are finished
+        ((PooledActorMessageQueue) buffer.getMessageQueue()).wakeUpActor();
+      }
+    }
+    if (listener != null) {
+      listener.receiverFinished(this);
+      listener = null;
+    }
     if (logger.isTraceEnabled()) {
       logger.trace("requestFinish() - exit");
     }
   }
 
   @Override
-  public void reset() {
+  public synchronized void reset() {
     _terminate = false;
+    listener = null;
     _boundaryDetector.reset();
+    // tokens spilled during a previous run are not delivered anymore
+    closeSpillFile();
+    notifyAll();
   }
 
   public void setSizeWarningThreshold(int qWarningSize) {
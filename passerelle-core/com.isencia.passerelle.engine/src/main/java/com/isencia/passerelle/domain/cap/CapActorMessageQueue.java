@@ -1,7 +1,15 @@
 package com.isencia.passerelle.domain.cap;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import ptolemy.actor.Actor;
 import ptolemy.actor.IOPort;
 import ptolemy.actor.NoRoomException;
@@ -12,17 +20,23 @@ import ptolemy.actor.process.TerminateProcessException;
 import ptolemy.data.Token;
 import ptolemy.domains.pn.kernel.PNDirector;
 import ptolemy.kernel.util.IllegalActionException;
-import ptolemy.kernel.util.Workspace;
 import com.isencia.passerelle.actor.InitializationException;
 import com.isencia.passerelle.core.ErrorCode;
 import com.isencia.passerelle.message.MessageInputContext;
 import com.isencia.passerelle.message.MessageQueue;
+import com.isencia.passerelle.statistics.QueueStatistics;
 
 /**
  * Instances of this class can be used to manage the actor's internal buffer to handle messages from PUSH input ports. 
  * It mixes queuing with the put-blocking behaviour of Ptolemy's PNQueueReceiver. 
  * It can not be a Ptolemy receiver itself, as it's not contained in a Port, but in an Actor...
  * Also it only needs blocking puts, not blocking gets
+ * <p>
+ * Each queue has its own lock, so puts and polls on different actors' queues do not contend with each other.
+ * The director is only involved when a writer blocks on a full queue or gets unblocked again.
+ * These notifications are done while holding the director's monitor but not the queue's lock,
+ * the same lock order as used by the director when it increases a queue's capacity to resolve an artificial deadlock.
+ * </p>
  * 
  * @author erwin
  */
@@ -35,19 +49,26 @@ public class CapActorMessageQueue implements MessageQueue {
   private DummyReceiver myDummyReceiver = new DummyReceiver();
   private Actor actor;
   private CapDirector director;
-  private BlockingQueue<MessageInputContext> messages;
-  private int capacity;
-  private boolean terminate;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notFull = lock.newCondition();
+  private final Condition notEmpty = lock.newCondition();
+  private Queue<MessageInputContext> messages = new ArrayDeque<MessageInputContext>();
+  private volatile int capacity;
+  private volatile boolean terminate;
+  private QueueStatistics statistics;
 
-  /** Reference to a thread that is write blocked on this queue. */
-  private Thread _writePending = null;
+  /** The threads that are write blocked on this queue. */
+  private Set<Thread> writersPending = new HashSet<Thread>();
 
   CapActorMessageQueue(Actor actor, int capacity) throws InitializationException {
     this.actor = actor;
+    if ((capacity < 0) && (capacity != INFINITE_CAPACITY)) {
+      throw new IllegalArgumentException("Cannot set queue capacity to " + capacity);
+    }
     this.capacity = capacity;
+    statistics = new QueueStatistics(actor.getFullName(), capacity);
     try {
       this.director = (CapDirector) actor.getDirector();
-      messages = new LinkedBlockingQueue<MessageInputContext>(capacity);
     } catch (ClassCastException e) {
       throw new InitializationException(ErrorCode.ACTOR_INITIALISATION_ERROR, "Can not create a CapActorMessageQueue when no CapDirector is used", actor, e);
     }
@@ -56,55 +77,103 @@ public class CapActorMessageQueue implements MessageQueue {
   public int getCapacity() {
     return capacity;
   }
+
+  public Actor getActor() {
+    return actor;
+  }
+
+  public QueueStatistics getStatistics() {
+    return statistics;
+  }
   
   @Override
   public int size() {
-    return messages.size();
+    lock.lock();
+    try {
+      return messages.size();
+    } finally {
+      lock.unlock();
+    }
   }
   
   @Override
   public boolean isEmpty() {
-    return messages.isEmpty();
+    return size() == 0;
   }
 
   public void setCapacity(int capacity) throws InitializationException, IllegalArgumentException {
     if ((capacity < 0) && (capacity != INFINITE_CAPACITY)) {
       throw new IllegalArgumentException("Cannot set queue capacity to " + capacity);
     }
-    if ((capacity != INFINITE_CAPACITY) && (messages.size() > capacity)) {
-      throw new InitializationException(ErrorCode.ACTOR_INITIALISATION_ERROR, "Queue contains more elements than the proposed capacity.", actor, null);
+    lock.lock();
+    try {
+      if ((capacity != INFINITE_CAPACITY) && (messages.size() > capacity)) {
+        throw new InitializationException(ErrorCode.ACTOR_INITIALISATION_ERROR, "Queue contains more elements than the proposed capacity.", actor, null);
+      }
+      this.capacity = capacity;
+      statistics.setCapacity(capacity);
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Doubles the queue's capacity and releases all blocked writers. Used by the director to resolve an artificial deadlock.
+   * 
+   * @return the writer threads that were blocked on this queue. The director must mark them as unblocked.
+   */
+  Collection<Thread> increaseCapacity() {
+    lock.lock();
+    try {
+      if (capacity != INFINITE_CAPACITY) {
+        capacity = (capacity > 0) ? capacity * 2 : 1;
+        statistics.setCapacity(capacity);
+      }
+      return releaseWriters();
+    } finally {
+      lock.unlock();
     }
-    this.capacity = capacity;
   }
 
   public void put(MessageInputContext ctxt) throws InterruptedException {
-    synchronized (director) {
-      while (!terminate) {
-        if (messages.remainingCapacity() > 0) {
-          messages.put(ctxt);
-          // Normally, the _writePending reference will have
-          // been cleared by the read that unblocked this write.
-          // However, it might be that the director increased the
-          // buffer size, which would also have the affect of unblocking
-          // this write. Hence, we clear it here if it is set.
-          if (_writePending != null) {
-            director.threadUnblocked(_writePending, myDummyReceiver, PNDirector.WRITE_BLOCKED);
-            _writePending = null;
+    Thread writer = Thread.currentThread();
+    boolean done = false;
+    while (!done) {
+      boolean blocked = false;
+      boolean unblocked = false;
+      boolean terminated = false;
+      lock.lock();
+      try {
+        if (terminate) {
+          terminated = true;
+          unblocked = writersPending.remove(writer);
+        } else if (capacity == INFINITE_CAPACITY || messages.size() < capacity) {
+          messages.add(ctxt);
+          statistics.acceptEnqueued();
+          notEmpty.signal();
+          done = true;
+          // Normally, the writer will have been released by the read that unblocked this write.
+          // However, it might be that the capacity was increased in the meantime.
+          unblocked = writersPending.remove(writer);
+        } else if (writersPending.add(writer)) {
+          blocked = true;
+        } else {
+          try {
+            notFull.await();
+          } catch (InterruptedException e) {
+            terminate = true;
           }
-          break;
-        }
-        // Wait to try again.
-        try {
-          _writePending = Thread.currentThread();
-          director.threadBlocked(_writePending, myDummyReceiver, PNDirector.WRITE_BLOCKED);
-
-          Workspace workspace = director.workspace();
-          workspace.wait(director);
-        } catch (InterruptedException e) {
-          terminate = true;
         }
+      } finally {
+        lock.unlock();
+      }
+      if (blocked) {
+        reportWriterBlocked(writer);
+      } else if (unblocked) {
+        reportWritersUnblocked(Collections.singleton(writer));
       }
-      if (terminate) {
+      if (terminated) {
         throw new TerminateProcessException("Process terminated.");
       }
     }
@@ -112,16 +181,69 @@ public class CapActorMessageQueue implements MessageQueue {
 
   public MessageInputContext poll() throws InterruptedException, TerminateProcessException {
     MessageInputContext result = null;
-    synchronized (director) {
+    Collection<Thread> releasedWriters = null;
+    lock.lock();
+    try {
       result = messages.poll();
+      if (result != null) {
+        statistics.acceptDequeued(System.nanoTime() - result.getCreationNanos());
+      }
       // Need to mark any thread that is write blocked on this queue unblocked now.
-      if (result!=null && _writePending != null) {
-        director.threadUnblocked(_writePending, myDummyReceiver, PNDirector.WRITE_BLOCKED);
-        _writePending = null;
+      if (result != null && !writersPending.isEmpty()) {
+        releasedWriters = releaseWriters();
       }
       if (terminate && result == null) {
         throw new TerminateProcessException("");
       }
+    } finally {
+      lock.unlock();
+    }
+    if (releasedWriters != null) {
+      reportWritersUnblocked(releasedWriters);
+    }
+    return result;
+  }
+
+  public int drainTo(Collection<? super MessageInputContext> c, int maxElements) throws InterruptedException, TerminateProcessException {
+    return drainTo(c, maxElements, 0, TimeUnit.NANOSECONDS);
+  }
+
+  public int drainTo(Collection<? super MessageInputContext> c, int maxElements, long timeout, TimeUnit unit) throws InterruptedException,
+      TerminateProcessException {
+    int max = maxElements < 0 ? Integer.MAX_VALUE : maxElements;
+    long remainingNanos = unit.toNanos(timeout);
+    int result = 0;
+    Collection<Thread> releasedWriters = null;
+    lock.lock();
+    try {
+      while (true) {
+        long now = System.nanoTime();
+        while (result < max && !messages.isEmpty()) {
+          MessageInputContext ctxt = messages.poll();
+          statistics.acceptDequeued(now - ctxt.getCreationNanos());
+          c.add(ctxt);
+          result++;
+        }
+        if (result > 0 && !writersPending.isEmpty()) {
+          // let blocked writers fill up the queue again while we're waiting for more
+          releasedWriters = releaseWriters();
+          lock.unlock();
+          try {
+            reportWritersUnblocked(releasedWriters);
+          } finally {
+            lock.lock();
+          }
+        }
+        if (result >= max || terminate || remainingNanos <= 0) {
+          break;
+        }
+        remainingNanos = notEmpty.awaitNanos(remainingNanos);
+      }
+      if (terminate && result == 0) {
+        throw new TerminateProcessException("");
+      }
+    } finally {
+      lock.unlock();
     }
     return result;
   }
@@ -130,14 +252,94 @@ public class CapActorMessageQueue implements MessageQueue {
    * Clear the state variables for this queue.
    */
   public void clear() {
-    if (_writePending != null) {
-      director.threadUnblocked(_writePending, myDummyReceiver, PNDirector.WRITE_BLOCKED);
+    Collection<Thread> releasedWriters = null;
+    lock.lock();
+    try {
+      releasedWriters = releaseWriters();
+      statistics.acceptDiscarded(messages.size());
+      messages.clear();
+    } finally {
+      lock.unlock();
+    }
+    reportWritersUnblocked(releasedWriters);
+  }
+
+  public void terminate() {
+    lock.lock();
+    try {
+      terminate = true;
+      // blocked writers will find the terminate flag and report themselves unblocked
+      notEmpty.signalAll();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Must be called while holding the lock.
+   */
+  private Collection<Thread> releaseWriters() {
+    Collection<Thread> result = new ArrayList<Thread>(writersPending);
+    writersPending.clear();
+    notFull.signalAll();
+    return result;
+  }
+
+  /**
+   * @return one of the writers that are still blocked on this queue, or null if there are none
+   */
+  Thread getPendingWriter() {
+    lock.lock();
+    try {
+      return writersPending.isEmpty() ? null : writersPending.iterator().next();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean isWriterPending(Thread writer) {
+    lock.lock();
+    try {
+      return writersPending.contains(writer);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Reports the writer as blocked, if it has not been released in the meantime.
+   * As all reports are done while holding the director's monitor, the director's view ends up consistent with this queue's.
+   */
+  private void reportWriterBlocked(Thread writer) {
+    synchronized (director) {
+      if (isWriterPending(writer)) {
+        director.threadBlocked(writer, myDummyReceiver, PNDirector.WRITE_BLOCKED);
+      }
+    }
+  }
+
+  /**
+   * Reports the writers as unblocked, if they have not been blocked again in the meantime.
+   * The director keeps the queue registered as write-blocked as long as other writers are still blocked on it.
+   */
+  private void reportWritersUnblocked(Collection<Thread> writers) {
+    if (!writers.isEmpty()) {
+      synchronized (director) {
+        for (Thread writer : writers) {
+          if (!isWriterPending(writer)) {
+            director.threadUnblocked(writer, myDummyReceiver, PNDirector.WRITE_BLOCKED);
+          }
+        }
+      }
     }
-    _writePending = null;
-    messages.clear();
   }
 
-  private static class DummyReceiver implements ProcessReceiver {
+  class DummyReceiver implements ProcessReceiver {
+    CapActorMessageQueue getQueue() {
+      return CapActorMessageQueue.this;
+    }
+
     @Override
     public void clear() throws IllegalActionException {
     }
@@ -248,7 +450,7 @@ public class CapActorMessageQueue implements MessageQueue {
 
     @Override
     public boolean isWriteBlocked() {
-      return false;
+      return getPendingWriter() != null;
     }
 
     @Override
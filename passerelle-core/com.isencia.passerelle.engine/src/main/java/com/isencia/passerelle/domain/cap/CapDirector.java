@@ -24,8 +24,10 @@ import org.slf4j.LoggerFactory;
 import ptolemy.actor.Actor;
 import ptolemy.actor.Initializable;
 import ptolemy.actor.Receiver;
+import ptolemy.actor.process.ProcessReceiver;
 import ptolemy.data.IntToken;
 import ptolemy.domains.pn.kernel.PNDirector;
+import ptolemy.domains.pn.kernel.PNQueueReceiver;
 import ptolemy.kernel.CompositeEntity;
 import ptolemy.kernel.util.IllegalActionException;
 import ptolemy.kernel.util.InternalErrorException;
@@ -211,6 +213,77 @@ public class CapDirector extends PNDirector implements PasserelleDirector {
     }
   }
 
+  /**
+   * An actor message queue can have several blocked writers, but the PN director only keeps one writer per blocked
+   * queue. So the queue must remain registered as write-blocked as long as it still has blocked writers.
+   */
+  @Override
+  public synchronized void threadUnblocked(Thread thread, ProcessReceiver receiver, boolean readOrWrite) {
+    super.threadUnblocked(thread, receiver, readOrWrite);
+    if (readOrWrite == WRITE_BLOCKED && receiver instanceof CapActorMessageQueue.DummyReceiver) {
+      Thread blockedWriter = ((CapActorMessageQueue.DummyReceiver) receiver).getQueue().getPendingWriter();
+      if (blockedWriter != null) {
+        _writeBlockedQueues.put(receiver, blockedWriter);
+      }
+    }
+  }
+
+  /**
+   * Besides the PN receivers, the actor message queues can also be write-blocked.
+   * They are registered via a stand-in receiver, which is not a PNQueueReceiver,
+   * so the smallest queue must be searched across both kinds.
+   */
+  @Override
+  protected synchronized void _incrementLowestWriteCapacityPort() throws IllegalActionException {
+    ProcessReceiver smallestCapacityQueue = null;
+    int smallestCapacity = -1;
+    for (Object receiver : _writeBlockedQueues.keySet()) {
+      int capacity = getQueueCapacity((ProcessReceiver) receiver);
+      if (smallestCapacityQueue == null || smallestCapacity > capacity) {
+        smallestCapacityQueue = (ProcessReceiver) receiver;
+        smallestCapacity = capacity;
+      }
+    }
+    if (smallestCapacityQueue == null) {
+      return;
+    }
+    if (smallestCapacity > 0) {
+      int maximumCapacity = ((IntToken) maximumQueueCapacity.getToken()).intValue();
+      if ((maximumCapacity > 0) && ((smallestCapacity * 2) > maximumCapacity)) {
+        throw new IllegalActionException(this, "Queue size " + (smallestCapacity * 2) + " exceeds the maximum capacity in "
+            + getQueueName(smallestCapacityQueue) + ". Perhaps you have an unbounded queue?");
+      }
+    }
+    LOGGER.debug("{} - increasing the capacity of {}", getFullName(), getQueueName(smallestCapacityQueue));
+    if (smallestCapacityQueue instanceof CapActorMessageQueue.DummyReceiver) {
+      for (Thread writer : ((CapActorMessageQueue.DummyReceiver) smallestCapacityQueue).getQueue().increaseCapacity()) {
+        threadUnblocked(writer, smallestCapacityQueue, WRITE_BLOCKED);
+      }
+    } else {
+      PNQueueReceiver queue = (PNQueueReceiver) smallestCapacityQueue;
+      queue.setCapacity(smallestCapacity > 0 ? smallestCapacity * 2 : 1);
+      // Need to mark any thread that is blocked on this receiver unblocked now, before the notification,
+      // or we will detect deadlock all over again and again increase the buffer sizes.
+      threadUnblocked((Thread) _writeBlockedQueues.get(queue), queue, WRITE_BLOCKED);
+    }
+  }
+
+  private String getQueueName(ProcessReceiver receiver) {
+    if (receiver instanceof CapActorMessageQueue.DummyReceiver) {
+      return "message queue of " + ((CapActorMessageQueue.DummyReceiver) receiver).getQueue().getActor().getFullName();
+    } else {
+      return "port " + receiver.getContainer().getFullName();
+    }
+  }
+
+  private int getQueueCapacity(ProcessReceiver receiver) {
+    if (receiver instanceof CapActorMessageQueue.DummyReceiver) {
+      return ((CapActorMessageQueue.DummyReceiver) receiver).getQueue().getCapacity();
+    } else {
+      return ((PNQueueReceiver) receiver).getCapacity();
+    }
+  }
+
   /**
    * just an alias for stopFire()...
    */
@@ -23,17 +23,21 @@ import ptolemy.data.Token;
 import ptolemy.domains.pn.kernel.PNQueueReceiver;
 import ptolemy.kernel.util.IllegalActionException;
 import ptolemy.kernel.util.Workspace;
+import com.isencia.passerelle.core.NotifyingReceiver;
 import com.isencia.passerelle.core.PasserelleException;
 import com.isencia.passerelle.core.Port;
+import com.isencia.passerelle.core.ReceiverListener;
 import com.isencia.passerelle.message.ManagedMessage;
 import com.isencia.passerelle.message.MessageBuffer;
 import com.isencia.passerelle.message.MessageHelper;
 import com.isencia.passerelle.message.MessageInputContext;
 import com.isencia.passerelle.message.MessageProvider;
 
-public class CapReceiver extends PNQueueReceiver implements MessageProvider {
+public class CapReceiver extends PNQueueReceiver implements MessageProvider, NotifyingReceiver {
 
   private MessageBuffer buffer;
+  // guarded by this receiver's monitor, the PN queue itself is guarded by the director
+  private ReceiverListener listener;
   private volatile boolean _terminate;
 
   /**
@@ -64,6 +68,26 @@ public class CapReceiver extends PNQueueReceiver implements MessageProvider {
       buffer.registerMessageProvider(this);
   }
 
+  /**
+   * Notifies the given listener of all queued and future tokens. The tokens remain in this receiver's queue, so the
+   * director's handling of full queues still applies, until they are taken via <code>pollToken()</code>.
+   * 
+   * @param listener
+   */
+  public synchronized void setReceiverListener(ReceiverListener listener) {
+    this.listener = listener;
+    if (listener != null) {
+      // a token that is being put concurrently may get notified twice, the listener will find the queue empty then
+      for (int i = super.size(); i > 0; --i) {
+        listener.tokenAvailable(this);
+      }
+      if (_terminate) {
+        listener.receiverFinished(this);
+        this.listener = null;
+      }
+    }
+  }
+
   @Override
   public Token get() {
     Workspace workspace = getContainer().workspace();
@@ -72,18 +96,41 @@ public class CapReceiver extends PNQueueReceiver implements MessageProvider {
       throw new UnsupportedOperationException("get() not supported for shared buffer");
     } else {
       synchronized (this) {
-        while (isPaused()) {
-          try {
-            workspace.wait(this, 1000);
-          } catch (InterruptedException e) {
-          }
-        }
+        waitWhilePaused(workspace);
       }
       result = super.get();
     }
     return result;
   }
 
+  /**
+   * Takes the next token from the queue without waiting for one, even when the receiver has been requested to finish.
+   * While the model is paused, it waits until it is resumed. Only supports a single reader.
+   * 
+   * @return the next token, or null if the queue is empty
+   */
+  public Token pollToken() {
+    if (buffer != null) {
+      throw new UnsupportedOperationException("pollToken() not supported for shared buffer");
+    }
+    synchronized (this) {
+      waitWhilePaused(getContainer().workspace());
+    }
+    return super.size() > 0 ? super.get() : null;
+  }
+
+  /**
+   * Must be called while holding this receiver's lock.
+   */
+  private void waitWhilePaused(Workspace workspace) {
+    while (isPaused()) {
+      try {
+        workspace.wait(this, 1000);
+      } catch (InterruptedException e) {
+      }
+    }
+  }
+
   private boolean isPaused() {
     try {
       Manager manager = ((CompositeActor) getContainer().toplevel()).getManager();
@@ -154,6 +201,11 @@ public class CapReceiver extends PNQueueReceiver implements MessageProvider {
     } else {
       // token can be put in the queue;
       super.put(token);
+      synchronized (this) {
+        if (listener != null) {
+          listener.tokenAvailable(this);
+        }
+      }
     }
   }
 
@@ -163,12 +215,21 @@ public class CapReceiver extends PNQueueReceiver implements MessageProvider {
     if (buffer != null) {
       buffer.unregisterMessageProvider(this);
     }
+    synchronized (this) {
+      if (listener != null) {
+        listener.receiverFinished(this);
+        listener = null;
+      }
+    }
     super.requestFinish();
   }
 
   @Override
   public void reset() {
     _terminate = false;
+    synchronized (this) {
+      listener = null;
+    }
     super.reset();
   }
 }
\ No newline at end of file
@@ -21,13 +21,26 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ptolemy.actor.Actor;
 import ptolemy.actor.CompositeActor;
+import ptolemy.actor.IOPort;
 import ptolemy.actor.Receiver;
+import ptolemy.actor.process.ProcessReceiver;
 import ptolemy.actor.util.FIFOQueue;
+import ptolemy.data.IntToken;
 import ptolemy.data.expr.FileParameter;
+import ptolemy.data.expr.Parameter;
+import ptolemy.data.expr.StringParameter;
 import ptolemy.kernel.CompositeEntity;
 import ptolemy.kernel.util.Attribute;
 import ptolemy.kernel.util.IllegalActionException;
@@ -58,6 +71,47 @@ public class Director extends ProcessDirector {
 	public FileParameter propsFileParameter;
 	public final static String PROPSFILE_PARAM = "Properties File";
 	
+	/**
+	 * The default capacity of the receivers' queues, i.e. of the actors' input ports.
+	 * Can be overridden per actor.
+	 * Default value = -1 indicates that the queues have unlimited capacity.
+	 */
+	public Parameter receiverQueueCapacityParameter;
+	public final static String RECEIVER_Q_CAPACITY_PARAM = "Receiver Q capacity (-1)";
+	/**
+	 * Determines what happens with new tokens for a full receiver queue.
+	 * Cfr {@link OverflowPolicy}, default is REJECT.
+	 */
+	public StringParameter receiverQueueOverflowPolicyParameter;
+	public final static String RECEIVER_Q_OVERFLOW_POLICY_PARAM = "Receiver Q overflow policy";
+
+	/**
+	 * Determines how actors are executed : each on its own thread (the default), or on a shared pool for actors that support
+	 * this (cfr {@link PooledProcessThread}).
+	 */
+	public StringParameter dispatchModeParameter;
+	public final static String DISPATCH_MODE_PARAM = "Actor dispatch mode";
+	public final static String DISPATCH_MODE_THREAD_PER_ACTOR = "Thread per actor";
+	public final static String DISPATCH_MODE_POOLED = "Pooled";
+	/**
+	 * The nr of threads of the pool for the "Pooled" dispatch mode.
+	 * Default value = -1 indicates one thread per available processor.
+	 */
+	public Parameter dispatchPoolSizeParameter;
+	public final static String DISPATCH_POOL_SIZE_PARAM = "Dispatch pool size (-1)";
+
+	// interval at which idle pooled actors are woken up, to check for state changes that are not signalled,
+	// such as a finish request via the actor's control port
+	private final static long IDLE_SWEEP_INTERVAL_MS = 1000;
+
+	// receivers on which one or more threads are blocked on a write
+	private Set<BlockingQueueReceiver> writeBlockedReceivers = new HashSet<BlockingQueueReceiver>();
+
+	// only used in "Pooled" dispatch mode, during a model execution
+	private ForkJoinPool dispatchPool;
+	private ScheduledExecutorService idleSweeper;
+	private Collection<PooledProcessThread> pooledProcesses = new ConcurrentLinkedQueue<PooledProcessThread>();
+
 	//~ Constructors ___________________________________________________________________________________________________________________________________________
 
 	/** Construct a director in the default workspace with an empty string
@@ -83,6 +137,8 @@ public class Director extends ProcessDirector {
 		throws IllegalActionException, NameDuplicationException {
 		super(workspace);
 		propsFileParameter = new FileParameter(this, PROPSFILE_PARAM);
+		createReceiverQueueParameters();
+		createDispatchParameters();
 		// to trigger the creation of our default adapter
 		getAdapter(null);
 	}
@@ -108,6 +164,8 @@ public class Director extends ProcessDirector {
 		super(container, name);
 		
 		propsFileParameter = new FileParameter(this, PROPSFILE_PARAM);
+		createReceiverQueueParameters();
+		createDispatchParameters();
 
     // to trigger the creation of our default adapter
     getAdapter(null);
@@ -162,6 +220,34 @@ public class Director extends ProcessDirector {
 			+ "</svg>\n");
 	}
 
+	private void createReceiverQueueParameters() throws IllegalActionException, NameDuplicationException {
+		receiverQueueCapacityParameter = new Parameter(this, RECEIVER_Q_CAPACITY_PARAM, new IntToken(-1));
+		receiverQueueOverflowPolicyParameter = new StringParameter(this, RECEIVER_Q_OVERFLOW_POLICY_PARAM);
+		for (OverflowPolicy policy : OverflowPolicy.values()) {
+			receiverQueueOverflowPolicyParameter.addChoice(policy.name());
+		}
+		receiverQueueOverflowPolicyParameter.setExpression(OverflowPolicy.REJECT.name());
+	}
+
+	private void createDispatchParameters() throws IllegalActionException, NameDuplicationException {
+		dispatchModeParameter = new StringParameter(this, DISPATCH_MODE_PARAM);
+		dispatchModeParameter.addChoice(DISPATCH_MODE_THREAD_PER_ACTOR);
+		dispatchModeParameter.addChoice(DISPATCH_MODE_POOLED);
+		dispatchModeParameter.setExpression(DISPATCH_MODE_THREAD_PER_ACTOR);
+		dispatchPoolSizeParameter = new Parameter(this, DISPATCH_POOL_SIZE_PARAM, new IntToken(-1));
+	}
+
+	/**
+	 * @return true if actors that support it are iterated on a shared pool i.o. on their own thread
+	 */
+	public boolean isPooledDispatch() {
+		try {
+			return DISPATCH_MODE_POOLED.equalsIgnoreCase(dispatchModeParameter.stringValue().trim());
+		} catch (IllegalActionException e) {
+			return false;
+		}
+	}
+
 	/**
 	 * DOCUMENT ME!
 	 *
@@ -174,7 +260,10 @@ public class Director extends ProcessDirector {
 	public Object clone(Workspace workspace)
 		throws CloneNotSupportedException {
 		Director newObject = (Director) super.clone(workspace);
-
+		newObject.writeBlockedReceivers = new HashSet<BlockingQueueReceiver>();
+		newObject.dispatchPool = null;
+		newObject.idleSweeper = null;
+		newObject.pooledProcesses = new ConcurrentLinkedQueue<PooledProcessThread>();
 		return newObject;
 	}
 
@@ -215,6 +304,10 @@ public class Director extends ProcessDirector {
 				logger.error("", e);
 			}
 		}
+		shutdownDispatchPool();
+		if (isPooledDispatch()) {
+			startDispatchPool();
+		}
 		super.initialize();
 		if(logger.isTraceEnabled())
 			logger.trace(getName()+" initialize() - exit");
@@ -222,23 +315,126 @@ public class Director extends ProcessDirector {
 
 
 	/**
-	 * DOCUMENT ME!
+	 * Creates a receiver with the director's default queue capacity and overflow policy.
+	 * Actors may still override the capacity for their own input ports.
 	 *
-	 * @return DOCUMENT ME!
+	 * @return a new BlockingQueueReceiver
 	 */
 	public Receiver newReceiver() {
 		BlockingQueueReceiver receiver = new BlockingQueueReceiver();
+		int capacity = FIFOQueue.INFINITE_CAPACITY;
+		try {
+			capacity = ((IntToken) receiverQueueCapacityParameter.getToken()).intValue();
+			receiver.setOverflowPolicy(OverflowPolicy.fromName(receiverQueueOverflowPolicyParameter.stringValue()));
+		} catch (Exception e) {
+			logger.warn(getName() + " - invalid receiver queue settings, using defaults", e);
+		}
 		try {
-			receiver.setCapacity(FIFOQueue.INFINITE_CAPACITY);
+			receiver.setCapacity(capacity);
 		} catch (IllegalActionException e) {
+			logger.warn(getName() + " - invalid receiver queue capacity " + capacity, e);
 		}
 
 		return receiver;
 	}
 
+	@Override
+	public synchronized void threadBlocked(Thread thread, ProcessReceiver receiver) {
+		if (receiver instanceof BlockingQueueReceiver) {
+			writeBlockedReceivers.add((BlockingQueueReceiver) receiver);
+		}
+		super.threadBlocked(thread, receiver);
+	}
+
+	@Override
+	public synchronized void threadUnblocked(Thread thread, ProcessReceiver receiver) {
+		if (receiver instanceof BlockingQueueReceiver && !((BlockingQueueReceiver) receiver).isWriteBlocked()) {
+			writeBlockedReceivers.remove(receiver);
+		}
+		super.threadUnblocked(thread, receiver);
+	}
+
   @Override
   public MessageQueue newMessageQueue(Actor actor) throws InitializationException {
-    return new SimpleActorMessageQueue(actor);
+    if (isPooledDispatch() && PooledProcessThread.isPoolable(actor)) {
+      return new PooledActorMessageQueue(actor);
+    } else {
+      return new SimpleActorMessageQueue(actor);
+    }
+  }
+
+  /**
+   * In "Pooled" dispatch mode, actors that support it get a process that iterates them on the dispatch pool.
+   * All other actors get their own thread.
+   */
+  @Override
+  protected ptolemy.actor.process.ProcessThread _newProcessThread(Actor actor, ptolemy.actor.process.ProcessDirector director) throws IllegalActionException {
+    if (dispatchPool != null && PooledProcessThread.isPoolable(actor)) {
+      MessageQueue queue = ((com.isencia.passerelle.actor.v5.Actor) actor).getMessageQueue();
+      if (queue instanceof PooledActorMessageQueue) {
+        PooledProcessThread process = new PooledProcessThread(actor, this, dispatchPool);
+        ((PooledActorMessageQueue) queue).setProcess(process);
+        pooledProcesses.add(process);
+        return process;
+      }
+    }
+    return super._newProcessThread(actor, director);
+  }
+
+  private void startDispatchPool() throws IllegalActionException {
+    int poolSize = ((IntToken) dispatchPoolSizeParameter.getToken()).intValue();
+    if (poolSize <= 0) {
+      poolSize = Runtime.getRuntime().availableProcessors();
+    }
+    // async mode gives FIFO scheduling for the iterations, which are never joined
+    dispatchPool = new ForkJoinPool(poolSize, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    idleSweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, getFullName() + "-IdleSweeper");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    idleSweeper.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        wakeUpPooledProcesses();
+      }
+    }, IDLE_SWEEP_INTERVAL_MS, IDLE_SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    logger.debug("{} - started dispatch pool with {} threads", getFullName(), poolSize);
+  }
+
+  private void shutdownDispatchPool() {
+    if (idleSweeper != null) {
+      idleSweeper.shutdownNow();
+      idleSweeper = null;
+    }
+    if (dispatchPool != null) {
+      dispatchPool.shutdown();
+      dispatchPool = null;
+    }
+    pooledProcesses.clear();
+  }
+
+  private void wakeUpPooledProcesses() {
+    for (PooledProcessThread process : pooledProcesses) {
+      if (process.isDone()) {
+        pooledProcesses.remove(process);
+      } else {
+        process.wakeUp();
+      }
+    }
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    wakeUpPooledProcesses();
+  }
+
+  @Override
+  public void terminate() {
+    super.terminate();
+    shutdownDispatchPool();
   }
 
 
@@ -290,23 +486,62 @@ public class Director extends ProcessDirector {
 		if(logger.isTraceEnabled())
 			logger.trace(getName()+" wrapup() - entry");
 		
-		super.wrapup();
+		try {
+			super.wrapup();
+		} finally {
+			shutdownDispatchPool();
+			discardSpilledTokens();
+		}
 		if(logger.isTraceEnabled())
 			logger.trace(getName()+" wrapup() - exit");
 	}
+
+	/**
+	 * Removes the spill files of the receivers, for tokens that were not read before the end of the run.
+	 */
+	private void discardSpilledTokens() {
+		for (Object entity : ((CompositeActor) getContainer()).deepEntityList()) {
+			for (Object port : ((Actor) entity).inputPortList()) {
+				Receiver[][] receivers = ((IOPort) port).getReceivers();
+				for (int i = 0; receivers != null && i < receivers.length; i++) {
+					for (int j = 0; receivers[i] != null && j < receivers[i].length; j++) {
+						if (receivers[i][j] instanceof BlockingQueueReceiver) {
+							((BlockingQueueReceiver) receivers[i][j]).discardSpilledTokens();
+						}
+					}
+				}
+			}
+		}
+	}
 	
 	/**
-	 * DOCUMENT ME!
+	 * When all active threads are blocked and some of them are blocked on writing to a full receiver queue,
+	 * this is an artificial deadlock. As for the Ptolemy PN domain, it is resolved by increasing
+	 * the capacity of the smallest full queue.
 	 *
-	 * @return DOCUMENT ME!
+	 * @return false if there are no more active threads
 	 *
-	 * @throws IllegalActionException DOCUMENT ME!
+	 * @throws IllegalActionException
 	 */
-	protected boolean _resolveInternalDeadlock()
+	protected synchronized boolean _resolveInternalDeadlock()
 		throws IllegalActionException {
 		if (_getActiveThreadsCount() == 0) {
 			return false;
 		} else {
+			BlockingQueueReceiver smallestQueue = null;
+			for (BlockingQueueReceiver receiver : writeBlockedReceivers) {
+				if (smallestQueue == null || receiver.getCapacity() < smallestQueue.getCapacity()) {
+					smallestQueue = receiver;
+				}
+			}
+			if (smallestQueue != null) {
+				writeBlockedReceivers.remove(smallestQueue);
+				logger.warn(getName() + " - artificial deadlock, increasing capacity of " + smallestQueue.getContainer().getFullName()
+						+ " from " + smallestQueue.getCapacity());
+				for (Thread writer : smallestQueue.increaseCapacity()) {
+					threadUnblocked(writer, smallestQueue);
+				}
+			}
 			return true;
 		}
 	}
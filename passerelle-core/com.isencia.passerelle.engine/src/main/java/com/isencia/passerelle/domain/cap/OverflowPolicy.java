@@ -0,0 +1,59 @@
+/* Copyright 2011 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.domain.cap;
+
+/**
+ * Determines what a bounded {@link BlockingQueueReceiver} does with a new token when its queue has reached its
+ * capacity.
+ */
+public enum OverflowPolicy {
+  /**
+   * Refuse the new token with a <code>NoRoomException</code>. This is the original Passerelle behaviour.
+   */
+  REJECT,
+  /**
+   * Block the sending thread until there is room in the queue. The blocked thread is reported to the director, so
+   * artificial deadlocks can be detected and resolved.
+   */
+  BLOCK,
+  /**
+   * Discard the oldest queued token to make room for the new one.
+   */
+  DROP_OLDEST,
+  /**
+   * Discard the new token.
+   */
+  DROP_NEWEST,
+  /**
+   * Store the overflowing tokens in a temporary file, from which they are fed back into the queue as room becomes
+   * available. Tokens that can not be serialized are handled as for BLOCK.
+   */
+  SPILL_TO_DISK;
+
+  /**
+   * @param name
+   * @return the policy with the given name, or REJECT if the name is null, empty or unknown
+   */
+  public static OverflowPolicy fromName(String name) {
+    if (name != null) {
+      for (OverflowPolicy policy : values()) {
+        if (policy.name().equalsIgnoreCase(name.trim())) {
+          return policy;
+        }
+      }
+    }
+    return REJECT;
+  }
+}
@@ -0,0 +1,53 @@
+/* Copyright 2011 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.domain.cap;
+
+import ptolemy.actor.Actor;
+import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.message.MessageInputContext;
+import com.isencia.passerelle.message.SimpleActorMessageQueue;
+
+/**
+ * The message queue for actors that are iterated by a {@link PooledProcessThread}. It wakes up the actor's process each
+ * time a message is received.
+ */
+public class PooledActorMessageQueue extends SimpleActorMessageQueue {
+
+  private volatile PooledProcessThread process;
+
+  public PooledActorMessageQueue(Actor actor) throws InitializationException {
+    super(actor);
+  }
+
+  void setProcess(PooledProcessThread process) {
+    this.process = process;
+  }
+
+  @Override
+  public void put(MessageInputContext ctxt) throws InterruptedException {
+    super.put(ctxt);
+    wakeUpActor();
+  }
+
+  /**
+   * Makes sure the queue's actor will be iterated (again), e.g. after one of its inputs has finished.
+   */
+  public void wakeUpActor() {
+    PooledProcessThread p = process;
+    if (p != null) {
+      p.wakeUp();
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/* Copyright 2011 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.domain.cap;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ptolemy.actor.Actor;
+import ptolemy.kernel.util.IllegalActionException;
+import com.isencia.passerelle.core.ControlPort;
+import com.isencia.passerelle.core.Port;
+import com.isencia.passerelle.domain.ProcessDirector;
+import com.isencia.passerelle.domain.ProcessThread;
+import com.isencia.passerelle.util.LoggerManager;
+
+/**
+ * A process for an actor that is not run on its own thread, but whose iterations are executed on a shared pool, and only
+ * when the actor has something to do.
+ * <p>
+ * The actor is iterated once when the process is started, and then each time it is woken up, e.g. because a message has
+ * been pushed in its {@link PooledActorMessageQueue} or because one of its inputs has finished. As long as there are
+ * pending messages, the actor is re-submitted to the pool after each iteration. Otherwise the process becomes idle.
+ * </p>
+ * <p>
+ * The instance is never started as a real thread, but it is still registered as such with the director. So an idle
+ * pooled actor is counted as an active process, exactly like an actor thread that is waiting for input, and the
+ * director's deadlock and termination detection work as for the thread-per-actor mode.
+ * </p>
+ * <p>
+ * This is only suited for actors whose iterations do not block while waiting for input, i.e. v5 actors with PUSH data
+ * input ports only (cfr {@link #isPoolable(Actor)}).
+ * </p>
+ * <p>
+ * An iteration can still block its ForkJoinPool worker while waiting : in <code>checkIfPaused()</code> while the flow is
+ * paused, and during the buffer time of a v5 actor that has one set. With a small pool, this delays the other pooled
+ * actors.
+ * </p>
+ */
+public class PooledProcessThread extends ProcessThread {
+  private final static Logger LOGGER = LoggerFactory.getLogger(PooledProcessThread.class);
+
+  private final static int IDLE = 0;
+  private final static int SCHEDULED = 1;
+  private final static int RUNNING = 2;
+  private final static int DONE = 3;
+
+  // the pooled process for which an iteration is running on the current thread, if any
+  private final static ThreadLocal<PooledProcessThread> currentProcess = new ThreadLocal<PooledProcessThread>();
+
+  private final ProcessDirector director;
+  private final ExecutorService pool;
+  private final AtomicInteger state = new AtomicInteger(IDLE);
+  private final AtomicBoolean signalled = new AtomicBoolean();
+  private boolean initialized;
+
+  private final Runnable step = new Runnable() {
+    public void run() {
+      doStep();
+    }
+  };
+
+  /**
+   * @param actor
+   * @param director
+   * @param pool
+   *          the pool on which the actor's iterations will be executed
+   * @throws IllegalActionException
+   */
+  public PooledProcessThread(Actor actor, ProcessDirector director, ExecutorService pool) throws IllegalActionException {
+    super(actor, director);
+    this.director = director;
+    this.pool = pool;
+  }
+
+  /**
+   * @param actor
+   * @return true if the actor can be iterated on a shared pool, i.e. when it is a v5 actor with at least one data input
+   *         port, and all of them are PUSH ports.
+   */
+  @SuppressWarnings("unchecked")
+  public static boolean isPoolable(Actor actor) {
+    if (!(actor instanceof com.isencia.passerelle.actor.v5.Actor)) {
+      return false;
+    }
+    boolean hasDataInputs = false;
+    for (Object p : (List<Object>) actor.inputPortList()) {
+      if (p instanceof ControlPort) {
+        continue;
+      }
+      if (!(p instanceof Port) || ((Port) p).isBlocking()) {
+        return false;
+      }
+      hasDataInputs = true;
+    }
+    return hasDataInputs;
+  }
+
+  /**
+   * @return the pooled process for which an iteration is running on the current thread, or else the current thread. To
+   *         be used to report blocked writers to the director.
+   */
+  public static Thread currentProcess() {
+    PooledProcessThread process = currentProcess.get();
+    return process != null ? process : Thread.currentThread();
+  }
+
+  /**
+   * Submits the first iteration to the pool, i.o. starting a thread.
+   */
+  @Override
+  public synchronized void start() {
+    if (state.compareAndSet(IDLE, SCHEDULED)) {
+      submit();
+    }
+  }
+
+  /**
+   * Makes sure the actor will be iterated (again). Can be called from any thread.
+   */
+  public void wakeUp() {
+    signalled.set(true);
+    if (state.compareAndSet(IDLE, SCHEDULED)) {
+      submit();
+    }
+  }
+
+  /**
+   * @return true when the actor has finished its iterations and has been wrapped up
+   */
+  public boolean isDone() {
+    return state.get() == DONE;
+  }
+
+  private void submit() {
+    try {
+      pool.execute(step);
+    } catch (RejectedExecutionException e) {
+      // the pool has been shut down, so the model execution is being terminated
+      LOGGER.warn("{} - Dispatch pool no longer accepts iterations", getActor().getFullName());
+      state.set(DONE);
+    }
+  }
+
+  private void doStep() {
+    state.set(RUNNING);
+    signalled.set(false);
+    currentProcess.set(this);
+    LoggerManager.setContext(getExecutionContext());
+    boolean done = false;
+    Throwable thrownWhenIterate = null;
+    try {
+      if (!initialized) {
+        initialized = true;
+        LOGGER.debug("{} - Starting PooledProcessThread", getActor().getFullName());
+        getActor().initialize();
+      }
+      done = !doIteration(director.workspace());
+    } catch (Throwable t) { // NOSONAR - need to make sure any exception that breaks the iterations is logged
+      thrownWhenIterate = t;
+      done = true;
+      LOGGER.debug(getActor().getFullName() + " - Error in PooledProcessThread " + t);
+    } finally {
+      if (done) {
+        state.set(DONE);
+        terminateProcess(thrownWhenIterate);
+      }
+      LoggerManager.clearContext(getExecutionContext());
+      currentProcess.remove();
+    }
+    if (!done) {
+      if (signalled.get() || hasPendingMessages()) {
+        state.set(SCHEDULED);
+        submit();
+      } else {
+        state.set(IDLE);
+        // a wake-up may have arrived between the check above and going idle
+        if (signalled.get() && state.compareAndSet(IDLE, SCHEDULED)) {
+          submit();
+        }
+      }
+    }
+  }
+
+  private boolean hasPendingMessages() {
+    return !((com.isencia.passerelle.actor.v5.Actor) getActor()).getMessageQueue().isEmpty();
+  }
+}
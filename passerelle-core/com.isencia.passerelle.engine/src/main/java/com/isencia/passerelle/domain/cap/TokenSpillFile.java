@@ -0,0 +1,172 @@
+/* Copyright 2011 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.domain.cap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.RandomAccessFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ptolemy.data.Token;
+
+/**
+ * A FIFO of serialized tokens, stored in a temporary file. Used by a {@link BlockingQueueReceiver} with the
+ * {@link OverflowPolicy#SPILL_TO_DISK} policy.
+ * <p>
+ * The file is created on the first write and is truncated each time it has been completely read. It is deleted by
+ * {@link #close()}, which the owning receiver calls once all spilled tokens have been read, or when the spilled tokens
+ * must be discarded. It is not thread-safe, the owning receiver is responsible for synchronization.
+ * </p>
+ */
+class TokenSpillFile {
+  private final static Logger LOGGER = LoggerFactory.getLogger(TokenSpillFile.class);
+
+  private final String name;
+  private File file;
+  private RandomAccessFile data;
+  private long readPosition;
+  private long writePosition;
+  private int size;
+
+  /**
+   * @param name
+   *          used as prefix for the temporary file
+   */
+  TokenSpillFile(String name) {
+    this.name = name;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Appends the token to the spill file.
+   *
+   * @param token
+   * @return false if the token could not be serialized or written, in which case the caller must handle it in another
+   *         way.
+   */
+  boolean offer(Token token) {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(token);
+      out.close();
+      if (data == null) {
+        file = File.createTempFile("psrl_" + name.replaceAll("[^a-zA-Z0-9]", "_"), ".spill");
+        data = new RandomAccessFile(file, "rw");
+      }
+      data.seek(writePosition);
+      data.writeInt(bytes.size());
+      data.write(bytes.toByteArray());
+      writePosition = data.getFilePointer();
+      size++;
+      return true;
+    } catch (IOException e) {
+      LOGGER.warn("Unable to spill token to disk for " + name, e);
+      return false;
+    }
+  }
+
+  /**
+   * Removes the oldest spilled token from the file.
+   * 
+   * @return the oldest spilled token, or null if there are none
+   * @throws IOException
+   *           if the next token could not be read. When it could be read from the file, but not be deserialized, it
+   *           has been removed, i.e. the size has been decreased. Otherwise the file can not be read anymore.
+   */
+  Token poll() throws IOException {
+    if (size == 0) {
+      return null;
+    }
+    data.seek(readPosition);
+    byte[] bytes = new byte[data.readInt()];
+    data.readFully(bytes);
+    readPosition = data.getFilePointer();
+    size--;
+    if (size == 0) {
+      truncate();
+    }
+    ObjectInputStream in = new BundleObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return (Token) in.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Unable to deserialize spilled token for " + name, e);
+    } catch (ClassCastException e) {
+      throw new IOException("Unable to deserialize spilled token for " + name, e);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Discards all spilled tokens and removes the temporary file.
+   */
+  void close() {
+    size = 0;
+    readPosition = 0;
+    writePosition = 0;
+    if (data != null) {
+      try {
+        data.close();
+      } catch (IOException e) {
+        // ignore
+      }
+      data = null;
+    }
+    if (file != null) {
+      if (!file.delete()) {
+        LOGGER.warn("Unable to delete spill file {}", file);
+      }
+      file = null;
+    }
+  }
+
+  private void truncate() throws IOException {
+    readPosition = 0;
+    writePosition = 0;
+    data.setLength(0);
+  }
+
+  /**
+   * Resolves classes via this bundle's class loader, which can reach message payload classes via the buddy policy.
+   */
+  private static class BundleObjectInputStream extends ObjectInputStream {
+    BundleObjectInputStream(InputStream in) throws IOException {
+      super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      try {
+        return Class.forName(desc.getName(), false, TokenSpillFile.class.getClassLoader());
+      } catch (ClassNotFoundException e) {
+        return super.resolveClass(desc);
+      }
+    }
+  }
+}
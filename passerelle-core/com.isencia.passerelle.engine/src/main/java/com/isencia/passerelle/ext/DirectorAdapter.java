@@ -34,6 +34,7 @@ public interface DirectorAdapter {
   public static final String EXPERTMODE_PARAM = "Expert Modeler";
   public static final String VALIDATE_INITIALIZATION_PARAM = "Validate Initialization";
   public static final String VALIDATE_ITERATION_PARAM = "Validate Iteration";
+  public static final String POOLED_CHANNEL_HANDLERS_PARAM = "Pooled channel handlers";
   String DEFAULT_ADAPTER_NAME = "__directorAdapter";
 
   /**
@@ -140,6 +141,12 @@ public interface DirectorAdapter {
    */
   boolean mustValidateIteration();
 
+  /**
+   * @return whether the channel handlers of multi-channel input ports should run on a shared bounded thread pool, i.o. on
+   *         a dedicated thread per channel
+   */
+  boolean isPooledChannelHandlers();
+
   /**
    * @return all configurable parameters
    */
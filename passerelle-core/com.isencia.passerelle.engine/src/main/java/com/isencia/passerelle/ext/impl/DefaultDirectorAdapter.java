@@ -86,6 +86,7 @@ public class DefaultDirectorAdapter extends Attribute implements DirectorAdapter
   private Parameter expertModeParam = null;
   private Parameter validateInitializationParam = null;
   private Parameter validateIterationParam = null;
+  private Parameter pooledChannelHandlersParam = null;
 
   // Need some collection to maintain info about busy tasks
   // i.e. for slow actions done by actors.
@@ -157,6 +158,15 @@ public class DefaultDirectorAdapter extends Attribute implements DirectorAdapter
       new CheckBoxStyle(validateIterationParam, "style");
       registerConfigurableParameter(validateIterationParam);
     }
+
+    if (container.getAttribute(POOLED_CHANNEL_HANDLERS_PARAM) != null) {
+      pooledChannelHandlersParam = (Parameter) container.getAttribute(POOLED_CHANNEL_HANDLERS_PARAM);
+    } else {
+      pooledChannelHandlersParam = new Parameter(container, POOLED_CHANNEL_HANDLERS_PARAM, new BooleanToken(false));
+      pooledChannelHandlersParam.setTypeEquals(BaseType.BOOLEAN);
+      new CheckBoxStyle(pooledChannelHandlersParam, "style");
+      registerConfigurableParameter(pooledChannelHandlersParam);
+    }
   }
   
   protected void init() {
@@ -302,6 +312,14 @@ public class DefaultDirectorAdapter extends Attribute implements DirectorAdapter
     }
   }
 
+  public boolean isPooledChannelHandlers() {
+    try {
+      return ((BooleanToken) pooledChannelHandlersParam.getToken()).booleanValue();
+    } catch (IllegalActionException e) {
+      return false;
+    }
+  }
+
   public Parameter[] getConfigurableParameters() {
     return (Parameter[]) configurableParameters.toArray(new Parameter[0]);
   }
@@ -109,6 +109,10 @@ public class NullDirectorAdapter implements DirectorAdapter {
     return false;
   }
 
+  public boolean isPooledChannelHandlers() {
+    return false;
+  }
+
   public Parameter[] getConfigurableParameters() {
     return EMPTY_PARAMETER_ARRAY;
   }
@@ -15,33 +15,76 @@
 package com.isencia.passerelle.message;
 
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import com.isencia.passerelle.core.PasserelleException;
 import com.isencia.passerelle.message.internal.ErrorMessageContainer;
+import com.isencia.passerelle.message.internal.LightweightMessageContainer;
 import com.isencia.passerelle.message.internal.MessageContainer;
 import com.isencia.passerelle.message.internal.TriggerMessageContainer;
 
 /**
- * MessageFactory TODO: class comment
+ * Factory for all Passerelle messages.
+ * <p>
+ * The factory is shared by all actor threads of all running flows, so it does not use any locking. Message and sequence
+ * IDs are allocated from atomic counters and creation timestamps are formatted with a per-thread formatter.
+ * </p>
  * 
  * @author erwin
  */
 public class MessageFactory {
 
   private static final MessageFactory instance = new MessageFactory();
-  private static long msgIdCounter = 0;
-  private static long seqIDCounter = 0;
+  private static final AtomicLong msgIdCounter = new AtomicLong();
+  private static final AtomicLong seqIDCounter = new AtomicLong();
 
+  /**
+   * System property that can be set to "true" to let the factory create lightweight messages by default.
+   */
+  public final static String LIGHTWEIGHT_MESSAGES_PROP_KEY = "passerelle.message.lightweight";
+
+  /**
+   * @deprecated DateFormat is not thread-safe, use {@link #formatTimestamp(Date)} and {@link #parseTimestamp(String)}
+   *             instead.
+   */
+  @Deprecated
   public final static DateFormat timestampFormat = DateFormat.getDateTimeInstance();
 
+  private final static ThreadLocal<TimestampFormatter> timestampFormatter = new ThreadLocal<TimestampFormatter>() {
+    protected TimestampFormatter initialValue() {
+      return new TimestampFormatter();
+    }
+  };
+
+  private volatile boolean lightweightMessages = Boolean.getBoolean(LIGHTWEIGHT_MESSAGES_PROP_KEY);
+
   public static MessageFactory getInstance() {
     return instance;
   }
 
-  public synchronized ManagedMessage createMessage() {
-    MessageContainer newMsg = new MessageContainer();
+  /**
+   * @return true if new messages are created as {@link LightweightMessageContainer}s, which only build their MIME body
+   *         part when needed.
+   */
+  public boolean isLightweightMessages() {
+    return lightweightMessages;
+  }
+
+  /**
+   * Select whether new (non-error, non-trigger) messages should be created as {@link LightweightMessageContainer}s or as
+   * plain MIME-based {@link MessageContainer}s. Messages that have already been created are not affected.
+   * 
+   * @param lightweightMessages
+   */
+  public void setLightweightMessages(boolean lightweightMessages) {
+    this.lightweightMessages = lightweightMessages;
+  }
+
+  public ManagedMessage createMessage() {
+    MessageContainer newMsg = lightweightMessages ? new LightweightMessageContainer() : new MessageContainer();
     setStdHeaders(newMsg);
 
     return newMsg;
@@ -54,7 +97,7 @@ public class MessageFactory {
    * @param headerProps
    * @return
    */
-  public synchronized ManagedMessage createMessage(Map headerProps) {
+  public ManagedMessage createMessage(Map headerProps) {
     MessageContainer newMsg = (MessageContainer) createMessage();
     setHeaders(newMsg, headerProps);
     return newMsg;
@@ -86,25 +129,25 @@ public class MessageFactory {
     }
   }
 
-  public synchronized Long createSequenceID() {
-    return new Long(seqIDCounter++);
+  public Long createSequenceID() {
+    return seqIDCounter.getAndIncrement();
   }
 
-  public synchronized ManagedMessage createCorrelatedMessage(String correlationID) {
+  public ManagedMessage createCorrelatedMessage(String correlationID) {
     MessageContainer newMsg = (MessageContainer) createMessage();
     newMsg.setHeader(ManagedMessage.SystemHeader.HEADER_CORRELATION_ID, correlationID);
 
     return newMsg;
   }
 
-  public synchronized ManagedMessage createCorrelatedMessage(String correlationID, Map headerProps) {
+  public ManagedMessage createCorrelatedMessage(String correlationID, Map headerProps) {
     MessageContainer newMsg = (MessageContainer) createMessage(headerProps);
     newMsg.setHeader(ManagedMessage.SystemHeader.HEADER_CORRELATION_ID, correlationID);
 
     return newMsg;
   }
 
-  public synchronized ManagedMessage createMessageInSequence(Long seqID, Long seqPos, boolean isSeqEnd) {
+  public ManagedMessage createMessageInSequence(Long seqID, Long seqPos, boolean isSeqEnd) {
     MessageContainer newMsg = (MessageContainer) createMessage();
     newMsg.setSequenceID(seqID);
     newMsg.setSequencePosition(seqPos);
@@ -123,7 +166,7 @@ public class MessageFactory {
    * @param headerProps
    * @return
    */
-  public synchronized ManagedMessage createMessageInSequence(Long seqID, Long seqPos, boolean isSeqEnd, Map headerProps) {
+  public ManagedMessage createMessageInSequence(Long seqID, Long seqPos, boolean isSeqEnd, Map headerProps) {
     MessageContainer newMsg = (MessageContainer) createMessage(headerProps);
     newMsg.setSequenceID(seqID);
     newMsg.setSequencePosition(seqPos);
@@ -132,26 +175,26 @@ public class MessageFactory {
     return newMsg;
   }
 
-  public synchronized ManagedMessage createErrorMessage(PasserelleException e) {
+  public ManagedMessage createErrorMessage(PasserelleException e) {
     ErrorMessageContainer newMsg = new ErrorMessageContainer(e);
     setStdHeaders(newMsg);
     return newMsg;
   }
 
-  public synchronized ManagedMessage createErrorMessage(PasserelleException e, Map headerProps) {
+  public ManagedMessage createErrorMessage(PasserelleException e, Map headerProps) {
     ErrorMessageContainer newMsg = (ErrorMessageContainer) createErrorMessage(e);
     setHeaders(newMsg, headerProps);
 
     return newMsg;
   }
 
-  public synchronized ManagedMessage createTriggerMessage() {
+  public ManagedMessage createTriggerMessage() {
     TriggerMessageContainer newMsg = new TriggerMessageContainer();
     setStdHeaders(newMsg);
     return newMsg;
   }
 
-  public synchronized ManagedMessage createTriggerMessage(Map headerProps) {
+  public ManagedMessage createTriggerMessage(Map headerProps) {
     TriggerMessageContainer newMsg = (TriggerMessageContainer) createTriggerMessage();
     setHeaders(newMsg, headerProps);
     return newMsg;
@@ -164,7 +207,7 @@ public class MessageFactory {
    * @return
    * @throws MessageException
    */
-  public synchronized ManagedMessage copyMessage(ManagedMessage msg) throws MessageException {
+  public ManagedMessage copyMessage(ManagedMessage msg) throws MessageException {
     if (msg != null && msg instanceof MessageContainer) {
       MessageContainer newMsg = ((MessageContainer) msg).copy();
       return newMsg;
@@ -181,7 +224,7 @@ public class MessageFactory {
    * @return
    * @throws MessageException
    */
-  public synchronized ManagedMessage createCausedCopyMessage(ManagedMessage msg) throws MessageException {
+  public ManagedMessage createCausedCopyMessage(ManagedMessage msg) throws MessageException {
     if (msg != null && msg instanceof MessageContainer) {
       MessageContainer newMsg = ((MessageContainer) msg).copy();
       setStdHeaders(newMsg);
@@ -202,7 +245,7 @@ public class MessageFactory {
    * @return
    * @throws MessageException
    */
-  public synchronized ManagedMessage createMessageCopyInSequence(ManagedMessage msg, Long seqID, Long seqPos, boolean isSeqEnd) throws MessageException {
+  public ManagedMessage createMessageCopyInSequence(ManagedMessage msg, Long seqID, Long seqPos, boolean isSeqEnd) throws MessageException {
     MessageContainer newMsg = (MessageContainer) copyMessage(msg);
     setStdHeaders(newMsg);
     newMsg.addCauseID(msg.getID());
@@ -222,7 +265,7 @@ public class MessageFactory {
    * @return
    * @throws MessageException
    */
-  public synchronized ManagedMessage createMessageCloneInSequence(ManagedMessage msg, Long seqID, Long seqPos, boolean isSeqEnd) throws MessageException {
+  public ManagedMessage createMessageCloneInSequence(ManagedMessage msg, Long seqID, Long seqPos, boolean isSeqEnd) throws MessageException {
     MessageContainer newMsg = (MessageContainer) copyMessage(msg);
     setStdHeaders(newMsg);
     newMsg.addCauseID(msg.getID());
@@ -233,9 +276,49 @@ public class MessageFactory {
   }
 
   private void setStdHeaders(MessageContainer newMsg) {
-    newMsg.setHeader(ManagedMessage.SystemHeader.HEADER_ID, Long.toString(msgIdCounter++));
+    newMsg.setHeader(ManagedMessage.SystemHeader.HEADER_ID, Long.toString(msgIdCounter.getAndIncrement()));
     newMsg.setHeader(ManagedMessage.SystemHeader.HEADER_VERSION, "1");
-    newMsg.setHeader(ManagedMessage.SystemHeader.HEADER_TIMESTAMP_CREATION, timestampFormat.format(new Date()));
+    newMsg.setHeader(ManagedMessage.SystemHeader.HEADER_TIMESTAMP_CREATION, timestampFormatter.get().format(System.currentTimeMillis()));
+  }
+
+  /**
+   * Formats a date in the format used for the message creation timestamp header. Can be used concurrently.
+   * 
+   * @param date
+   * @return the formatted date
+   */
+  public static String formatTimestamp(Date date) {
+    return timestampFormatter.get().format(date.getTime());
+  }
+
+  /**
+   * Parses a message creation timestamp header value. Can be used concurrently.
+   * 
+   * @param timestamp
+   * @return the parsed date
+   * @throws ParseException
+   */
+  public static Date parseTimestamp(String timestamp) throws ParseException {
+    return timestampFormatter.get().format.parse(timestamp);
+  }
+
+  /**
+   * Per-thread timestamp formatting. As the timestamp format has a resolution of seconds, the last formatted value is
+   * reused for all messages created within the same second.
+   */
+  private static class TimestampFormatter {
+    private final DateFormat format = DateFormat.getDateTimeInstance();
+    private long lastSecond = Long.MIN_VALUE;
+    private String lastFormatted;
+
+    String format(long timeMillis) {
+      long second = timeMillis / 1000;
+      if (second != lastSecond) {
+        lastFormatted = format.format(new Date(timeMillis));
+        lastSecond = second;
+      }
+      return lastFormatted;
+    }
   }
 
 }
@@ -34,6 +34,7 @@ import com.isencia.passerelle.core.ErrorCode;
 import com.isencia.passerelle.core.PasserelleException;
 import com.isencia.passerelle.core.PasserelleToken;
 import com.isencia.passerelle.core.PortHandler;
+import com.isencia.passerelle.message.internal.LightweightMessageContainer;
 import com.isencia.passerelle.message.internal.MessageContainer;
 import com.isencia.passerelle.message.internal.SettableMessage;
 import ptolemy.actor.IOPort;
@@ -394,7 +395,7 @@ public class MessageHelper {
         // res = MessageBuilder.buildFromXML(tokenMessage);
 
         // so now, just build a MessageContainer with the message as body
-        res = new MessageContainer();
+        res = MessageFactory.getInstance().isLightweightMessages() ? new LightweightMessageContainer() : new MessageContainer();
         res.setBodyContentPlainText(tokenMessage);
       }
 
@@ -36,6 +36,8 @@ public class MessageInputContext {
 	private Queue<ManagedMessage> msgQ = new ConcurrentLinkedQueue<ManagedMessage>();
 	// indicates whether this input has already been processed by an actor
 	private boolean processed;
+	// to measure how long the input has been waiting before being processed
+	private final long creationNanos = System.nanoTime();
 
 	/**
 	 * 
@@ -70,6 +72,14 @@ public class MessageInputContext {
 		return portName;
 	}
 	
+	/**
+	 * 
+	 * @return the System.nanoTime() at which this context was created
+	 */
+	public long getCreationNanos() {
+		return creationNanos;
+	}
+
 	public boolean isProcessed() {
 		return processed;
 	}
@@ -1,7 +1,10 @@
 package com.isencia.passerelle.message;
 
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 import ptolemy.actor.process.TerminateProcessException;
 import com.isencia.passerelle.actor.TerminationException;
+import com.isencia.passerelle.statistics.QueueStatistics;
 
 /**
  * A minimal interface for a message queue used typically inside an Actor 
@@ -24,6 +27,40 @@ public interface MessageQueue {
   
   MessageInputContext poll() throws InterruptedException, TerminateProcessException;
   
+  /**
+   * Removes at most the given number of messages from this queue and adds them to the given collection,
+   * in one go i.o. via repeated <code>poll()</code>s.
+   * 
+   * @param c the collection to which the messages are added
+   * @param maxElements the max nr of messages to remove; a negative value means all available messages
+   * @return the nr of messages that were removed
+   */
+  int drainTo(Collection<? super MessageInputContext> c, int maxElements) throws InterruptedException, TerminateProcessException;
+
+  /**
+   * As <code>drainTo(c, maxElements)</code>, but waits up to the given timeout for more messages to arrive,
+   * until maxElements messages have been removed.
+   * When maxElements is negative, all messages that arrive before the timeout are removed.
+   * 
+   * @param c the collection to which the messages are added
+   * @param maxElements the max nr of messages to remove; a negative value means no limit
+   * @param timeout
+   * @param unit
+   * @return the nr of messages that were removed
+   */
+  int drainTo(Collection<? super MessageInputContext> c, int maxElements, long timeout, TimeUnit unit) throws InterruptedException, TerminateProcessException;
+  
   void clear();
 
+  /**
+   * Marks this queue as terminated, and wakes up any thread that is waiting on it.
+   * After this, puts fail and reads on an empty queue throw a <code>TerminateProcessException</code>.
+   */
+  void terminate();
+
+  /**
+   * @return the depth, throughput and time-in-queue statistics of this queue
+   */
+  QueueStatistics getStatistics();
+
 }
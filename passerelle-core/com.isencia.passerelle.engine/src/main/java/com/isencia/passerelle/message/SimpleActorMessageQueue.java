@@ -1,10 +1,17 @@
 package com.isencia.passerelle.message;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import ptolemy.actor.Actor;
 import ptolemy.actor.process.TerminateProcessException;
 import com.isencia.passerelle.actor.InitializationException;
+import com.isencia.passerelle.statistics.QueueStatistics;
 
 /**
  * Instances of this class can be used to manage the actor's internal buffer to handle messages from PUSH input ports. This implementation simply provides an
@@ -15,12 +22,22 @@ import com.isencia.passerelle.actor.InitializationException;
 public class SimpleActorMessageQueue implements MessageQueue {
 
   private Actor actor;
-  private Queue<MessageInputContext> messages;
-  private boolean terminate;
+  private BlockingQueue<MessageInputContext> messages;
+  private volatile boolean terminate;
+  private QueueStatistics statistics;
+  // only used to wait for msgs in a timed drain, puts only take the lock when a drain is waiting
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private volatile int waitingReaders;
 
   public SimpleActorMessageQueue(Actor actor) throws InitializationException {
     this.actor = actor;
-    messages = new ConcurrentLinkedQueue<MessageInputContext>();
+    messages = new LinkedBlockingQueue<MessageInputContext>();
+    statistics = new QueueStatistics(actor.getFullName(), INFINITE_CAPACITY);
+  }
+
+  public QueueStatistics getStatistics() {
+    return statistics;
   }
 
   public int getCapacity() {
@@ -42,7 +59,12 @@ public class SimpleActorMessageQueue implements MessageQueue {
 
   public void put(MessageInputContext ctxt) throws InterruptedException {
     if (!terminate) {
+      // counted before adding, so a concurrent poll can never make the counted size negative
+      statistics.acceptEnqueued();
       messages.add(ctxt);
+      if (waitingReaders > 0) {
+        signalReaders();
+      }
     } else {
       throw new TerminateProcessException("Process terminated.");
     }
@@ -50,16 +72,84 @@ public class SimpleActorMessageQueue implements MessageQueue {
 
   public MessageInputContext poll() throws InterruptedException, TerminateProcessException {
     MessageInputContext result = messages.poll();
+    if (result != null) {
+      statistics.acceptDequeued(System.nanoTime() - result.getCreationNanos());
+    }
     if (terminate && result == null) {
       throw new TerminateProcessException("");
     }
     return result;
   }
 
+  public int drainTo(Collection<? super MessageInputContext> c, int maxElements) throws InterruptedException, TerminateProcessException {
+    List<MessageInputContext> drained = new ArrayList<MessageInputContext>();
+    int result = messages.drainTo(drained, maxElements < 0 ? Integer.MAX_VALUE : maxElements);
+    dequeued(drained, c);
+    if (terminate && result == 0) {
+      throw new TerminateProcessException("");
+    }
+    return result;
+  }
+
+  public int drainTo(Collection<? super MessageInputContext> c, int maxElements, long timeout, TimeUnit unit) throws InterruptedException,
+      TerminateProcessException {
+    int max = maxElements < 0 ? Integer.MAX_VALUE : maxElements;
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    List<MessageInputContext> drained = new ArrayList<MessageInputContext>();
+    int result = messages.drainTo(drained, max);
+    while (result < max && !terminate && deadline - System.nanoTime() > 0) {
+      lock.lockInterruptibly();
+      try {
+        waitingReaders++;
+        try {
+          long remainingNanos = deadline - System.nanoTime();
+          while (messages.isEmpty() && !terminate && remainingNanos > 0) {
+            notEmpty.awaitNanos(remainingNanos);
+            remainingNanos = deadline - System.nanoTime();
+          }
+        } finally {
+          waitingReaders--;
+        }
+      } finally {
+        lock.unlock();
+      }
+      result += messages.drainTo(drained, max - result);
+    }
+    dequeued(drained, c);
+    if (terminate && result == 0) {
+      throw new TerminateProcessException("");
+    }
+    return result;
+  }
+
   /**
    * Clear the state variables for this queue.
    */
   public void clear() {
-    messages.clear();
+    List<MessageInputContext> discarded = new ArrayList<MessageInputContext>();
+    messages.drainTo(discarded);
+    statistics.acceptDiscarded(discarded.size());
+  }
+
+  public void terminate() {
+    terminate = true;
+    signalReaders();
+  }
+
+  private void signalReaders() {
+    lock.lock();
+    try {
+      notEmpty.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void dequeued(List<MessageInputContext> drained, Collection<? super MessageInputContext> c) {
+    long now = System.nanoTime();
+    for (int i = 0; i < drained.size(); ++i) {
+      statistics.acceptDequeued(now - drained.get(i).getCreationNanos());
+    }
+    c.addAll(drained);
   }
 }
@@ -0,0 +1,200 @@
+/* Copyright 2011 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.internal;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.mail.Header;
+
+/**
+ * A compact, array-backed table of name/value header pairs, preserving insertion order.
+ * <p>
+ * Messages typically carry only a handful of headers, so a linear scan over two parallel arrays is cheaper than
+ * maintaining a map of lists with <code>javax.mail.Header</code> entries.
+ * </p>
+ * <p>
+ * Not thread-safe, like the message containers that use it.
+ * </p>
+ */
+public class HeaderTable implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final int DEFAULT_CAPACITY = 8;
+
+  private final boolean ignoreCase;
+  private String[] names;
+  private String[] values;
+  private int size;
+
+  /**
+   * @param ignoreCase
+   *          true if header names must be matched case-insensitively, as is the case for MIME body headers
+   */
+  public HeaderTable(boolean ignoreCase) {
+    this.ignoreCase = ignoreCase;
+    this.names = new String[DEFAULT_CAPACITY];
+    this.values = new String[DEFAULT_CAPACITY];
+  }
+
+  private HeaderTable(HeaderTable other) {
+    this.ignoreCase = other.ignoreCase;
+    this.size = other.size;
+    int capacity = Math.max(DEFAULT_CAPACITY, other.size);
+    this.names = new String[capacity];
+    this.values = new String[capacity];
+    System.arraycopy(other.names, 0, this.names, 0, other.size);
+    System.arraycopy(other.values, 0, this.values, 0, other.size);
+  }
+
+  /**
+   * @return a copy of this table. As header names and values are immutable strings, only the arrays are copied.
+   */
+  public HeaderTable copy() {
+    return new HeaderTable(this);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean contains(String name) {
+    return indexOf(name, 0) >= 0;
+  }
+
+  /**
+   * @param name
+   * @return all values for the given header name, in insertion order, or null if the header is not present
+   */
+  public String[] get(String name) {
+    int first = indexOf(name, 0);
+    if (first < 0) {
+      return null;
+    }
+    int count = 0;
+    for (int i = first; i < size; ++i) {
+      if (matches(name, names[i])) {
+        count++;
+      }
+    }
+    String[] res = new String[count];
+    for (int i = first, j = 0; j < count; ++i) {
+      if (matches(name, names[i])) {
+        res[j++] = values[i];
+      }
+    }
+    return res;
+  }
+
+  /**
+   * @param name
+   * @return the first value for the given header name, or null if the header is not present
+   */
+  public String getFirst(String name) {
+    int i = indexOf(name, 0);
+    return i >= 0 ? values[i] : null;
+  }
+
+  /**
+   * Adds a value for the given header name, keeping any existing values.
+   *
+   * @param name
+   * @param value
+   */
+  public void add(String name, String value) {
+    if (size == names.length) {
+      int newCapacity = size * 2;
+      String[] newNames = new String[newCapacity];
+      String[] newValues = new String[newCapacity];
+      System.arraycopy(names, 0, newNames, 0, size);
+      System.arraycopy(values, 0, newValues, 0, size);
+      names = newNames;
+      values = newValues;
+    }
+    names[size] = name;
+    values[size] = value;
+    size++;
+  }
+
+  /**
+   * Replaces all existing values for the given header name by the given value.
+   *
+   * @param name
+   * @param value
+   */
+  public void set(String name, String value) {
+    int i = indexOf(name, 0);
+    if (i < 0) {
+      add(name, value);
+    } else {
+      values[i] = value;
+      removeFrom(name, i + 1);
+    }
+  }
+
+  /**
+   * Removes all values for the given header name.
+   *
+   * @param name
+   */
+  public void remove(String name) {
+    removeFrom(name, 0);
+  }
+
+  /**
+   * @return the headers as a list of <code>javax.mail.Header</code>, in insertion order
+   */
+  public List<Header> toHeaderList() {
+    List<Header> res = new ArrayList<Header>(size);
+    for (int i = 0; i < size; ++i) {
+      res.add(new Header(names[i], values[i]));
+    }
+    return res;
+  }
+
+  private void removeFrom(String name, int start) {
+    int j = start;
+    for (int i = start; i < size; ++i) {
+      if (!matches(name, names[i])) {
+        names[j] = names[i];
+        values[j] = values[i];
+        j++;
+      }
+    }
+    for (int i = j; i < size; ++i) {
+      names[i] = null;
+      values[i] = null;
+    }
+    size = j;
+  }
+
+  private int indexOf(String name, int start) {
+    for (int i = start; i < size; ++i) {
+      if (matches(name, names[i])) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private boolean matches(String name, String candidate) {
+    return ignoreCase ? candidate.equalsIgnoreCase(name) : candidate.equals(name);
+  }
+}
@@ -0,0 +1,361 @@
+/* Copyright 2011 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.mail.Header;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
+
+import com.isencia.passerelle.message.ManagedMessage;
+import com.isencia.passerelle.message.MessageException;
+
+/**
+ * A MessageContainer that avoids the javax.mail machinery for the common case of messages with a plain object body.
+ * <p>
+ * Headers and body headers are kept in compact {@link HeaderTable}s and the body content is kept as a plain object
+ * reference together with its content type. The MIME body part is only built when it is explicitly requested via
+ * {@link #getBody()}, e.g. by actors that work with multipart contents or attachments. From that moment on, all body
+ * handling is delegated to the MIME body part, as for a plain <code>MessageContainer</code>.
+ * </p>
+ * <p>
+ * Copies are copy-on-write : a copy shares the header tables and body content of its original. Headers that are set on
+ * a copy, such as the version and causes headers set by the <code>MessageFactory</code>, are kept in a small overlay
+ * table. The shared tables are only copied when a change can not be expressed in the overlay, e.g. when removing a
+ * header. This keeps the cost of copying a message for each branch of a fan-out independent of the message size.
+ * </p>
+ * <p>
+ * Differences with a plain <code>MessageContainer</code> :
+ * <ul>
+ * <li>The body content type is the one that was passed when setting the content, whereas a MIME body part only
+ * reports it after its headers have been updated.</li>
+ * </ul>
+ * </p>
+ */
+public class LightweightMessageContainer extends MessageContainer {
+  private static final long serialVersionUID = 1L;
+
+  private static final String CONTENT_TYPE_HEADER = "Content-Type";
+  private static final String DEFAULT_CONTENT_TYPE = "text/plain";
+
+  private HeaderTable headerTable;
+  // when true, headerTable may be shared with copies and must not be modified
+  private boolean headerTableShared;
+  // own header values, overriding all values for the same header name in a shared headerTable
+  private HeaderTable headerOverlay;
+
+  // only used as long as no MIME view has been materialized
+  private HeaderTable bodyHeaderTable;
+  private boolean bodyHeaderTableShared;
+  private Object content;
+  private String contentType;
+
+  private boolean mimeView;
+
+  public LightweightMessageContainer() {
+    super(null, null);
+    headerTable = new HeaderTable(false);
+    bodyHeaderTable = new HeaderTable(true);
+    // same initial body state as a MessageContainer
+    bodyHeaderTable.add("Content-Disposition", Part.INLINE);
+    content = "";
+    contentType = DEFAULT_CONTENT_TYPE;
+  }
+
+  private LightweightMessageContainer(HeaderTable headerTable, HeaderTable headerOverlay, HeaderTable bodyHeaderTable, boolean bodyHeaderTableShared,
+      Object content, String contentType) {
+    super(null, null);
+    this.headerTable = headerTable;
+    this.headerTableShared = true;
+    this.headerOverlay = headerOverlay;
+    this.bodyHeaderTable = bodyHeaderTable;
+    this.bodyHeaderTableShared = bodyHeaderTableShared;
+    this.content = content;
+    this.contentType = contentType;
+  }
+
+  /**
+   * Returns a copy of this message container, with an incremented version. The header tables and body content are
+   * shared with this message, until one of both is modified.
+   *
+   * @return MessageContainer
+   */
+  @Override
+  public MessageContainer copy() throws MessageException {
+    LightweightMessageContainer res = null;
+    headerTableShared = true;
+    HeaderTable overlayCopy = (headerOverlay != null) ? headerOverlay.copy() : null;
+    if (mimeView) {
+      // the MIME body part is mutable, so the copy gets its own body headers
+      HeaderTable bodyHeaders = new HeaderTable(true);
+      for (Header aHeader : getAllBodyHeaders()) {
+        bodyHeaders.add(aHeader.getName(), aHeader.getValue());
+      }
+      res = new LightweightMessageContainer(headerTable, overlayCopy, bodyHeaders, false, getBodyContent(), getBodyContentType());
+    } else {
+      bodyHeaderTableShared = true;
+      res = new LightweightMessageContainer(headerTable, overlayCopy, bodyHeaderTable, true, content, contentType);
+    }
+    Long msgVersion = getVersion();
+    msgVersion = (msgVersion != null) ? (msgVersion + 1) : 1;
+    res.setHeader(ManagedMessage.SystemHeader.HEADER_VERSION, msgVersion.toString());
+    return res;
+  }
+
+  /**
+   * @return true if the MIME body part has been materialized for this message
+   */
+  public boolean hasMimeView() {
+    return mimeView;
+  }
+
+  /**
+   * Returns the MIME body part for this message, building it from the current body content and body headers if this
+   * was not yet done.
+   */
+  @Override
+  public PasserelleBodyPart getBody() {
+    if (!mimeView) {
+      try {
+        PasserelleBodyPart part = new PasserelleBodyPart();
+        if (content instanceof Multipart) {
+          part.setContent((Multipart) content);
+        } else if (content != null) {
+          part.setContent(content, contentType);
+        } else {
+          part.setText("");
+        }
+        for (Header aHeader : bodyHeaderTable.toHeaderList()) {
+          part.addHeader(aHeader.getName(), aHeader.getValue());
+        }
+        setBody(part);
+      } catch (MessagingException e) {
+        // should never happen, as we're not doing any content conversions here
+        throw new IllegalStateException("Error building MIME body part", e);
+      }
+    }
+    return super.getBody();
+  }
+
+  @Override
+  public void setBody(PasserelleBodyPart body) {
+    super.setBody(body);
+    mimeView = true;
+    bodyHeaderTable = null;
+    content = null;
+    contentType = null;
+  }
+
+  // HEADERS ==============================================================================
+
+  @Override
+  public Collection<Header> getAllHeaders() {
+    if (headerOverlay == null) {
+      return headerTable.toHeaderList();
+    } else {
+      List<Header> res = new ArrayList<Header>(headerTable.size() + headerOverlay.size());
+      for (Header aHeader : headerTable.toHeaderList()) {
+        if (!headerOverlay.contains(aHeader.getName())) {
+          res.add(aHeader);
+        }
+      }
+      res.addAll(headerOverlay.toHeaderList());
+      return res;
+    }
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+    if (headerTableShared) {
+      HeaderTable overlay = getHeaderOverlay();
+      if (!overlay.contains(name)) {
+        String[] sharedValues = headerTable.get(name);
+        if (sharedValues != null) {
+          for (String sharedValue : sharedValues) {
+            overlay.add(name, sharedValue);
+          }
+        }
+      }
+      overlay.add(name, value);
+    } else {
+      headerTable.add(name, value);
+    }
+  }
+
+  @Override
+  public void setHeader(String name, String value) {
+    if (headerTableShared) {
+      getHeaderOverlay().set(name, value);
+    } else {
+      headerTable.set(name, value);
+    }
+  }
+
+  @Override
+  public String getSingleHeader(String name) {
+    if (headerOverlay != null && headerOverlay.contains(name)) {
+      return headerOverlay.getFirst(name);
+    } else {
+      return headerTable.getFirst(name);
+    }
+  }
+
+  @Override
+  public String[] getHeader(String name) {
+    if (headerOverlay != null && headerOverlay.contains(name)) {
+      return headerOverlay.get(name);
+    } else {
+      return headerTable.get(name);
+    }
+  }
+
+  @Override
+  public boolean hasHeader(String name) {
+    return (headerOverlay != null && headerOverlay.contains(name)) || headerTable.contains(name);
+  }
+
+  @Override
+  public void removeHeader(String name) {
+    if (headerTableShared) {
+      unshareHeaders();
+    }
+    headerTable.remove(name);
+  }
+
+  private HeaderTable getHeaderOverlay() {
+    if (headerOverlay == null) {
+      headerOverlay = new HeaderTable(false);
+    }
+    return headerOverlay;
+  }
+
+  /**
+   * Merges the shared header table and the overlay into an own header table.
+   */
+  private void unshareHeaders() {
+    HeaderTable merged = new HeaderTable(false);
+    for (Header aHeader : getAllHeaders()) {
+      merged.add(aHeader.getName(), aHeader.getValue());
+    }
+    headerTable = merged;
+    headerTableShared = false;
+    headerOverlay = null;
+  }
+
+  private HeaderTable getWritableBodyHeaderTable() {
+    if (bodyHeaderTableShared) {
+      bodyHeaderTable = bodyHeaderTable.copy();
+      bodyHeaderTableShared = false;
+    }
+    return bodyHeaderTable;
+  }
+
+  // BODY ==================================================================================
+
+  @Override
+  public List<Header> getAllBodyHeaders() throws MessageException {
+    return mimeView ? super.getAllBodyHeaders() : bodyHeaderTable.toHeaderList();
+  }
+
+  @Override
+  public void addBodyHeader(String name, String value) throws MessageException {
+    if (mimeView) {
+      super.addBodyHeader(name, value);
+    } else {
+      getWritableBodyHeaderTable().add(name, value);
+    }
+  }
+
+  @Override
+  public void setBodyHeader(String name, String value) throws MessageException {
+    if (mimeView) {
+      super.setBodyHeader(name, value);
+    } else {
+      getWritableBodyHeaderTable().set(name, value);
+    }
+  }
+
+  @Override
+  public String[] getBodyHeader(String name) throws MessageException {
+    return mimeView ? super.getBodyHeader(name) : bodyHeaderTable.get(name);
+  }
+
+  @Override
+  public boolean hasBodyHeader(String name) throws MessageException {
+    return mimeView ? super.hasBodyHeader(name) : bodyHeaderTable.contains(name);
+  }
+
+  @Override
+  public void removeBodyHeader(String name) throws MessageException {
+    if (mimeView) {
+      super.removeBodyHeader(name);
+    } else {
+      getWritableBodyHeaderTable().remove(name);
+    }
+  }
+
+  @Override
+  public void setBodyContent(Multipart part) throws MessageException {
+    if (mimeView) {
+      super.setBodyContent(part);
+    } else {
+      content = part;
+      contentType = part.getContentType();
+    }
+  }
+
+  @Override
+  public void setBodyContentPlainText(String text) throws MessageException {
+    setBodyContent(text, DEFAULT_CONTENT_TYPE);
+  }
+
+  @Override
+  public void setBodyContent(Object content, String contentType) throws MessageException {
+    if (mimeView) {
+      super.setBodyContent(content, contentType);
+    } else {
+      this.content = content;
+      this.contentType = contentType;
+    }
+  }
+
+  @Override
+  public Object getBodyContent() throws MessageException {
+    return mimeView ? super.getBodyContent() : content;
+  }
+
+  @Override
+  public String getBodyContentType() throws MessageException {
+    if (mimeView) {
+      return super.getBodyContentType();
+    } else {
+      // an explicit body header wins, as for a MIME body part
+      String res = bodyHeaderTable.getFirst(CONTENT_TYPE_HEADER);
+      return (res != null) ? res : contentType;
+    }
+  }
+
+  @Override
+  public void saveChanges() throws MessageException {
+    if (mimeView) {
+      super.saveChanges();
+    }
+  }
+
+}
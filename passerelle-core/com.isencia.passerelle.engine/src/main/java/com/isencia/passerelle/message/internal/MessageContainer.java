@@ -14,9 +14,16 @@
 */
 package com.isencia.passerelle.message.internal;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Iterator;
@@ -89,11 +96,18 @@ import com.isencia.util.MapOfLists;
 public class MessageContainer implements ManagedMessage, SettableMessage {
   private static Logger LOGGER = LoggerFactory.getLogger(MessageContainer.class);
 
+  // body serialization formats, cfr writeObject()
+  private final static byte BODY_NONE = 0;
+  private final static byte BODY_CONTENT = 1;
+  private final static byte BODY_MIME = 2;
+
   // collection of headers (i.e. name/value pairs)
-  protected MapOfLists headers = null;
+  // javax.mail headers are not serializable, cfr writeObject()
+  protected transient MapOfLists headers = null;
 
   // the data content
-  private PasserelleBodyPart body = null;
+  // javax.mail body parts are not serializable, cfr writeObject()
+  private transient PasserelleBodyPart body = null;
 
   public MessageContainer() {
     headers = new MapOfLists();
@@ -108,6 +122,20 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
     }
   }
 
+  /**
+   * Constructor for subclasses that manage their own header and body storage, e.g. to avoid the cost of constructing the
+   * MIME structures when they are not needed.
+   * 
+   * @param headers
+   *          the collection of headers, may be null
+   * @param body
+   *          the body part, may be null
+   */
+  protected MessageContainer(MapOfLists headers, PasserelleBodyPart body) {
+    this.headers = headers;
+    this.body = body;
+  }
+
   /**
    * Returns a copy of this message container. Header collections and body are copied in a shallow way. I.e. all header
    * collections are copies, their entries are reused. Since javax.mail.Header is immutable, this is sufficient.
@@ -129,6 +157,100 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
     return res;
   }
 
+  /**
+   * The headers are written as name/value pairs. A body with serializable content is written as its content, content
+   * type and body headers, as for copy(). Other bodies, e.g. with multipart content, are written in their MIME form.
+   * 
+   * @param out
+   * @throws IOException
+   */
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    // use the fields directly, subclasses may manage their own header and body storage
+    writeHeaders(out, headers != null ? (Collection<?>) headers.values() : null);
+    if (body == null) {
+      out.writeByte(BODY_NONE);
+    } else {
+      try {
+        Object content = body.getContent();
+        if (content == null || content instanceof Serializable) {
+          out.writeByte(BODY_CONTENT);
+          out.writeObject(content);
+          out.writeObject(body.getContentType());
+          writeHeaders(out, Collections.list(body.getAllHeaders()));
+        } else {
+          out.writeByte(BODY_MIME);
+          ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          body.writeTo(bytes);
+          out.writeInt(bytes.size());
+          bytes.writeTo(out);
+        }
+      } catch (MessagingException e) {
+        throw new IOException("Error writing msg body", e);
+      }
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    List<Header> hdrs = readHeaders(in);
+    if (hdrs != null) {
+      headers = new MapOfLists();
+      for (Header hdr : hdrs) {
+        headers.put(hdr.getName(), hdr);
+      }
+    }
+    try {
+      switch (in.readByte()) {
+      case BODY_CONTENT:
+        body = new PasserelleBodyPart();
+        Object content = in.readObject();
+        String contentType = (String) in.readObject();
+        if (content != null) {
+          body.setContent(content, contentType);
+        }
+        for (Header hdr : readHeaders(in)) {
+          body.setHeader(hdr.getName(), hdr.getValue());
+        }
+        break;
+      case BODY_MIME:
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        body = new PasserelleBodyPart(new ByteArrayInputStream(bytes));
+        break;
+      default:
+        body = null;
+      }
+    } catch (MessagingException e) {
+      throw new IOException("Error reading msg body", e);
+    }
+  }
+
+  private static void writeHeaders(ObjectOutputStream out, Collection<?> hdrs) throws IOException {
+    if (hdrs == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(hdrs.size());
+      for (Object o : hdrs) {
+        Header hdr = (Header) o;
+        out.writeUTF(hdr.getName());
+        out.writeObject(hdr.getValue());
+      }
+    }
+  }
+
+  private static List<Header> readHeaders(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    int count = in.readInt();
+    if (count < 0) {
+      return null;
+    }
+    List<Header> hdrs = new ArrayList<Header>(count);
+    for (int i = 0; i < count; ++i) {
+      hdrs.add(new Header(in.readUTF(), (String) in.readObject()));
+    }
+    return hdrs;
+  }
+
   public List<Header> getAllBodyHeaders() throws MessageException {
     try {
       List<Header> col = new ArrayList<Header>();
@@ -476,7 +598,7 @@ public class MessageContainer implements ManagedMessage, SettableMessage {
       String dateHeader = headerValues[0];
       try {
         // use the std date format to parse the timestamp
-        res = MessageFactory.timestampFormat.parse(dateHeader);
+        res = MessageFactory.parseTimestamp(dateHeader);
       } catch (ParseException e) {
         LOGGER.warn("Header " + headerName + " contains illegal value " + headerValues[0]);
       }
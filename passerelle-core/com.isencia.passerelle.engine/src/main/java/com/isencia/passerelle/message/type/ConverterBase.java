@@ -29,7 +29,7 @@ import com.isencia.passerelle.message.MessageFactory;
 /**
  * @author erwin
  */
-public abstract class ConverterBase implements TypeConverter {
+public abstract class ConverterBase implements SelectiveTypeConverter {
     static Logger logger = LoggerFactory.getLogger(ConverterBase.class);
 
 	public Token convertPasserelleTokenToPtolemyToken(PasserelleToken passerelleMsgToken, Type targetType) 
@@ -121,6 +121,19 @@ public abstract class ConverterBase implements TypeConverter {
 	}
 
 
+	public boolean canConvert(Class fromContentType, Type toType) {
+		// msg tokens are passed as-is when no conversion is needed
+		return PasserelleType.PASSERELLE_MSG_TYPE.equals(toType) || areTypesCompatible(fromContentType, toType);
+	}
+
+	public boolean canConvert(Type fromType, Class toContentType) {
+		return areTypesCompatible(fromType, toContentType);
+	}
+
+	public boolean canConvert(Class fromContentType, Class toContentType) {
+		return areTypesCompatible(fromContentType, toContentType);
+	}
+
 	/**
 	 * Check if this converter is able to convert between these two types.
 	 * 
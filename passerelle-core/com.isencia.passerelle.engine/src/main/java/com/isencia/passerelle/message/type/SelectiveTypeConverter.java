@@ -0,0 +1,62 @@
+/* Copyright 2011 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.message.type;
+
+import ptolemy.data.type.Type;
+
+/**
+ * 
+ * An optional extension of the <code>TypeConverter</code> contract,
+ * for converters that can tell which conversions they support
+ * without trying them.
+ * <br/>
+ * The <code>TypeConversionChain</code> skips such converters for conversions they do not support.
+ * Converters that only implement <code>TypeConverter</code> are always tried.
+ */
+public interface SelectiveTypeConverter extends TypeConverter {
+	/**
+	 * Check, without doing a conversion, if this converter may be able to convert
+	 * Passerelle msg content of the given type into a Ptolemy token with the given type.
+	 * <br/>
+	 * Used by the <code>TypeConversionChain</code> to select the converters to try for a conversion,
+	 * so it should only return false when <code>convertPasserelleTokenToPtolemyToken()</code> would certainly throw an 
+	 * <code>UnsupportedOperationException</code> for such content.
+	 * 
+	 * @param fromContentType the type of the Passerelle msg body content
+	 * @param toType the expected Ptolemy token type
+	 * @return false if this converter does not support this conversion
+	 */
+	boolean canConvert(Class fromContentType, Type toType);
+	
+	/**
+	 * Check, without doing a conversion, if this converter may be able to convert
+	 * a Ptolemy token of the given type into a Passerelle msg with the given content type.
+	 * 
+	 * @param fromType the type of the Ptolemy token
+	 * @param toContentType the expected type of the Passerelle msg body content
+	 * @return false if this converter does not support this conversion
+	 */
+	boolean canConvert(Type fromType, Class toContentType);
+	
+	/**
+	 * Check, without doing a conversion, if this converter may be able to convert
+	 * Passerelle msg content of the given type to the given content type.
+	 * 
+	 * @param fromContentType the type of the Passerelle msg body content
+	 * @param toContentType the expected type of the resulting Passerelle msg body content
+	 * @return false if this converter does not support this conversion
+	 */
+	boolean canConvert(Class fromContentType, Class toContentType);
+}
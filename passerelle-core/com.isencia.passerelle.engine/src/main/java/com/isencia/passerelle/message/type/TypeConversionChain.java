@@ -14,14 +14,19 @@
 */
 package com.isencia.passerelle.message.type;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.isencia.passerelle.core.PasserelleException;
 import com.isencia.passerelle.core.PasserelleToken;
+import com.isencia.passerelle.core.PasserelleType;
 import com.isencia.passerelle.ext.TypeConverterProvider;
 import com.isencia.passerelle.ext.impl.DefaultTypeConverterProvider;
+import com.isencia.passerelle.message.ManagedMessage;
 import com.isencia.passerelle.message.MessageException;
 
 import ptolemy.data.Token;
@@ -30,16 +35,28 @@ import ptolemy.data.type.Type;
 /**
  * Provides an easy access to a preconfigured series
  * of converters using the Chain-of-Responsibility design pattern.
- * 
+ * <p>
+ * For each combination of source and target type, the chain only tries the converters 
+ * that claim they can handle it (cfr <code>SelectiveTypeConverter.canConvert()</code>),
+ * and the converters that do not implement <code>SelectiveTypeConverter</code>,
+ * in the order of the provider's list.
+ * These are determined once and then cached, so a conversion does not need to pass along all other converters
+ * and have each of them throw an <code>UnsupportedOperationException</code>.
+ * The cache is rebuilt when the provider or the contents of its list of converters change.
+ * </p>
  * 
  * @author erwin
  */
-public class TypeConversionChain implements TypeConverter {
+public class TypeConversionChain implements SelectiveTypeConverter {
 
 	private final static Logger logger = LoggerFactory.getLogger(TypeConversionChain.class);
 
+	// the cache is cleared when more combinations of source and target types have been used
+	private final static int MAX_CACHED_CONVERSIONS = 1024;
+
 	private final static TypeConverterProvider DEFAULT_CONVERTER_PROVIDER = new DefaultTypeConverterProvider();
-	private TypeConverterProvider converterProvider = DEFAULT_CONVERTER_PROVIDER;
+	private volatile TypeConverterProvider converterProvider = DEFAULT_CONVERTER_PROVIDER;
+	private volatile ConverterCache converterCache;
 	
 	private final static TypeConversionChain instance = new TypeConversionChain();
 	
@@ -59,120 +76,269 @@ public class TypeConversionChain implements TypeConverter {
 			this.converterProvider = converterProvider;
 		else 
 			this.converterProvider = DEFAULT_CONVERTER_PROVIDER;
+		converterCache = null;
 		
 		logger.info("Set TypeConverterProvider to {}",this.converterProvider.getName());
 	}
 
 	// used internally by ArrayConverter
 	protected Token convertContentToToken(Object content, Type targetType) throws UnsupportedOperationException, MessageException {
-		Token res = null;
-		Iterator<TypeConverter> iter = null;
-		boolean foundConversion = false;
-		for (iter = converterProvider.getTypeConverters().iterator(); iter.hasNext();) {
-			ConverterBase converter = (ConverterBase) iter.next();
-			try {
-				res = converter.convertContentToToken(content,targetType);
-				foundConversion = true;
-				break;
-			} catch (UnsupportedOperationException e) {
-				// continue the chain
+		TypeConverter[] converters = getConverters(ConversionKind.CONTENT_TO_TOKEN, content!=null?content.getClass():null, targetType);
+		for (TypeConverter converter : converters) {
+			if(converter instanceof ConverterBase) {
+				try {
+					return ((ConverterBase)converter).convertContentToToken(content,targetType);
+				} catch (UnsupportedOperationException e) {
+					// continue the chain
+				}
 			}
 		}
-		if(!foundConversion) {
-			// conversion failed
-			throw new UnsupportedOperationException();
-		}
-		
-		return res;
+		// conversion failed
+		throw new UnsupportedOperationException();
 	}
 
 	// used internally by ArrayConverter
 	protected Object convertTokenToContent(Token typedToken, Class targetType) throws UnsupportedOperationException, MessageException {
-		Object res = null;
-		Iterator iter = null;
-		boolean foundConversion = false;
-		for (iter = converterProvider.getTypeConverters().iterator(); iter.hasNext();) {
-			ConverterBase converter = (ConverterBase) iter.next();
-			try {
-				res = converter.convertTokenToContent(typedToken,targetType);
-				foundConversion = true;
-				break;
-			} catch (UnsupportedOperationException e) {
-				// continue the chain
+		TypeConverter[] converters = getConverters(ConversionKind.TOKEN_TO_CONTENT, typedToken!=null?typedToken.getType():null, targetType);
+		for (TypeConverter converter : converters) {
+			if(converter instanceof ConverterBase) {
+				try {
+					return ((ConverterBase)converter).convertTokenToContent(typedToken,targetType);
+				} catch (UnsupportedOperationException e) {
+					// continue the chain
+				}
 			}
 		}
-		if(!foundConversion) {
-			// conversion failed
-			throw new UnsupportedOperationException();
-		}
-		
-		return res;
+		// conversion failed
+		throw new UnsupportedOperationException();
 	}
 
 	public Token convertPasserelleTokenToPtolemyToken(PasserelleToken passerelleMsgToken, Type ptolemyTargetType) throws UnsupportedOperationException, PasserelleException {
-		Token res = null;
-		Iterator iter = null;
-		boolean foundConversion = false;
-		for (iter = converterProvider.getTypeConverters().iterator(); iter.hasNext();) {
-			TypeConverter converter = (TypeConverter) iter.next();
+		TypeConverter[] converters = null;
+		if(passerelleMsgToken!=null && !PasserelleType.PASSERELLE_MSG_TYPE.equals(ptolemyTargetType)) {
+			Class contentType = getMessageContentType(passerelleMsgToken);
+			if(contentType!=null) {
+				converters = getConverters(ConversionKind.CONTENT_TO_TOKEN, contentType, ptolemyTargetType);
+			}
+		}
+		if(converters==null) {
+			// no real conversion needed, the first converter will handle it
+			converters = getConverterCache().converters;
+		}
+		for (TypeConverter converter : converters) {
 			try {
-				res = converter.convertPasserelleTokenToPtolemyToken(passerelleMsgToken,ptolemyTargetType);
-				foundConversion = true;
-				break;
+				return converter.convertPasserelleTokenToPtolemyToken(passerelleMsgToken,ptolemyTargetType);
 			} catch (UnsupportedOperationException e) {
 				// continue the chain
 			}
 		}
-		if(!foundConversion) {
-			// conversion failed
-			throw new UnsupportedOperationException();
-		}
-		
-		return res;
+		// conversion failed
+		throw new UnsupportedOperationException();
 	}
 		
 	public PasserelleToken convertPtolemyTokenToPasserelleToken(Token origToken, Class targetContentType) throws UnsupportedOperationException, PasserelleException {
-		PasserelleToken res = null;
-		Iterator iter = null;
-		boolean foundConversion = false;
-		for (iter = converterProvider.getTypeConverters().iterator(); iter.hasNext();) {
-			TypeConverter converter = (TypeConverter) iter.next();
+		TypeConverter[] converters = null;
+		if(origToken instanceof PasserelleToken) {
+			Class contentType = getMessageContentType((PasserelleToken)origToken);
+			if(contentType!=null) {
+				converters = getConverters(ConversionKind.CONTENT_TO_CONTENT, contentType, targetContentType);
+			}
+		} else if(origToken!=null) {
+			converters = getConverters(ConversionKind.TOKEN_TO_CONTENT, origToken.getType(), targetContentType);
+		}
+		if(converters==null) {
+			// no real conversion needed, the first converter will handle it
+			converters = getConverterCache().converters;
+		}
+		for (TypeConverter converter : converters) {
 			try {
-				res = converter.convertPtolemyTokenToPasserelleToken(origToken, targetContentType);
-				foundConversion = true;
-				break;
+				return converter.convertPtolemyTokenToPasserelleToken(origToken, targetContentType);
 			} catch (UnsupportedOperationException e) {
 				// continue the chain
 			}
 		}
-		if(!foundConversion) {
-			// conversion failed
-			throw new UnsupportedOperationException();
-		}
-		
-		return res;
+		// conversion failed
+		throw new UnsupportedOperationException();
 	}
 
 	public PasserelleToken convertPasserelleMessageContent(PasserelleToken origToken, Class targetContentType) throws UnsupportedOperationException, PasserelleException {
-		PasserelleToken res = null;
-		Iterator iter = null;
-		boolean foundConversion = false;
-		for (iter = converterProvider.getTypeConverters().iterator(); iter.hasNext();) {
-			TypeConverter converter = (TypeConverter) iter.next();
+		TypeConverter[] converters = null;
+		if(origToken!=null) {
+			Class contentType = getMessageContentType(origToken);
+			if(contentType!=null) {
+				converters = getConverters(ConversionKind.CONTENT_TO_CONTENT, contentType, targetContentType);
+			}
+		}
+		if(converters==null) {
+			// no real conversion needed, the first converter will handle it
+			converters = getConverterCache().converters;
+		}
+		for (TypeConverter converter : converters) {
 			try {
-				res = converter.convertPasserelleMessageContent(origToken, targetContentType);
-				foundConversion = true;
-				break;
+				return converter.convertPasserelleMessageContent(origToken, targetContentType);
 			} catch (UnsupportedOperationException e) {
 				// continue the chain
 			}
 		}
-		if(!foundConversion) {
-			// conversion failed
-			throw new UnsupportedOperationException();
+		// conversion failed
+		throw new UnsupportedOperationException();
+	}
+
+	public boolean canConvert(Class fromContentType, Type toType) {
+		return getConverters(ConversionKind.CONTENT_TO_TOKEN, fromContentType, toType).length>0;
+	}
+
+	public boolean canConvert(Type fromType, Class toContentType) {
+		return getConverters(ConversionKind.TOKEN_TO_CONTENT, fromType, toContentType).length>0;
+	}
+
+	public boolean canConvert(Class fromContentType, Class toContentType) {
+		return getConverters(ConversionKind.CONTENT_TO_CONTENT, fromContentType, toContentType).length>0;
+	}
+
+	/**
+	 * @param token
+	 * @return the type of the token's message body, or null if the token has no message or no body
+	 */
+	private static Class getMessageContentType(PasserelleToken token) {
+		ManagedMessage message = token.getMessage();
+		if(message==null) {
+			return null;
+		}
+		try {
+			Object content = message.getBodyContent();
+			return content!=null ? content.getClass() : null;
+		} catch (MessageException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param kind
+	 * @param sourceType
+	 * @param targetType
+	 * @return the converters that can handle the given conversion, in the chain's order
+	 */
+	private TypeConverter[] getConverters(ConversionKind kind, Object sourceType, Object targetType) {
+		ConverterCache cache = getConverterCache();
+		ConversionKey key = new ConversionKey(kind, sourceType, targetType);
+		TypeConverter[] result = cache.candidates.get(key);
+		if(result==null) {
+			List<TypeConverter> candidates = new ArrayList<TypeConverter>();
+			for (TypeConverter converter : cache.converters) {
+				if(canConvert(converter, key)) {
+					candidates.add(converter);
+				}
+			}
+			result = candidates.toArray(new TypeConverter[candidates.size()]);
+			if(cache.candidates.size()>=MAX_CACHED_CONVERSIONS) {
+				cache.candidates.clear();
+			}
+			cache.candidates.put(key, result);
+		}
+		return result;
+	}
+
+	private static boolean canConvert(TypeConverter typeConverter, ConversionKey key) {
+		if(!(typeConverter instanceof SelectiveTypeConverter)) {
+			// no way to know without trying
+			return true;
+		}
+		SelectiveTypeConverter converter = (SelectiveTypeConverter) typeConverter;
+		try {
+			switch (key.kind) {
+			case CONTENT_TO_TOKEN:
+				return converter.canConvert((Class)key.sourceType, (Type)key.targetType);
+			case TOKEN_TO_CONTENT:
+				return converter.canConvert((Type)key.sourceType, (Class)key.targetType);
+			default:
+				return converter.canConvert((Class)key.sourceType, (Class)key.targetType);
+			}
+		} catch (RuntimeException e) {
+			// let the converter decide during the conversion itself
+			return true;
+		}
+	}
+
+	/**
+	 * The provider's list can be modified at runtime, so it is compared with the cached converters each time.
+	 * This is still a lot cheaper than trying the conversion on each converter.
+	 */
+	private ConverterCache getConverterCache() {
+		TypeConverterProvider provider = converterProvider;
+		List<TypeConverter> converters = provider.getTypeConverters();
+		ConverterCache cache = converterCache;
+		if(cache==null || !cache.isValidFor(provider, converters)) {
+			cache = new ConverterCache(provider, converters);
+			converterCache = cache;
+		}
+		return cache;
+	}
+
+	private enum ConversionKind {
+		// from msg content to a Ptolemy token
+		CONTENT_TO_TOKEN,
+		// from a Ptolemy token to msg content
+		TOKEN_TO_CONTENT,
+		// from msg content to other msg content
+		CONTENT_TO_CONTENT
+	}
+
+	private final static class ConversionKey {
+		private final ConversionKind kind;
+		private final Object sourceType;
+		private final Object targetType;
+		private final int hash;
+
+		ConversionKey(ConversionKind kind, Object sourceType, Object targetType) {
+			this.kind = kind;
+			this.sourceType = sourceType;
+			this.targetType = targetType;
+			int h = kind.hashCode();
+			h = 31 * h + (sourceType!=null?sourceType.hashCode():0);
+			h = 31 * h + (targetType!=null?targetType.hashCode():0);
+			this.hash = h;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object obj) {
+			if(this==obj)
+				return true;
+			if(!(obj instanceof ConversionKey))
+				return false;
+			ConversionKey other = (ConversionKey) obj;
+			return kind==other.kind && equal(sourceType,other.sourceType) && equal(targetType,other.targetType);
+		}
+
+		private static boolean equal(Object o1, Object o2) {
+			return o1==null ? o2==null : o1.equals(o2);
+		}
+	}
+
+	/**
+	 * The converters of a provider, and per conversion the ones that can handle it.
+	 */
+	private final static class ConverterCache {
+		private final TypeConverterProvider provider;
+		private final TypeConverter[] converters;
+		private final ConcurrentMap<ConversionKey, TypeConverter[]> candidates = new ConcurrentHashMap<ConversionKey, TypeConverter[]>();
+
+		ConverterCache(TypeConverterProvider provider, List<TypeConverter> converters) {
+			this.provider = provider;
+			this.converters = converters.toArray(new TypeConverter[converters.size()]);
+		}
+
+		boolean isValidFor(TypeConverterProvider provider, List<TypeConverter> converters) {
+			if(this.provider!=provider || this.converters.length!=converters.size())
+				return false;
+			for (int i = 0; i < this.converters.length; ++i) {
+				if(this.converters[i]!=converters.get(i))
+					return false;
+			}
+			return true;
 		}
-		
-		return res;
 	}
-	
 }
@@ -29,6 +29,11 @@ public class ActorStatistics implements ActorStatisticsMBean, NamedStatistics {
 	 * Some performance statistics. Could be usefull for monitoring purposes.
 	 */
 	private CycleStatistics cycleStatistics = new CycleStatistics();
+	
+	/**
+	 * The time messages have been waiting in the actor's queue before being processed.
+	 */
+	private LatencyHistogram queueWaitHistogram = new LatencyHistogram();
 
 
 	public ActorStatistics(Actor actor) {
@@ -47,8 +52,21 @@ public class ActorStatistics implements ActorStatisticsMBean, NamedStatistics {
 		return cycleStatistics.getNrCycles();
 	}
 
+	/**
+	 * 
+	 * @param waitNanos the time in ns that a message has been waiting in the actor's queue before being processed
+	 */
+	public void acceptQueueWait(long waitNanos) {
+		queueWaitHistogram.recordNanos(waitNanos);
+	}
+
+	public long getNrQueuedMessages() {
+		return queueWaitHistogram.getCount();
+	}
+
 	public void reset() {
 		cycleStatistics.reset();
+		queueWaitHistogram.reset();
 	}
 
 	public String getName() {
@@ -102,4 +120,76 @@ public class ActorStatistics implements ActorStatisticsMBean, NamedStatistics {
 			return 0;
 		}
 	}
+
+	public long getCycleTimeP50Micros() {
+		return cycleStatistics.getCycleHistogram().getPercentileNanos(50) / 1000;
+	}
+
+	public long getCycleTimeP99Micros() {
+		return cycleStatistics.getCycleHistogram().getPercentileNanos(99) / 1000;
+	}
+
+	public long getCycleTimeP999Micros() {
+		return cycleStatistics.getCycleHistogram().getPercentileNanos(99.9) / 1000;
+	}
+
+	public long getRecentCycleTimeP50Micros() {
+		return cycleStatistics.getCycleHistogram().getRecentPercentileNanos(50) / 1000;
+	}
+
+	public long getRecentCycleTimeP99Micros() {
+		return cycleStatistics.getCycleHistogram().getRecentPercentileNanos(99) / 1000;
+	}
+
+	public long getRecentCycleTimeP999Micros() {
+		return cycleStatistics.getCycleHistogram().getRecentPercentileNanos(99.9) / 1000;
+	}
+
+	public long getIdleTimeP50Micros() {
+		return cycleStatistics.getIdleHistogram().getPercentileNanos(50) / 1000;
+	}
+
+	public long getIdleTimeP99Micros() {
+		return cycleStatistics.getIdleHistogram().getPercentileNanos(99) / 1000;
+	}
+
+	public long getIdleTimeP999Micros() {
+		return cycleStatistics.getIdleHistogram().getPercentileNanos(99.9) / 1000;
+	}
+
+	public long getRecentIdleTimeP50Micros() {
+		return cycleStatistics.getIdleHistogram().getRecentPercentileNanos(50) / 1000;
+	}
+
+	public long getRecentIdleTimeP99Micros() {
+		return cycleStatistics.getIdleHistogram().getRecentPercentileNanos(99) / 1000;
+	}
+
+	public long getRecentIdleTimeP999Micros() {
+		return cycleStatistics.getIdleHistogram().getRecentPercentileNanos(99.9) / 1000;
+	}
+
+	public long getQueueWaitTimeP50Micros() {
+		return queueWaitHistogram.getPercentileNanos(50) / 1000;
+	}
+
+	public long getQueueWaitTimeP99Micros() {
+		return queueWaitHistogram.getPercentileNanos(99) / 1000;
+	}
+
+	public long getQueueWaitTimeP999Micros() {
+		return queueWaitHistogram.getPercentileNanos(99.9) / 1000;
+	}
+
+	public long getRecentQueueWaitTimeP50Micros() {
+		return queueWaitHistogram.getRecentPercentileNanos(50) / 1000;
+	}
+
+	public long getRecentQueueWaitTimeP99Micros() {
+		return queueWaitHistogram.getRecentPercentileNanos(99) / 1000;
+	}
+
+	public long getRecentQueueWaitTimeP999Micros() {
+		return queueWaitHistogram.getRecentPercentileNanos(99.9) / 1000;
+	}
 }
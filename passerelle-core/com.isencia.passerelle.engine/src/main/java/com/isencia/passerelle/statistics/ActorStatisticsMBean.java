@@ -26,6 +26,28 @@ public interface ActorStatisticsMBean {
 	long getAvgIdleTime();
 	long getMinIdleTime();
 	long getMaxIdleTime();
+	long getNrQueuedMessages();
+	
+	// percentiles in microseconds, over all cycles or over the recent ones 
+	// (i.e. in the last 1 to 2 statistics windows, cfr LatencyHistogram)
+	long getCycleTimeP50Micros();
+	long getCycleTimeP99Micros();
+	long getCycleTimeP999Micros();
+	long getRecentCycleTimeP50Micros();
+	long getRecentCycleTimeP99Micros();
+	long getRecentCycleTimeP999Micros();
+	long getIdleTimeP50Micros();
+	long getIdleTimeP99Micros();
+	long getIdleTimeP999Micros();
+	long getRecentIdleTimeP50Micros();
+	long getRecentIdleTimeP99Micros();
+	long getRecentIdleTimeP999Micros();
+	long getQueueWaitTimeP50Micros();
+	long getQueueWaitTimeP99Micros();
+	long getQueueWaitTimeP999Micros();
+	long getRecentQueueWaitTimeP50Micros();
+	long getRecentQueueWaitTimeP99Micros();
+	long getRecentQueueWaitTimeP999Micros();
 	
 	void reset();
 
@@ -14,8 +14,6 @@
 */
 package com.isencia.passerelle.statistics;
 
-import java.util.Date;
-
 
 /**
  * A container for counting and timing information about (processing) cycles.
@@ -30,6 +28,9 @@ import java.util.Date;
  * <i>idle</i> state when a CycleStatistics instance is created. 
  * So, the time interval from instance construction time until the first call to acceptCycleBegin()
  * is considered as the first idle period.
+ * <p>
+ * Timing is based on <code>System.nanoTime()</code>. Next to the average/min/max in ms,
+ * histograms of the cycle and idle times in ns are maintained to obtain percentiles.
  * 
  * @author erwin
  *
@@ -40,22 +41,26 @@ final class CycleStatistics {
 	// in a cycle (idle==false) or in-between cycles (idle==true)
 	private boolean idle=true;
 	
-	private Date lastCycleStartTime;
-	private Date lastCycleEndTime=new Date();
+	private long lastCycleStartNanos;
+	private long lastCycleEndNanos=System.nanoTime();
 	
 	private StatisticalLongData idleData = new StatisticalLongData();
 	private StatisticalLongData cycleData = new StatisticalLongData();
+	private LatencyHistogram idleHistogram = new LatencyHistogram();
+	private LatencyHistogram cycleHistogram = new LatencyHistogram();
 	
 	/**
 	 * Loose all statistical data.
 	 *
 	 */
 	public void reset() {
-		lastCycleStartTime=null;
-		lastCycleEndTime=new Date();
+		lastCycleStartNanos=0;
+		lastCycleEndNanos=System.nanoTime();
 		idle=true;
 		idleData.reset();
 		cycleData.reset();
+		idleHistogram.reset();
+		cycleHistogram.reset();
 	}
 	
 	/**
@@ -66,8 +71,10 @@ final class CycleStatistics {
 		if(!idle)
 			throw new IllegalStateException("Not idle");
 		idle=false;
-		lastCycleStartTime = new Date();
-		idleData.acceptData(lastCycleStartTime.getTime() - lastCycleEndTime.getTime());
+		lastCycleStartNanos = System.nanoTime();
+		long idleNanos = lastCycleStartNanos - lastCycleEndNanos;
+		idleData.acceptData(idleNanos / 1000000);
+		idleHistogram.recordNanos(idleNanos);
 	}
 	
 	/**
@@ -78,8 +85,10 @@ final class CycleStatistics {
 		if(idle)
 			throw new IllegalStateException("Idle");
 		idle=true;
-		lastCycleEndTime = new Date();
-		cycleData.acceptData(lastCycleEndTime.getTime()-lastCycleStartTime.getTime());
+		lastCycleEndNanos = System.nanoTime();
+		long cycleNanos = lastCycleEndNanos - lastCycleStartNanos;
+		cycleData.acceptData(cycleNanos / 1000000);
+		cycleHistogram.recordNanos(cycleNanos);
 	}
 	
 	public long getAvgIdleTime() throws InsufficientDataException {
@@ -106,6 +115,14 @@ final class CycleStatistics {
 		return cycleData.getMaxData();
 	}
 	
+	public LatencyHistogram getIdleHistogram() {
+		return idleHistogram;
+	}
+	
+	public LatencyHistogram getCycleHistogram() {
+		return cycleHistogram;
+	}
+	
 	public long getNrCycles() {
 		return cycleData.getCount();
 	}
@@ -15,6 +15,7 @@
 package com.isencia.passerelle.statistics;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A container for counting and timing information about arbitrary
@@ -23,23 +24,31 @@ import java.util.Date;
  * For the moment, this class is only meant for usage in this package.
  * Actual "public" statistics are provided by specific wrapper classes,
  * related to actual passerelle components (actors, ports,...).
+ * <p>
+ * Events may be added concurrently. Intervals are measured with <code>System.nanoTime()</code>,
+ * and are also maintained in a histogram to obtain percentiles.
+ * </p>
  * 
  * @author erwin
  *
  */
 final class EventStatistics {
 	
-	private Date lastTime=new Date();
+	private volatile long lastTimeMillis=System.currentTimeMillis();
+	private final AtomicLong lastNanos=new AtomicLong(System.nanoTime());
 	private StatisticalLongData statData = new StatisticalLongData();
+	private LatencyHistogram intervalHistogram = new LatencyHistogram();
 	
 	/**
 	 * Add a new event, and recalculate all interval data.
 	 *
 	 */
 	public void acceptEvent(Object event) {
-		Date time = new Date();
-		statData.acceptData(time.getTime() - lastTime.getTime());
-		lastTime = time;
+		long now = System.nanoTime();
+		long intervalNanos = now - lastNanos.getAndSet(now);
+		statData.acceptData(intervalNanos / 1000000);
+		intervalHistogram.recordNanos(intervalNanos);
+		lastTimeMillis = System.currentTimeMillis();
 	}
 	
 	/**
@@ -47,8 +56,10 @@ final class EventStatistics {
 	 *
 	 */
 	void reset() {
-		lastTime=new Date();
+		lastNanos.set(System.nanoTime());
+		lastTimeMillis=System.currentTimeMillis();
 		statData.reset();
+		intervalHistogram.reset();
 	}
 
 	/**
@@ -63,7 +74,11 @@ final class EventStatistics {
 	 * @return Returns the lastTime.
 	 */
 	public Date getLastTime() {
-		return lastTime;
+		return new Date(lastTimeMillis);
+	}
+
+	public LatencyHistogram getIntervalHistogram() {
+		return intervalHistogram;
 	}
 	
 	/**
@@ -94,7 +109,7 @@ final class EventStatistics {
 			StringBuffer buffer = new StringBuffer();
 			buffer.append("[EventStatistics:");
 			buffer.append(" lastTime: ");
-			buffer.append(lastTime);
+			buffer.append(getLastTime());
 			buffer.append(statData);
 			buffer.append("]");
 			return buffer.toString();
@@ -0,0 +1,219 @@
+/* Copyright 2011 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds, to obtain percentiles such as p50/p99/p99.9.
+ * <p>
+ * Values are counted in logarithmic buckets, each split in 32 linear sub-buckets (as in HDR histograms), so the value
+ * reported for a percentile is at most about 3% larger than the actual value. Values up to about 9 minutes are
+ * counted separately; larger values are counted in the highest bucket.
+ * </p>
+ * <p>
+ * Recording a value only increments some atomic counters, so it never blocks and can be done concurrently by any number
+ * of threads.
+ * </p>
+ * <p>
+ * Next to the counts since the last reset, a windowed view is maintained for the recent values, i.e. those recorded in
+ * the current and the previous time window. The window length is set via the system property
+ * <code>com.isencia.passerelle.statistics.window.seconds</code> (default 60).
+ * </p>
+ * For the moment, this class is only meant for usage in this package.
+ */
+final class LatencyHistogram {
+
+  public final static String WINDOW_SECONDS_PROPERTY = "com.isencia.passerelle.statistics.window.seconds";
+  private final static long WINDOW_NANOS = Long.getLong(WINDOW_SECONDS_PROPERTY, 60) * 1000000000L;
+
+  // values below 2^SUB_BUCKET_BITS are counted exactly,
+  // larger ones in 2^(SUB_BUCKET_BITS-1) sub-buckets per power of 2
+  private final static int SUB_BUCKET_BITS = 6;
+  private final static int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // 2^38 ns is about 4.6 minutes, so the highest sub-buckets go up to about 9 minutes
+  private final static int MAX_VALUE_BITS = 38;
+  private final static int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 3) * (SUB_BUCKET_COUNT >>> 1);
+
+  private static class Counts {
+    final long startNanos;
+    final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    final AtomicLong count = new AtomicLong();
+
+    Counts(long startNanos) {
+      this.startNanos = startNanos;
+    }
+
+    void record(int bucket) {
+      buckets.incrementAndGet(bucket);
+      count.incrementAndGet();
+    }
+  }
+
+  private final long windowNanos;
+  // the arrays are only created when a first value is recorded, as many ports and actors never get any data
+  private volatile Counts total;
+  private volatile Counts currentWindow;
+  private volatile Counts previousWindow;
+
+  LatencyHistogram() {
+    this(WINDOW_NANOS);
+  }
+
+  LatencyHistogram(long windowNanos) {
+    this.windowNanos = windowNanos;
+  }
+
+  /**
+   * @param nanos
+   *          a duration in nanoseconds; negative values are ignored
+   */
+  public void recordNanos(long nanos) {
+    if (nanos < 0) {
+      return;
+    }
+    int bucket = bucketIndex(nanos);
+    Counts t = total;
+    if (t == null) {
+      t = initCounts();
+    }
+    t.record(bucket);
+    getCurrentWindow().record(bucket);
+  }
+
+  /**
+   * @return the nr of recorded values since the last reset
+   */
+  public long getCount() {
+    Counts t = total;
+    return t != null ? t.count.get() : 0;
+  }
+
+  /**
+   * @return the nr of values recorded in the current and previous window
+   */
+  public long getRecentCount() {
+    Counts c = getCurrentWindow();
+    Counts p = previousWindow;
+    return c.count.get() + (p != null ? p.count.get() : 0);
+  }
+
+  /**
+   * @param percentile
+   *          between 0 and 100
+   * @return the value in ns below which the given percentage of all values recorded since the last reset fall, or 0 if
+   *         there are no values.
+   */
+  public long getPercentileNanos(double percentile) {
+    Counts t = total;
+    return t != null ? percentile(percentile, t, null) : 0;
+  }
+
+  /**
+   * @param percentile
+   *          between 0 and 100
+   * @return the value in ns below which the given percentage of the recent values fall, or 0 if there are no values.
+   */
+  public long getRecentPercentileNanos(double percentile) {
+    if (total == null) {
+      return 0;
+    }
+    return percentile(percentile, getCurrentWindow(), previousWindow);
+  }
+
+  /**
+   * Loose all statistical data.
+   */
+  public synchronized void reset() {
+    total = null;
+    currentWindow = null;
+    previousWindow = null;
+  }
+
+  private synchronized Counts initCounts() {
+    if (total == null) {
+      long now = System.nanoTime();
+      currentWindow = new Counts(now);
+      total = new Counts(now);
+    }
+    return total;
+  }
+
+  private Counts getCurrentWindow() {
+    Counts c = currentWindow;
+    if (c == null || System.nanoTime() - c.startNanos >= windowNanos) {
+      c = rotateWindow();
+    }
+    return c;
+  }
+
+  private synchronized Counts rotateWindow() {
+    long now = System.nanoTime();
+    Counts c = currentWindow;
+    if (c == null) {
+      currentWindow = new Counts(now);
+    } else if (now - c.startNanos >= windowNanos) {
+      // when nothing was recorded during a full window, the previous window is outdated as well
+      previousWindow = (now - c.startNanos < 2 * windowNanos) ? c : null;
+      currentWindow = new Counts(now);
+    }
+    return currentWindow;
+  }
+
+  private static long percentile(double percentile, Counts counts, Counts extraCounts) {
+    long count = counts.count.get() + (extraCounts != null ? extraCounts.count.get() : 0);
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; ++i) {
+      seen += counts.buckets.get(i);
+      if (extraCounts != null) {
+        seen += extraCounts.buckets.get(i);
+      }
+      if (seen >= rank) {
+        return bucketUpperValue(i);
+      }
+    }
+    // counts were incremented while we were scanning
+    return bucketUpperValue(BUCKET_COUNT - 1);
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int magnitude = 63 - Long.numberOfLeadingZeros(value);
+    if (magnitude > MAX_VALUE_BITS) {
+      return BUCKET_COUNT - 1;
+    }
+    int shift = magnitude - SUB_BUCKET_BITS + 1;
+    // the top SUB_BUCKET_BITS bits of the value, with the leading 1 removed, give the sub-bucket
+    int subBucket = (int) (value >>> shift) - (SUB_BUCKET_COUNT >>> 1);
+    return shift * (SUB_BUCKET_COUNT >>> 1) + (SUB_BUCKET_COUNT >>> 1) + subBucket;
+  }
+
+  static long bucketUpperValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int half = SUB_BUCKET_COUNT >>> 1;
+    int shift = (index - half) / half;
+    long subBucket = (index - half) % half + half;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
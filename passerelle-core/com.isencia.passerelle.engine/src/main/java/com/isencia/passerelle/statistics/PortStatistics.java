@@ -94,4 +94,52 @@ public class PortStatistics implements PortStatisticsMBean, NamedStatistics {
 	public String getName() {
 		return portName;
 	}
+
+	public long getIntervalSentMessagesP50Micros() {
+		return sendingStatistics.getIntervalHistogram().getPercentileNanos(50) / 1000;
+	}
+
+	public long getIntervalSentMessagesP99Micros() {
+		return sendingStatistics.getIntervalHistogram().getPercentileNanos(99) / 1000;
+	}
+
+	public long getIntervalSentMessagesP999Micros() {
+		return sendingStatistics.getIntervalHistogram().getPercentileNanos(99.9) / 1000;
+	}
+
+	public long getRecentIntervalSentMessagesP50Micros() {
+		return sendingStatistics.getIntervalHistogram().getRecentPercentileNanos(50) / 1000;
+	}
+
+	public long getRecentIntervalSentMessagesP99Micros() {
+		return sendingStatistics.getIntervalHistogram().getRecentPercentileNanos(99) / 1000;
+	}
+
+	public long getRecentIntervalSentMessagesP999Micros() {
+		return sendingStatistics.getIntervalHistogram().getRecentPercentileNanos(99.9) / 1000;
+	}
+
+	public long getIntervalReceivedMessagesP50Micros() {
+		return receiptStatistics.getIntervalHistogram().getPercentileNanos(50) / 1000;
+	}
+
+	public long getIntervalReceivedMessagesP99Micros() {
+		return receiptStatistics.getIntervalHistogram().getPercentileNanos(99) / 1000;
+	}
+
+	public long getIntervalReceivedMessagesP999Micros() {
+		return receiptStatistics.getIntervalHistogram().getPercentileNanos(99.9) / 1000;
+	}
+
+	public long getRecentIntervalReceivedMessagesP50Micros() {
+		return receiptStatistics.getIntervalHistogram().getRecentPercentileNanos(50) / 1000;
+	}
+
+	public long getRecentIntervalReceivedMessagesP99Micros() {
+		return receiptStatistics.getIntervalHistogram().getRecentPercentileNanos(99) / 1000;
+	}
+
+	public long getRecentIntervalReceivedMessagesP999Micros() {
+		return receiptStatistics.getIntervalHistogram().getRecentPercentileNanos(99.9) / 1000;
+	}
 }
@@ -26,6 +26,21 @@ public interface PortStatisticsMBean {
 	long getNrReceivedMessages();
 	long getAvgIntervalReceivedMessages();
 	
+	// percentiles in microseconds, over all messages or over the recent ones 
+	// (i.e. in the last 1 to 2 statistics windows, cfr LatencyHistogram)
+	long getIntervalSentMessagesP50Micros();
+	long getIntervalSentMessagesP99Micros();
+	long getIntervalSentMessagesP999Micros();
+	long getRecentIntervalSentMessagesP50Micros();
+	long getRecentIntervalSentMessagesP99Micros();
+	long getRecentIntervalSentMessagesP999Micros();
+	long getIntervalReceivedMessagesP50Micros();
+	long getIntervalReceivedMessagesP99Micros();
+	long getIntervalReceivedMessagesP999Micros();
+	long getRecentIntervalReceivedMessagesP50Micros();
+	long getRecentIntervalReceivedMessagesP99Micros();
+	long getRecentIntervalReceivedMessagesP999Micros();
+	
 	void reset();
 
 }
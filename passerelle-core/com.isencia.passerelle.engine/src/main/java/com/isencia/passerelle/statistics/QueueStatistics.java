@@ -0,0 +1,197 @@
+/* Copyright 2012 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.statistics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * QueueStatistics
+ * <p>
+ * Maintains the depth, throughput and time-in-queue of a message queue, e.g. an actor's queue for its PUSH inputs or
+ * the receiver queues of a PULL input port. The queue reports each message that it stores, hands out or discards; all
+ * counters are atomic so this can be done without holding a lock on the statistics.
+ * </p>
+ * <p>
+ * The queue's depth is tracked live and is not affected by a <code>reset()</code>.
+ * </p>
+ */
+public class QueueStatistics implements QueueStatisticsMBean, NamedStatistics {
+
+	/**
+	 * Appended to the full name of the queue's owner (an actor or a port) to obtain the statistics' name.
+	 * As it contains a character that is not allowed in Ptolemy names, it can not clash with the statistics
+	 * of another actor or port.
+	 */
+	public final static String NAME_SUFFIX = "#queue";
+	
+	private String queueName;
+	private volatile int capacity;
+	
+	private final AtomicInteger size = new AtomicInteger();
+	private final StatisticalLongData sizeStatistics = new StatisticalLongData();
+	private final AtomicLong enqueuedCount = new AtomicLong();
+	private final AtomicLong dequeuedCount = new AtomicLong();
+	private final AtomicLong discardedCount = new AtomicLong();
+	private volatile long startNanos = System.nanoTime();
+	
+	/**
+	 * The time messages have been waiting in the queue before being handed out.
+	 */
+	private LatencyHistogram waitHistogram = new LatencyHistogram();
+
+	/**
+	 * 
+	 * @param ownerName the full name of the actor or port that owns the queue
+	 * @param capacity the queue's capacity, or -1 for an unbounded queue
+	 */
+	public QueueStatistics(String ownerName, int capacity) {
+		this.queueName = ownerName + NAME_SUFFIX;
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * To be called each time a message is stored in the queue.
+	 */
+	public void acceptEnqueued() {
+		enqueuedCount.incrementAndGet();
+		sizeStatistics.acceptData(size.incrementAndGet());
+	}
+	
+	/**
+	 * To be called each time a message is handed out by the queue.
+	 * 
+	 * @param waitNanos the time in ns that the message has been in the queue, or a negative value if unknown
+	 */
+	public void acceptDequeued(long waitNanos) {
+		dequeuedCount.incrementAndGet();
+		sizeStatistics.acceptData(size.decrementAndGet());
+		waitHistogram.recordNanos(waitNanos);
+	}
+	
+	/**
+	 * To be called when messages are removed from the queue without being handed out, 
+	 * e.g. when the queue is cleared or when an overflow policy drops them.
+	 * 
+	 * @param count the nr of removed messages
+	 */
+	public void acceptDiscarded(int count) {
+		if (count > 0) {
+			discardedCount.addAndGet(count);
+			sizeStatistics.acceptData(size.addAndGet(-count));
+		}
+	}
+
+	public void reset() {
+		enqueuedCount.set(0);
+		dequeuedCount.set(0);
+		discardedCount.set(0);
+		sizeStatistics.reset();
+		waitHistogram.reset();
+		startNanos = System.nanoTime();
+	}
+
+	public String getName() {
+		return queueName;
+	}
+	
+	public int getSize() {
+		return size.get();
+	}
+
+	public int getMinSize() {
+		try {
+			return (int) sizeStatistics.getMinData();
+		} catch (InsufficientDataException e) {
+			return getSize();
+		}
+	}
+
+	public int getMaxSize() {
+		try {
+			return (int) sizeStatistics.getMaxData();
+		} catch (InsufficientDataException e) {
+			return getSize();
+		}
+	}
+
+	public int getAvgSize() {
+		try {
+			return (int) sizeStatistics.getAvgData();
+		} catch (InsufficientDataException e) {
+			return getSize();
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Only registers the capacity that is reported, it does not change the capacity of the queue itself.
+	 */
+	public void setCapacity(int newCapacity) {
+		this.capacity = newCapacity;
+	}
+
+	public long getNrEnqueuedMessages() {
+		return enqueuedCount.get();
+	}
+
+	public long getNrDequeuedMessages() {
+		return dequeuedCount.get();
+	}
+
+	public long getNrDiscardedMessages() {
+		return discardedCount.get();
+	}
+
+	public double getEnqueueRate() {
+		return getRate(enqueuedCount.get());
+	}
+
+	public double getDequeueRate() {
+		return getRate(dequeuedCount.get());
+	}
+	
+	private double getRate(long count) {
+		long elapsedNanos = System.nanoTime() - startNanos;
+		return elapsedNanos > 0 ? count * 1.0E9 / elapsedNanos : 0;
+	}
+
+	public long getWaitTimeP50Micros() {
+		return waitHistogram.getPercentileNanos(50) / 1000;
+	}
+
+	public long getWaitTimeP99Micros() {
+		return waitHistogram.getPercentileNanos(99) / 1000;
+	}
+
+	public long getWaitTimeP999Micros() {
+		return waitHistogram.getPercentileNanos(99.9) / 1000;
+	}
+
+	public long getRecentWaitTimeP50Micros() {
+		return waitHistogram.getRecentPercentileNanos(50) / 1000;
+	}
+
+	public long getRecentWaitTimeP99Micros() {
+		return waitHistogram.getRecentPercentileNanos(99) / 1000;
+	}
+
+	public long getRecentWaitTimeP999Micros() {
+		return waitHistogram.getRecentPercentileNanos(99.9) / 1000;
+	}
+}
@@ -20,6 +20,8 @@ package com.isencia.passerelle.statistics;
  */
 public interface QueueStatisticsMBean {
 	
+	// the live queue depth, and the min/avg/max depth since the last reset
+	// (the max size is the queue's high-water mark)
 	int getSize();
 	int getMinSize();
 	int getMaxSize();
@@ -27,5 +29,21 @@ public interface QueueStatisticsMBean {
 	int getCapacity();
 	void setCapacity(int newCapacity);
 	
+	long getNrEnqueuedMessages();
+	long getNrDequeuedMessages();
+	long getNrDiscardedMessages();
+	// in messages per second, since the last reset
+	double getEnqueueRate();
+	double getDequeueRate();
+	
+	// time spent in the queue, in microseconds, over all messages or over the recent ones 
+	// (i.e. in the last 1 to 2 statistics windows, cfr LatencyHistogram)
+	long getWaitTimeP50Micros();
+	long getWaitTimeP99Micros();
+	long getWaitTimeP999Micros();
+	long getRecentWaitTimeP50Micros();
+	long getRecentWaitTimeP99Micros();
+	long getRecentWaitTimeP999Micros();
+	
 	void reset();
 }
@@ -14,50 +14,59 @@
 */
 package com.isencia.passerelle.statistics;
 
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * StatisticalLongData
+ * <p>
+ * Maintains count, average, minimum and maximum of a series of values.
+ * Values can be added concurrently without locking : the counters are atomic, 
+ * and min/max are only updated (via compare-and-set) when a new extreme is found.
+ * </p>
  * 
  * @author erwin
  */
 class StatisticalLongData {
 	
-	long count;
-	long avgData;
-	Long minData;
-	Long maxData;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sumData = new AtomicLong();
+	private final AtomicLong minData = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong maxData = new AtomicLong(Long.MIN_VALUE);
 
 	/**
 	 * Recalculate statistics, including this new data
 	 * @param data
 	 */
-	public synchronized void acceptData(long data) {
-		count++;
-		if((minData==null) || (minData.longValue()>data)) {
-			minData = new Long(data);
+	public void acceptData(long data) {
+		long min = minData.get();
+		while (data < min && !minData.compareAndSet(min, data)) {
+			min = minData.get();
 		}
-		if((maxData==null) || (maxData.longValue()<data)) {
-			maxData = new Long(data);
+		long max = maxData.get();
+		while (data > max && !maxData.compareAndSet(max, data)) {
+			max = maxData.get();
 		}
-		avgData += (data - avgData) / count;
+		sumData.addAndGet(data);
+		count.incrementAndGet();
 	}
 	
 	/**
 	 * Loose all statistical data
 	 *
 	 */
-	public synchronized void reset() {
-		count=0;
-		avgData=0;
-		minData=null;
-		maxData=null;
+	public void reset() {
+		count.set(0);
+		sumData.set(0);
+		minData.set(Long.MAX_VALUE);
+		maxData.set(Long.MIN_VALUE);
 	}
 	
 	public long getAvgData() throws InsufficientDataException {
-		if(isWaitingForSufficientData())
+		long c = count.get();
+		if(c==0)
 			throw new InsufficientDataException();
 		
-		return avgData;
+		return sumData.get() / c;
 	}
 	
 	/**
@@ -68,7 +77,7 @@ class StatisticalLongData {
 		if(isWaitingForSufficientData())
 			throw new InsufficientDataException();
 		
-		return maxData.longValue();
+		return maxData.get();
 	}
 	
 	/**
@@ -79,15 +88,15 @@ class StatisticalLongData {
 		if(isWaitingForSufficientData())
 			throw new InsufficientDataException();
 		
-		return minData.longValue();
+		return minData.get();
 	}
 
 	public boolean isWaitingForSufficientData() {
-		return count==0;
+		return count.get()==0;
 	}
 
 	public long getCount() {
-		return count;
+		return count.get();
 	}
 
 	public String toString() {
@@ -96,7 +105,8 @@ class StatisticalLongData {
 			buffer.append(" count: ");
 			buffer.append(count);
 			buffer.append(" avgData: ");
-			buffer.append(avgData);
+			long c = count.get();
+			buffer.append(c != 0 ? sumData.get() / c : 0);
 			buffer.append(" minData: ");
 			buffer.append(minData);
 			buffer.append(" maxData: ");
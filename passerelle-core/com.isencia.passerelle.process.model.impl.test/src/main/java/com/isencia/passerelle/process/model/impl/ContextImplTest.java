@@ -0,0 +1,114 @@
+package com.isencia.passerelle.process.model.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.isencia.passerelle.process.model.Context;
+import com.isencia.passerelle.process.model.Status;
+
+public class ContextImplTest {
+
+  private RequestImpl request;
+  private ContextImpl context;
+
+  @Before
+  public void setUp() {
+    request = new RequestImpl(new CaseImpl("test"), "test", "testRequest");
+    context = request.getProcessingContext();
+  }
+
+  @Test
+  public void testLookupInFinishedTasks() {
+    TaskImpl task1 = createTask("measure", "value", "1");
+    TaskImpl task2 = createTask("measure", "value", "2");
+    assertNull("Results of busy tasks should not be found", context.lookupValue("value"));
+
+    task1.getProcessingContext().setStatus(Status.FINISHED);
+    assertEquals("1", context.lookupValue("value"));
+    assertEquals("1", context.lookupValue("MEASURE", "value"));
+    assertNull(context.lookupValue("other", "value"));
+
+    // the most recent task wins, even when it finished later
+    task2.getProcessingContext().setStatus(Status.FINISHED);
+    assertEquals("2", context.lookupValue("value"));
+
+    task2.getProcessingContext().setStatus(Status.CANCELLED);
+    assertEquals("Results of cancelled tasks should be skipped", "1", context.lookupValue("value"));
+  }
+
+  @Test
+  public void testLookupPriorities() {
+    request.putAttribute(new RequestAttributeImpl(request, "Value", "request"));
+    assertEquals("request", context.lookupValue("value"));
+
+    TaskImpl task = createTask("measure", "value", "task");
+    task.getProcessingContext().setStatus(Status.FINISHED);
+    assertEquals("task", context.lookupValue("value"));
+
+    task.getProcessingContext().putEntry("VALUE", "taskEntry");
+    assertEquals("taskEntry", context.lookupValue("value"));
+
+    context.putEntry("value", "contextEntry");
+    assertEquals("contextEntry", context.lookupValue("value"));
+  }
+
+  @Test
+  public void testLookupAfterForkAndJoin() {
+    TaskImpl task1 = createTask("measure", "value", "1");
+    task1.getProcessingContext().setStatus(Status.FINISHED);
+    assertEquals("1", context.lookupValue("value"));
+
+    // the fork becomes the parent context of the existing tasks
+    Context branch = context.fork();
+    task1.getProcessingContext().putEntry("value", "entry1");
+    assertEquals("Entries put on a shared task should be found in the original context", "entry1", context.lookupValue("value"));
+    assertEquals("entry1", branch.lookupValue("value"));
+
+    TaskImpl task2 = new TaskImpl((ContextImpl) branch, "test", "branchTask");
+    task2.getProcessingContext().setStatus(Status.FINISHED);
+    task2.getProcessingContext().putEntry("value", "entry2");
+    assertEquals("entry2", branch.lookupValue("value"));
+    assertEquals("Tasks of the branch should only be found after the join", "entry1", context.lookupValue("value"));
+
+    context.join(branch);
+    assertEquals("entry2", context.lookupValue("value"));
+    task2.getProcessingContext().putEntry("value", "entry3");
+    assertEquals("entry3", context.lookupValue("value"));
+  }
+
+  @Test
+  public void testRequestAttributesAddedLater() {
+    assertNull(context.lookupValue("value"));
+    request.putAttribute(new RequestAttributeImpl(request, "value", "request"));
+    assertEquals("request", context.lookupValue("value"));
+  }
+
+  @Test
+  public void testLookupAfterMinimize() {
+    createTask("measure", "value", "1").getProcessingContext().setStatus(Status.FINISHED);
+    assertEquals("1", context.lookupValue("value"));
+    context.minimize();
+    assertNull(context.lookupValue("value"));
+    createTask("measure", "value", "2").getProcessingContext().setStatus(Status.FINISHED);
+    assertEquals("2", context.lookupValue("value"));
+  }
+
+  @Test
+  public void testLookupManyTasks() {
+    for (int i = 0; i < 500; ++i) {
+      TaskImpl task = createTask("measure", "value" + i, Integer.toString(i));
+      task.getProcessingContext().setStatus(Status.FINISHED);
+      assertEquals(Integer.toString(i), context.lookupValue("value" + i));
+      assertEquals("0", context.lookupValue("value0"));
+    }
+  }
+
+  private TaskImpl createTask(String dataType, String itemName, String itemValue) {
+    TaskImpl task = new TaskImpl(context, "test", "testTask");
+    ResultBlockImpl block = new ResultBlockImpl(task, dataType);
+    block.putItem(new StringResultItemImpl(block, itemName, itemValue));
+    return task;
+  }
+}
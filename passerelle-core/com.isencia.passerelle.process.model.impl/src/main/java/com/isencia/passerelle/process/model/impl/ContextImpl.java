@@ -5,7 +5,6 @@ package com.isencia.passerelle.process.model.impl;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -39,15 +38,11 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.Predicate;
 import org.apache.commons.collections.map.CaseInsensitiveMap;
 
-import com.isencia.passerelle.process.model.Attribute;
 import com.isencia.passerelle.process.model.Context;
 import com.isencia.passerelle.process.model.ContextErrorEvent;
 import com.isencia.passerelle.process.model.ContextEvent;
 import com.isencia.passerelle.process.model.ErrorItem;
 import com.isencia.passerelle.process.model.Matcher;
-import com.isencia.passerelle.process.model.NamedValue;
-import com.isencia.passerelle.process.model.ResultBlock;
-import com.isencia.passerelle.process.model.ResultItem;
 import com.isencia.passerelle.process.model.Status;
 import com.isencia.passerelle.process.model.Task;
 import com.isencia.passerelle.process.model.factory.HistoricalDataProvider;
@@ -127,6 +122,15 @@ public class ContextImpl implements Context {
   @Transient
   private List<Context> forkedContexts = new CopyOnWriteArrayList<Context>();
 
+  // index for getDeepEntryValue() and lookupValue(), maintained as tasks finish
+  @Transient
+  private transient ContextLookupIndex lookupIndex;
+
+  // incremented on each change of the entries, to know when the historical data or, for a task's context, the task's
+  // entries in the lookup index must be obtained again
+  @Transient
+  private int entriesModCount;
+
   public static final String _ID = "id";
   public static final String _STATUS = "status";
   public static final String _REQUEST = "request";
@@ -209,6 +213,13 @@ public class ContextImpl implements Context {
     return Collections.unmodifiableList(tasks);
   }
 
+  /**
+   * @return the actual task list, which is replaced by a new list on a minimize().
+   */
+  List<Task> getTaskList() {
+    return tasks;
+  }
+
   void addEvent(ContextEvent event) {
     if (!ProcessUtils.isInitialized(events))
       events = new ArrayList<ContextEvent>();
@@ -241,10 +252,12 @@ public class ContextImpl implements Context {
 
   public void putEntry(String name, Serializable value) {
     entries.put(name, value);
+    entriesModCount++;
   }
 
   public Serializable removeDeepEntry(String name) {
     removeEntry(name);
+    entriesModCount++;
     List<Task> tasks = getTasks();
     for (Task task : tasks) {
       task.getProcessingContext().removeEntry(name);
@@ -253,9 +266,14 @@ public class ContextImpl implements Context {
   }
 
   public Serializable removeEntry(String name) {
+    entriesModCount++;
     return entries.remove(name);
   }
 
+  int getEntriesModCount() {
+    return entriesModCount;
+  }
+
   public Map<String, Serializable> getDeepEntryValues() {
     Map<String, Serializable> map = new HashMap<String, Serializable>();
     // check in task results, most recent first
@@ -294,18 +312,10 @@ public class ContextImpl implements Context {
       return entryValue;
     }
     // check in task results, most recent first
-    // we get a copy of the tasks list, so need to synchronize etc
-    List<Task> tasks = getTasks();
-    for (int taskIdx = tasks.size() - 1; taskIdx >= 0; taskIdx--) {
-      Task task = tasks.get(taskIdx);
-      if (task.getProcessingContext().getStatus().isFinalStatus() && !Status.CANCELLED.equals(task.getProcessingContext().getStatus())) {
-        entryValue = task.getProcessingContext().getEntryValue(name);
-        if (entryValue != null) {
-          return entryValue;
-        }
-      }
+    ContextLookupIndex index = getLookupIndex();
+    synchronized (index) {
+      return index.getTaskEntryValue(name);
     }
-    return null;
   }
 
   public Serializable getEntryValue(String name) {
@@ -330,58 +340,21 @@ public class ContextImpl implements Context {
       // need to force this into a string somehow
       result = contextEntry.toString();
     } else {
-      // check in task results, most recent first
-      // we get a copy of the tasks list, so need to synchronize etc
-      List<Task> tasks = getTasks();
-      for (int taskIdx = tasks.size() - 1; taskIdx >= 0 && result == null; taskIdx--) {
-        Task task = tasks.get(taskIdx);
-        if (task.getProcessingContext().getStatus().isFinalStatus() && !Status.CANCELLED.equals(task.getProcessingContext().getStatus())) {
-          Collection<ResultBlock> blocks = task.getResultBlocks();
-          for (ResultBlock block : blocks) {
-            if (dataType == null || block.getType().equalsIgnoreCase(dataType)) {
-              ResultItem<?> item = block.getItemForName(name);
-              if (item != null) {
-                result = item.getValueAsString();
-                break;
-              }
-            }
-          }
+      ContextLookupIndex index = getLookupIndex();
+      synchronized (index) {
+        // check in task results, most recent first
+        result = index.getTaskResultValue(dataType, name);
+
+        // if still nothing found, check in the original request
+        if (result == null) {
+          result = index.getRequestAttributeValue(name);
         }
-      }
 
-      // if still nothing found, check in the original request
-      if (result == null && getRequest() != null) {
-        NamedValue<?> reqAttribute = getRequest().getAttribute(name);
-        result = reqAttribute != null ? reqAttribute.getValueAsString() : null;
-      }
-
-      // if still nothin found, check in the historical data
-      if (result == null) {
-        HistoricalDataProvider historicalDataProvider = HistoricalDataProviderTracker.getService();
-        if (historicalDataProvider != null) {
-          List<Attribute> historicalRequestAttributes = historicalDataProvider.getRequestAttributes(this);
-          if (historicalRequestAttributes != null) {
-            for (Attribute attribute : historicalRequestAttributes) {
-              if (attribute.getName().equalsIgnoreCase(name)) {
-                result = attribute.getValueAsString();
-                break;
-              }
-            }
-          }
-
-          if (result == null) {
-            List<ResultBlock> historicalBlocks = historicalDataProvider.getResultBlocks(this);
-            if (historicalBlocks != null) {
-              for (ResultBlock block : historicalBlocks) {
-                if (dataType == null || block.getType().equalsIgnoreCase(dataType)) {
-                  ResultItem<?> item = block.getItemForName(name);
-                  if (item != null) {
-                    result = item.getValueAsString();
-                    break;
-                  }
-                }
-              }
-            }
+        // if still nothin found, check in the historical data
+        if (result == null) {
+          HistoricalDataProvider historicalDataProvider = HistoricalDataProviderTracker.getService();
+          if (historicalDataProvider != null) {
+            result = index.getHistoricalValue(historicalDataProvider, dataType, name);
           }
         }
       }
@@ -394,6 +367,13 @@ public class ContextImpl implements Context {
     return lookupValue(null, name);
   }
 
+  private synchronized ContextLookupIndex getLookupIndex() {
+    if (lookupIndex == null) {
+      lookupIndex = new ContextLookupIndex(this);
+    }
+    return lookupIndex;
+  }
+
   public boolean isFinished() {
     return status.isFinalStatus();
   }
@@ -482,6 +462,7 @@ public class ContextImpl implements Context {
 
         // merge context entries
         entries.putAll(contextToMerge.entries);
+        entriesModCount++;
 
         // Status.RESTARTED should be overwritten in case other status is found
         if (Status.RESTARTED.equals(this.getStatus()) && !Status.RESTARTED.equals(context.getStatus())) {
@@ -0,0 +1,308 @@
+/**
+ * 
+ */
+package com.isencia.passerelle.process.model.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.isencia.passerelle.process.model.Attribute;
+import com.isencia.passerelle.process.model.Context;
+import com.isencia.passerelle.process.model.ResultBlock;
+import com.isencia.passerelle.process.model.ResultItem;
+import com.isencia.passerelle.process.model.Status;
+import com.isencia.passerelle.process.model.Task;
+import com.isencia.passerelle.process.model.factory.HistoricalDataProvider;
+import com.isencia.passerelle.process.model.impl.util.ProcessUtils;
+
+/**
+ * Index of the values that can be found via <code>ContextImpl.getDeepEntryValue()</code> and
+ * <code>ContextImpl.lookupValue()</code>, so these don't need to walk all tasks, result blocks and request attributes
+ * on each lookup.
+ * <p>
+ * The index is maintained incrementally : on each lookup, the tasks that were added since the previous lookup are
+ * scanned, and tasks that were still busy at that time are checked again. The entries and result items of a task are
+ * indexed when the task is first seen in a final status. Entries that are put on a task's context after that are
+ * found by checking the entries' modification count of the indexed tasks on each entry lookup, as tasks can be shared
+ * by several contexts, e.g. after a <code>fork()</code>. Result items are not expected to be added anymore.
+ * The values themselves are not copied, they are obtained from the indexed items when they are found.
+ * </p>
+ * <p>
+ * The request attributes are indexed again when attributes are put on the request. The historical data is obtained
+ * once and kept, until another <code>HistoricalDataProvider</code> is active or the context entries have changed, as
+ * these hold the settings for the historical data.
+ * </p>
+ * The index is not thread-safe, <code>ContextImpl</code> synchronizes its use.
+ */
+final class ContextLookupIndex {
+
+  private final ContextImpl context;
+
+  // the task list that has been indexed, and how many of its tasks have been scanned
+  private List<Task> indexedTasks;
+  private int scannedTaskCount;
+  // positions of scanned tasks that had not finished yet
+  private final List<Integer> unfinishedTaskPositions = new ArrayList<Integer>();
+  // the finished tasks that have been indexed
+  private final Map<Task, IndexedTask> finishedTasks = new IdentityHashMap<Task, IndexedTask>();
+
+  // per lower case entry name, the finished tasks with such an entry, in task order
+  private final Map<String, List<IndexedTask>> taskEntries = new HashMap<String, List<IndexedTask>>();
+  // per item name, the result items of the finished tasks, in task order
+  private final Map<String, List<IndexedItem>> taskResultItems = new HashMap<String, List<IndexedItem>>();
+
+  // per lower case attribute name, the request attributes
+  private RequestImpl indexedRequest;
+  private int indexedRequestModCount;
+  private final Map<String, Attribute> requestAttributes = new HashMap<String, Attribute>();
+
+  // the historical data snapshot
+  private HistoricalDataProvider historicalDataProvider;
+  private int historicalEntriesModCount;
+  private final Map<String, Attribute> historicalAttributes = new HashMap<String, Attribute>();
+  private final Map<String, List<IndexedItem>> historicalResultItems = new HashMap<String, List<IndexedItem>>();
+
+  ContextLookupIndex(ContextImpl context) {
+    this.context = context;
+  }
+
+  /**
+   * @param name
+   * @return the value of the named entry in the most recent finished, non-cancelled, task that has such an entry
+   */
+  Serializable getTaskEntryValue(String name) {
+    refreshTasks();
+    refreshTaskEntries();
+    List<IndexedTask> candidates = taskEntries.get(name.toLowerCase());
+    if (candidates != null) {
+      for (int i = candidates.size() - 1; i >= 0; --i) {
+        Task task = candidates.get(i).task;
+        if (isUsable(task)) {
+          Serializable entryValue = task.getProcessingContext().getEntryValue(name);
+          if (entryValue != null) {
+            return entryValue;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param dataType
+   * @param name
+   * @return the value of the named result item in the most recent finished, non-cancelled, task that has such an item
+   *         in a result block of the given type
+   */
+  String getTaskResultValue(String dataType, String name) {
+    refreshTasks();
+    return getItemValue(taskResultItems.get(name), dataType, true);
+  }
+
+  /**
+   * @param name
+   * @return the value of the request attribute with the given name, ignoring case
+   */
+  String getRequestAttributeValue(String name) {
+    RequestImpl request = context.getRequest();
+    if (request == null) {
+      return null;
+    }
+    if (request != indexedRequest || request.getAttributesModCount() != indexedRequestModCount) {
+      requestAttributes.clear();
+      indexAttributes(requestAttributes, request.getAttributes());
+      indexedRequest = request;
+      indexedRequestModCount = request.getAttributesModCount();
+    }
+    Attribute attribute = requestAttributes.get(name.toLowerCase());
+    return attribute != null ? attribute.getValueAsString() : null;
+  }
+
+  /**
+   * @param historicalDataProvider
+   * @param dataType
+   * @param name
+   * @return the value of the historical request attribute with the given name, or else of the named historical result
+   *         item in a result block of the given type
+   */
+  String getHistoricalValue(HistoricalDataProvider historicalDataProvider, String dataType, String name) {
+    if (historicalDataProvider != this.historicalDataProvider || context.getEntriesModCount() != historicalEntriesModCount) {
+      historicalAttributes.clear();
+      historicalResultItems.clear();
+      List<Attribute> attributes = historicalDataProvider.getRequestAttributes(context);
+      if (attributes != null) {
+        indexAttributes(historicalAttributes, attributes);
+      }
+      List<ResultBlock> blocks = historicalDataProvider.getResultBlocks(context);
+      if (blocks != null) {
+        indexResultBlocks(historicalResultItems, blocks, 0, null);
+      }
+      this.historicalDataProvider = historicalDataProvider;
+      historicalEntriesModCount = context.getEntriesModCount();
+    }
+    Attribute attribute = historicalAttributes.get(name.toLowerCase());
+    if (attribute != null) {
+      return attribute.getValueAsString();
+    }
+    return getItemValue(historicalResultItems.get(name), dataType, false);
+  }
+
+  private void refreshTasks() {
+    List<Task> tasks = context.getTaskList();
+    if (tasks != indexedTasks || tasks.size() < scannedTaskCount) {
+      // e.g. after a minimize()
+      taskEntries.clear();
+      taskResultItems.clear();
+      unfinishedTaskPositions.clear();
+      finishedTasks.clear();
+      indexedTasks = tasks;
+      scannedTaskCount = 0;
+    }
+    if (!ProcessUtils.isInitialized(tasks)) {
+      return;
+    }
+    for (Iterator<Integer> positionItr = unfinishedTaskPositions.iterator(); positionItr.hasNext();) {
+      int position = positionItr.next();
+      if (indexTaskWhenFinished(position, tasks.get(position))) {
+        positionItr.remove();
+      }
+    }
+    for (; scannedTaskCount < tasks.size(); ++scannedTaskCount) {
+      if (!indexTaskWhenFinished(scannedTaskCount, tasks.get(scannedTaskCount))) {
+        unfinishedTaskPositions.add(scannedTaskCount);
+      }
+    }
+  }
+
+  /**
+   * Indexes the entries of the finished tasks again, when entries have been put on their contexts since they were
+   * indexed.
+   */
+  private void refreshTaskEntries() {
+    for (IndexedTask indexedTask : finishedTasks.values()) {
+      Context taskContext = indexedTask.task.getProcessingContext();
+      int modCount = getEntriesModCount(taskContext);
+      if (modCount != indexedTask.entriesModCount) {
+        indexTaskEntries(taskContext, indexedTask);
+      }
+    }
+  }
+
+  private boolean indexTaskWhenFinished(int position, Task task) {
+    Context taskContext = task.getProcessingContext();
+    if (!taskContext.getStatus().isFinalStatus()) {
+      return false;
+    }
+    IndexedTask indexedTask = new IndexedTask(position, task);
+    finishedTasks.put(task, indexedTask);
+    indexTaskEntries(taskContext, indexedTask);
+    indexResultBlocks(taskResultItems, task.getResultBlocks(), position, task);
+    return true;
+  }
+
+  private void indexTaskEntries(Context taskContext, IndexedTask indexedTask) {
+    // read before the entries, so entries that are put concurrently are indexed on a next lookup
+    indexedTask.entriesModCount = getEntriesModCount(taskContext);
+    Iterator<String> entryNames = taskContext.getEntryNames();
+    while (entryNames.hasNext()) {
+      addTaskEntry(entryNames.next(), indexedTask);
+    }
+  }
+
+  private static int getEntriesModCount(Context taskContext) {
+    return (taskContext instanceof ContextImpl) ? ((ContextImpl) taskContext).getEntriesModCount() : 0;
+  }
+
+  private void addTaskEntry(String name, IndexedTask indexedTask) {
+    String entryName = name.toLowerCase();
+    List<IndexedTask> candidates = taskEntries.get(entryName);
+    if (candidates == null) {
+      candidates = new ArrayList<IndexedTask>(2);
+      taskEntries.put(entryName, candidates);
+    }
+    if (!candidates.contains(indexedTask)) {
+      addInTaskOrder(candidates, indexedTask);
+    }
+  }
+
+  private void indexResultBlocks(Map<String, List<IndexedItem>> index, Collection<ResultBlock> blocks, int position, Task task) {
+    // lookups walk the candidates backwards, so the blocks are indexed in reverse order
+    // to still find the item of the first matching block of a task
+    List<ResultBlock> reversedBlocks = new ArrayList<ResultBlock>(blocks);
+    for (int i = reversedBlocks.size() - 1; i >= 0; --i) {
+      ResultBlock block = reversedBlocks.get(i);
+      for (ResultItem<?> item : block.getAllItems()) {
+        List<IndexedItem> candidates = index.get(item.getName());
+        if (candidates == null) {
+          candidates = new ArrayList<IndexedItem>(2);
+          index.put(item.getName(), candidates);
+        }
+        addInTaskOrder(candidates, new IndexedItem(position, task, block.getType(), item));
+      }
+    }
+  }
+
+  private static void indexAttributes(Map<String, Attribute> index, Collection<Attribute> attributes) {
+    for (Attribute attribute : attributes) {
+      String name = attribute.getName().toLowerCase();
+      if (!index.containsKey(name)) {
+        index.put(name, attribute);
+      }
+    }
+  }
+
+  private static String getItemValue(List<IndexedItem> candidates, String dataType, boolean checkTask) {
+    if (candidates != null) {
+      for (int i = candidates.size() - 1; i >= 0; --i) {
+        IndexedItem candidate = candidates.get(i);
+        if ((dataType == null || dataType.equalsIgnoreCase(candidate.blockType)) && (!checkTask || isUsable(candidate.task))) {
+          return candidate.item.getValueAsString();
+        }
+      }
+    }
+    return null;
+  }
+
+  private static <T extends IndexedTask> void addInTaskOrder(List<T> candidates, T candidate) {
+    // tasks mostly finish in the order they were added, so this is typically an append
+    int i = candidates.size();
+    while (i > 0 && candidates.get(i - 1).position > candidate.position) {
+      --i;
+    }
+    candidates.add(i, candidate);
+  }
+
+  private static boolean isUsable(Task task) {
+    Status status = task.getProcessingContext().getStatus();
+    return status.isFinalStatus() && !Status.CANCELLED.equals(status);
+  }
+
+  private static class IndexedTask {
+    final int position;
+    final Task task;
+    // the modification count of the task's entries when they were indexed
+    int entriesModCount;
+
+    IndexedTask(int position, Task task) {
+      this.position = position;
+      this.task = task;
+    }
+  }
+
+  private static class IndexedItem extends IndexedTask {
+    final String blockType;
+    final ResultItem<?> item;
+
+    IndexedItem(int position, Task task, String blockType, ResultItem<?> item) {
+      super(position, task);
+      this.blockType = blockType;
+      this.item = item;
+    }
+  }
+}
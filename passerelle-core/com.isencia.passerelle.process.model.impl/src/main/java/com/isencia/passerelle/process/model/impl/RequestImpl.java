@@ -27,6 +27,7 @@ import javax.persistence.OneToOne;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.Transient;
 import javax.persistence.Version;
 
 import com.isencia.passerelle.process.model.Attribute;
@@ -64,6 +65,10 @@ public class RequestImpl implements Request {
   @MapKey(name = "name")
   private Map<String, Attribute> attributes = ProcessUtils.emptyMap();
 
+  // incremented on each put, to know when the attributes must be indexed again for lookups
+  @Transient
+  private int attributesModCount;
+
   // Remark: need to use the implementation class instead of the interface
   // here to ensure jpa implementations like EclipseLink will generate setter
   // methods
@@ -212,9 +217,14 @@ public class RequestImpl implements Request {
   public Attribute putAttribute(Attribute attribute) {
 	  if (!ProcessUtils.isInitialized(attributes))
 		  attributes = new HashMap<String,Attribute>();
+    attributesModCount++;
     return attributes.put(attribute.getName(), attribute);
   }
 
+  int getAttributesModCount() {
+    return attributesModCount;
+  }
+
   public Iterator<String> getAttributeNames() {
     return attributes.keySet().iterator();
   }
@@ -0,0 +1,74 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.process.scheduler.impl;
+
+import junit.framework.TestCase;
+
+public class AimdResourceLimitStrategyTest extends TestCase {
+
+  private final static long DURATION = 1000000;
+
+  public void testIncreaseWhileTasksPending() {
+    AimdResourceLimitStrategy strategy = new AimdResourceLimitStrategy();
+    assertEquals(5, strategy.getNewLimit(4, DURATION, 3, 10));
+    assertEquals(6, strategy.getNewLimit(5, DURATION, 4, 10));
+  }
+
+  public void testStableWhenBusyWithoutPendingTasks() {
+    AimdResourceLimitStrategy strategy = new AimdResourceLimitStrategy();
+    assertEquals(4, strategy.getNewLimit(4, DURATION, 3, 0));
+  }
+
+  public void testDecreaseWhenIdle() {
+    AimdResourceLimitStrategy strategy = new AimdResourceLimitStrategy();
+    assertEquals(7, strategy.getNewLimit(8, DURATION, 1, 0));
+  }
+
+  public void testMultiplicativeDecreaseWhenOverloaded() {
+    AimdResourceLimitStrategy strategy = new AimdResourceLimitStrategy(0.5, 1.5);
+    // establish the long-term duration
+    for (int i = 0; i < 20; ++i) {
+      assertEquals(20, strategy.getNewLimit(20, DURATION, 19, 0));
+    }
+    // task durations rise sharply, even though tasks are pending
+    assertEquals(10, strategy.getNewLimit(20, 10 * DURATION, 19, 10));
+    // no further decrease until a full limit's worth of tasks has been handled
+    for (int i = 0; i < 9; ++i) {
+      assertEquals(10, strategy.getNewLimit(10, 10 * DURATION, 9, 10));
+    }
+    assertEquals(5, strategy.getNewLimit(10, 10 * DURATION, 9, 10));
+  }
+
+  public void testNoDecreaseDuringWarmup() {
+    AimdResourceLimitStrategy strategy = new AimdResourceLimitStrategy();
+    assertEquals(4, strategy.getNewLimit(4, DURATION, 3, 0));
+    assertEquals(5, strategy.getNewLimit(4, 10 * DURATION, 3, 10));
+  }
+
+  public void testInvalidParameters() {
+    try {
+      new AimdResourceLimitStrategy(1.0, 1.5);
+      fail("Backoff ratio of 1 should be refused");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new AimdResourceLimitStrategy(0.9, 0.5);
+      fail("Latency tolerance below 1 should be refused");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import com.isencia.passerelle.process.model.Context;
+import com.isencia.passerelle.process.scheduler.ResourceToken;
+import com.isencia.passerelle.process.scheduler.TaskHandler;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
+
+public class DefaultSchedulerTest extends TestCase {
+
+  private final static TaskClass CLASS_A = new TaskClass("A", 50);
+
+  private DefaultScheduler scheduler;
+
+  protected void setUp() throws Exception {
+    scheduler = new DefaultScheduler("test", 1, 4, -1);
+    scheduler.setTaskClassifierStrategy(new SchedulerTestSupport.ByNameTaskClassifierStrategy(CLASS_A));
+  }
+
+  protected void tearDown() throws Exception {
+    scheduler.shutdownNow();
+  }
+
+  public void testFixedResourcesByDefault() throws Exception {
+    DefaultScheduler fixedScheduler = new DefaultScheduler("fixed", 4, -1);
+    try {
+      assertNull(fixedScheduler.getResourceLimitStrategy());
+      assertEquals(4, fixedScheduler.getMaxCapacity());
+      assertEquals(4, fixedScheduler.getUsageStatus().getMinNrOfResources());
+      assertEquals(4, fixedScheduler.getUsageStatus().getMaxNrOfResources());
+      assertEquals(4, fixedScheduler.getStatistics().getResourceLimit());
+      assertEquals(4, fixedScheduler.getStatistics().getMinResourceLimit());
+      assertEquals(4, fixedScheduler.getStatistics().getMaxResourceLimit());
+    } finally {
+      fixedScheduler.shutdownNow();
+    }
+  }
+
+  public void testInvalidResourceBounds() throws Exception {
+    try {
+      new DefaultScheduler("invalid", 4, 2, -1);
+      fail("Minimum above maximum nr of resources should be refused");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testResourcesGrowWhileTasksPending() throws Exception {
+    assertTrue(scheduler.getResourceLimitStrategy() instanceof AimdResourceLimitStrategy);
+    assertEquals(1, scheduler.getMaxCapacity());
+
+    SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+    growToMaximum(handler);
+    handler.releaseAll();
+    handler.awaitHandledCount(10);
+    assertEquals("Resources should not grow above the maximum", 4, scheduler.getMaxCapacity());
+    assertEquals(3, scheduler.getUsageStatus().getLimitIncreaseCount());
+    assertEquals(0, scheduler.getUsageStatus().getLimitDecreaseCount());
+    TaskSchedulerStatistics statistics = scheduler.getStatistics();
+    assertEquals("The adapted limit should be published in the statistics", 4, statistics.getResourceLimit());
+    assertEquals(1, statistics.getMinResourceLimit());
+    assertEquals(4, statistics.getMaxResourceLimit());
+    assertEquals(3, statistics.getLimitIncreaseCount());
+    assertEquals(0, statistics.getLimitDecreaseCount());
+    handler.releaseAll();
+  }
+
+  public void testResourcesShrinkWhenIdle() throws Exception {
+    SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+    growToMaximum(handler);
+    handler.releaseAll();
+    handler.awaitHandledCount(10);
+
+    // no more pending tasks, so the pool shrinks when less than half of it is busy
+    handler.releaseAll();
+    assertEquals(2, scheduler.getMaxCapacity());
+    final CountDownLatch handled = new CountDownLatch(1);
+    scheduler.accept(SchedulerTestSupport.createContext("A"), new TaskHandler() {
+      public void handle(Context taskContext, ResourceToken resourceToken) {
+        resourceToken.release();
+        handled.countDown();
+      }
+    });
+    assertTrue(handled.await(5, TimeUnit.SECONDS));
+    assertEquals(1, scheduler.getMaxCapacity());
+    assertEquals(3, scheduler.getUsageStatus().getLimitDecreaseCount());
+    assertEquals(1, scheduler.getStatistics().getResourceLimit());
+    assertEquals(3, scheduler.getStatistics().getLimitDecreaseCount());
+
+    // and it can still handle tasks
+    scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+    handler.awaitHandledCount(11);
+  }
+
+  /**
+   * Accepts 10 tasks, and releases the held resources till the pool has grown to its maximum.
+   */
+  private void growToMaximum(SchedulerTestSupport.HoldingHandler handler) throws Exception {
+    for (int i = 0; i < 10; ++i) {
+      scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+    }
+    handler.awaitHandledCount(1);
+    // each handled task, while others are pending, adds a resource
+    handler.releaseAll();
+    handler.awaitHandledCount(3);
+    handler.releaseAll();
+    handler.awaitHandledCount(7);
+    assertEquals(4, scheduler.getMaxCapacity());
+  }
+}
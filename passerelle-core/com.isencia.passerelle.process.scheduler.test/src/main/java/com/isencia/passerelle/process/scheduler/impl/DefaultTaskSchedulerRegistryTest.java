@@ -0,0 +1,65 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import junit.framework.TestCase;
+import com.isencia.passerelle.process.scheduler.TaskSchedulerRegistry;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
+
+public class DefaultTaskSchedulerRegistryTest extends TestCase {
+
+  private DefaultTaskSchedulerRegistry registry;
+  private FairShareScheduler scheduler;
+  private DefaultScheduler defaultScheduler;
+
+  protected void setUp() throws Exception {
+    registry = new DefaultTaskSchedulerRegistry();
+    scheduler = new FairShareScheduler("test scheduler", 2, -1);
+    scheduler.setTaskClassifierStrategy(new SchedulerTestSupport.ByNameTaskClassifierStrategy(new TaskClass("A", 100)));
+    defaultScheduler = new DefaultScheduler(TaskSchedulerRegistry.DEFAULT_SCHEDULER_NAME, 2, -1);
+  }
+
+  protected void tearDown() throws Exception {
+    registry.dispose();
+    scheduler.shutdownNow();
+    defaultScheduler.shutdownNow();
+  }
+
+  public void testStatisticsByName() throws Exception {
+    registry.registerScheduler("test scheduler", scheduler);
+    registry.setDefaultScheduler(defaultScheduler);
+    assertSame(scheduler.getStatistics(), registry.getSchedulerStatistics("test scheduler"));
+    assertSame(defaultScheduler.getStatistics(), registry.getSchedulerStatistics(TaskSchedulerRegistry.DEFAULT_SCHEDULER_NAME));
+    assertNull(registry.getSchedulerStatistics("unknown"));
+  }
+
+  public void testStatisticsMBean() throws Exception {
+    registry.registerScheduler("test scheduler", scheduler);
+    scheduler.accept(SchedulerTestSupport.createContext("A"), new SchedulerTestSupport.HoldingHandler());
+
+    MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName mbeanName = new ObjectName(DefaultTaskSchedulerRegistry.STATISTICS_MBEAN_DOMAIN + ":type=TaskScheduler,name=\"test scheduler\"");
+    assertTrue(mbeanServer.isRegistered(mbeanName));
+    assertEquals("test scheduler", mbeanServer.getAttribute(mbeanName, "SchedulerName"));
+    assertEquals(1L, mbeanServer.getAttribute(mbeanName, "AcceptedCount"));
+    assertEquals(1L, mbeanServer.invoke(mbeanName, "getAcceptedCount", new Object[] { "A" }, new String[] { String.class.getName() }));
+
+    registry.dispose();
+    assertFalse(mbeanServer.isRegistered(mbeanName));
+  }
+}
@@ -0,0 +1,161 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import com.isencia.passerelle.process.model.Context;
+import com.isencia.passerelle.process.scheduler.ResourceToken;
+import com.isencia.passerelle.process.scheduler.TaskHandler;
+import com.isencia.passerelle.process.scheduler.TaskRefusedException;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
+
+public class FairShareSchedulerTest extends TestCase {
+
+  private final static TaskClass CLASS_A = new TaskClass("A", 75);
+  private final static TaskClass CLASS_B = new TaskClass("B", 25);
+  private final static TaskClass CLASS_C = new TaskClass("C", 1);
+
+  private FairShareScheduler scheduler;
+
+  protected void setUp() throws Exception {
+    scheduler = new FairShareScheduler("test", 4, 100);
+    scheduler.setTaskClassifierStrategy(new SchedulerTestSupport.ByNameTaskClassifierStrategy(CLASS_A, CLASS_B, CLASS_C));
+  }
+
+  protected void tearDown() throws Exception {
+    scheduler.shutdownNow();
+  }
+
+  public void testAllTasksHandled() throws Exception {
+    final int nrOfTasks = 2000;
+    final CountDownLatch handled = new CountDownLatch(nrOfTasks);
+    // without limit on the pending tasks
+    scheduler.shutdownNow();
+    scheduler = new FairShareScheduler("test", 4, -1);
+    scheduler.setTaskClassifierStrategy(new SchedulerTestSupport.ByNameTaskClassifierStrategy(CLASS_A, CLASS_B, CLASS_C));
+    final TaskHandler handler = new TaskHandler() {
+      public void handle(Context taskContext, ResourceToken resourceToken) {
+        handled.countDown();
+        resourceToken.release();
+      }
+    };
+    List<Thread> producers = new ArrayList<Thread>();
+    for (final String taskClassName : new String[] { "A", "B", "C", "A" }) {
+      producers.add(new Thread() {
+        public void run() {
+          for (int i = 0; i < nrOfTasks / 4; ++i) {
+            try {
+              scheduler.accept(SchedulerTestSupport.createContext(taskClassName), handler);
+            } catch (TaskRefusedException e) {
+              fail("Unexpected refusal " + e);
+            }
+          }
+        }
+      });
+    }
+    for (Thread producer : producers) {
+      producer.start();
+    }
+    assertTrue("All tasks should have been handled", handled.await(10, TimeUnit.SECONDS));
+
+    scheduler.shutdown();
+    assertTrue("Scheduler should terminate after a shutdown", scheduler.awaitTermination(5, TimeUnit.SECONDS));
+    ResourceUsageStatus status = scheduler.getUsageStatus();
+    assertEquals(0, status.getCurrentPendingCount());
+    assertEquals(0, status.getCurrentUsed());
+    assertTrue("At most all resources should have been used", status.getMaxUsed() <= 4);
+  }
+
+  public void testResourcesAssignedOnRelativeCapacity() throws Exception {
+    SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+    // occupy all resources with low-priority tasks
+    for (int i = 0; i < 4; ++i) {
+      scheduler.accept(SchedulerTestSupport.createContext("C"), handler);
+    }
+    assertEquals(0, scheduler.getCurrentFreeCapacity());
+    for (int i = 0; i < 10; ++i) {
+      scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+      scheduler.accept(SchedulerTestSupport.createContext("B"), handler);
+    }
+    assertEquals(20, scheduler.getUsageStatus().getCurrentPendingCount());
+    handler.awaitHandledCount(4);
+
+    // each released resource is assigned to the class with the highest RCA per busy resource
+    for (int i = 0; i < 4; ++i) {
+      handler.releaseFirst();
+      handler.awaitHandledCount(5 + i);
+    }
+    assertEquals(Arrays.asList("C", "C", "C", "C", "A", "B", "A", "A"), handler.getHandledClassNames());
+  }
+
+  public void testRefusedWhenPendingQueueFull() throws Exception {
+    SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+    for (int i = 0; i < 104; ++i) {
+      scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+    }
+    try {
+      scheduler.accept(SchedulerTestSupport.createContext("B"), handler);
+      fail("Task should be refused when the pending queue is full");
+    } catch (TaskRefusedException e) {
+      // expected
+    }
+    handler.awaitHandledCount(4);
+    handler.releaseAll();
+    scheduler.accept(SchedulerTestSupport.createContext("B"), handler);
+  }
+
+  public void testClearPending() throws Exception {
+    SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+    for (int i = 0; i < 10; ++i) {
+      scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+    }
+    assertEquals(6, scheduler.clearPending().size());
+    assertEquals(0, scheduler.getUsageStatus().getCurrentPendingCount());
+
+    handler.awaitHandledCount(4);
+    handler.releaseAll();
+    assertEquals(4, scheduler.getCurrentFreeCapacity());
+    scheduler.accept(SchedulerTestSupport.createContext("B"), handler);
+    handler.awaitHandledCount(5);
+    assertEquals("New tasks should still be handled after a clear", "B", handler.getHandledClassNames().get(4));
+  }
+
+  public void testShutdownHandlesPendingTasks() throws Exception {
+    SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+    for (int i = 0; i < 10; ++i) {
+      scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+    }
+    scheduler.shutdown();
+    try {
+      scheduler.accept(SchedulerTestSupport.createContext("B"), handler);
+      fail("Task should be refused after a shutdown");
+    } catch (TaskRefusedException e) {
+      // expected
+    }
+    assertFalse(scheduler.awaitTermination(100, TimeUnit.MILLISECONDS));
+    handler.awaitHandledCount(4);
+    handler.releaseAll();
+    handler.awaitHandledCount(8);
+    handler.releaseAll();
+    handler.awaitHandledCount(10);
+    handler.releaseAll();
+    assertTrue("Scheduler should terminate once all pending tasks have been handled", scheduler.awaitTermination(5, TimeUnit.SECONDS));
+  }
+}
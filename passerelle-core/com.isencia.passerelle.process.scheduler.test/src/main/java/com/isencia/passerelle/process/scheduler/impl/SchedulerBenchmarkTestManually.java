@@ -0,0 +1,153 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import junit.framework.TestCase;
+import com.isencia.passerelle.process.model.Context;
+import com.isencia.passerelle.process.scheduler.ResourceToken;
+import com.isencia.passerelle.process.scheduler.TaskHandler;
+import com.isencia.passerelle.process.scheduler.TaskRefusedException;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.CongestionManagementTaskScheduler;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
+
+/**
+ * Compares the <code>DefaultScheduler</code>, the <code>FairShareScheduler</code> and the
+ * <code>WeightedFairQueueingScheduler</code>, for a fixed task arrival rate
+ * across a few task classes, with short tasks.
+ * For each rate, it reports how many tasks could be delivered to the scheduler in the run period,
+ * the achieved throughput and the latency between accepting a task and handing it to its handler.
+ * <p>
+ * Not part of the automated test suites, as it just reports timings.
+ * </p>
+ */
+public class SchedulerBenchmarkTestManually extends TestCase {
+
+  private final static int NR_OF_RESOURCES = 8;
+  private final static int NR_OF_PRODUCERS = 4;
+  private final static long RUN_DURATION_MS = 2000;
+  private final static long MAX_DRAIN_DURATION_MS = 30000;
+  // simulated processing time per task, i.e. 8 resources can handle about 200k tasks/s
+  private final static long TASK_DURATION_NS = 40000;
+
+  private final static TaskClass[] TASK_CLASSES = new TaskClass[] { new TaskClass("gold", 50), new TaskClass("silver", 30), new TaskClass("bronze", 15),
+      new TaskClass("other", 5) };
+
+  public void testDefaultScheduler() throws Exception {
+    for (int rate : new int[] { 1000, 10000, 100000 }) {
+      runAtRate("DefaultScheduler", new DefaultScheduler("benchmark", NR_OF_RESOURCES, -1), rate);
+    }
+  }
+
+  public void testFairShareScheduler() throws Exception {
+    for (int rate : new int[] { 1000, 10000, 100000 }) {
+      runAtRate("FairShareScheduler", new FairShareScheduler("benchmark", NR_OF_RESOURCES, -1), rate);
+    }
+  }
+
+  public void testWeightedFairQueueingScheduler() throws Exception {
+    for (int rate : new int[] { 1000, 10000, 100000 }) {
+      runAtRate("WeightedFairQueueingScheduler", new WeightedFairQueueingScheduler("benchmark", NR_OF_RESOURCES, -1), rate);
+    }
+  }
+
+  private void runAtRate(String name, final CongestionManagementTaskScheduler scheduler, final int tasksPerSecond) throws Exception {
+    scheduler.setTaskClassifierStrategy(new SchedulerTestSupport.ByNameTaskClassifierStrategy(TASK_CLASSES));
+    final AtomicInteger offeredCount = new AtomicInteger();
+    final AtomicInteger refusedCount = new AtomicInteger();
+    final AtomicInteger handledCount = new AtomicInteger();
+    final AtomicLong totalLatency = new AtomicLong();
+    final AtomicLong maxLatency = new AtomicLong();
+    final Context[] contexts = new Context[TASK_CLASSES.length];
+    for (int i = 0; i < TASK_CLASSES.length; ++i) {
+      contexts[i] = SchedulerTestSupport.createContext(TASK_CLASSES[i].getName());
+    }
+
+    Thread[] producers = new Thread[NR_OF_PRODUCERS];
+    final long start = System.nanoTime();
+    for (int p = 0; p < NR_OF_PRODUCERS; ++p) {
+      final int producerIdx = p;
+      producers[p] = new Thread() {
+        public void run() {
+          long intervalNs = 1000000000L * NR_OF_PRODUCERS / tasksPerSecond;
+          long end = start + RUN_DURATION_MS * 1000000;
+          long next = start;
+          for (int i = 0; next < end; ++i) {
+            long waitNs = next - System.nanoTime();
+            if (waitNs > 0) {
+              LockSupport.parkNanos(waitNs);
+            } else if (System.nanoTime() >= end) {
+              // the scheduler could not keep up with the offered rate
+              break;
+            }
+            next += intervalNs;
+            offeredCount.incrementAndGet();
+            try {
+              scheduler.accept(contexts[(producerIdx + i) % contexts.length], new TimedHandler(handledCount, totalLatency, maxLatency));
+            } catch (TaskRefusedException e) {
+              refusedCount.incrementAndGet();
+            }
+          }
+        }
+      };
+      producers[p].start();
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    long drainEnd = System.currentTimeMillis() + MAX_DRAIN_DURATION_MS;
+    while (handledCount.get() < offeredCount.get() - refusedCount.get() && System.currentTimeMillis() < drainEnd) {
+      Thread.sleep(10);
+    }
+    long duration = (System.nanoTime() - start) / 1000000;
+    scheduler.shutdownNow();
+
+    int taskCount = handledCount.get();
+    long expectedCount = tasksPerSecond * RUN_DURATION_MS / 1000;
+    System.out.println(name + " - " + tasksPerSecond + " tasks/s : " + offeredCount.get() + "/" + expectedCount + " tasks offered, " + refusedCount.get()
+        + " refused, " + taskCount + " handled in " + duration + " ms, " + (taskCount * 1000L / Math.max(1, duration)) + " tasks/s, latency avg "
+        + (totalLatency.get() / Math.max(1, taskCount) / 1000) + " us, max " + (maxLatency.get() / 1000) + " us");
+  }
+
+  private static class TimedHandler implements TaskHandler {
+    private final long acceptTime = System.nanoTime();
+    private final AtomicInteger handledCount;
+    private final AtomicLong totalLatency;
+    private final AtomicLong maxLatency;
+
+    private TimedHandler(AtomicInteger handledCount, AtomicLong totalLatency, AtomicLong maxLatency) {
+      this.handledCount = handledCount;
+      this.totalLatency = totalLatency;
+      this.maxLatency = maxLatency;
+    }
+
+    public void handle(Context taskContext, ResourceToken resourceToken) {
+      long latency = System.nanoTime() - acceptTime;
+      totalLatency.addAndGet(latency);
+      long currentMax = maxLatency.get();
+      while (latency > currentMax && !maxLatency.compareAndSet(currentMax, latency)) {
+        currentMax = maxLatency.get();
+      }
+      long end = System.nanoTime() + TASK_DURATION_NS;
+      while (System.nanoTime() < end) {
+        // simulate some processing
+      }
+      resourceToken.release();
+      handledCount.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import junit.framework.Assert;
+import com.isencia.passerelle.process.model.Context;
+import com.isencia.passerelle.process.scheduler.ResourceToken;
+import com.isencia.passerelle.process.scheduler.TaskHandler;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClassifierStrategy;
+
+/**
+ * Test utilities for the schedulers, which only need a task class (and maybe a deadline) for each task context.
+ */
+public class SchedulerTestSupport {
+
+  private SchedulerTestSupport() {
+  }
+
+  /**
+   * @param taskClassName
+   * @return a dummy task context, that only knows the name of its task class, as its toString().
+   */
+  public static Context createContext(String taskClassName) {
+    return createContext(taskClassName, Collections.<String, Serializable> emptyMap());
+  }
+
+  /**
+   * @param taskClassName
+   * @param entries
+   * @return a dummy task context, that only knows the name of its task class, as its toString(), and the given context
+   *         entries.
+   */
+  public static Context createContext(final String taskClassName, final Map<String, Serializable> entries) {
+    return (Context) Proxy.newProxyInstance(Context.class.getClassLoader(), new Class<?>[] { Context.class }, new InvocationHandler() {
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if ("toString".equals(method.getName())) {
+          return taskClassName;
+        } else if ("hashCode".equals(method.getName())) {
+          return System.identityHashCode(proxy);
+        } else if ("equals".equals(method.getName())) {
+          return proxy == args[0];
+        } else if ("getEntryValue".equals(method.getName())) {
+          return entries.get(args[0]);
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Classifies the contexts created by {@link SchedulerTestSupport#createContext(String)}.
+   */
+  public static class ByNameTaskClassifierStrategy implements TaskClassifierStrategy {
+    private final Map<String, TaskClass> taskClasses = new HashMap<String, TaskClass>();
+
+    public ByNameTaskClassifierStrategy(TaskClass... taskClasses) {
+      for (TaskClass taskClass : taskClasses) {
+        this.taskClasses.put(taskClass.getName(), taskClass);
+      }
+    }
+
+    public TaskClass getClassForTask(Context context) {
+      return taskClasses.get(context.toString());
+    }
+  }
+
+  /**
+   * Handler that keeps the resource tokens, until the test releases them.
+   */
+  public static class HoldingHandler implements TaskHandler {
+    private final List<String> handledClassNames = Collections.synchronizedList(new ArrayList<String>());
+    private final List<ResourceToken> tokens = new ArrayList<ResourceToken>();
+
+    public void handle(Context taskContext, ResourceToken resourceToken) {
+      synchronized (tokens) {
+        handledClassNames.add(taskContext.toString());
+        tokens.add(resourceToken);
+        tokens.notifyAll();
+      }
+    }
+
+    public void awaitHandledCount(int count) throws InterruptedException {
+      long end = System.currentTimeMillis() + 5000;
+      synchronized (tokens) {
+        while (handledClassNames.size() < count && System.currentTimeMillis() < end) {
+          tokens.wait(100);
+        }
+      }
+      Assert.assertEquals("Unexpected nr of handled tasks", count, handledClassNames.size());
+    }
+
+    public void releaseFirst() {
+      ResourceToken token = null;
+      synchronized (tokens) {
+        token = tokens.remove(0);
+      }
+      token.release();
+    }
+
+    public void releaseAll() {
+      List<ResourceToken> heldTokens = null;
+      synchronized (tokens) {
+        heldTokens = new ArrayList<ResourceToken>(tokens);
+        tokens.clear();
+      }
+      for (ResourceToken token : heldTokens) {
+        token.release();
+      }
+    }
+
+    public List<String> getHandledClassNames() {
+      return handledClassNames;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import junit.framework.TestCase;
+import com.isencia.passerelle.process.scheduler.TaskRefusedException;
+import com.isencia.passerelle.process.scheduler.TaskScheduler;
+import com.isencia.passerelle.process.scheduler.TaskSchedulerStatisticsMBean;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
+
+public class TaskSchedulerStatisticsTest extends TestCase {
+
+  private final static TaskClass CLASS_A = new TaskClass("A", 75);
+  private final static TaskClass CLASS_B = new TaskClass("B", 25);
+
+  public void testPercentiles() {
+    TaskSchedulerStatistics statistics = new TaskSchedulerStatistics("test");
+    for (int i = 1; i <= 1000; ++i) {
+      statistics.taskStarted(CLASS_A, i * 1000L);
+      statistics.taskFinished(CLASS_A, i * 10000L);
+    }
+    assertEquals(1000, statistics.getHandledCount());
+    assertEquals(1000, statistics.getHandledCount("A"));
+    assertEquals(0, statistics.getHandledCount("B"));
+    assertWithinPercent(500, statistics.getQueueWaitP50Micros(), 6);
+    assertWithinPercent(990, statistics.getQueueWaitP99Micros(), 6);
+    assertWithinPercent(9990, statistics.getServiceTimeP999Micros(), 6);
+    assertWithinPercent(9000, statistics.getServiceTimePercentileMicros("A", 90), 6);
+    assertEquals(0, statistics.getServiceTimePercentileMicros("B", 90));
+
+    statistics.reset();
+    assertEquals(0, statistics.getHandledCount());
+    assertEquals(0, statistics.getQueueWaitP50Micros());
+    assertEquals(0, statistics.getTaskClassNames().length);
+  }
+
+  public void testHistogramRange() {
+    long maxSeparateValue = (1L << 41) - 1;
+    assertTrue(DurationHistogram.bucketIndex(maxSeparateValue) > DurationHistogram.bucketIndex(maxSeparateValue - (1L << 37)));
+    assertEquals(DurationHistogram.bucketIndex(maxSeparateValue), DurationHistogram.bucketIndex(Long.MAX_VALUE));
+    assertEquals(maxSeparateValue, DurationHistogram.bucketUpperValue(DurationHistogram.bucketIndex(maxSeparateValue)));
+
+    DurationHistogram histogram = new DurationHistogram();
+    histogram.recordNanos(30L * 60 * 1000000000);
+    assertWithinPercent(30L * 60 * 1000000, histogram.getPercentileNanos(50) / 1000, 6);
+  }
+
+  public void testCongestionTracking() throws Exception {
+    TaskSchedulerStatistics statistics = new TaskSchedulerStatistics("test");
+    assertFalse(statistics.isCongested());
+    statistics.setCongested(true);
+    statistics.setCongested(true);
+    Thread.sleep(20);
+    statistics.setCongested(false);
+    assertFalse(statistics.isCongested());
+    assertEquals(1, statistics.getCongestionCount());
+    assertTrue(statistics.getCongestionTimeMillis() >= 20);
+    assertEquals(statistics.getCongestionTimeMillis(), statistics.getMaxCongestionTimeMillis());
+  }
+
+  public void testDefaultSchedulerStatistics() throws Exception {
+    DefaultScheduler scheduler = new DefaultScheduler("test", 1, 2);
+    scheduler.setTaskClassifierStrategy(new SchedulerTestSupport.ByNameTaskClassifierStrategy(CLASS_A, CLASS_B));
+    try {
+      SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+      scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+      handler.awaitHandledCount(1);
+      scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+      scheduler.accept(SchedulerTestSupport.createContext("B"), handler);
+      assertRefused(scheduler, "B");
+      Thread.sleep(10);
+      handler.releaseFirst();
+      handler.awaitHandledCount(2);
+      handler.releaseFirst();
+      handler.awaitHandledCount(3);
+      handler.releaseFirst();
+
+      TaskSchedulerStatistics statistics = scheduler.getStatistics();
+      assertEquals(3, statistics.getAcceptedCount());
+      assertEquals(1, statistics.getRefusedCount());
+      assertEquals(3, statistics.getHandledCount());
+      assertEquals(2, statistics.getAcceptedCount("A"));
+      assertEquals(1, statistics.getRefusedCount("B"));
+      assertEquals(1, statistics.getRefusedCountForReason(TaskSchedulerStatisticsMBean.REFUSAL_QUEUE_FULL));
+      assertEquals(Arrays.asList(TaskSchedulerStatisticsMBean.REFUSAL_QUEUE_FULL), Arrays.asList(statistics.getRefusalReasons()));
+      assertTrue("Queued tasks should have waited for the held resource", statistics.getQueueWaitP99Micros() >= 10000);
+      // with a single resource, the default congestion definition always applies
+      assertTrue(statistics.isCongested());
+      assertEquals(1, statistics.getCongestionCount());
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  public void testFairShareSchedulerStatistics() throws Exception {
+    FairShareScheduler scheduler = new FairShareScheduler("test", 1, 1);
+    scheduler.setTaskClassifierStrategy(new SchedulerTestSupport.ByNameTaskClassifierStrategy(CLASS_A, CLASS_B));
+    SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+    scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+    scheduler.accept(SchedulerTestSupport.createContext("B"), handler);
+    assertRefused(scheduler, "B");
+    scheduler.shutdown();
+    assertRefused(scheduler, "A");
+    handler.awaitHandledCount(1);
+    handler.releaseFirst();
+    handler.awaitHandledCount(2);
+    handler.releaseFirst();
+
+    TaskSchedulerStatistics statistics = scheduler.getStatistics();
+    assertEquals(2, statistics.getAcceptedCount());
+    assertEquals(2, statistics.getRefusedCount());
+    assertEquals(2, statistics.getHandledCount());
+    assertEquals(1, statistics.getHandledCount("B"));
+    assertEquals(1, statistics.getRefusedCountForReason(TaskSchedulerStatisticsMBean.REFUSAL_QUEUE_FULL));
+    assertEquals(1, statistics.getRefusedCountForReason(TaskSchedulerStatisticsMBean.REFUSAL_SHUTDOWN));
+    assertFalse(statistics.isCongested());
+  }
+
+  public void testWeightedFairQueueingSchedulerStatistics() throws Exception {
+    WeightedFairQueueingScheduler scheduler = new WeightedFairQueueingScheduler("test", 1, -1);
+    scheduler.setTaskClassifierStrategy(new SchedulerTestSupport.ByNameTaskClassifierStrategy(CLASS_A, CLASS_B));
+    try {
+      SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+      scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+      Map<String, Serializable> entries = Collections.<String, Serializable> singletonMap(ContextEntryDeadlineStrategy.DEADLINE_ENTRY_NAME,
+          System.currentTimeMillis() - 1);
+      try {
+        scheduler.accept(SchedulerTestSupport.createContext("B", entries), handler);
+        fail("Task with an expired deadline should be refused");
+      } catch (TaskRefusedException e) {
+        // expected
+      }
+      handler.awaitHandledCount(1);
+      handler.releaseFirst();
+
+      TaskSchedulerStatistics statistics = scheduler.getStatistics();
+      assertEquals(1, statistics.getHandledCount("A"));
+      assertEquals(1, statistics.getRefusedCount("B"));
+      assertEquals(1, statistics.getRefusedCountForReason(TaskSchedulerStatisticsMBean.REFUSAL_DEADLINE));
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+
+  private static void assertRefused(TaskScheduler scheduler, String taskClassName) {
+    try {
+      scheduler.accept(SchedulerTestSupport.createContext(taskClassName), new SchedulerTestSupport.HoldingHandler());
+      fail("Task should be refused");
+    } catch (TaskRefusedException e) {
+      // expected
+    }
+  }
+
+  private static void assertWithinPercent(long expected, long actual, int percent) {
+    assertTrue("Expected " + expected + " but was " + actual, Math.abs(actual - expected) <= expected * percent / 100);
+  }
+}
@@ -0,0 +1,163 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import com.isencia.passerelle.process.model.Context;
+import com.isencia.passerelle.process.scheduler.ResourceToken;
+import com.isencia.passerelle.process.scheduler.TaskHandler;
+import com.isencia.passerelle.process.scheduler.TaskRefusedException;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
+
+public class WeightedFairQueueingSchedulerTest extends TestCase {
+
+  private final static TaskClass CLASS_A = new TaskClass("A", 75);
+  private final static TaskClass CLASS_B = new TaskClass("B", 25);
+  private final static TaskClass CLASS_SLA = new TaskClass("SLA", 10);
+
+  private WeightedFairQueueingScheduler scheduler;
+
+  protected void setUp() throws Exception {
+    scheduler = new WeightedFairQueueingScheduler("test", 1, -1);
+    scheduler.setTaskClassifierStrategy(new SchedulerTestSupport.ByNameTaskClassifierStrategy(CLASS_A, CLASS_B, CLASS_SLA));
+  }
+
+  protected void tearDown() throws Exception {
+    scheduler.shutdownNow();
+  }
+
+  public void testWeightedShares() throws Exception {
+    SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+    for (int i = 0; i < 30; ++i) {
+      scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+    }
+    for (int i = 0; i < 30; ++i) {
+      scheduler.accept(SchedulerTestSupport.createContext("B"), handler);
+    }
+    // the 1st A got the resource immediately, the others must share it according to their weights
+    for (int i = 1; i <= 20; ++i) {
+      handler.awaitHandledCount(i);
+      handler.releaseFirst();
+    }
+    handler.awaitHandledCount(21);
+    int countA = Collections.frequency(handler.getHandledClassNames().subList(1, 21), "A");
+    assertEquals("Class A should get 3/4 of the resource", 15, countA);
+  }
+
+  public void testEarliestDeadlineFirst() throws Exception {
+    // all deadlines are within the slack threshold
+    scheduler.setDeadlineSlackThreshold(1, TimeUnit.MINUTES);
+    SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+    for (int i = 0; i < 5; ++i) {
+      scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+    }
+    long now = System.currentTimeMillis();
+    scheduler.accept(createContextWithDeadline(new Date(now + 20000)), handler);
+    scheduler.accept(createContextWithDeadline(Long.toString(now + 10000)), handler);
+    scheduler.accept(createContextWithDeadline(now + 30000), handler);
+    for (int i = 1; i <= 4; ++i) {
+      handler.awaitHandledCount(i);
+      handler.releaseFirst();
+    }
+    handler.awaitHandledCount(5);
+    assertEquals("Tasks with a deadline should be handled before the bulk ones", Arrays.asList("A", "SLA", "SLA", "SLA", "A"),
+        handler.getHandledClassNames());
+  }
+
+  public void testDistantDeadlinesTakeFairTurn() throws Exception {
+    scheduler.setDeadlineSlackThreshold(1, TimeUnit.SECONDS);
+    SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+    for (int i = 0; i < 5; ++i) {
+      scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+    }
+    long now = System.currentTimeMillis();
+    scheduler.accept(createContextWithDeadline(now + 60000), handler);
+    scheduler.accept(createContextWithDeadline(now + 500), handler);
+    for (int i = 1; i <= 6; ++i) {
+      handler.awaitHandledCount(i);
+      handler.releaseFirst();
+    }
+    handler.awaitHandledCount(7);
+    // the urgent task goes first, the other one is charged to the small share of its class
+    assertEquals("Only the task with an urgent deadline should be handled before the bulk ones",
+        Arrays.asList("A", "SLA", "A", "A", "A", "A", "SLA"), handler.getHandledClassNames());
+  }
+
+  public void testRefusesTasksThatCannotMeetDeadline() throws Exception {
+    try {
+      scheduler.accept(createContextWithDeadline(System.currentTimeMillis() - 1), new SchedulerTestSupport.HoldingHandler());
+      fail("Task with an expired deadline should be refused");
+    } catch (TaskRefusedException e) {
+      // expected
+    }
+
+    // learn the service time
+    final CountDownLatch handled = new CountDownLatch(1);
+    scheduler.accept(SchedulerTestSupport.createContext("A"), new TaskHandler() {
+      public void handle(Context taskContext, ResourceToken resourceToken) {
+        try {
+          Thread.sleep(200);
+        } catch (InterruptedException e) {
+          // ignore
+        }
+        resourceToken.release();
+        handled.countDown();
+      }
+    });
+    assertTrue(handled.await(5, TimeUnit.SECONDS));
+    assertTrue("Service time should have been measured", scheduler.getAverageServiceTime() >= 150);
+
+    SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+    scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+    try {
+      scheduler.accept(createContextWithDeadline(System.currentTimeMillis() + 100), handler);
+      fail("Task that can not be handled before its deadline should be refused");
+    } catch (TaskRefusedException e) {
+      // expected
+    }
+    scheduler.accept(createContextWithDeadline(System.currentTimeMillis() + 5000), handler);
+    assertEquals(1, scheduler.getUsageStatus().getCurrentPendingCount());
+  }
+
+  public void testShutdownHandlesPendingTasks() throws Exception {
+    SchedulerTestSupport.HoldingHandler handler = new SchedulerTestSupport.HoldingHandler();
+    scheduler.accept(SchedulerTestSupport.createContext("A"), handler);
+    scheduler.accept(SchedulerTestSupport.createContext("B"), handler);
+    scheduler.shutdown();
+    try {
+      scheduler.accept(SchedulerTestSupport.createContext("B"), handler);
+      fail("Task should be refused after a shutdown");
+    } catch (TaskRefusedException e) {
+      // expected
+    }
+    handler.awaitHandledCount(1);
+    handler.releaseAll();
+    handler.awaitHandledCount(2);
+    handler.releaseAll();
+    assertTrue("Scheduler should terminate once all pending tasks have been handled", scheduler.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  private Context createContextWithDeadline(Serializable deadline) {
+    Map<String, Serializable> entries = Collections.singletonMap(ContextEntryDeadlineStrategy.DEADLINE_ENTRY_NAME, deadline);
+    return SchedulerTestSupport.createContext("SLA", entries);
+  }
+}
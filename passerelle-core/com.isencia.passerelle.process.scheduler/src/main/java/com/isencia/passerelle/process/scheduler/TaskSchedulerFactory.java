@@ -35,6 +35,16 @@ public interface TaskSchedulerFactory {
 	 * will be returned.
 	 */
 	String SCHEDULER_PROP_RESOURCE_COUNT = "nr.resources";
+
+	/**
+	 * Property to define the minimum nr of resources for a scheduler
+	 * that adapts its nr of resources to the load.
+	 * <br>
+	 * When this property is given and lower than SCHEDULER_PROP_RESOURCE_COUNT,
+	 * the scheduler starts with this nr of resources and may grow up to SCHEDULER_PROP_RESOURCE_COUNT.
+	 * This is only supported by the default scheduler type.
+	 */
+	String SCHEDULER_PROP_MIN_RESOURCE_COUNT = "min.nr.resources";
 	
 	/**
 	 * Property to define the max amount of requests that can be kept waiting in the scheduler.
@@ -45,6 +55,33 @@ public interface TaskSchedulerFactory {
 	 */
 	String SCHEDULER_PROP_MAX_WAITING_COUNT = "max.wait.count";
 
+	/**
+	 * Property to select the scheduler implementation, one of the SCHEDULER_TYPE_... values.
+	 * <br>
+	 * When this property is undefined, a default scheduler is created.
+	 */
+	String SCHEDULER_PROP_TYPE = "type";
+
+	/**
+	 * Scheduler type that uses a global lock and a dedicated dispatcher thread,
+	 * and applies the fairness criterion only when the resources are congested.
+	 */
+	String SCHEDULER_TYPE_DEFAULT = "default";
+
+	/**
+	 * Scheduler type that always applies the fairness criterion,
+	 * with concurrent task buffers per task class and incrementally maintained priority scores.
+	 * Suited for high task rates and/or many task classes.
+	 */
+	String SCHEDULER_TYPE_FAIR_SHARE = "fairshare";
+
+	/**
+	 * Scheduler type that handles tasks with a deadline first, earliest deadline first,
+	 * and the other tasks in weighted fair queueing order across the task classes.
+	 * Tasks that can no longer meet their deadline are refused.
+	 */
+	String SCHEDULER_TYPE_WEIGHTED_FAIR_QUEUEING = "wfq";
+
 	/**
 	 * Assumes that it's about scheduling requests for constrained resources,
 	 * i.e. SCHEDULER_PROP_RESOURCE_COUNT will be set, and returns
@@ -11,6 +11,11 @@ import java.util.Set;
  */
 public interface TaskSchedulerRegistry {
 	
+	/**
+	 * The name under which the default scheduler's statistics are available
+	 */
+	String DEFAULT_SCHEDULER_NAME = "DEFAULT";
+	
 	TaskScheduler getScheduler(String schedulerName);
 	
 	TaskScheduler getDefaultScheduler();
@@ -18,4 +23,13 @@ public interface TaskSchedulerRegistry {
 	Set<String> getRegisteredSchedulerNames();
 
 	void registerScheduler(String schedulerName, TaskScheduler scheduler);
+
+	/**
+	 * The statistics of each scheduler are also published as an MBean, 
+	 * named <code>com.isencia.passerelle.process.scheduler:type=TaskScheduler,name="schedulerName"</code>.
+	 * 
+	 * @param schedulerName
+	 * @return the statistics of the given scheduler, or null if it is not registered or does not collect statistics
+	 */
+	TaskSchedulerStatisticsMBean getSchedulerStatistics(String schedulerName);
 }
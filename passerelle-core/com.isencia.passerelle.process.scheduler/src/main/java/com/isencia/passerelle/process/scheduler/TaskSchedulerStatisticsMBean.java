@@ -0,0 +1,133 @@
+/**
+ * 
+ */
+package com.isencia.passerelle.process.scheduler;
+
+/**
+ * Management interface with the statistics of a task scheduler, in total and per task class.
+ * <br>
+ * Times are reported in microseconds, as percentiles of the durations recorded since the last reset :
+ * <ul>
+ * <li> queue wait : from accepting a task till handing it to its handler
+ * <li> service time : from handing a task to its handler till the release of its resource token
+ * </ul>
+ * 
+ *
+ */
+public interface TaskSchedulerStatisticsMBean {
+
+	/**
+	 * Refusal reason for tasks that are offered while the scheduler is shutting down
+	 */
+	String REFUSAL_SHUTDOWN = "shutdown";
+	/**
+	 * Refusal reason for tasks that are offered while the pending queue is full
+	 */
+	String REFUSAL_QUEUE_FULL = "queue full";
+	/**
+	 * Refusal reason for tasks that can no longer be handled before their deadline
+	 */
+	String REFUSAL_DEADLINE = "deadline";
+	/**
+	 * Refusal reason for tasks that are offered while the scheduler is too busy to accept them in time
+	 */
+	String REFUSAL_OVERCHARGED = "overcharged";
+	/**
+	 * Refusal reason for tasks that could not be accepted due to some error, e.g. while classifying them
+	 */
+	String REFUSAL_ERROR = "error";
+
+	String getSchedulerName();
+
+	/**
+	 * @return the names of the task classes for which tasks have been offered since the last reset
+	 */
+	String[] getTaskClassNames();
+
+	long getAcceptedCount();
+	long getRefusedCount();
+	long getHandledCount();
+
+	long getAcceptedCount(String taskClassName);
+	long getRefusedCount(String taskClassName);
+	long getHandledCount(String taskClassName);
+
+	/**
+	 * @return the reasons for which tasks have been refused since the last reset, one of the REFUSAL_... values
+	 */
+	String[] getRefusalReasons();
+	long getRefusedCountForReason(String reason);
+
+	long getQueueWaitP50Micros();
+	long getQueueWaitP99Micros();
+	long getQueueWaitP999Micros();
+	long getServiceTimeP50Micros();
+	long getServiceTimeP99Micros();
+	long getServiceTimeP999Micros();
+
+	/**
+	 * @param taskClassName
+	 * @param percentile between 0 and 100
+	 * @return the queue wait in microseconds below which the given percentage of the tasks of the class fall
+	 */
+	long getQueueWaitPercentileMicros(String taskClassName, double percentile);
+
+	/**
+	 * @param taskClassName
+	 * @param percentile between 0 and 100
+	 * @return the service time in microseconds below which the given percentage of the tasks of the class fall
+	 */
+	long getServiceTimePercentileMicros(String taskClassName, double percentile);
+
+	/**
+	 * @return true if the scheduler is currently selecting tasks in congestion mode, 
+	 * i.e. by priority of their task classes
+	 */
+	boolean isCongested();
+
+	/**
+	 * @return the nr of times the scheduler has entered congestion mode
+	 */
+	long getCongestionCount();
+
+	/**
+	 * @return the total time spent in congestion mode, in ms, including an ongoing congestion
+	 */
+	long getCongestionTimeMillis();
+
+	/**
+	 * @return the longest time spent in congestion mode at once, in ms
+	 */
+	long getMaxCongestionTimeMillis();
+
+	/**
+	 * @return the nr of resources that can currently be used, 
+	 * between getMinResourceLimit() and getMaxResourceLimit() for a scheduler that adapts its nr of resources
+	 */
+	int getResourceLimit();
+
+	/**
+	 * @return the nr of resources below which the resource limit is not decreased
+	 */
+	int getMinResourceLimit();
+
+	/**
+	 * @return the nr of resources above which the resource limit is not increased
+	 */
+	int getMaxResourceLimit();
+
+	/**
+	 * @return how many times the resource limit has been increased since the last reset
+	 */
+	long getLimitIncreaseCount();
+
+	/**
+	 * @return how many times the resource limit has been decreased since the last reset
+	 */
+	long getLimitDecreaseCount();
+
+	/**
+	 * Loose all statistical data.
+	 */
+	void reset();
+}
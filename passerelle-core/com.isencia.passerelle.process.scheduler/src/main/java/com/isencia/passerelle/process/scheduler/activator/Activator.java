@@ -79,6 +79,7 @@ public class Activator implements BundleActivator {
 		if (schedulerRegistryServiceRegistration != null) {
 			schedulerRegistryServiceRegistration.unregister();
 			schedulerRegistryServiceRegistration = null;
+			((DefaultTaskSchedulerRegistry) defaultSchedulerRegistry).dispose();
 			defaultSchedulerRegistry = null;
 		}
 
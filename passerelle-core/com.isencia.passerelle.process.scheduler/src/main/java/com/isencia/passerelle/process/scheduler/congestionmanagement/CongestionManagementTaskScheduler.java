@@ -4,6 +4,7 @@
 package com.isencia.passerelle.process.scheduler.congestionmanagement;
 
 import com.isencia.passerelle.process.scheduler.TaskScheduler;
+import com.isencia.passerelle.process.scheduler.TaskSchedulerStatisticsMBean;
 
 /**
  * <p>
@@ -47,4 +48,10 @@ public interface CongestionManagementTaskScheduler extends TaskScheduler {
 	 * @return the currently configured ResourceCongestionDefinitionStrategy
 	 */
 	ResourceCongestionDefinitionStrategy getResourceCongestionDefinitionStrategy();
+
+	/**
+	 *
+	 * @return the statistics about the accepted, refused and handled tasks, per task class
+	 */
+	TaskSchedulerStatisticsMBean getStatistics();
 }
@@ -0,0 +1,29 @@
+/**
+ * 
+ */
+package com.isencia.passerelle.process.scheduler.congestionmanagement;
+
+/**
+ * Implementations must determine how many resources a scheduler
+ * should use at any given moment, within the bounds configured for the scheduler.
+ * <br>
+ * The strategy is invoked each time a resource is released after handling a task,
+ * so it can adapt the limit based on the observed task durations and pending load.
+ * Implementations may be stateful, i.e. an instance must not be shared between schedulers.
+ * 
+ *
+ */
+public interface ResourceLimitStrategy {
+
+	/**
+	 * Determines the new resource limit, after a task has been handled.
+	 * The scheduler will keep the returned value between its configured minimum and maximum resource counts.
+	 * 
+	 * @param currentLimit the current nr of resources that the scheduler may use
+	 * @param taskDuration the time (in ns) that the task held its resource
+	 * @param busyCount the nr of resources that are still busy
+	 * @param pendingCount the nr of tasks waiting for a resource
+	 * @return the new nr of resources that the scheduler may use
+	 */
+	int getNewLimit(int currentLimit, long taskDuration, int busyCount, int pendingCount);
+}
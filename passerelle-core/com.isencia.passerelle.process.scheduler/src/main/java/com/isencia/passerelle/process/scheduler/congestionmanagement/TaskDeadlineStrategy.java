@@ -0,0 +1,24 @@
+/**
+ * 
+ */
+package com.isencia.passerelle.process.scheduler.congestionmanagement;
+
+import com.isencia.passerelle.process.model.Context;
+
+/**
+ * Implementations must determine whether a task
+ * must be handled before some deadline, e.g. as defined in an SLA.
+ * 
+ *
+ */
+public interface TaskDeadlineStrategy {
+
+	/**
+	 * Determines the deadline for the given task, if any.
+	 *
+	 * @param context some task context
+	 * @return the time (in ms since the epoch) by which the handling of the task should be finished,
+	 * or null if the task has no deadline
+	 */
+	Long getDeadline(Context context);
+}
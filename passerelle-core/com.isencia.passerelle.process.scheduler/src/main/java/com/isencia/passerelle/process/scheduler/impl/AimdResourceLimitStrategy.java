@@ -0,0 +1,94 @@
+/**
+ * 
+ */
+package com.isencia.passerelle.process.scheduler.impl;
+
+import com.isencia.passerelle.process.scheduler.congestionmanagement.ResourceLimitStrategy;
+
+/**
+ * Adapts the resource limit with an additive increase/multiplicative decrease (AIMD) policy :
+ * <ul>
+ * <li> when tasks are waiting for a resource and the task durations are stable, one resource is added
+ * <li> when the recent task durations exceed the long-term average by more than the configured tolerance,
+ * the resources are actually overloaded, so the limit is multiplied with the backoff ratio.
+ * This is only checked once the long-term average is established, i.e. after a warm-up period.
+ * After a decrease, the next one is only done after a full limit's worth of tasks, to see its effect first.
+ * <li> when no tasks are waiting and less than half of the resources are busy, one resource is removed
+ * </ul>
+ * 
+ *
+ */
+public class AimdResourceLimitStrategy implements ResourceLimitStrategy {
+
+	public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+	public static final double DEFAULT_LATENCY_TOLERANCE = 1.5;
+
+	// smoothing factors for the recent and long-term task durations
+	private static final double SHORT_TERM_SMOOTHING = 0.2;
+	private static final double LONG_TERM_SMOOTHING = 0.02;
+	private static final int WARMUP_SAMPLE_COUNT = 20;
+
+	private final double backoffRatio;
+	private final double latencyTolerance;
+
+	private boolean durationMeasured;
+	private double shortTermDuration;
+	private double longTermDuration;
+	private int sampleCount;
+	private int samplesSinceDecrease;
+
+	public AimdResourceLimitStrategy() {
+		this(DEFAULT_BACKOFF_RATIO, DEFAULT_LATENCY_TOLERANCE);
+	}
+
+	/**
+	 * @param backoffRatio factor, between 0 and 1, to apply to the limit when the resources are overloaded
+	 * @param latencyTolerance factor by which the recent task durations may exceed the long-term average, before
+	 * the resources are considered to be overloaded
+	 */
+	public AimdResourceLimitStrategy(double backoffRatio, double latencyTolerance) {
+		if (backoffRatio <= 0 || backoffRatio >= 1) {
+			throw new IllegalArgumentException("Backoff ratio must be between 0 and 1 : " + backoffRatio);
+		}
+		if (latencyTolerance < 1) {
+			throw new IllegalArgumentException("Latency tolerance must be at least 1 : " + latencyTolerance);
+		}
+		this.backoffRatio = backoffRatio;
+		this.latencyTolerance = latencyTolerance;
+	}
+
+	public synchronized int getNewLimit(int currentLimit, long taskDuration, int busyCount, int pendingCount) {
+		if (!durationMeasured) {
+			shortTermDuration = taskDuration;
+			longTermDuration = taskDuration;
+			durationMeasured = true;
+		} else {
+			shortTermDuration += SHORT_TERM_SMOOTHING * (taskDuration - shortTermDuration);
+			longTermDuration += LONG_TERM_SMOOTHING * (taskDuration - longTermDuration);
+		}
+		++sampleCount;
+		++samplesSinceDecrease;
+
+		if (sampleCount > WARMUP_SAMPLE_COUNT && shortTermDuration > latencyTolerance * longTermDuration) {
+			if (samplesSinceDecrease >= currentLimit) {
+				samplesSinceDecrease = 0;
+				return Math.min(currentLimit - 1, (int) (currentLimit * backoffRatio));
+			}
+			return currentLimit;
+		} else if (pendingCount > 0) {
+			return currentLimit + 1;
+		} else if (busyCount < currentLimit / 2) {
+			return currentLimit - 1;
+		} else {
+			return currentLimit;
+		}
+	}
+
+	public double getBackoffRatio() {
+		return backoffRatio;
+	}
+
+	public double getLatencyTolerance() {
+		return latencyTolerance;
+	}
+}
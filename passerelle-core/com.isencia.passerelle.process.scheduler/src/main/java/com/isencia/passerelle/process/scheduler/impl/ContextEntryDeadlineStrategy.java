@@ -0,0 +1,42 @@
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.isencia.passerelle.process.model.Context;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskDeadlineStrategy;
+
+/**
+ * Reads a task's deadline from the context entry <code>SLA deadline</code>.
+ * <br>
+ * The entry value can be a <code>Date</code>, or a nr of ms since the epoch
+ * (as a <code>Number</code> or a <code>String</code>).
+ * 
+ *
+ */
+public class ContextEntryDeadlineStrategy implements TaskDeadlineStrategy {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(ContextEntryDeadlineStrategy.class);
+
+	public static final String DEADLINE_ENTRY_NAME = "SLA deadline";
+
+	public Long getDeadline(Context context) {
+		Serializable deadline = context.getEntryValue(DEADLINE_ENTRY_NAME);
+		if (deadline instanceof Date) {
+			return ((Date) deadline).getTime();
+		} else if (deadline instanceof Number) {
+			return ((Number) deadline).longValue();
+		} else if (deadline != null) {
+			try {
+				return Long.valueOf(deadline.toString().trim());
+			} catch (NumberFormatException e) {
+				LOGGER.warn("Ignoring invalid " + DEADLINE_ENTRY_NAME + " " + deadline + " for context " + context);
+			}
+		}
+		return null;
+	}
+
+}
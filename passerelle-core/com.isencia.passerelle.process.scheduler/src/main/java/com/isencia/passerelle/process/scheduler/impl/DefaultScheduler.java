@@ -30,8 +30,10 @@ import com.isencia.passerelle.process.scheduler.ResourceToken;
 import com.isencia.passerelle.process.scheduler.SchedulerException;
 import com.isencia.passerelle.process.scheduler.TaskHandler;
 import com.isencia.passerelle.process.scheduler.TaskRefusedException;
+import com.isencia.passerelle.process.scheduler.TaskSchedulerStatisticsMBean;
 import com.isencia.passerelle.process.scheduler.congestionmanagement.CongestionManagementTaskScheduler;
 import com.isencia.passerelle.process.scheduler.congestionmanagement.ResourceCongestionDefinitionStrategy;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.ResourceLimitStrategy;
 import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
 import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClassifierStrategy;
 
@@ -64,10 +66,19 @@ import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClassif
  * See the document of Tanguy Herriau (DARE-Congestion Management.doc)
  * for more details about the algorithm.
  * </p>
+ * <p>
+ * A DefaultScheduler can also be configured with a minimum and maximum nr of resources,
+ * in which case it starts with the minimum and adapts the nr of resources it uses
+ * each time a task has been handled, as determined by its ResourceLimitStrategy.
+ * By default this is an AimdResourceLimitStrategy, that grows the pool while tasks are waiting
+ * and shrinks it when the task durations indicate that the resources are overloaded.
+ * The current limit and the nr of changes are available in the ResourceUsageStatus.
+ * </p>
  *
  * @see TaskClass
  * @see TaskClassifierStrategy
  * @see ResourceCongestionDefinitionStrategy
+ * @see ResourceLimitStrategy
  *
  * @author erwin
  *
@@ -79,9 +90,16 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 	
 	private TaskClassifierStrategy taskClassifierStrategy;
 	private ResourceCongestionDefinitionStrategy resourceCongestionDefinitionStrategy;
+	// only used when the nr of resources is adaptive
+	private ResourceLimitStrategy resourceLimitStrategy;
 	
 	// Queue of tokens that represent pool resources for task processing.
 	private final BlockingQueue<ResourceToken> tokens;
+	// bounds for the nr of resources
+	private final int minNrOfResources;
+	private final int maxNrOfResources;
+	// nr of tokens in circulation, i.e. free or busy, guarded by the tokens lock
+	private int tokenCount;
 
 	// Task buffers per task class
 	private final Map<TaskClass, Queue<TaskEntry>> taskQueues = new HashMap<TaskClass, Queue<TaskEntry>>();
@@ -94,6 +112,7 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 	private final Map<TaskClass, Collection<ResourceToken>> busyTokens = new HashMap<TaskClass, Collection<ResourceToken>>();
 
 	private final ResourceUsageStatus usageStatus;
+	private final TaskSchedulerStatistics statistics;
 
 	// 1-thread executor for the entityBufferSink
 	private final ExecutorService queueDepletionExecutor;
@@ -113,22 +132,47 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 //	private static final String CONFIG_NODENAME_PREFIX = "monitoring/resources/";
 
 	public DefaultScheduler(String schedulerName, int nrOfResources, int maxPendingQueueSize) {
+		this(schedulerName, nrOfResources, nrOfResources, maxPendingQueueSize);
+	}
+
+	/**
+	 * Creates a scheduler that adapts its nr of resources between the given bounds.
+	 * When both bounds are equal, the nr of resources is fixed.
+	 * 
+	 * @param schedulerName
+	 * @param minNrOfResources the nr of resources to start with, and below which the pool will not shrink
+	 * @param maxNrOfResources the nr of resources above which the pool will not grow
+	 * @param maxPendingQueueSize
+	 */
+	public DefaultScheduler(String schedulerName, int minNrOfResources, int maxNrOfResources, int maxPendingQueueSize) {
+		if (minNrOfResources < 1 || minNrOfResources > maxNrOfResources) {
+			throw new IllegalArgumentException("Invalid resource bounds " + minNrOfResources + "-" + maxNrOfResources + " for scheduler " + schedulerName);
+		}
 		
 		this.schedulerName = schedulerName;
 //    this.configNodeName = CONFIG_NODENAME_PREFIX + schedulerName;
-		tokens = new LinkedBlockingQueue<ResourceToken>(nrOfResources);
-		for (int idx = 0; idx < nrOfResources; ++idx) {
+		this.minNrOfResources = minNrOfResources;
+		this.maxNrOfResources = maxNrOfResources;
+		tokens = new LinkedBlockingQueue<ResourceToken>(maxNrOfResources);
+		for (int idx = 0; idx < minNrOfResources; ++idx) {
 			tokens.offer(new SchedulerAwareResourceToken(this));
 		}
+		tokenCount = minNrOfResources;
 		
 		resourceCongestionDefinitionStrategy = new DefaultCongestionDefinitionStrategy();
+		if (minNrOfResources < maxNrOfResources) {
+			resourceLimitStrategy = new AimdResourceLimitStrategy();
+		}
 		
 		int pendingQueueCapacity = Integer.MAX_VALUE;
 		if (maxPendingQueueSize > 0) {
 			pendingQueueCapacity = maxPendingQueueSize;
 		}
 
-		usageStatus = new ResourceUsageStatus(schedulerName, nrOfResources, 0, 0, pendingQueueCapacity, 0, 0);
+		usageStatus = new ResourceUsageStatus(schedulerName, minNrOfResources, 0, 0, pendingQueueCapacity, 0, 0);
+		usageStatus.setMaxNrOfResources(maxNrOfResources);
+		statistics = new TaskSchedulerStatistics(schedulerName);
+		statistics.setResourceLimits(minNrOfResources, minNrOfResources, maxNrOfResources);
 		
 		queueDepletionExecutor = Executors.newSingleThreadExecutor();
 		try {
@@ -137,7 +181,7 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 			LOGGER.error(ErrorCode.SYSTEM_ERROR + " - failure to launch queueDepletionExecutor", ex);
 		}
 		
-		taskHandlingExecutor = Executors.newFixedThreadPool(nrOfResources);
+		taskHandlingExecutor = Executors.newFixedThreadPool(maxNrOfResources);
 	}
 	
 	public String getName() {
@@ -176,14 +220,35 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 		this.resourceCongestionDefinitionStrategy = resourceCongestionDefinitionStrategy;
 	}
 
+	/**
+	 * @return the strategy that adapts the nr of resources, or null if the nr of resources is fixed
+	 */
+	public ResourceLimitStrategy getResourceLimitStrategy() {
+		return resourceLimitStrategy;
+	}
+
+	/**
+	 * Sets the strategy to adapt the nr of resources. Ignored when the nr of resources is fixed.
+	 * 
+	 * @param resourceLimitStrategy
+	 */
+	public void setResourceLimitStrategy(ResourceLimitStrategy resourceLimitStrategy) {
+		if (minNrOfResources < maxNrOfResources) {
+			this.resourceLimitStrategy = resourceLimitStrategy;
+		}
+	}
+
 	/* (non-Javadoc)
 	 * @see com.isencia.passerelle.process.scheduler.TaskScheduler#accept(com.isencia.passerelle.diagnosis.LifeCycleEntity, com.isencia.passerelle.process.scheduler.TaskHandler)
 	 */
 	public void accept(Context context, TaskHandler handler) throws TaskRefusedException {
+		TaskClass taskClass = null;
+		String refusalReason = TaskSchedulerStatisticsMBean.REFUSAL_ERROR;
 		try {
 			if(!taskQLock.tryLock(10, TimeUnit.SECONDS)) {
 				// if we did not get the lock, something is getting over-charged,
 				// so refuse the task
+				refusalReason = TaskSchedulerStatisticsMBean.REFUSAL_OVERCHARGED;
 				throw new TaskRefusedException("Scheduler lock overcharged...");
 			}
 
@@ -195,16 +260,18 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 			}
 			
 			if (!active) {
+				refusalReason = TaskSchedulerStatisticsMBean.REFUSAL_SHUTDOWN;
 				throw new TaskRefusedException("Shutting down...");
 			}
 
-			TaskClass taskClass = getTaskClassifierStrategy().getClassForTask(context);
+			taskClass = getTaskClassifierStrategy().getClassForTask(context);
 			TaskEntry taskEntry = new TaskEntry(context, taskClass, handler);
 
 			// check if the capacity for pending tasks has not been exhausted
 			int currentPending = getPendingTaskCount() + 1;
 
 			if(currentPending > usageStatus.getPendingQueueSize()) {
+				refusalReason = TaskSchedulerStatisticsMBean.REFUSAL_QUEUE_FULL;
 				throw new TaskRefusedException("Pending entities queue full. Refused " + context);
 			}
 
@@ -233,8 +300,10 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 				taskQueues.put(taskClass, reqQ);
 			}
 			reqQ.offer(taskEntry);
+			statistics.taskAccepted(taskClass);
 			taskQNotEmpty.signalAll();
 		} catch (Throwable e) {	// NOSONAR
+			statistics.taskRefused(taskClass, refusalReason);
 			throw new TaskRefusedException("Accept failed for " + context, e);
 		} finally {
 			try {taskQLock.unlock();} catch (Exception e) {/*ignore*/}
@@ -329,8 +398,9 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 
 	/**
 	 *
-	 * @return the configured maximum capacity, i.e. the size of the resource pool
-	 * that is available for processing requests
+	 * @return the current maximum capacity, i.e. the size of the resource pool
+	 * that is available for processing requests. 
+	 * For an adaptive resource pool, this is the current limit.
 	 */
 	public int getMaxCapacity() {
 		return usageStatus.getNrOfResources();
@@ -340,6 +410,10 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 		return usageStatus;
 	}
 
+	public TaskSchedulerStatistics getStatistics() {
+		return statistics;
+	}
+
 	/**
 	 * internal utility method used by SchedulerAwareResourceToken
 	 *
@@ -349,17 +423,79 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 	protected void releaseResourceToken(ResourceToken token, TaskClass reqClass) {
 		LOGGER.debug("releaseResourceToken() - entry : token " + token + " for request class " + reqClass);
 
+		ResourceLimitStrategy limitStrategy = resourceLimitStrategy;
+		long taskDuration = System.nanoTime() - ((SchedulerAwareResourceToken) token).getLockTime();
+		int pendingCount = -1;
+		// only adapt the limit after a real task, i.e. not for tokens released during the shutdown
+		if (limitStrategy != null && reqClass != null && active) {
+			try {
+				pendingCount = getPendingTaskCount();
+			} catch (SchedulerException e) {
+				LOGGER.warn("releaseResourceToken() - unable to adapt the resource limit of " + schedulerName, e);
+			}
+		}
+
+		if (reqClass != null) {
+			statistics.taskFinished(reqClass, taskDuration);
+		}
+
 		synchronized(tokens) {
-			if (!tokens.offer(token)) {
+			if (reqClass != null) {
+				busyTokens.get(reqClass).remove(token);
+			}
+			boolean retired = false;
+			if (pendingCount >= 0) {
+				retired = adaptResourceLimit(limitStrategy, taskDuration, pendingCount);
+			}
+			if (!retired && !tokens.offer(token)) {
 				// TODO better to define custom checked exception with more info in
 				// there??
 				throw new IllegalStateException();
 			}
-			busyTokens.get(reqClass).remove(token);
 		}
 
 		LOGGER.debug("releaseResourceToken() - exit - " + getTokenStatus());
 	}
+
+	/**
+	 * Determines the new resource limit, and adds tokens when it has grown.
+	 * When it has shrunk, the released token is retired. 
+	 * If more tokens should be retired, that will happen on subsequent releases.
+	 * <br>
+	 * Must be invoked while holding the tokens lock.
+	 * 
+	 * @param limitStrategy
+	 * @param taskDuration
+	 * @param pendingCount
+	 * @return true if the released token must be retired
+	 */
+	private boolean adaptResourceLimit(ResourceLimitStrategy limitStrategy, long taskDuration, int pendingCount) {
+		int currentLimit = usageStatus.getNrOfResources();
+		int newLimit = limitStrategy.getNewLimit(currentLimit, taskDuration, getBusyTaskCount(), pendingCount);
+		newLimit = Math.max(minNrOfResources, Math.min(maxNrOfResources, newLimit));
+		if (newLimit != currentLimit) {
+			usageStatus.setNrOfResources(newLimit);
+			if (newLimit > currentLimit) {
+				usageStatus.setLimitIncreaseCount(usageStatus.getLimitIncreaseCount() + 1);
+			} else {
+				usageStatus.setLimitDecreaseCount(usageStatus.getLimitDecreaseCount() + 1);
+			}
+			statistics.resourceLimitChanged(currentLimit, newLimit);
+			if (PERFORMANCELOGGER.isDebugEnabled()) {
+				PERFORMANCELOGGER.debug("Scheduler " + schedulerName + " resource limit changed from " + currentLimit + " to " + newLimit 
+						+ " - task duration " + (taskDuration / 1000) + " us - pending tasks " + pendingCount);
+			}
+		}
+		while (tokenCount < newLimit) {
+			tokens.offer(new SchedulerAwareResourceToken(this));
+			++tokenCount;
+		}
+		if (tokenCount > newLimit) {
+			--tokenCount;
+			return true;
+		}
+		return false;
+	}
 	
 	private String getTokenStatus() {
 		StringBuffer resultStr = new StringBuffer("free tokens : "+getCurrentFreeCapacity()+" - busy tokens : ");
@@ -415,6 +551,7 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 		private final Context context;
 		private final TaskClass entityClass;
 		private final TaskHandler handler;
+		private final long acceptTime = System.nanoTime();
 
 		public TaskEntry(Context context, TaskClass entityClass, TaskHandler handler) {
 			this.context = context;
@@ -422,6 +559,13 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 			this.handler = handler;
 		}
 
+		/**
+		 * @return the System.nanoTime() when the entry was created, i.e. when its task was accepted
+		 */
+		public long getAcceptTime() {
+			return acceptTime;
+		}
+
 		public Context getEntity() {
 			return context;
 		}
@@ -502,6 +646,7 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 
 					// store the knowledge about which context class will receive this token
 					token.lock(selectedEntry.getEntityClass());
+					statistics.taskStarted(selectedEntry.getEntityClass(), System.nanoTime() - selectedEntry.getAcceptTime());
 					
 					synchronized(tokens) {
 						// Get or create the token collection
@@ -572,7 +717,9 @@ public class DefaultScheduler implements CongestionManagementTaskScheduler {
 		private TaskEntry getFairlySelectedEntry() {
 			TaskEntry selectedEntry = null;
 
-			if (getResourceCongestionDefinitionStrategy().resourcesAreCongested(getMaxCapacity(), getCurrentFreeCapacity())) {
+			boolean congested = getResourceCongestionDefinitionStrategy().resourcesAreCongested(getMaxCapacity(), getCurrentFreeCapacity());
+			statistics.setCongested(congested);
+			if (congested) {
 				Collection<PrioritizedTaskClass> priorityScores = new TreeSet<PrioritizedTaskClass>();
 
 				// 1. determine the priority for each class,
@@ -16,6 +16,7 @@ import org.slf4j.LoggerFactory;
 import com.isencia.passerelle.process.common.exception.ErrorCode;
 import com.isencia.passerelle.process.common.util.PreferenceUtils;
 import com.isencia.passerelle.process.scheduler.TaskSchedulerFactory;
+import com.isencia.passerelle.process.scheduler.TaskSchedulerRegistry;
 import com.isencia.passerelle.process.scheduler.activator.Activator;
 import com.isencia.passerelle.process.scheduler.congestionmanagement.CongestionManagementTaskScheduler;
 
@@ -35,8 +36,11 @@ public class DefaultTaskSchedulerFactory implements TaskSchedulerFactory {
 	// Max 10 threads per scheduler, by default
 	public static final String DEFAULT_MAX_RESOURCE_COUNT = "10";
 	
+	public static final String DEFAULT_SCHEDULER_TYPE = SCHEDULER_TYPE_DEFAULT;
+	
 	private String defaultMaxResourceCount;
 	private String defaultMaxWaitingCount;
+	private String defaultSchedulerType;
 	
 	public DefaultTaskSchedulerFactory() {
 		
@@ -46,10 +50,14 @@ public class DefaultTaskSchedulerFactory implements TaskSchedulerFactory {
 		// Read the defaults
 		defaultMaxResourceCount = schedulersNode.get(SCHEDULER_PROP_RESOURCE_COUNT, DEFAULT_MAX_RESOURCE_COUNT);
 		defaultMaxWaitingCount = schedulersNode.get(SCHEDULER_PROP_MAX_WAITING_COUNT, DEFAULT_MAX_WAITING_COUNT);
+		defaultSchedulerType = schedulersNode.get(SCHEDULER_PROP_TYPE, DEFAULT_SCHEDULER_TYPE);
 		
-		DefaultScheduler defaultScheduler = new DefaultScheduler(
-        "DEFAULT", 
-        Integer.parseInt(defaultMaxResourceCount), 
+		int defaultResourceCount = Integer.parseInt(defaultMaxResourceCount);
+		CongestionManagementTaskScheduler defaultScheduler = createScheduler(
+        defaultSchedulerType,
+        TaskSchedulerRegistry.DEFAULT_SCHEDULER_NAME, 
+        defaultResourceCount,
+        defaultResourceCount, 
         Integer.parseInt(defaultMaxWaitingCount));
     defaultScheduler.setTaskClassifierStrategy(new ByConsumerTaskClassifierStrategy());
     ((DefaultTaskSchedulerRegistry)Activator.getInstance().getSchedulerRegistry()).setDefaultScheduler(defaultScheduler);
@@ -76,10 +84,19 @@ public class DefaultTaskSchedulerFactory implements TaskSchedulerFactory {
     return defaultMaxWaitingCount;
   }
 
+  public String getDefaultSchedulerType() {
+    return defaultSchedulerType;
+  }
+
   private void createSchedulerFromPrefNode(Preferences node) {
 		Properties props = new Properties();
 		props.setProperty(SCHEDULER_PROP_RESOURCE_COUNT, node.get(SCHEDULER_PROP_RESOURCE_COUNT, defaultMaxResourceCount));
 		props.setProperty(SCHEDULER_PROP_MAX_WAITING_COUNT, node.get(SCHEDULER_PROP_MAX_WAITING_COUNT, defaultMaxWaitingCount));
+		props.setProperty(SCHEDULER_PROP_TYPE, node.get(SCHEDULER_PROP_TYPE, defaultSchedulerType));
+		String minResourceCount = node.get(SCHEDULER_PROP_MIN_RESOURCE_COUNT, null);
+		if (minResourceCount != null) {
+			props.setProperty(SCHEDULER_PROP_MIN_RESOURCE_COUNT, minResourceCount);
+		}
 
 		createCongestionManagementScheduler(node.name(), props);
 	}
@@ -93,13 +110,20 @@ public class DefaultTaskSchedulerFactory implements TaskSchedulerFactory {
 		}
 
 		int resourceCount = 0;
+		int minResourceCount = 0;
 		int maxWaitCount = -1;
 		
 		String resourceCountStr = props.getProperty(TaskSchedulerFactory.SCHEDULER_PROP_RESOURCE_COUNT);
+		String minResourceCountStr = props.getProperty(TaskSchedulerFactory.SCHEDULER_PROP_MIN_RESOURCE_COUNT);
 		String maxWaitCountStr = props.getProperty(TaskSchedulerFactory.SCHEDULER_PROP_MAX_WAITING_COUNT);
+		String schedulerType = props.getProperty(TaskSchedulerFactory.SCHEDULER_PROP_TYPE, DEFAULT_SCHEDULER_TYPE);
 		
 		try {
 			resourceCount = Integer.parseInt(resourceCountStr);
+			minResourceCount = resourceCount;
+			if (StringUtils.isNotBlank(minResourceCountStr)) {
+				minResourceCount = Math.min(resourceCount, Integer.parseInt(minResourceCountStr.trim()));
+			}
 			if (StringUtils.isNotBlank(maxWaitCountStr) && StringUtils.isNumericSpace(maxWaitCountStr)) {
 				maxWaitCount = Integer.parseInt(maxWaitCountStr);
 			}
@@ -107,16 +131,36 @@ public class DefaultTaskSchedulerFactory implements TaskSchedulerFactory {
 			throw new IllegalArgumentException(props.toString(), ex);
 		}
 
-		CongestionManagementTaskScheduler scheduler = new DefaultScheduler(schedulerName, resourceCount, maxWaitCount);
+		CongestionManagementTaskScheduler scheduler = createScheduler(schedulerType, schedulerName, minResourceCount, resourceCount, maxWaitCount);
 		scheduler.setTaskClassifierStrategy(new ByConsumerTaskClassifierStrategy());
 
-		LOGGER.info("Scheduler " + schedulerName + " created with " + resourceCountStr + " resources with a max waiting count of " + maxWaitCountStr);
+		if (minResourceCount < resourceCount) {
+			LOGGER.info("Scheduler " + schedulerName + " of type " + schedulerType + " created with " + minResourceCount + " to " + resourceCountStr + " resources with a max waiting count of " + maxWaitCountStr);
+		} else {
+			LOGGER.info("Scheduler " + schedulerName + " of type " + schedulerType + " created with " + resourceCountStr + " resources with a max waiting count of " + maxWaitCountStr);
+		}
 
 		Activator.getInstance().getSchedulerRegistry().registerScheduler(schedulerName, scheduler);
 		
 		return scheduler;
 	}
 
+	private CongestionManagementTaskScheduler createScheduler(String schedulerType, String schedulerName, int minResourceCount, int resourceCount, int maxWaitCount) {
+		if (StringUtils.isBlank(schedulerType) || SCHEDULER_TYPE_DEFAULT.equalsIgnoreCase(schedulerType.trim())) {
+			return new DefaultScheduler(schedulerName, minResourceCount, resourceCount, maxWaitCount);
+		}
+		if (minResourceCount < resourceCount) {
+			LOGGER.warn("Scheduler " + schedulerName + " of type " + schedulerType + " does not support an adaptive nr of resources, using a fixed nr of " + resourceCount);
+		}
+		if (SCHEDULER_TYPE_FAIR_SHARE.equalsIgnoreCase(schedulerType.trim())) {
+			return new FairShareScheduler(schedulerName, resourceCount, maxWaitCount);
+		} else if (SCHEDULER_TYPE_WEIGHTED_FAIR_QUEUEING.equalsIgnoreCase(schedulerType.trim())) {
+			return new WeightedFairQueueingScheduler(schedulerName, resourceCount, maxWaitCount);
+		} else {
+			throw new IllegalArgumentException("Unknown scheduler type " + schedulerType + " for scheduler " + schedulerName);
+		}
+	}
+
 	private class SchedulerAdditionListener implements INodeChangeListener {
 
 		public void added(NodeChangeEvent event) {
@@ -160,6 +204,15 @@ public class DefaultTaskSchedulerFactory implements TaskSchedulerFactory {
 					defaultMaxWaitingCount = newValue;
 				}
 				LOGGER.info("Scheduler preference update - setting default max waiting count to "+defaultMaxWaitingCount);
+			} else if(SCHEDULER_PROP_TYPE.equals(key)) {
+				if (newValue == null) {
+					// reset to default
+					defaultSchedulerType = DEFAULT_SCHEDULER_TYPE;
+				} else if (!newValue.equals(oldValue)) {
+					// set new value
+					defaultSchedulerType = newValue;
+				}
+				LOGGER.info("Scheduler preference update - setting default scheduler type to "+defaultSchedulerType);
 			}
 		}		
 	}
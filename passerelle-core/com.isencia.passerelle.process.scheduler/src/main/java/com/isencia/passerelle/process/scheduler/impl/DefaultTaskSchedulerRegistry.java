@@ -3,13 +3,23 @@
  */
 package com.isencia.passerelle.process.scheduler.impl;
 
+import java.lang.management.ManagementFactory;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.isencia.passerelle.process.common.exception.ErrorCode;
 import com.isencia.passerelle.process.scheduler.TaskScheduler;
 import com.isencia.passerelle.process.scheduler.TaskSchedulerRegistry;
+import com.isencia.passerelle.process.scheduler.TaskSchedulerStatisticsMBean;
 import com.isencia.passerelle.process.scheduler.congestionmanagement.CongestionManagementTaskScheduler;
 
 /**
@@ -18,7 +28,13 @@ import com.isencia.passerelle.process.scheduler.congestionmanagement.CongestionM
  */
 public class DefaultTaskSchedulerRegistry implements TaskSchedulerRegistry {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(DefaultTaskSchedulerRegistry.class);
+
+	public static final String STATISTICS_MBEAN_DOMAIN = "com.isencia.passerelle.process.scheduler";
+
 	private final Map<String, TaskScheduler> registeredSchedulers = new HashMap<String, TaskScheduler>();
+	// the statistics MBeans, per scheduler name
+	private final Map<String, ObjectName> statisticsMBeanNames = new HashMap<String, ObjectName>();
 	
 	// TODO: left out engineMonitoringService
 	
@@ -37,15 +53,64 @@ public class DefaultTaskSchedulerRegistry implements TaskSchedulerRegistry {
 
 	public void registerScheduler(String schedulerName, TaskScheduler scheduler) {
 		registeredSchedulers.put(schedulerName, scheduler);
+		registerStatisticsMBean(schedulerName, scheduler);
 		// TODO: left out: add resource usage reporter on the engine monitoring service
 	}
 
+	public TaskSchedulerStatisticsMBean getSchedulerStatistics(String schedulerName) {
+		TaskScheduler scheduler = registeredSchedulers.get(schedulerName);
+		if (scheduler == null && DEFAULT_SCHEDULER_NAME.equals(schedulerName)) {
+			scheduler = defaultScheduler;
+		}
+		if (scheduler instanceof CongestionManagementTaskScheduler) {
+			return ((CongestionManagementTaskScheduler) scheduler).getStatistics();
+		}
+		return null;
+	}
+
+	/**
+	 * Unregisters the statistics MBeans of all schedulers.
+	 */
+	public synchronized void dispose() {
+		MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		for (ObjectName mbeanName : statisticsMBeanNames.values()) {
+			try {
+				if (mbeanServer.isRegistered(mbeanName)) {
+					mbeanServer.unregisterMBean(mbeanName);
+				}
+			} catch (Exception e) {
+				LOGGER.error(ErrorCode.SYSTEM_ERROR + " - Error unregistering scheduler statistics MBean " + mbeanName, e);
+			}
+		}
+		statisticsMBeanNames.clear();
+	}
+
+	private synchronized void registerStatisticsMBean(String schedulerName, TaskScheduler scheduler) {
+		if (!(scheduler instanceof CongestionManagementTaskScheduler)) {
+			return;
+		}
+		try {
+			ObjectName mbeanName = new ObjectName(STATISTICS_MBEAN_DOMAIN + ":type=TaskScheduler,name=" + ObjectName.quote(schedulerName));
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			if (mbeanServer.isRegistered(mbeanName)) {
+				// e.g. left behind by a previous activation of the bundle
+				mbeanServer.unregisterMBean(mbeanName);
+			}
+			TaskSchedulerStatisticsMBean statistics = ((CongestionManagementTaskScheduler) scheduler).getStatistics();
+			mbeanServer.registerMBean(new StandardMBean(statistics, TaskSchedulerStatisticsMBean.class), mbeanName);
+			statisticsMBeanNames.put(schedulerName, mbeanName);
+		} catch (Exception e) {
+			LOGGER.warn(ErrorCode.SYSTEM_ERROR + " - Error registering statistics MBean for scheduler " + schedulerName, e);
+		}
+	}
+
   public TaskScheduler getDefaultScheduler() {
     return defaultScheduler;
   }
 
   public void setDefaultScheduler(CongestionManagementTaskScheduler defaultScheduler) {
     this.defaultScheduler = defaultScheduler;
+    registerStatisticsMBean(DEFAULT_SCHEDULER_NAME, defaultScheduler);
   }
 	// TODO: left out: engine monitoring service setter
 }
@@ -0,0 +1,95 @@
+/**
+ * 
+ */
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds, to obtain percentiles such as p50/p99/p99.9.
+ * <p>
+ * Values are counted in logarithmic buckets, each split in 16 linear sub-buckets,
+ * so the value reported for a percentile is at most about 6% larger than the actual value.
+ * Values up to about 36 minutes (2^41 ns) are counted separately; larger values are counted in the highest bucket.
+ * </p>
+ * <p>
+ * Recording a value only increments some atomic counters, so it never blocks and can be done 
+ * concurrently by the scheduler's threads.
+ * </p>
+ * 
+ *
+ */
+final class DurationHistogram {
+
+	// values below 2^SUB_BUCKET_BITS are counted exactly,
+	// larger ones in 2^(SUB_BUCKET_BITS-1) sub-buckets per power of 2
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT >>> 1;
+	// 2^40 ns is about 18 minutes, so the highest sub-buckets go up to about 36 minutes
+	private static final int MAX_VALUE_BITS = 40;
+	private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 3) * HALF_SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+
+	/**
+	 * @param nanos a duration in nanoseconds; negative values are ignored
+	 */
+	void recordNanos(long nanos) {
+		if (nanos < 0) {
+			return;
+		}
+		buckets.incrementAndGet(bucketIndex(nanos));
+		count.incrementAndGet();
+	}
+
+	long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the value in ns below which the given percentage of the recorded values fall, or 0 if there are no values.
+	 */
+	long getPercentileNanos(double percentile) {
+		long total = count.get();
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return bucketUpperValue(i);
+			}
+		}
+		// counts were incremented while we were scanning
+		return bucketUpperValue(BUCKET_COUNT - 1);
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(value);
+		if (magnitude > MAX_VALUE_BITS) {
+			return BUCKET_COUNT - 1;
+		}
+		int shift = magnitude - SUB_BUCKET_BITS + 1;
+		// the top SUB_BUCKET_BITS bits of the value, with the leading 1 removed, give the sub-bucket
+		int subBucket = (int) (value >>> shift) - HALF_SUB_BUCKET_COUNT;
+		return (shift + 1) * HALF_SUB_BUCKET_COUNT + subBucket;
+	}
+
+	static long bucketUpperValue(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = (index - HALF_SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT;
+		long subBucket = (index - HALF_SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,516 @@
+/**
+ * 
+ */
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.isencia.passerelle.process.model.Context;
+import com.isencia.passerelle.process.scheduler.TaskHandler;
+import com.isencia.passerelle.process.scheduler.TaskRefusedException;
+import com.isencia.passerelle.process.scheduler.TaskSchedulerStatisticsMBean;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.CongestionManagementTaskScheduler;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.ResourceCongestionDefinitionStrategy;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClassifierStrategy;
+import com.isencia.passerelle.process.scheduler.impl.DefaultScheduler.TaskEntry;
+
+/**
+ * <p>
+ * A FairShareScheduler implements the same fair capacity assignment policy across task classes
+ * as the <code>DefaultScheduler</code>, but it is built to sustain high task rates :
+ * <ul>
+ * <li> pending tasks are buffered in a concurrent queue per task class, so accepting a task
+ * does not need a global lock.
+ * <li> the task classes with pending tasks are kept in a heap, ordered on their priority score
+ * (i.e. their relative capacity assignment divided by the nr of resources they currently occupy).
+ * The score of a class is updated incrementally, each time a resource token is locked for or released by one of its tasks,
+ * i.o. re-calculating and sorting the scores of all classes for each selected task.
+ * <li> there is no dedicated thread to hand out the resource tokens. The threads that accept tasks
+ * or release tokens take turns in dispatching the pending tasks.
+ * At most one thread is dispatching at any time, but other threads never wait for it :
+ * they just leave a notice that there's something new to dispatch.
+ * </ul>
+ * </p>
+ * <p>
+ * As the fairest task is found as fast as an arbitrary one, the selection is always done on the priority scores,
+ * whether the resources are congested or not. (As long as they are not congested, pending tasks get a resource immediately anyway.)
+ * So the <code>ResourceCongestionDefinitionStrategy</code> does not influence the task selection of this scheduler.
+ * </p>
+ *
+ * @see DefaultScheduler
+ * @see TaskClass
+ * @see TaskClassifierStrategy
+ *
+ *
+ */
+public class FairShareScheduler implements CongestionManagementTaskScheduler {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(FairShareScheduler.class);
+	private static final Logger PERFORMANCELOGGER = LoggerFactory.getLogger("performance.resource");
+
+	private TaskClassifierStrategy taskClassifierStrategy;
+	private ResourceCongestionDefinitionStrategy resourceCongestionDefinitionStrategy;
+
+	// Task buffers and resource allocation per task class
+	private final ConcurrentMap<TaskClass, ClassState> classStates = new ConcurrentHashMap<TaskClass, ClassState>();
+
+	// Tokens that represent free pool resources for task processing.
+	private final Queue<Token> freeTokens = new ConcurrentLinkedQueue<Token>();
+
+	// Notices for the dispatching thread, about classes that got new pending tasks resp. released tokens
+	private final Queue<ClassState> newlyPendingClasses = new ConcurrentLinkedQueue<ClassState>();
+	private final Queue<ClassState> releasingClasses = new ConcurrentLinkedQueue<ClassState>();
+
+	// The classes with pending tasks, highest priority score first.
+	// Only to be accessed by the dispatching thread, i.e. while holding the dispatchLock.
+	private final ClassHeap pendingClasses = new ClassHeap();
+	private final ReentrantLock dispatchLock = new ReentrantLock();
+	private volatile boolean dispatchRequested;
+
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private final AtomicInteger maxPendingCount = new AtomicInteger();
+	private final AtomicInteger busyCount = new AtomicInteger();
+	private final AtomicInteger maxBusyCount = new AtomicInteger();
+	private final ResourceUsageStatus usageStatus;
+	private final TaskSchedulerStatistics statistics;
+
+	// thread pool for the task handlers
+	private final TaskHandlerPool taskHandlerPool;
+
+	private volatile boolean active = true;
+
+	private final String schedulerName;
+
+	public FairShareScheduler(String schedulerName, int nrOfResources, int maxPendingQueueSize) {
+		this.schedulerName = schedulerName;
+		statistics = new TaskSchedulerStatistics(schedulerName);
+		statistics.setResourceLimits(nrOfResources, nrOfResources, nrOfResources);
+		for (int idx = 0; idx < nrOfResources; ++idx) {
+			freeTokens.offer(new Token());
+		}
+
+		resourceCongestionDefinitionStrategy = new DefaultCongestionDefinitionStrategy();
+
+		int pendingQueueCapacity = Integer.MAX_VALUE;
+		if (maxPendingQueueSize > 0) {
+			pendingQueueCapacity = maxPendingQueueSize;
+		}
+
+		usageStatus = new ResourceUsageStatus(schedulerName, nrOfResources, 0, 0, pendingQueueCapacity, 0, 0);
+
+		taskHandlerPool = new TaskHandlerPool(schedulerName, nrOfResources);
+	}
+
+	public String getName() {
+		return schedulerName;
+	}
+
+	public TaskClassifierStrategy getTaskClassifierStrategy() {
+		return taskClassifierStrategy;
+	}
+
+	public void setTaskClassifierStrategy(TaskClassifierStrategy taskClassifierStrategy) {
+		this.taskClassifierStrategy = taskClassifierStrategy;
+	}
+
+	public ResourceCongestionDefinitionStrategy getResourceCongestionDefinitionStrategy() {
+		return resourceCongestionDefinitionStrategy;
+	}
+
+	public void setResourceCongestionDefinitionStrategy(ResourceCongestionDefinitionStrategy resourceCongestionDefinitionStrategy) {
+		this.resourceCongestionDefinitionStrategy = resourceCongestionDefinitionStrategy;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.isencia.passerelle.process.scheduler.TaskScheduler#accept(com.isencia.passerelle.process.model.Context, com.isencia.passerelle.process.scheduler.TaskHandler)
+	 */
+	public void accept(Context context, TaskHandler handler) throws TaskRefusedException {
+		if (PERFORMANCELOGGER.isDebugEnabled()) {
+			PERFORMANCELOGGER.debug("Scheduler status : " + getUsageStatus());
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("accept() - entry : context " + context);
+		}
+
+		if (!active) {
+			statistics.taskRefused(null, TaskSchedulerStatisticsMBean.REFUSAL_SHUTDOWN);
+			throw new TaskRefusedException("Shutting down...");
+		}
+
+		TaskClass taskClass = null;
+		try {
+			taskClass = getTaskClassifierStrategy().getClassForTask(context);
+		} catch (RuntimeException e) {
+			statistics.taskRefused(null, TaskSchedulerStatisticsMBean.REFUSAL_ERROR);
+			throw new TaskRefusedException("Accept failed for " + context, e);
+		}
+
+		// check if the capacity for pending tasks has not been exhausted
+		int currentPending = pendingCount.incrementAndGet();
+		if (currentPending > usageStatus.getPendingQueueSize()) {
+			pendingCount.decrementAndGet();
+			statistics.taskRefused(taskClass, TaskSchedulerStatisticsMBean.REFUSAL_QUEUE_FULL);
+			throw new TaskRefusedException("Pending entities queue full. Refused " + context);
+		}
+		updateMax(maxPendingCount, currentPending);
+
+		// put the task in its class buffer,
+		// and notify the dispatcher when its class was not pending yet
+		ClassState classState = getClassState(taskClass);
+		classState.queue.offer(new TaskEntry(context, taskClass, handler));
+		statistics.taskAccepted(taskClass);
+		if (classState.pendingCount.getAndIncrement() == 0) {
+			newlyPendingClasses.offer(classState);
+		}
+		dispatch();
+
+		LOGGER.debug("accept() - exit");
+	}
+
+	/* (non-Javadoc)
+	 * @see com.isencia.passerelle.process.scheduler.TaskScheduler#shutdown()
+	 */
+	public void shutdown() {
+		LOGGER.debug("Shutting down scheduler " + schedulerName);
+		active = false;
+		// the task handling executor is shut down by the dispatcher,
+		// once all pending tasks have been handed out
+		dispatch();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.isencia.passerelle.process.scheduler.TaskScheduler#clearPending()
+	 */
+	public List<Context> clearPending() {
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("clearPending() - entry - " + schedulerName);
+		}
+
+		List<Context> results = new ArrayList<Context>();
+		dispatchLock.lock();
+		try {
+			for (ClassState classState : classStates.values()) {
+				TaskEntry taskEntry = null;
+				while ((taskEntry = classState.queue.poll()) != null) {
+					results.add(taskEntry.getEntity());
+					classState.pendingCount.decrementAndGet();
+					pendingCount.decrementAndGet();
+				}
+				pendingClasses.remove(classState);
+			}
+		} finally {
+			dispatchLock.unlock();
+		}
+		// pick up any notices that were left while we were clearing
+		dispatch();
+
+		LOGGER.debug("clearPending() - exit - " + schedulerName);
+		return results;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.isencia.passerelle.process.scheduler.TaskScheduler#shutdownNow()
+	 */
+	public List<Context> shutdownNow() {
+		LOGGER.debug("Shutting down NOW...");
+		active = false;
+		List<Context> pendingTasks = clearPending();
+		pendingTasks.addAll(taskHandlerPool.shutdownNow());
+		return pendingTasks;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.isencia.passerelle.process.scheduler.TaskScheduler#awaitTermination(long, java.util.concurrent.TimeUnit)
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return taskHandlerPool.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * @return the count of resource tokens still available to be handed out
+	 */
+	public int getCurrentFreeCapacity() {
+		return usageStatus.getNrOfResources() - busyCount.get();
+	}
+
+	/**
+	 * @return the configured maximum capacity, i.e. the size of the resource pool
+	 * that is available for processing requests
+	 */
+	public int getMaxCapacity() {
+		return usageStatus.getNrOfResources();
+	}
+
+	public TaskSchedulerStatistics getStatistics() {
+		return statistics;
+	}
+
+	public ResourceUsageStatus getUsageStatus() {
+		usageStatus.setCurrentUsed(busyCount.get());
+		usageStatus.setMaxUsed(maxBusyCount.get());
+		usageStatus.setCurrentPendingCount(pendingCount.get());
+		usageStatus.setMaxPendingCount(maxPendingCount.get());
+		return usageStatus;
+	}
+
+	private ClassState getClassState(TaskClass taskClass) {
+		ClassState classState = classStates.get(taskClass);
+		if (classState == null) {
+			// aha, 1st time we get this kind of task class
+			ClassState newClassState = new ClassState(taskClass);
+			classState = classStates.putIfAbsent(taskClass, newClassState);
+			if (classState == null) {
+				classState = newClassState;
+			}
+		}
+		return classState;
+	}
+
+	private static void updateMax(AtomicInteger max, int current) {
+		int currentMax = max.get();
+		while (current > currentMax && !max.compareAndSet(currentMax, current)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Hands out free tokens to pending tasks, if no other thread is doing that already.
+	 * In that case, that thread will do another dispatching round on our behalf.
+	 */
+	private void dispatch() {
+		dispatchRequested = true;
+		while (dispatchRequested && dispatchLock.tryLock()) {
+			try {
+				dispatchRequested = false;
+				dispatchPendingTasks();
+			} finally {
+				dispatchLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Must only be called while holding the dispatchLock.
+	 */
+	private void dispatchPendingTasks() {
+		while (true) {
+			processNotices();
+			if (pendingClasses.isEmpty()) {
+				break;
+			}
+			Token token = freeTokens.poll();
+			if (token == null) {
+				break;
+			}
+			ClassState classState = pendingClasses.peek();
+			TaskEntry selectedEntry = classState.queue.poll();
+			if (selectedEntry == null) {
+				// the class's pending tasks have been cleared in the meantime
+				pendingClasses.remove(classState);
+				freeTokens.offer(token);
+				continue;
+			}
+			pendingCount.decrementAndGet();
+			if (classState.pendingCount.decrementAndGet() <= 0) {
+				pendingClasses.remove(classState);
+			}
+
+			// store the knowledge about which task class will receive this token
+			token.lock(classState);
+			statistics.taskStarted(classState.taskClass, token.getLockTime() - selectedEntry.getAcceptTime());
+			classState.busyCount++;
+			pendingClasses.update(classState);
+			updateMax(maxBusyCount, busyCount.incrementAndGet());
+
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Selected entry for context " + selectedEntry.getEntity());
+			}
+			// let the handler do its thing for its task, in an own thread
+			taskHandlerPool.execute(selectedEntry, token);
+		}
+
+		if (!active && pendingCount.get() == 0) {
+			taskHandlerPool.shutdown();
+		}
+	}
+
+	private void processNotices() {
+		ClassState classState = null;
+		while ((classState = releasingClasses.poll()) != null) {
+			classState.busyCount--;
+			pendingClasses.update(classState);
+		}
+		while ((classState = newlyPendingClasses.poll()) != null) {
+			pendingClasses.add(classState);
+		}
+	}
+
+	/**
+	 * The pending tasks and resource allocation of a task class.
+	 */
+	private static class ClassState {
+		private final TaskClass taskClass;
+		private final Queue<TaskEntry> queue = new ConcurrentLinkedQueue<TaskEntry>();
+		private final AtomicInteger pendingCount = new AtomicInteger();
+		// only to be accessed by the dispatching thread
+		private int busyCount;
+		private int heapIndex = -1;
+
+		private ClassState(TaskClass taskClass) {
+			this.taskClass = taskClass;
+		}
+
+		private double getPriorityScore() {
+			return (busyCount > 0) ? ((double) taskClass.getRelativeCapacityAssignment()) / busyCount : Double.MAX_VALUE;
+		}
+
+		/**
+		 * Does a "largest priorityScore first" order, and for identical scores, an alphabetical order on the name.
+		 * (cfr PrioritizedTaskClass)
+		 */
+		private boolean precedes(ClassState other) {
+			double score = getPriorityScore();
+			double otherScore = other.getPriorityScore();
+			if (score != otherScore) {
+				return score > otherScore;
+			}
+			return taskClass.getName().compareTo(other.taskClass.getName()) < 0;
+		}
+	}
+
+	/**
+	 * A binary heap of class states, with the highest priority score at its top.
+	 * The class states keep track of their position in the heap,
+	 * so they can be repositioned when their score changes.
+	 */
+	private static class ClassHeap {
+		private final List<ClassState> heap = new ArrayList<ClassState>();
+
+		private boolean isEmpty() {
+			return heap.isEmpty();
+		}
+
+		private ClassState peek() {
+			return heap.get(0);
+		}
+
+		private void add(ClassState classState) {
+			if (classState.heapIndex < 0) {
+				heap.add(classState);
+				siftUp(heap.size() - 1);
+			}
+		}
+
+		private void remove(ClassState classState) {
+			int index = classState.heapIndex;
+			if (index >= 0) {
+				ClassState last = heap.remove(heap.size() - 1);
+				classState.heapIndex = -1;
+				if (last != classState) {
+					set(index, last);
+					siftDown(index);
+					siftUp(last.heapIndex);
+				}
+			}
+		}
+
+		private void update(ClassState classState) {
+			if (classState.heapIndex >= 0) {
+				siftUp(classState.heapIndex);
+				siftDown(classState.heapIndex);
+			}
+		}
+
+		private void siftUp(int index) {
+			ClassState classState = heap.get(index);
+			while (index > 0) {
+				int parentIndex = (index - 1) / 2;
+				ClassState parent = heap.get(parentIndex);
+				if (!classState.precedes(parent)) {
+					break;
+				}
+				set(index, parent);
+				index = parentIndex;
+			}
+			set(index, classState);
+		}
+
+		private void siftDown(int index) {
+			ClassState classState = heap.get(index);
+			int size = heap.size();
+			while (true) {
+				int childIndex = 2 * index + 1;
+				if (childIndex >= size) {
+					break;
+				}
+				if (childIndex + 1 < size && heap.get(childIndex + 1).precedes(heap.get(childIndex))) {
+					childIndex++;
+				}
+				ClassState child = heap.get(childIndex);
+				if (!child.precedes(classState)) {
+					break;
+				}
+				set(index, child);
+				index = childIndex;
+			}
+			set(index, classState);
+		}
+
+		private void set(int index, ClassState classState) {
+			heap.set(index, classState);
+			classState.heapIndex = index;
+		}
+	}
+
+	/**
+	 * A resource token that knows for which task class it is locked,
+	 * so the class's priority score can be updated when it is released.
+	 */
+	private class Token extends TaskHandlerPool.PoolToken {
+		private static final long serialVersionUID = 1L;
+
+		private final AtomicReference<ClassState> owner = new AtomicReference<ClassState>();
+
+		private Token() {
+			super(schedulerName, statistics);
+		}
+
+		private void lock(ClassState classState) {
+			startService();
+			owner.set(classState);
+		}
+
+		TaskClass getTaskClass() {
+			ClassState classState = owner.get();
+			return (classState != null) ? classState.taskClass : null;
+		}
+
+		void released(long serviceTimeNanos) {
+			dispatch();
+		}
+
+		boolean free() {
+			ClassState classState = owner.getAndSet(null);
+			if (classState == null) {
+				return false;
+			}
+			releasingClasses.offer(classState);
+			busyCount.decrementAndGet();
+			freeTokens.offer(this);
+			return true;
+		}
+	}
+}
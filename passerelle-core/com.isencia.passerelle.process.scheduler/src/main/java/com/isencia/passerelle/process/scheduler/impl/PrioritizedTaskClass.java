@@ -9,7 +9,7 @@ import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
  * @author "puidir"
  *
  */
-public class PrioritizedTaskClass {
+public class PrioritizedTaskClass implements Comparable<PrioritizedTaskClass> {
 
 	private TaskClass entityClass;
 	private Double priorityScore;
@@ -58,7 +58,7 @@ public class PrioritizedTaskClass {
 			return 1;
 		}
 		int result = o.priorityScore.compareTo(priorityScore);
-		if (result != 0) {
+		if (result == 0) {
 			return getEntityClass().getName().compareTo(o.getEntityClass().getName());
 		} else {
 			return result;
@@ -14,13 +14,20 @@ public class ResourceUsageStatus {
 
 	private String resourceName;
 	
-	private int nrOfResources;
+	// can be adapted by the scheduler while the status is being read
+	private volatile int nrOfResources;
 	private int currentUsed;
 	private int maxUsed;
 	
 	private int pendingQueueSize;
 	private int currentPendingCount;
 	private int maxPendingCount;
+	
+	// only relevant for schedulers that adapt their nr of resources
+	private int minNrOfResources;
+	private int maxNrOfResources;
+	private int limitIncreaseCount;
+	private int limitDecreaseCount;
 
 	public ResourceUsageStatus(String resourceName, int nrOfResources,
 			int currentUsed, int maxUsed, int pendingQueueSize,
@@ -32,16 +39,44 @@ public class ResourceUsageStatus {
 		this.pendingQueueSize = pendingQueueSize;
 		this.currentPendingCount = currentPendingCount;
 		this.maxPendingCount = maxPendingCount;
+		this.minNrOfResources = nrOfResources;
+		this.maxNrOfResources = nrOfResources;
 	}
 	
 	public String getName() {
 		return resourceName;
 	}
 	
+	/**
+	 * @return the nr of resources that can currently be used, 
+	 * between getMinNrOfResources() and getMaxNrOfResources() for an adaptive resource pool
+	 */
 	public int getNrOfResources() {
 		return nrOfResources;
 	}
 
+	public int getMinNrOfResources() {
+		return minNrOfResources;
+	}
+
+	public int getMaxNrOfResources() {
+		return maxNrOfResources;
+	}
+
+	/**
+	 * @return how many times the limit on the nr of resources has been increased
+	 */
+	public int getLimitIncreaseCount() {
+		return limitIncreaseCount;
+	}
+
+	/**
+	 * @return how many times the limit on the nr of resources has been decreased
+	 */
+	public int getLimitDecreaseCount() {
+		return limitDecreaseCount;
+	}
+
 	public int getCurrentUsed() {
 		return currentUsed;
 	}
@@ -66,6 +101,22 @@ public class ResourceUsageStatus {
 		this.nrOfResources = nrOfResources;
 	}
 
+	public void setMinNrOfResources(int minNrOfResources) {
+		this.minNrOfResources = minNrOfResources;
+	}
+
+	public void setMaxNrOfResources(int maxNrOfResources) {
+		this.maxNrOfResources = maxNrOfResources;
+	}
+
+	public void setLimitIncreaseCount(int limitIncreaseCount) {
+		this.limitIncreaseCount = limitIncreaseCount;
+	}
+
+	public void setLimitDecreaseCount(int limitDecreaseCount) {
+		this.limitDecreaseCount = limitDecreaseCount;
+	}
+
 	public void setCurrentUsed(int currentUsed) {
 		this.currentUsed = currentUsed;
 	}
@@ -90,6 +141,9 @@ public class ResourceUsageStatus {
 		StringBuilder strB = new StringBuilder("[Resource "+resourceName+" -- Usage Status : ");
 		strB.append(" Resource usage Current/Max/Total : "+currentUsed+"/"+maxUsed+"/"+nrOfResources);
 		strB.append(" Pending requests Current/Max/Total : "+currentPendingCount+"/"+maxPendingCount+"/"+pendingQueueSize);
+		if (minNrOfResources != maxNrOfResources) {
+			strB.append(" Resource limit Min/Max/Increases/Decreases : "+minNrOfResources+"/"+maxNrOfResources+"/"+limitIncreaseCount+"/"+limitDecreaseCount);
+		}
 		strB.append("]");
 		return strB.toString();
 	}
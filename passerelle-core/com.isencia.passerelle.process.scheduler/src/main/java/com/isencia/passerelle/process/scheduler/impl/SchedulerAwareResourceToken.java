@@ -16,6 +16,7 @@ public class SchedulerAwareResourceToken implements ResourceToken {
 
 	private DefaultScheduler scheduler;
 	private TaskClass entityClass;
+	private long lockTime;
 	
 	protected SchedulerAwareResourceToken(DefaultScheduler scheduler) {
 		this.scheduler = scheduler;
@@ -23,14 +24,25 @@ public class SchedulerAwareResourceToken implements ResourceToken {
 	
 	protected void lock(TaskClass entityClass) {
 		this.entityClass = entityClass;
+		this.lockTime = System.nanoTime();
+	}
+	
+	/**
+	 * @return the System.nanoTime() when the token was last locked for a task
+	 */
+	protected long getLockTime() {
+		return lockTime;
 	}
 	
 	/* (non-Javadoc)
 	 * @see com.isencia.passerelle.process.scheduler.ResourceToken#release()
 	 */
 	public void release() {
-		scheduler.releaseResourceToken(this, entityClass);
+		// clear the task class before handing back the token,
+		// as it may be locked again for a next task immediately
+		TaskClass releasedClass = entityClass;
 		entityClass = null;
+		scheduler.releaseResourceToken(this, releasedClass);
 	}
 
 }
@@ -0,0 +1,166 @@
+/**
+ *
+ */
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.isencia.passerelle.process.common.exception.ErrorCode;
+import com.isencia.passerelle.process.model.Context;
+import com.isencia.passerelle.process.scheduler.ResourceToken;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
+import com.isencia.passerelle.process.scheduler.impl.DefaultScheduler.TaskEntry;
+
+/**
+ * The thread pool in which the schedulers without a dispatcher thread, i.e. the <code>FairShareScheduler</code>
+ * and the <code>WeightedFairQueueingScheduler</code>, let the handlers handle their tasks.
+ * It has one thread per resource, so a task that got a resource token never waits for a thread.
+ *
+ * @see FairShareScheduler
+ * @see WeightedFairQueueingScheduler
+ */
+final class TaskHandlerPool {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(TaskHandlerPool.class);
+
+	private final String schedulerName;
+	private final ExecutorService executor;
+
+	TaskHandlerPool(String schedulerName, int nrOfResources) {
+		this.schedulerName = schedulerName;
+		executor = Executors.newFixedThreadPool(nrOfResources);
+	}
+
+	/**
+	 * Lets the handler of the task handle it in a pool thread.
+	 * When the pool no longer accepts tasks, the task is dropped and the token is freed.
+	 *
+	 * @param taskEntry
+	 * @param token the resource token that has been handed out for the task
+	 */
+	void execute(TaskEntry taskEntry, PoolToken token) {
+		try {
+			executor.execute(new HandlerRunner(taskEntry, token));
+		} catch (RejectedExecutionException e) {
+			LOGGER.error(ErrorCode.SYSTEM_ERROR + " - scheduler " + schedulerName + " no longer executes tasks, dropped context " + taskEntry.getEntity(), e);
+			token.free();
+		}
+	}
+
+	/**
+	 * Lets the pool threads finish once the handed out tasks have been handled.
+	 */
+	void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Stops the pool threads, and releases the tokens of the tasks that were not being handled yet.
+	 *
+	 * @return the tasks that were not being handled yet
+	 */
+	List<Context> shutdownNow() {
+		List<Context> waitingTasks = new ArrayList<Context>();
+		List<Runnable> waitingRunners = executor.shutdownNow();
+		for (Runnable runnable : waitingRunners) {
+			HandlerRunner runner = (HandlerRunner) runnable;
+			waitingTasks.add(runner.taskEntry.getEntity());
+			runner.token.release();
+		}
+		return waitingTasks;
+	}
+
+	boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * A resource token that measures how long it is kept by a handler,
+	 * and reports the service time to the scheduler's statistics when it is released.
+	 */
+	static abstract class PoolToken implements ResourceToken {
+		private static final long serialVersionUID = 1L;
+
+		private final String schedulerName;
+		private final TaskSchedulerStatistics statistics;
+		// System.nanoTime() when the token was handed out,
+		// only written before handing the token to a handler
+		private long lockTime;
+
+		PoolToken(String schedulerName, TaskSchedulerStatistics statistics) {
+			this.schedulerName = schedulerName;
+			this.statistics = statistics;
+		}
+
+		/**
+		 * Starts the measurement of the service time, when the token is handed out for a task.
+		 */
+		void startService() {
+			lockTime = System.nanoTime();
+		}
+
+		/**
+		 * @return the System.nanoTime() when the token was last handed out
+		 */
+		long getLockTime() {
+			return lockTime;
+		}
+
+		/* (non-Javadoc)
+		 * @see com.isencia.passerelle.process.scheduler.ResourceToken#release()
+		 */
+		public void release() {
+			long serviceTimeNanos = System.nanoTime() - lockTime;
+			TaskClass taskClass = getTaskClass();
+			if (free()) {
+				if (taskClass != null) {
+					statistics.taskFinished(taskClass, serviceTimeNanos);
+				}
+				released(serviceTimeNanos);
+			} else {
+				LOGGER.warn("Scheduler " + schedulerName + " - ignoring release of a token that is not in use");
+			}
+		}
+
+		/**
+		 * @return the class of the task for which the token is in use, or null if it is not in use
+		 */
+		abstract TaskClass getTaskClass();
+
+		/**
+		 * Puts the token back in the pool of free tokens, without dispatching.
+		 *
+		 * @return false if the token was not in use
+		 */
+		abstract boolean free();
+
+		/**
+		 * Called when a handler has released the token, after it has been freed, e.g. to dispatch pending tasks.
+		 *
+		 * @param serviceTimeNanos the time that the handler kept the token
+		 */
+		abstract void released(long serviceTimeNanos);
+	}
+
+	private static class HandlerRunner implements Runnable {
+		private final TaskEntry taskEntry;
+		private final ResourceToken token;
+
+		private HandlerRunner(TaskEntry taskEntry, ResourceToken token) {
+			this.taskEntry = taskEntry;
+			this.token = token;
+		}
+
+		public void run() {
+			taskEntry.getHandler().handle(taskEntry.getEntity(), token);
+		}
+	}
+}
@@ -0,0 +1,304 @@
+/**
+ * 
+ */
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.isencia.passerelle.process.scheduler.TaskSchedulerStatisticsMBean;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
+
+/**
+ * Collects the statistics of a scheduler, in total and per task class.
+ * <br>
+ * The schedulers report each accepted or refused task, the queue wait when a task is handed to its handler, 
+ * and the service time when its resource token is released. 
+ * Apart from the congestion tracking, this only increments atomic counters, so it does not add any locking
+ * to the schedulers.
+ * 
+ *
+ */
+public class TaskSchedulerStatistics implements TaskSchedulerStatisticsMBean {
+
+	private final String schedulerName;
+
+	private volatile ClassStatistics totals = new ClassStatistics();
+	private final ConcurrentMap<String, ClassStatistics> classStatistics = new ConcurrentHashMap<String, ClassStatistics>();
+	private final ConcurrentMap<String, AtomicLong> refusalCounts = new ConcurrentHashMap<String, AtomicLong>();
+
+	// the resource limit, as adapted by the scheduler
+	private volatile int resourceLimit;
+	private volatile int minResourceLimit;
+	private volatile int maxResourceLimit;
+	private final AtomicLong limitIncreaseCount = new AtomicLong();
+	private final AtomicLong limitDecreaseCount = new AtomicLong();
+
+	// congestion tracking, guarded by this
+	private boolean congested;
+	private long congestionStart;
+	private long congestionCount;
+	private long congestionTime;
+	private long maxCongestionTime;
+
+	public TaskSchedulerStatistics(String schedulerName) {
+		this.schedulerName = schedulerName;
+	}
+
+	public void taskAccepted(TaskClass taskClass) {
+		totals.acceptedCount.incrementAndGet();
+		getClassStatistics(taskClass).acceptedCount.incrementAndGet();
+	}
+
+	/**
+	 * @param taskClass null if the task's class could not be determined
+	 * @param reason one of the REFUSAL_... values
+	 */
+	public void taskRefused(TaskClass taskClass, String reason) {
+		totals.refusedCount.incrementAndGet();
+		if (taskClass != null) {
+			getClassStatistics(taskClass).refusedCount.incrementAndGet();
+		}
+		AtomicLong refusalCount = refusalCounts.get(reason);
+		if (refusalCount == null) {
+			AtomicLong newCount = new AtomicLong();
+			refusalCount = refusalCounts.putIfAbsent(reason, newCount);
+			if (refusalCount == null) {
+				refusalCount = newCount;
+			}
+		}
+		refusalCount.incrementAndGet();
+	}
+
+	/**
+	 * @param taskClass
+	 * @param queueWait the time (in ns) between accepting the task and handing it to its handler
+	 */
+	public void taskStarted(TaskClass taskClass, long queueWait) {
+		totals.queueWait.recordNanos(queueWait);
+		getClassStatistics(taskClass).queueWait.recordNanos(queueWait);
+	}
+
+	/**
+	 * @param taskClass
+	 * @param serviceTime the time (in ns) that the task held its resource token
+	 */
+	public void taskFinished(TaskClass taskClass, long serviceTime) {
+		totals.handledCount.incrementAndGet();
+		totals.serviceTime.recordNanos(serviceTime);
+		ClassStatistics statistics = getClassStatistics(taskClass);
+		statistics.handledCount.incrementAndGet();
+		statistics.serviceTime.recordNanos(serviceTime);
+	}
+
+	/**
+	 * Tracks when the scheduler enters or leaves congestion mode.
+	 * 
+	 * @param congested
+	 */
+	public synchronized void setCongested(boolean congested) {
+		if (congested == this.congested) {
+			return;
+		}
+		long now = System.nanoTime();
+		if (congested) {
+			congestionStart = now;
+			++congestionCount;
+		} else {
+			long duration = now - congestionStart;
+			congestionTime += duration;
+			maxCongestionTime = Math.max(maxCongestionTime, duration);
+		}
+		this.congested = congested;
+	}
+
+	/**
+	 * Sets the initial resource limit, and the bounds between which the scheduler can adapt it.
+	 * For a scheduler with a fixed nr of resources, these are all the same.
+	 * 
+	 * @param resourceLimit
+	 * @param minResourceLimit
+	 * @param maxResourceLimit
+	 */
+	public void setResourceLimits(int resourceLimit, int minResourceLimit, int maxResourceLimit) {
+		this.resourceLimit = resourceLimit;
+		this.minResourceLimit = minResourceLimit;
+		this.maxResourceLimit = maxResourceLimit;
+	}
+
+	/**
+	 * @param oldLimit
+	 * @param newLimit the resource limit as adapted by the scheduler
+	 */
+	public void resourceLimitChanged(int oldLimit, int newLimit) {
+		resourceLimit = newLimit;
+		if (newLimit > oldLimit) {
+			limitIncreaseCount.incrementAndGet();
+		} else if (newLimit < oldLimit) {
+			limitDecreaseCount.incrementAndGet();
+		}
+	}
+
+	public String getSchedulerName() {
+		return schedulerName;
+	}
+
+	public String[] getTaskClassNames() {
+		return classStatistics.keySet().toArray(new String[0]);
+	}
+
+	public long getAcceptedCount() {
+		return totals.acceptedCount.get();
+	}
+
+	public long getRefusedCount() {
+		return totals.refusedCount.get();
+	}
+
+	public long getHandledCount() {
+		return totals.handledCount.get();
+	}
+
+	public long getAcceptedCount(String taskClassName) {
+		ClassStatistics statistics = classStatistics.get(taskClassName);
+		return (statistics != null) ? statistics.acceptedCount.get() : 0;
+	}
+
+	public long getRefusedCount(String taskClassName) {
+		ClassStatistics statistics = classStatistics.get(taskClassName);
+		return (statistics != null) ? statistics.refusedCount.get() : 0;
+	}
+
+	public long getHandledCount(String taskClassName) {
+		ClassStatistics statistics = classStatistics.get(taskClassName);
+		return (statistics != null) ? statistics.handledCount.get() : 0;
+	}
+
+	public String[] getRefusalReasons() {
+		return refusalCounts.keySet().toArray(new String[0]);
+	}
+
+	public long getRefusedCountForReason(String reason) {
+		AtomicLong refusalCount = refusalCounts.get(reason);
+		return (refusalCount != null) ? refusalCount.get() : 0;
+	}
+
+	public long getQueueWaitP50Micros() {
+		return totals.queueWait.getPercentileNanos(50) / 1000;
+	}
+
+	public long getQueueWaitP99Micros() {
+		return totals.queueWait.getPercentileNanos(99) / 1000;
+	}
+
+	public long getQueueWaitP999Micros() {
+		return totals.queueWait.getPercentileNanos(99.9) / 1000;
+	}
+
+	public long getServiceTimeP50Micros() {
+		return totals.serviceTime.getPercentileNanos(50) / 1000;
+	}
+
+	public long getServiceTimeP99Micros() {
+		return totals.serviceTime.getPercentileNanos(99) / 1000;
+	}
+
+	public long getServiceTimeP999Micros() {
+		return totals.serviceTime.getPercentileNanos(99.9) / 1000;
+	}
+
+	public long getQueueWaitPercentileMicros(String taskClassName, double percentile) {
+		ClassStatistics statistics = classStatistics.get(taskClassName);
+		return (statistics != null) ? statistics.queueWait.getPercentileNanos(percentile) / 1000 : 0;
+	}
+
+	public long getServiceTimePercentileMicros(String taskClassName, double percentile) {
+		ClassStatistics statistics = classStatistics.get(taskClassName);
+		return (statistics != null) ? statistics.serviceTime.getPercentileNanos(percentile) / 1000 : 0;
+	}
+
+	public synchronized boolean isCongested() {
+		return congested;
+	}
+
+	public synchronized long getCongestionCount() {
+		return congestionCount;
+	}
+
+	public synchronized long getCongestionTimeMillis() {
+		long time = congestionTime;
+		if (congested) {
+			time += System.nanoTime() - congestionStart;
+		}
+		return time / 1000000;
+	}
+
+	public synchronized long getMaxCongestionTimeMillis() {
+		long time = maxCongestionTime;
+		if (congested) {
+			time = Math.max(time, System.nanoTime() - congestionStart);
+		}
+		return time / 1000000;
+	}
+
+	public int getResourceLimit() {
+		return resourceLimit;
+	}
+
+	public int getMinResourceLimit() {
+		return minResourceLimit;
+	}
+
+	public int getMaxResourceLimit() {
+		return maxResourceLimit;
+	}
+
+	public long getLimitIncreaseCount() {
+		return limitIncreaseCount.get();
+	}
+
+	public long getLimitDecreaseCount() {
+		return limitDecreaseCount.get();
+	}
+
+	public void reset() {
+		totals = new ClassStatistics();
+		classStatistics.clear();
+		refusalCounts.clear();
+		limitIncreaseCount.set(0);
+		limitDecreaseCount.set(0);
+		synchronized (this) {
+			congestionStart = System.nanoTime();
+			congestionCount = congested ? 1 : 0;
+			congestionTime = 0;
+			maxCongestionTime = 0;
+		}
+	}
+
+	public String toString() {
+		return "[Scheduler " + schedulerName + " -- Statistics : accepted/refused/handled : " + getAcceptedCount() + "/" + getRefusedCount() + "/"
+				+ getHandledCount() + " queue wait p50/p99 : " + getQueueWaitP50Micros() + "/" + getQueueWaitP99Micros() + " us service time p50/p99 : "
+				+ getServiceTimeP50Micros() + "/" + getServiceTimeP99Micros() + " us]";
+	}
+
+	private ClassStatistics getClassStatistics(TaskClass taskClass) {
+		ClassStatistics statistics = classStatistics.get(taskClass.getName());
+		if (statistics == null) {
+			ClassStatistics newStatistics = new ClassStatistics();
+			statistics = classStatistics.putIfAbsent(taskClass.getName(), newStatistics);
+			if (statistics == null) {
+				statistics = newStatistics;
+			}
+		}
+		return statistics;
+	}
+
+	private static class ClassStatistics {
+		private final AtomicLong acceptedCount = new AtomicLong();
+		private final AtomicLong refusedCount = new AtomicLong();
+		private final AtomicLong handledCount = new AtomicLong();
+		private final DurationHistogram queueWait = new DurationHistogram();
+		private final DurationHistogram serviceTime = new DurationHistogram();
+	}
+}
@@ -0,0 +1,517 @@
+/**
+ * 
+ */
+package com.isencia.passerelle.process.scheduler.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.isencia.passerelle.process.model.Context;
+import com.isencia.passerelle.process.scheduler.TaskHandler;
+import com.isencia.passerelle.process.scheduler.TaskRefusedException;
+import com.isencia.passerelle.process.scheduler.TaskSchedulerStatisticsMBean;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.CongestionManagementTaskScheduler;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.ResourceCongestionDefinitionStrategy;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClass;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskClassifierStrategy;
+import com.isencia.passerelle.process.scheduler.congestionmanagement.TaskDeadlineStrategy;
+import com.isencia.passerelle.process.scheduler.impl.DefaultScheduler.TaskEntry;
+
+/**
+ * <p>
+ * A WeightedFairQueueingScheduler combines two task orderings :
+ * <ul>
+ * <li> tasks are handled in weighted fair queueing order, where the relative capacity assignment
+ * of a task class is used as its weight. I.e. when all classes have pending tasks, each class gets
+ * a share of the handled tasks that is proportional to its weight, and within a class, tasks are handled in the order they were accepted.
+ * <li> tasks with a deadline (cfr <code>TaskDeadlineStrategy</code>) whose slack, i.e. the time they can still wait before
+ * they must be started to meet their deadline, has dropped below the deadline slack threshold, are handled first, earliest deadline first.
+ * </ul>
+ * So latency-sensitive tasks, which carry a deadline, do not queue behind bulk tasks when their deadline comes near.
+ * But as long as they can wait, they take their turn in the fair queueing order, and their handling is charged to
+ * the share of their class, so a steady stream of tasks with a deadline does not starve the bulk tasks.
+ * </p>
+ * <p>
+ * Tasks that can no longer be handled before their deadline are refused when they are offered to the scheduler,
+ * i.o. taking a resource for a result that will be too late anyway.
+ * The expected completion time of a task is estimated from the nr of pending tasks with an earlier deadline
+ * and the average time that the handlers keep their resource token.
+ * </p>
+ * <p>
+ * As the <code>FairShareScheduler</code>, this scheduler has no dedicated dispatcher thread :
+ * tasks are handed out in the threads that offer tasks and release tokens.
+ * The <code>ResourceCongestionDefinitionStrategy</code> does not influence the task selection.
+ * </p>
+ *
+ * @see FairShareScheduler
+ * @see TaskDeadlineStrategy
+ *
+ *
+ */
+public class WeightedFairQueueingScheduler implements CongestionManagementTaskScheduler {
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(WeightedFairQueueingScheduler.class);
+	private static final Logger PERFORMANCELOGGER = LoggerFactory.getLogger("performance.resource");
+
+	// weight of the average service time for each newly measured service time
+	private static final double SERVICE_TIME_SMOOTHING = 0.2;
+
+	/**
+	 * The default slack (in ms) below which tasks are handled earliest deadline first.
+	 */
+	public static final long DEFAULT_DEADLINE_SLACK_THRESHOLD = 1000;
+
+	private TaskClassifierStrategy taskClassifierStrategy;
+	private ResourceCongestionDefinitionStrategy resourceCongestionDefinitionStrategy;
+	private TaskDeadlineStrategy taskDeadlineStrategy;
+
+	// all following state must only be accessed while holding the lock
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final PriorityQueue<QueuedTask> deadlineTasks = new PriorityQueue<QueuedTask>(11, new Comparator<QueuedTask>() {
+		public int compare(QueuedTask t1, QueuedTask t2) {
+			if (t1.deadline != t2.deadline) {
+				return (t1.deadline < t2.deadline) ? -1 : 1;
+			}
+			return (t1.sequenceNr < t2.sequenceNr) ? -1 : 1;
+		}
+	});
+	private final PriorityQueue<QueuedTask> fairQueuedTasks = new PriorityQueue<QueuedTask>(11, new Comparator<QueuedTask>() {
+		public int compare(QueuedTask t1, QueuedTask t2) {
+			if (t1.finishTag != t2.finishTag) {
+				return (t1.finishTag < t2.finishTag) ? -1 : 1;
+			}
+			return (t1.sequenceNr < t2.sequenceNr) ? -1 : 1;
+		}
+	});
+
+	// the virtual time of the fair queueing, i.e. the finish tag of the last handed out task
+	private double virtualTime;
+	// the finish tag of the last accepted task per class, with or without deadline
+	private final Map<TaskClass, Double> lastFinishTags = new HashMap<TaskClass, Double>();
+	private long deadlineSlackThreshold = DEFAULT_DEADLINE_SLACK_THRESHOLD;
+	private long sequenceNr;
+
+	private final List<Token> freeTokens = new ArrayList<Token>();
+	private int maxUsed;
+	private int maxPendingCount;
+	// average time between handing out and releasing a token, in ms
+	private double averageServiceTime;
+	private boolean serviceTimeMeasured;
+
+	private final ResourceUsageStatus usageStatus;
+	private final TaskSchedulerStatistics statistics;
+
+	// thread pool for the task handlers
+	private final TaskHandlerPool taskHandlerPool;
+
+	private volatile boolean active = true;
+
+	private final String schedulerName;
+
+	public WeightedFairQueueingScheduler(String schedulerName, int nrOfResources, int maxPendingQueueSize) {
+		this.schedulerName = schedulerName;
+		statistics = new TaskSchedulerStatistics(schedulerName);
+		statistics.setResourceLimits(nrOfResources, nrOfResources, nrOfResources);
+		for (int idx = 0; idx < nrOfResources; ++idx) {
+			freeTokens.add(new Token());
+		}
+
+		resourceCongestionDefinitionStrategy = new DefaultCongestionDefinitionStrategy();
+		taskDeadlineStrategy = new ContextEntryDeadlineStrategy();
+
+		int pendingQueueCapacity = Integer.MAX_VALUE;
+		if (maxPendingQueueSize > 0) {
+			pendingQueueCapacity = maxPendingQueueSize;
+		}
+
+		usageStatus = new ResourceUsageStatus(schedulerName, nrOfResources, 0, 0, pendingQueueCapacity, 0, 0);
+
+		taskHandlerPool = new TaskHandlerPool(schedulerName, nrOfResources);
+	}
+
+	public String getName() {
+		return schedulerName;
+	}
+
+	public TaskClassifierStrategy getTaskClassifierStrategy() {
+		return taskClassifierStrategy;
+	}
+
+	public void setTaskClassifierStrategy(TaskClassifierStrategy taskClassifierStrategy) {
+		this.taskClassifierStrategy = taskClassifierStrategy;
+	}
+
+	public ResourceCongestionDefinitionStrategy getResourceCongestionDefinitionStrategy() {
+		return resourceCongestionDefinitionStrategy;
+	}
+
+	public void setResourceCongestionDefinitionStrategy(ResourceCongestionDefinitionStrategy resourceCongestionDefinitionStrategy) {
+		this.resourceCongestionDefinitionStrategy = resourceCongestionDefinitionStrategy;
+	}
+
+	public TaskDeadlineStrategy getTaskDeadlineStrategy() {
+		return taskDeadlineStrategy;
+	}
+
+	public void setTaskDeadlineStrategy(TaskDeadlineStrategy taskDeadlineStrategy) {
+		this.taskDeadlineStrategy = taskDeadlineStrategy;
+	}
+
+	/**
+	 * @return the slack (in ms) below which tasks are handled earliest deadline first
+	 */
+	public long getDeadlineSlackThreshold() {
+		lock.lock();
+		try {
+			return deadlineSlackThreshold;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param threshold the slack below which tasks are handled earliest deadline first, i.e. before the tasks that
+	 * precede them in the fair queueing order
+	 * @param unit
+	 */
+	public void setDeadlineSlackThreshold(long threshold, TimeUnit unit) {
+		lock.lock();
+		try {
+			deadlineSlackThreshold = unit.toMillis(threshold);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.isencia.passerelle.process.scheduler.TaskScheduler#accept(com.isencia.passerelle.process.model.Context, com.isencia.passerelle.process.scheduler.TaskHandler)
+	 */
+	public void accept(Context context, TaskHandler handler) throws TaskRefusedException {
+		if (PERFORMANCELOGGER.isDebugEnabled()) {
+			PERFORMANCELOGGER.debug("Scheduler status : " + getUsageStatus());
+		}
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("accept() - entry : context " + context);
+		}
+
+		if (!active) {
+			statistics.taskRefused(null, TaskSchedulerStatisticsMBean.REFUSAL_SHUTDOWN);
+			throw new TaskRefusedException("Shutting down...");
+		}
+
+		TaskClass taskClass = null;
+		Long deadline = null;
+		try {
+			taskClass = getTaskClassifierStrategy().getClassForTask(context);
+			deadline = getTaskDeadlineStrategy().getDeadline(context);
+		} catch (RuntimeException e) {
+			statistics.taskRefused(taskClass, TaskSchedulerStatisticsMBean.REFUSAL_ERROR);
+			throw new TaskRefusedException("Accept failed for " + context, e);
+		}
+
+		QueuedTask task = new QueuedTask(new TaskEntry(context, taskClass, handler));
+		lock.lock();
+		try {
+			// check if the capacity for pending tasks has not been exhausted
+			int currentPending = getPendingTaskCount() + 1;
+			if (currentPending > usageStatus.getPendingQueueSize()) {
+				statistics.taskRefused(taskClass, TaskSchedulerStatisticsMBean.REFUSAL_QUEUE_FULL);
+				throw new TaskRefusedException("Pending entities queue full. Refused " + context);
+			}
+			maxPendingCount = Math.max(maxPendingCount, currentPending);
+
+			task.sequenceNr = sequenceNr++;
+			if (deadline != null) {
+				long expectedCompletion = getExpectedCompletionTime(deadline);
+				if (expectedCompletion > deadline) {
+					statistics.taskRefused(taskClass, TaskSchedulerStatisticsMBean.REFUSAL_DEADLINE);
+					throw new TaskRefusedException("Deadline " + deadline + " can not be met, expected completion at " + expectedCompletion + ". Refused " + context);
+				}
+			}
+			// tasks with a deadline are charged to the share of their class as well
+			Double lastFinishTag = lastFinishTags.get(taskClass);
+			double startTag = (lastFinishTag != null) ? Math.max(virtualTime, lastFinishTag) : virtualTime;
+			task.finishTag = startTag + 1.0 / Math.max(1, taskClass.getRelativeCapacityAssignment());
+			lastFinishTags.put(taskClass, task.finishTag);
+			if (deadline != null) {
+				task.deadline = deadline;
+				deadlineTasks.offer(task);
+			} else {
+				fairQueuedTasks.offer(task);
+			}
+			statistics.taskAccepted(taskClass);
+			dispatchPendingTasks();
+		} finally {
+			lock.unlock();
+		}
+
+		LOGGER.debug("accept() - exit");
+	}
+
+	/* (non-Javadoc)
+	 * @see com.isencia.passerelle.process.scheduler.TaskScheduler#shutdown()
+	 */
+	public void shutdown() {
+		LOGGER.debug("Shutting down scheduler " + schedulerName);
+		active = false;
+		lock.lock();
+		try {
+			// the task handling executor is shut down once all pending tasks have been handed out
+			dispatchPendingTasks();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see com.isencia.passerelle.process.scheduler.TaskScheduler#clearPending()
+	 */
+	public List<Context> clearPending() {
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("clearPending() - entry - " + schedulerName);
+		}
+
+		List<Context> results = new ArrayList<Context>();
+		lock.lock();
+		try {
+			for (QueuedTask task : deadlineTasks) {
+				results.add(task.taskEntry.getEntity());
+			}
+			for (QueuedTask task : fairQueuedTasks) {
+				results.add(task.taskEntry.getEntity());
+			}
+			deadlineTasks.clear();
+			fairQueuedTasks.clear();
+			dispatchPendingTasks();
+		} finally {
+			lock.unlock();
+		}
+
+		LOGGER.debug("clearPending() - exit - " + schedulerName);
+		return results;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.isencia.passerelle.process.scheduler.TaskScheduler#shutdownNow()
+	 */
+	public List<Context> shutdownNow() {
+		LOGGER.debug("Shutting down NOW...");
+		active = false;
+		List<Context> pendingTasks = clearPending();
+		pendingTasks.addAll(taskHandlerPool.shutdownNow());
+		return pendingTasks;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.isencia.passerelle.process.scheduler.TaskScheduler#awaitTermination(long, java.util.concurrent.TimeUnit)
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return taskHandlerPool.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * @return the count of resource tokens still available to be handed out
+	 */
+	public int getCurrentFreeCapacity() {
+		lock.lock();
+		try {
+			return freeTokens.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the configured maximum capacity, i.e. the size of the resource pool
+	 * that is available for processing requests
+	 */
+	public int getMaxCapacity() {
+		return usageStatus.getNrOfResources();
+	}
+
+	/**
+	 * @return the average time (in ms) that the handlers keep their resource token
+	 */
+	public double getAverageServiceTime() {
+		lock.lock();
+		try {
+			return averageServiceTime;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public TaskSchedulerStatistics getStatistics() {
+		return statistics;
+	}
+
+	public ResourceUsageStatus getUsageStatus() {
+		lock.lock();
+		try {
+			usageStatus.setCurrentUsed(usageStatus.getNrOfResources() - freeTokens.size());
+			usageStatus.setMaxUsed(maxUsed);
+			usageStatus.setCurrentPendingCount(getPendingTaskCount());
+			usageStatus.setMaxPendingCount(maxPendingCount);
+			return usageStatus;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private int getPendingTaskCount() {
+		return deadlineTasks.size() + fairQueuedTasks.size();
+	}
+
+	/**
+	 * Estimates when a task with the given deadline would be finished, when it would be accepted now.
+	 * The tasks with an earlier deadline will be handed out first, and each resource handles a task in the average service time.
+	 */
+	private long getExpectedCompletionTime(long deadline) {
+		int tasksBefore = 0;
+		if (deadlineTasks.size() >= freeTokens.size()) {
+			for (QueuedTask task : deadlineTasks) {
+				if (task.deadline <= deadline) {
+					tasksBefore++;
+				}
+			}
+		}
+		long waitTime = 0;
+		if (tasksBefore >= freeTokens.size()) {
+			int nrOfResources = usageStatus.getNrOfResources();
+			int roundsBefore = (tasksBefore - freeTokens.size()) / nrOfResources + 1;
+			waitTime = Math.round(roundsBefore * averageServiceTime);
+		}
+		return System.currentTimeMillis() + waitTime + Math.round(averageServiceTime);
+	}
+
+	/**
+	 * Must only be called while holding the lock.
+	 */
+	private void dispatchPendingTasks() {
+		while (!freeTokens.isEmpty()) {
+			QueuedTask task = selectNextTask();
+			if (task == null) {
+				break;
+			}
+			Token token = freeTokens.remove(freeTokens.size() - 1);
+			token.lock(task.taskEntry.getEntityClass());
+			statistics.taskStarted(task.taskEntry.getEntityClass(), token.getLockTime() - task.taskEntry.getAcceptTime());
+			maxUsed = Math.max(maxUsed, usageStatus.getNrOfResources() - freeTokens.size());
+
+			if (LOGGER.isDebugEnabled()) {
+				LOGGER.debug("Selected entry for context " + task.taskEntry.getEntity());
+			}
+			// let the handler do its thing for its task, in an own thread
+			taskHandlerPool.execute(task.taskEntry, token);
+		}
+
+		if (!active && getPendingTaskCount() == 0) {
+			taskHandlerPool.shutdown();
+		}
+	}
+
+	/**
+	 * Takes the task with the earliest deadline when its slack is below the threshold,
+	 * and otherwise the task with the lowest finish tag, with or without deadline.
+	 * Must only be called while holding the lock.
+	 *
+	 * @return the next task to hand out, or null if there are no pending tasks
+	 */
+	private QueuedTask selectNextTask() {
+		QueuedTask deadlineTask = deadlineTasks.peek();
+		QueuedTask fairQueuedTask = fairQueuedTasks.peek();
+		if (deadlineTask != null) {
+			long slack = deadlineTask.deadline - System.currentTimeMillis() - Math.round(averageServiceTime);
+			if (slack < deadlineSlackThreshold) {
+				return deadlineTasks.poll();
+			}
+			if (fairQueuedTask == null || deadlineTask.finishTag < fairQueuedTask.finishTag) {
+				virtualTime = deadlineTask.finishTag;
+				return deadlineTasks.poll();
+			}
+		}
+		if (fairQueuedTask != null) {
+			virtualTime = fairQueuedTask.finishTag;
+			return fairQueuedTasks.poll();
+		}
+		return null;
+	}
+
+	private static class QueuedTask {
+		private final TaskEntry taskEntry;
+		private long sequenceNr;
+		private long deadline;
+		private double finishTag;
+
+		private QueuedTask(TaskEntry taskEntry) {
+			this.taskEntry = taskEntry;
+		}
+	}
+
+	/**
+	 * A resource token that also feeds the average service time.
+	 * Its state is only accessed while holding the lock.
+	 */
+	private class Token extends TaskHandlerPool.PoolToken {
+		private static final long serialVersionUID = 1L;
+
+		private boolean inUse;
+		private TaskClass taskClass;
+
+		private Token() {
+			super(schedulerName, statistics);
+		}
+
+		private void lock(TaskClass taskClass) {
+			inUse = true;
+			this.taskClass = taskClass;
+			startService();
+		}
+
+		/* (non-Javadoc)
+		 * @see com.isencia.passerelle.process.scheduler.ResourceToken#release()
+		 */
+		public void release() {
+			lock.lock();
+			try {
+				super.release();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		TaskClass getTaskClass() {
+			return inUse ? taskClass : null;
+		}
+
+		void released(long serviceTimeNanos) {
+			double serviceTime = serviceTimeNanos / 1000000.0;
+			if (serviceTimeMeasured) {
+				averageServiceTime += SERVICE_TIME_SMOOTHING * (serviceTime - averageServiceTime);
+			} else {
+				averageServiceTime = serviceTime;
+				serviceTimeMeasured = true;
+			}
+			dispatchPendingTasks();
+		}
+
+		boolean free() {
+			if (!inUse) {
+				return false;
+			}
+			inUse = false;
+			freeTokens.add(this);
+			return true;
+		}
+	}
+}
@@ -1,13 +1,16 @@
 package com.isencia.passerelle.runtime.jmx.server;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 import com.isencia.passerelle.runtime.FlowHandle;
 import com.isencia.passerelle.runtime.ProcessHandle;
 import com.isencia.passerelle.runtime.jmx.FlowHandleBean;
 import com.isencia.passerelle.runtime.jmx.ProcessHandleBean;
 import com.isencia.passerelle.runtime.jmx.server.activator.Activator;
+import com.isencia.passerelle.runtime.process.AdmissionStatistics;
 import com.isencia.passerelle.runtime.process.FlowNotExecutingException;
 import com.isencia.passerelle.runtime.process.FlowProcessingService;
+import com.isencia.passerelle.runtime.process.FlowProcessingService.Priority;
 import com.isencia.passerelle.runtime.process.FlowProcessingService.StartMode;
 import com.isencia.passerelle.runtime.repository.EntryNotFoundException;
 import com.isencia.passerelle.runtime.repository.FlowRepositoryService;
@@ -58,6 +61,79 @@ public class FlowProcessor implements FlowProcessorMXBean {
     return ProcessHandleBean.buildProcessHandleBean(localProcHandle);
   }
 
+  @Override
+  public int getActiveProcessCount() {
+    AdmissionStatistics stats = getAdmissionStatistics();
+    return stats != null ? stats.getActiveProcessCount() : 0;
+  }
+
+  @Override
+  public int getQueuedProcessCount() {
+    AdmissionStatistics stats = getAdmissionStatistics();
+    return stats != null ? stats.getQueuedProcessCount() : 0;
+  }
+
+  @Override
+  public long getSubmittedProcessCount() {
+    AdmissionStatistics stats = getAdmissionStatistics();
+    return stats != null ? stats.getSubmittedProcessCount() : 0;
+  }
+
+  @Override
+  public long getRejectedProcessCount() {
+    AdmissionStatistics stats = getAdmissionStatistics();
+    return stats != null ? stats.getRejectedProcessCount() : 0;
+  }
+
+  @Override
+  public Map<String, Integer> getQueuedProcessCounts() {
+    Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+    AdmissionStatistics stats = getAdmissionStatistics();
+    if (stats != null) {
+      for (Priority priority : Priority.values()) {
+        result.put(priority.name(), stats.getQueuedProcessCount(priority));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Double> getMeanQueueTimesMillis() {
+    Map<String, Double> result = new LinkedHashMap<String, Double>();
+    AdmissionStatistics stats = getAdmissionStatistics();
+    if (stats != null) {
+      for (Priority priority : Priority.values()) {
+        result.put(priority.name(), stats.getMeanQueueTimeMillis(priority));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, Long> getMaxQueueTimesMillis() {
+    Map<String, Long> result = new LinkedHashMap<String, Long>();
+    AdmissionStatistics stats = getAdmissionStatistics();
+    if (stats != null) {
+      for (Priority priority : Priority.values()) {
+        result.put(priority.name(), stats.getMaxQueueTimeMillis(priority));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void resetAdmissionStatistics() {
+    AdmissionStatistics stats = getAdmissionStatistics();
+    if (stats != null) {
+      stats.resetStatistics();
+    }
+  }
+
+  private AdmissionStatistics getAdmissionStatistics() {
+    FlowProcessingService svc = getFlowProcessingService();
+    return (svc instanceof AdmissionStatistics) ? (AdmissionStatistics) svc : null;
+  }
+
   private FlowProcessingService getFlowProcessingService() {
     return Activator.getInstance().getFlowProcessingSvc();
   }
@@ -32,4 +32,15 @@ public interface FlowProcessorMXBean {
   ProcessHandleBean terminate(String processContextId) throws FlowNotExecutingException;
   ProcessHandleBean suspend(String processContextId) throws FlowNotExecutingException;
   ProcessHandleBean resume(String processContextId) throws FlowNotExecutingException;
+
+  // admission statistics, only available when the FlowProcessingService maintains them
+  int getActiveProcessCount();
+  int getQueuedProcessCount();
+  long getSubmittedProcessCount();
+  long getRejectedProcessCount();
+  // per priority
+  Map<String, Integer> getQueuedProcessCounts();
+  Map<String, Double> getMeanQueueTimesMillis();
+  Map<String, Long> getMaxQueueTimesMillis();
+  void resetAdmissionStatistics();
 }
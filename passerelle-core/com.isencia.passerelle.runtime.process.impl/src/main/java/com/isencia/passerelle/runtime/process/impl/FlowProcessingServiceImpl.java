@@ -15,16 +15,16 @@
 package com.isencia.passerelle.runtime.process.impl;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CancellationException;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
@@ -33,23 +33,27 @@ import com.isencia.passerelle.runtime.Event;
 import com.isencia.passerelle.runtime.EventListener;
 import com.isencia.passerelle.runtime.FlowHandle;
 import com.isencia.passerelle.runtime.ProcessHandle;
+import com.isencia.passerelle.runtime.process.AdmissionStatistics;
 import com.isencia.passerelle.runtime.process.FlowNotExecutingException;
 import com.isencia.passerelle.runtime.process.FlowProcessingService;
 import com.isencia.passerelle.runtime.process.impl.executor.FlowExecutionFuture;
 import com.isencia.passerelle.runtime.process.impl.executor.FlowExecutionTask;
 import com.isencia.passerelle.runtime.process.impl.executor.FlowExecutor;
+import com.isencia.passerelle.runtime.process.impl.executor.FlowPrototypeCache;
 
-public class FlowProcessingServiceImpl implements FlowProcessingService {
+public class FlowProcessingServiceImpl implements FlowProcessingService, AdmissionStatistics {
 
   private final static Logger LOGGER = LoggerFactory.getLogger(FlowProcessingServiceImpl.class);
 
-  // the thread pool to launch flow execution tasks
-  private ExecutorService flowExecutor;
+  // the thread pool to launch flow execution tasks, with admission control
+  private FlowExecutor flowExecutor;
 
-  // TODO find some method to determine when an entry can be removed here...
-  // client code may still like to obtain execution info a while after the execution has already finished
-  // so when is a good moment for removal???
-  private Map<String, FlowExecutionFuture> flowExecutions = new ConcurrentHashMap<String, FlowExecutionFuture>();
+  // provides ready-made flow instances for the executions
+  private FlowPrototypeCache flowCache;
+
+  // client code may still like to obtain execution info a while after the execution has already finished,
+  // so finished executions are kept as summaries, according to the registry's retention policy
+  private ProcessRegistry processRegistry = new ProcessRegistry();
   
   // The set of listeners that are potentially interested in all ProcessEvents.
   // Remark that in an OSGi app, which is the preferred runtime platform, we expect to have one such listener
@@ -64,13 +68,139 @@ public class FlowProcessingServiceImpl implements FlowProcessingService {
    * @param maxConcurrentProcesses
    */
   public FlowProcessingServiceImpl(int maxConcurrentProcesses) {
+    this(maxConcurrentProcesses, FlowPrototypeCache.DEFAULT_MAX_CACHED_FLOWS, FlowPrototypeCache.DEFAULT_STANDBY_POOL_SIZE);
+  }
+
+  /**
+   * 
+   * @param maxConcurrentProcesses
+   * @param maxCachedFlows
+   *          the maximum number of flow versions for which a parsed prototype is kept
+   * @param standbyPoolSize
+   *          the number of pre-cloned flow instances to keep ready per cached flow version
+   */
+  public FlowProcessingServiceImpl(int maxConcurrentProcesses, int maxCachedFlows, int standbyPoolSize) {
     LOGGER.info("Creating FlowProcessingService for {} max concurrent processes", maxConcurrentProcesses);
-    flowExecutor = new FlowExecutor(maxConcurrentProcesses, maxConcurrentProcesses, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+    flowExecutor = new FlowExecutor(maxConcurrentProcesses, maxConcurrentProcesses, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+      @Override
+      protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        if (r instanceof FlowExecutionFuture) {
+          processRegistry.finished((FlowExecutionFuture) r);
+        }
+      }
+    };
+    flowCache = new FlowPrototypeCache(maxCachedFlows, standbyPoolSize);
+  }
+
+  /**
+   * @return the cache that provides the flow instances for new executions
+   */
+  public FlowPrototypeCache getFlowPrototypeCache() {
+    return flowCache;
+  }
+
+  /**
+   * Changes how long finished executions remain available via their process id.
+   * 
+   * @param maxFinishedProcesses
+   *          the maximum nr of finished executions that are retained
+   * @param maxAge
+   *          the maximum time that a finished execution is retained
+   * @param unit
+   */
+  public void setProcessRetention(int maxFinishedProcesses, long maxAge, TimeUnit unit) {
+    processRegistry.setRetention(maxFinishedProcesses, maxAge, unit);
+  }
+
+  /**
+   * @param maxQueuedProcesses
+   *          the maximum nr of executions that can wait for a free execution slot
+   */
+  public void setMaxQueuedProcesses(int maxQueuedProcesses) {
+    flowExecutor.setMaxQueuedProcesses(maxQueuedProcesses);
+  }
+
+  /**
+   * @param timeout
+   *          the maximum time that <code>start()</code> waits for a place in a full queue, before rejecting the
+   *          execution; 0 means that it is rejected directly
+   * @param unit
+   */
+  public void setAdmissionTimeout(long timeout, TimeUnit unit) {
+    flowExecutor.setAdmissionTimeout(timeout, unit);
   }
 
+  /**
+   * @param threshold
+   *          the time after which a queued execution is started before executions with a higher priority
+   * @param unit
+   */
+  public void setStarvationThreshold(long threshold, TimeUnit unit) {
+    flowExecutor.setStarvationThreshold(threshold, unit);
+  }
+
+  /**
+   * @param maxConcurrent
+   *          the maximum nr of concurrent executions of a same flow, for flows without a specific limit
+   */
+  public void setDefaultMaxConcurrentProcessesPerFlow(int maxConcurrent) {
+    flowExecutor.setDefaultMaxConcurrentPerFlow(maxConcurrent);
+  }
+
+  /**
+   * @param flowCode
+   * @param maxConcurrent
+   *          the maximum nr of concurrent executions of the given flow; a value < 1 removes the specific limit
+   */
+  public void setMaxConcurrentProcesses(String flowCode, int maxConcurrent) {
+    flowExecutor.setMaxConcurrentPerFlow(flowCode, maxConcurrent);
+  }
+
+  /**
+   * Stops accepting new executions, and releases the cached flows.
+   * Ongoing executions are not interrupted.
+   */
+  public void shutdown() {
+    flowExecutor.shutdown();
+    flowCache.shutdown();
+  }
+
+  /**
+   * The execution's priority can be passed as a parameter override named <code>PRIORITY_PARAMETER</code>.
+   * 
+   * @throws RejectedExecutionException
+   *           when too many executions are waiting to be started
+   */
   @Override
   public ProcessHandle start(StartMode mode, FlowHandle flowHandle, String processContextId, Map<String, String> parameterOverrides, 
       EventListener listener, String... breakpointNames) {
+    Priority priority = Priority.NORMAL;
+    if (parameterOverrides != null && parameterOverrides.containsKey(PRIORITY_PARAMETER)) {
+      parameterOverrides = new HashMap<String, String>(parameterOverrides);
+      String priorityName = parameterOverrides.remove(PRIORITY_PARAMETER);
+      try {
+        priority = Priority.valueOf(priorityName.trim().toUpperCase());
+      } catch (Exception e) {
+        LOGGER.warn("Invalid priority {} for flow {}, using {}", new Object[] { priorityName, flowHandle.getCode(), priority });
+      }
+    }
+    return start(mode, priority, flowHandle, processContextId, parameterOverrides, listener, breakpointNames);
+  }
+
+  /**
+   * Start a process in the specified mode, with the given priority.
+   * <p>
+   * When all execution slots are taken, the execution is queued and will be started after the queued executions with
+   * a higher priority.
+   * </p>
+   * 
+   * @see FlowProcessingService#start(StartMode, FlowHandle, String, Map, EventListener, String...)
+   * @throws RejectedExecutionException
+   *           when too many executions are waiting to be started
+   */
+  public ProcessHandle start(StartMode mode, Priority priority, FlowHandle flowHandle, String processContextId, Map<String, String> parameterOverrides,
+      EventListener listener, String... breakpointNames) {
     
     if (processContextId == null || processContextId.trim().length()==0) {
       processContextId = UUID.randomUUID().toString();
@@ -78,13 +208,12 @@ public class FlowProcessingServiceImpl implements FlowProcessingService {
 
     LOGGER.debug("Context {} - Submitting execution of flow {}", processContextId, flowHandle.getCode());
 
-    FlowExecutionTask fet = new FlowExecutionTask(mode, flowHandle, processContextId, parameterOverrides, listener, breakpointNames);
+    FlowExecutionTask fet = new FlowExecutionTask(mode, priority, flowHandle, processContextId, parameterOverrides, listener, flowCache, breakpointNames);
     FlowExecutionFuture fetFuture = (FlowExecutionFuture) flowExecutor.submit(fet);
     ProcessHandle procHandle = new ProcessHandleImpl(fetFuture);
 
-    if(!procHandle.getExecutionStatus().isFinalStatus()) {
-      flowExecutions.put(processContextId, fetFuture);
-    }
+    processRegistry.sweep();
+    processRegistry.register(fetFuture);
 
     return procHandle;
   }
@@ -103,28 +232,35 @@ public class FlowProcessingServiceImpl implements FlowProcessingService {
 
   @Override
   public ProcessHandle getHandle(String processId) {
-    FlowExecutionFuture fet = flowExecutions.get(processId);
-    return fet!=null ? new ProcessHandleImpl(fet) : null;
+    FlowExecutionFuture fet = processRegistry.getActiveProcess(processId);
+    if (fet != null) {
+      return new ProcessHandleImpl(fet);
+    } else {
+      ProcessSummary summary = processRegistry.getFinishedProcess(processId);
+      return summary != null ? summary.getProcessHandle() : null;
+    }
   }
 
   @Override
   public ProcessHandle refresh(ProcessHandle processHandle) {
-    FlowExecutionFuture fet = flowExecutions.get(processHandle.getProcessId());
-    return fet!=null ? new ProcessHandleImpl(fet) : processHandle;
+    ProcessHandle refreshedHandle = getHandle(processHandle.getProcessId());
+    return refreshedHandle != null ? refreshedHandle : processHandle;
   }
 
   @Override
   public ProcessHandle waitUntilFinished(ProcessHandle processHandle, long time, TimeUnit unit) throws TimeoutException, InterruptedException, FlowNotExecutingException, ExecutionException {
-    FlowExecutionFuture fet = flowExecutions.get(processHandle.getProcessId());
+    FlowExecutionFuture fet = processRegistry.getActiveProcess(processHandle.getProcessId());
     if (fet != null) {
       try {
         fet.get(time, unit);
       } catch (CancellationException e) {
         // ignore, it will be reflected in the status of the handle
       }
+      // no need to wait for the executor to report it
+      processRegistry.finished(fet);
       return new ProcessHandleImpl(fet);
     } else {
-      throw new FlowNotExecutingException(processHandle.getFlowHandle().getCode());
+      return getFinishedHandle(processHandle);
     }
   }
 
@@ -133,9 +269,9 @@ public class FlowProcessingServiceImpl implements FlowProcessingService {
    */
   @Override
   public ProcessHandle terminate(ProcessHandle processHandle) throws FlowNotExecutingException {
-    FlowExecutionFuture fet = flowExecutions.get(processHandle.getProcessId());
+    FlowExecutionFuture fet = processRegistry.getActiveProcess(processHandle.getProcessId());
     if(fet==null) {
-      throw new FlowNotExecutingException(processHandle.getFlowHandle().getCode());
+      return getFinishedHandle(processHandle);
     } else {
       fet.cancel(true);
       return new ProcessHandleImpl(fet);
@@ -144,9 +280,9 @@ public class FlowProcessingServiceImpl implements FlowProcessingService {
 
   @Override
   public ProcessHandle suspend(ProcessHandle processHandle) throws FlowNotExecutingException {
-    FlowExecutionFuture fet = flowExecutions.get(processHandle.getProcessId());
+    FlowExecutionFuture fet = processRegistry.getActiveProcess(processHandle.getProcessId());
     if(fet==null) {
-      throw new FlowNotExecutingException(processHandle.getFlowHandle().getCode());
+      return getFinishedHandle(processHandle);
     } else {
       // TODO check if we can/need to do something with the boolean result...
       fet.suspend();
@@ -156,9 +292,9 @@ public class FlowProcessingServiceImpl implements FlowProcessingService {
 
   @Override
   public ProcessHandle resume(ProcessHandle processHandle) throws FlowNotExecutingException {
-    FlowExecutionFuture fet = flowExecutions.get(processHandle.getProcessId());
+    FlowExecutionFuture fet = processRegistry.getActiveProcess(processHandle.getProcessId());
     if(fet==null) {
-      throw new FlowNotExecutingException(processHandle.getFlowHandle().getCode());
+      return getFinishedHandle(processHandle);
     } else {
       // TODO check if we can/need to do something with the boolean result...
       fet.resume();
@@ -190,13 +326,77 @@ public class FlowProcessingServiceImpl implements FlowProcessingService {
 
   @Override
   public List<Event> getProcessEvents(ProcessHandle processHandle, int maxCount) {
-    // TODO implement getProcessEvents()
-    throw new UnsupportedOperationException();
+    return getProcessEvents(processHandle.getProcessId(), maxCount);
   }
 
+  /**
+   * Only the last events of each execution are kept, and they remain available for as long as the finished execution is
+   * retained.
+   * 
+   * @return the process events, or an empty list if the process is unknown
+   */
   @Override
   public List<Event> getProcessEvents(String processId, int maxCount) {
-    // TODO implement getProcessEvents()
-    throw new UnsupportedOperationException();
+    FlowExecutionFuture fet = processRegistry.getActiveProcess(processId);
+    if (fet != null) {
+      return fet.getEvents(maxCount);
+    } else {
+      ProcessSummary summary = processRegistry.getFinishedProcess(processId);
+      return summary != null ? summary.getEvents(maxCount) : Collections.<Event> emptyList();
+    }
+  }
+
+  /**
+   * @param processHandle
+   * @return the final handle of the given execution, if it has finished and is still retained
+   * @throws FlowNotExecutingException
+   *           if the execution is unknown
+   */
+  private ProcessHandle getFinishedHandle(ProcessHandle processHandle) throws FlowNotExecutingException {
+    ProcessSummary summary = processRegistry.getFinishedProcess(processHandle.getProcessId());
+    if (summary == null) {
+      throw new FlowNotExecutingException(processHandle.getFlowHandle().getCode());
+    }
+    return summary.getProcessHandle();
+  }
+
+  @Override
+  public int getActiveProcessCount() {
+    return flowExecutor.getActiveProcessCount();
+  }
+
+  @Override
+  public int getQueuedProcessCount() {
+    return flowExecutor.getQueuedProcessCount();
+  }
+
+  @Override
+  public int getQueuedProcessCount(Priority priority) {
+    return flowExecutor.getQueuedProcessCount(priority);
+  }
+
+  @Override
+  public long getSubmittedProcessCount() {
+    return flowExecutor.getSubmittedProcessCount();
+  }
+
+  @Override
+  public long getRejectedProcessCount() {
+    return flowExecutor.getRejectedProcessCount();
+  }
+
+  @Override
+  public double getMeanQueueTimeMillis(Priority priority) {
+    return flowExecutor.getMeanQueueTimeMillis(priority);
+  }
+
+  @Override
+  public long getMaxQueueTimeMillis(Priority priority) {
+    return flowExecutor.getMaxQueueTimeMillis(priority);
+  }
+
+  @Override
+  public void resetStatistics() {
+    flowExecutor.resetStatistics();
   }
 }
@@ -0,0 +1,176 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.runtime.process.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.isencia.passerelle.runtime.process.impl.executor.FlowExecutionFuture;
+
+/**
+ * Keeps track of the process executions of a <code>FlowProcessingService</code>, so they can be found by their process
+ * id.
+ * <p>
+ * Executions that are queued or running are kept as such. Once an execution is finished, it is replaced by a
+ * {@link ProcessSummary}, and the summaries are only retained up to a maximum count and age. So client code can still
+ * obtain the final status and events of an execution a while after it has finished, without the registry holding on to
+ * the flow instances of all past executions.
+ * </p>
+ */
+public class ProcessRegistry {
+
+  private final static Logger LOGGER = LoggerFactory.getLogger(ProcessRegistry.class);
+
+  public final static int DEFAULT_MAX_FINISHED_PROCESSES = 1000;
+  public final static long DEFAULT_MAX_AGE_MS = TimeUnit.HOURS.toMillis(1);
+
+  private final Map<String, FlowExecutionFuture> activeProcesses = new ConcurrentHashMap<String, FlowExecutionFuture>();
+
+  // in insertion order, i.e. the eldest entry is the one that finished first
+  private final LinkedHashMap<String, ProcessSummary> finishedProcesses = new LinkedHashMap<String, ProcessSummary>();
+
+  private volatile int maxFinishedProcesses;
+  private volatile long maxAgeMs;
+
+  public ProcessRegistry() {
+    this(DEFAULT_MAX_FINISHED_PROCESSES, DEFAULT_MAX_AGE_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param maxFinishedProcesses
+   *          the maximum nr of finished executions that are retained
+   * @param maxAge
+   *          the maximum time that a finished execution is retained
+   * @param unit
+   */
+  public ProcessRegistry(int maxFinishedProcesses, long maxAge, TimeUnit unit) {
+    setRetention(maxFinishedProcesses, maxAge, unit);
+  }
+
+  /**
+   * Changes the retention policy for finished executions.
+   * 
+   * @param maxFinishedProcesses
+   *          the maximum nr of finished executions that are retained
+   * @param maxAge
+   *          the maximum time that a finished execution is retained
+   * @param unit
+   */
+  public void setRetention(int maxFinishedProcesses, long maxAge, TimeUnit unit) {
+    if (maxFinishedProcesses < 0 || maxAge < 0) {
+      throw new IllegalArgumentException("Retention limits can not be negative");
+    }
+    this.maxFinishedProcesses = maxFinishedProcesses;
+    this.maxAgeMs = unit.toMillis(maxAge);
+    synchronized (finishedProcesses) {
+      evictFinishedProcesses();
+    }
+  }
+
+  public void register(FlowExecutionFuture fetFuture) {
+    activeProcesses.put(fetFuture.getProcessContextId(), fetFuture);
+    // an execution may already be done before it got registered
+    if (fetFuture.isDone()) {
+      finished(fetFuture);
+    }
+  }
+
+  /**
+   * Replaces the given execution by its summary, if it has reached its final status.
+   * 
+   * @param fetFuture
+   */
+  public void finished(FlowExecutionFuture fetFuture) {
+    if (fetFuture.getStatus().isFinalStatus()) {
+      String processId = fetFuture.getProcessContextId();
+      ProcessSummary summary = new ProcessSummary(fetFuture);
+      synchronized (finishedProcesses) {
+        if (activeProcesses.get(processId) != fetFuture) {
+          // not registered yet, or already summarized
+          return;
+        }
+        // first add the summary, so concurrent lookups always find one of both
+        finishedProcesses.put(processId, summary);
+        activeProcesses.remove(processId);
+        evictFinishedProcesses();
+      }
+      LOGGER.debug("Context {} - Execution summarized with status {}", processId, summary.getProcessHandle().getExecutionStatus());
+    }
+  }
+
+  /**
+   * @param processId
+   * @return the execution if it is still queued or running, or null
+   */
+  public FlowExecutionFuture getActiveProcess(String processId) {
+    FlowExecutionFuture fetFuture = activeProcesses.get(processId);
+    if (fetFuture != null && fetFuture.isDone() && fetFuture.getStatus().isFinalStatus()) {
+      // the executor may not have reported it yet
+      finished(fetFuture);
+      return null;
+    }
+    return fetFuture;
+  }
+
+  /**
+   * @param processId
+   * @return the summary of the execution if it is finished and still retained, or null
+   */
+  public ProcessSummary getFinishedProcess(String processId) {
+    synchronized (finishedProcesses) {
+      evictFinishedProcesses();
+      return finishedProcesses.get(processId);
+    }
+  }
+
+  public int getActiveProcessCount() {
+    return activeProcesses.size();
+  }
+
+  public int getFinishedProcessCount() {
+    synchronized (finishedProcesses) {
+      return finishedProcesses.size();
+    }
+  }
+
+  /**
+   * Summarizes the registered executions that have finished in the meantime, e.g. because they were cancelled before
+   * their start.
+   */
+  public void sweep() {
+    for (FlowExecutionFuture fetFuture : activeProcesses.values()) {
+      if (fetFuture.isDone()) {
+        finished(fetFuture);
+      }
+    }
+  }
+
+  private void evictFinishedProcesses() {
+    long oldestRetained = System.currentTimeMillis() - maxAgeMs;
+    Iterator<ProcessSummary> summaryItr = finishedProcesses.values().iterator();
+    while (summaryItr.hasNext()) {
+      ProcessSummary summary = summaryItr.next();
+      if (finishedProcesses.size() > maxFinishedProcesses || summary.getFinishedAt() < oldestRetained) {
+        summaryItr.remove();
+      } else {
+        break;
+      }
+    }
+  }
+}
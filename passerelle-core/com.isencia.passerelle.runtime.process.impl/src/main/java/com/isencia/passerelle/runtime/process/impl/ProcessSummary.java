@@ -0,0 +1,71 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.runtime.process.impl;
+
+import java.util.Collections;
+import java.util.List;
+import com.isencia.passerelle.runtime.Event;
+import com.isencia.passerelle.runtime.ProcessHandle;
+import com.isencia.passerelle.runtime.process.impl.executor.FlowExecutionFuture;
+
+/**
+ * The immutable record that is kept for a finished process execution.
+ * <p>
+ * It only contains the final process handle and the last events of the execution, so the execution task with its flow
+ * instance and manager can be released.
+ * </p>
+ */
+public final class ProcessSummary {
+
+  private final ProcessHandle processHandle;
+  private final List<Event> events;
+  private final long finishedAt;
+
+  /**
+   * @param fetFuture
+   *          a finished execution
+   */
+  public ProcessSummary(FlowExecutionFuture fetFuture) {
+    this.processHandle = new ProcessHandleImpl(fetFuture);
+    this.events = Collections.unmodifiableList(fetFuture.getEvents(-1));
+    this.finishedAt = System.currentTimeMillis();
+  }
+
+  public String getProcessId() {
+    return processHandle.getProcessId();
+  }
+
+  /**
+   * @return the handle with the final status of the execution
+   */
+  public ProcessHandle getProcessHandle() {
+    return processHandle;
+  }
+
+  /**
+   * @param maxCount
+   * @return the last events of the execution, from newest to oldest and limited to the given maxCount
+   */
+  public List<Event> getEvents(int maxCount) {
+    return (maxCount >= 0 && maxCount < events.size()) ? events.subList(0, maxCount) : events;
+  }
+
+  /**
+   * @return the time, in ms since the epoch, when the execution was registered as finished
+   */
+  public long getFinishedAt() {
+    return finishedAt;
+  }
+}
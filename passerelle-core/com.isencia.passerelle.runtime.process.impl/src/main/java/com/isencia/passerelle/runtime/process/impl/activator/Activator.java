@@ -14,24 +14,44 @@
 */
 package com.isencia.passerelle.runtime.process.impl.activator;
 
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 import com.isencia.passerelle.runtime.process.FlowProcessingService;
 import com.isencia.passerelle.runtime.process.impl.FlowProcessingServiceImpl;
+import com.isencia.passerelle.runtime.repository.FlowActivationListener;
 
 public class Activator implements BundleActivator {
-	private FlowProcessingService processSvc;
+	static final String FLOWCACHE_MBEAN_NAME = "com.isencia.passerelle.runtime:type=FlowPrototypeCache";
+
+	private FlowProcessingServiceImpl processSvc;
 	private ServiceRegistration<FlowProcessingService> processSvcreg;
+	private ServiceRegistration<?> flowCacheListenerReg;
+	private MBeanServer mbeanServer;
+	private ObjectName flowCacheMbeanName;
 
 	// TODO make max concurrent runs configurable
 	public void start(BundleContext context) throws Exception {
 	  processSvc = new FlowProcessingServiceImpl(Runtime.getRuntime().availableProcessors());
 	  processSvcreg = (ServiceRegistration<FlowProcessingService>) context.registerService(FlowProcessingService.class.getName(), processSvc, null);
+	  // lets the flow repository tell the cache when another revision of a flow is activated
+	  flowCacheListenerReg = context.registerService(FlowActivationListener.class.getName(), processSvc.getFlowPrototypeCache(), null);
+	  mbeanServer = ManagementFactory.getPlatformMBeanServer();
+	  flowCacheMbeanName = new ObjectName(FLOWCACHE_MBEAN_NAME);
+	  mbeanServer.registerMBean(processSvc.getFlowPrototypeCache(), flowCacheMbeanName);
 	}
 
 	public void stop(BundleContext context) throws Exception {
+	  if (mbeanServer != null) {
+	    mbeanServer.unregisterMBean(flowCacheMbeanName);
+	    mbeanServer = null;
+	  }
+	  flowCacheListenerReg.unregister();
 	  processSvcreg.unregister();
+	  processSvc.shutdown();
 	  processSvc = null;
 	}
 }
@@ -16,6 +16,7 @@ package com.isencia.passerelle.runtime.process.impl.debug;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.isencia.passerelle.runtime.process.impl.event.BreakpointSuspendEvent;
 import com.isencia.passerelle.runtime.process.impl.executor.FlowExecutionTask;
 import ptolemy.actor.Actor;
 import ptolemy.actor.FiringEvent;
@@ -44,6 +45,7 @@ public class ActorBreakpointListener implements DebugListener {
         LOGGER.info("Suspend on breakpoint {}", name);
         if(fet!=null) {
           fet.addSuspendedElement(name);
+          fet.addEvent(new BreakpointSuspendEvent(fet.getProcessContextId(), name));
         }
         a.getManager().pauseOnBreakpoint(name);
       }
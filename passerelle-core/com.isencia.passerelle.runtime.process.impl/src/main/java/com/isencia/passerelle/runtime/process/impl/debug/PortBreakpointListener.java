@@ -16,6 +16,7 @@ package com.isencia.passerelle.runtime.process.impl.debug;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.isencia.passerelle.runtime.process.impl.event.BreakpointSuspendEvent;
 import com.isencia.passerelle.runtime.process.impl.executor.FlowExecutionTask;
 import ptolemy.actor.CompositeActor;
 import ptolemy.actor.IOPortEvent;
@@ -46,6 +47,7 @@ public class PortBreakpointListener implements DebugListener {
         LOGGER.info("Suspend on breakpoint {}", p.getFullName());
         if(fet!=null) {
           fet.addSuspendedElement(name);
+          fet.addEvent(new BreakpointSuspendEvent(fet.getProcessContextId(), name));
         }
         ((CompositeActor)p.toplevel()).getManager().pauseOnBreakpoint(p.getFullName());
       }
@@ -20,4 +20,8 @@ public class TerminateEvent extends ProcessEvent {
   public TerminateEvent(String processContextId) {
     super(processContextId, Kind.TERMINATE, Detail.CLIENT_REQUEST);
   }
+
+  public TerminateEvent(String processContextId, Detail detail) {
+    super(processContextId, Kind.TERMINATE, detail);
+  }
 }
@@ -0,0 +1,78 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.runtime.process.impl.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.isencia.passerelle.runtime.Event;
+
+/**
+ * A fixed-size ring of the most recent events of a process execution.
+ * <p>
+ * When the ring is full, each new event overwrites the oldest one, so the memory used per execution remains bounded
+ * whatever its duration.
+ * </p>
+ */
+public class EventHistory {
+
+  public final static int DEFAULT_CAPACITY = 100;
+
+  private final Event[] events;
+  // total nr of events added since the creation of the history
+  private long count;
+
+  public EventHistory() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity
+   *          the maximum nr of events that are kept
+   */
+  public EventHistory(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1");
+    }
+    events = new Event[capacity];
+  }
+
+  public synchronized void add(Event event) {
+    events[(int) (count % events.length)] = event;
+    count++;
+  }
+
+  /**
+   * @param maxCount
+   * @return the kept events, from newest to oldest and limited to the given maxCount
+   */
+  public synchronized List<Event> getEvents(int maxCount) {
+    int size = (int) Math.min(count, events.length);
+    if (maxCount >= 0 && maxCount < size) {
+      size = maxCount;
+    }
+    List<Event> result = new ArrayList<Event>(size);
+    for (long i = count - 1; result.size() < size; --i) {
+      result.add(events[(int) (i % events.length)]);
+    }
+    return result;
+  }
+
+  /**
+   * @return the total nr of events that have been added, including the ones that have been overwritten
+   */
+  public synchronized long getTotalCount() {
+    return count;
+  }
+}
@@ -14,11 +14,14 @@
 */
 package com.isencia.passerelle.runtime.process.impl.executor;
 
+import java.util.List;
 import java.util.concurrent.FutureTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.isencia.passerelle.core.ErrorCode;
+import com.isencia.passerelle.runtime.Event;
 import com.isencia.passerelle.runtime.FlowHandle;
+import com.isencia.passerelle.runtime.process.FlowProcessingService.Priority;
 import com.isencia.passerelle.runtime.process.ProcessStatus;
 
 /**
@@ -54,6 +57,10 @@ public final class FlowExecutionFuture extends FutureTask<ProcessStatus> {
     return fet.resume();
   }
   
+  public Priority getPriority() {
+    return fet.getPriority();
+  }
+
   public String getProcessContextId() {
     return fet.getProcessContextId();
   }
@@ -66,6 +73,10 @@ public final class FlowExecutionFuture extends FutureTask<ProcessStatus> {
     return fet.getSuspendedElements();
   }
 
+  public List<Event> getEvents(int maxCount) {
+    return fet.getEvents(maxCount);
+  }
+
   
   public FlowHandle getFlowHandle() {
     return fet.getFlowHandle();
@@ -18,6 +18,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -38,12 +39,19 @@ import com.isencia.passerelle.core.ErrorCode;
 import com.isencia.passerelle.core.Manager;
 import com.isencia.passerelle.core.PasserelleException;
 import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.runtime.Event;
 import com.isencia.passerelle.runtime.EventListener;
 import com.isencia.passerelle.runtime.FlowHandle;
+import com.isencia.passerelle.runtime.process.FlowProcessingService.Priority;
 import com.isencia.passerelle.runtime.process.FlowProcessingService.StartMode;
+import com.isencia.passerelle.runtime.process.ProcessEvent.Detail;
 import com.isencia.passerelle.runtime.process.ProcessStatus;
 import com.isencia.passerelle.runtime.process.impl.debug.ActorBreakpointListener;
 import com.isencia.passerelle.runtime.process.impl.debug.PortBreakpointListener;
+import com.isencia.passerelle.runtime.process.impl.event.CreateEvent;
+import com.isencia.passerelle.runtime.process.impl.event.ResumeEvent;
+import com.isencia.passerelle.runtime.process.impl.event.SuspendEvent;
+import com.isencia.passerelle.runtime.process.impl.event.TerminateEvent;
 
 /**
  * @author erwin
@@ -56,23 +64,47 @@ public class FlowExecutionTask implements CancellableTask<ProcessStatus>, Execut
 
   private final FlowHandle flowHandle;
   private final StartMode mode;
+  private final Priority priority;
   private final Map<String, String> parameterOverrides;
   private final Set<String> breakpointNames;
   private final String processContextId;
+  private final FlowPrototypeCache flowCache;
+  private final EventListener listener;
   private volatile ProcessStatus status;
   private volatile boolean canceled;
   private volatile boolean busy;
   private volatile boolean suspended;
   private volatile Set<String> suspendedElements = new ConcurrentSkipListSet<String>();
+  private final EventHistory events = new EventHistory();
   private Manager manager;
 
   public FlowExecutionTask(StartMode mode, FlowHandle flowHandle, String processContextId, Map<String, String> parameterOverrides, EventListener listener,
       String... breakpointNames) {
+    this(mode, Priority.NORMAL, flowHandle, processContextId, parameterOverrides, listener, null, breakpointNames);
+  }
+
+  /**
+   * @param mode
+   * @param priority
+   *          determines the order in which queued executions are started
+   * @param flowHandle
+   * @param processContextId
+   * @param parameterOverrides
+   * @param listener
+   * @param flowCache
+   *          provides the flow instance for the execution; if null, the handle's flow is cloned when the task is called
+   * @param breakpointNames
+   */
+  public FlowExecutionTask(StartMode mode, Priority priority, FlowHandle flowHandle, String processContextId, Map<String, String> parameterOverrides,
+      EventListener listener, FlowPrototypeCache flowCache, String... breakpointNames) {
     this.mode = mode;
+    this.priority = (priority != null) ? priority : Priority.NORMAL;
     if (flowHandle == null)
       throw new IllegalArgumentException("FlowHandle can not be null");
     this.flowHandle = flowHandle;
     this.processContextId = processContextId;
+    this.flowCache = flowCache;
+    this.listener = listener;
     status = ProcessStatus.IDLE;
     this.parameterOverrides = (parameterOverrides != null) ? new HashMap<String, String>(parameterOverrides) : null;
     this.breakpointNames = (breakpointNames != null) ? new HashSet<String>(Arrays.asList(breakpointNames)) : null;
@@ -89,6 +121,13 @@ public class FlowExecutionTask implements CancellableTask<ProcessStatus>, Execut
     return flowHandle;
   }
 
+  /**
+   * @return the priority of this execution
+   */
+  public Priority getPriority() {
+    return priority;
+  }
+
   /**
    * @return the process context ID for this execution
    */
@@ -107,7 +146,7 @@ public class FlowExecutionTask implements CancellableTask<ProcessStatus>, Execut
     try {
       boolean debug = false;
       synchronized (this) {
-        Flow flow = (Flow) flowHandle.getFlow().clone(new Workspace());
+        Flow flow = (flowCache != null) ? flowCache.take(flowHandle) : (Flow) flowHandle.getFlow().clone(new Workspace());
         applyParameterSettings(flowHandle, flow, parameterOverrides);
         if (StartMode.DEBUG.equals(mode)) {
           debug = setBreakpoints(flowHandle, flow, breakpointNames);
@@ -123,15 +162,18 @@ public class FlowExecutionTask implements CancellableTask<ProcessStatus>, Execut
         } else {
           LOGGER.info("Context {} - Starting DEBUG execution of flow {}", processContextId, flowHandle.getCode());
         }
+        addEvent(new CreateEvent(processContextId));
         manager.execute();
         // Just to be sure that for blocking executes,
         // we don't miss the final manager state changes before returning.
         managerStateChanged(manager);
+        addEvent(new TerminateEvent(processContextId, Detail.UNSPECIFIED));
       } else {
         LOGGER.info("Context {} - Canceled execution of flow {} before start", processContextId, flowHandle.getCode());
       }
     } catch (Exception e) {
       executionError(manager, e);
+      addEvent(new TerminateEvent(processContextId, Detail.UNSPECIFIED));
       if (e.getCause() instanceof PasserelleException) {
         throw ((PasserelleException) e.getCause());
       } else {
@@ -151,6 +193,7 @@ public class FlowExecutionTask implements CancellableTask<ProcessStatus>, Execut
     if (!status.isFinalStatus()) {
       LOGGER.trace("cancel() - Context {} - Flow {}", processContextId, flowHandle.getCode());
       canceled = true;
+      addEvent(new TerminateEvent(processContextId));
       if (busy) {
         LOGGER.info("Context {} - Canceling execution of flow {}", processContextId, flowHandle.getCode());
         // to ensure that the status is directly returned as stopping,
@@ -174,6 +217,7 @@ public class FlowExecutionTask implements CancellableTask<ProcessStatus>, Execut
     if (!status.isFinalStatus()) {
       LOGGER.trace("cancel() - Context {} - Flow {}", processContextId, flowHandle.getCode());
       suspended = true;
+      addEvent(new SuspendEvent(processContextId));
       if (busy) {
         LOGGER.info("Context {} - Suspending execution of flow {}", processContextId, flowHandle.getCode());
         manager.pause();
@@ -191,6 +235,7 @@ public class FlowExecutionTask implements CancellableTask<ProcessStatus>, Execut
   public synchronized boolean resume() {
     if (busy && (Manager.PAUSED.equals(manager.getState()) || Manager.PAUSED_ON_BREAKPOINT.equals(manager.getState()))) {
       suspended = false;
+      addEvent(new ResumeEvent(processContextId));
       LOGGER.info("Context {} - Resuming execution of flow {}", processContextId, flowHandle.getCode());
       manager.resume();
       return true;
@@ -219,6 +264,31 @@ public class FlowExecutionTask implements CancellableTask<ProcessStatus>, Execut
     return suspendedElements.remove(elementName);
   }
 
+  /**
+   * Adds an event to the execution's history, and notifies the execution's listener, if any.
+   * 
+   * @param event
+   */
+  public void addEvent(Event event) {
+    events.add(event);
+    if (listener != null) {
+      try {
+        listener.handle(event);
+      } catch (Exception e) {
+        LOGGER.warn("Context " + processContextId + " - Listener failed to handle event " + event, e);
+      }
+    }
+  }
+
+  /**
+   * @param maxCount
+   *          a negative value means all kept events
+   * @return the last events of this execution, from newest to oldest and limited to the given maxCount
+   */
+  public List<Event> getEvents(int maxCount) {
+    return events.getEvents(maxCount);
+  }
+
   /**
    * Updates the flow execution status to <code>ProcessStatus.ERROR</code>
    */
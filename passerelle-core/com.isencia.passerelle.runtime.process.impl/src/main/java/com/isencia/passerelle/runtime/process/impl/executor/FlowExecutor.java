@@ -11,23 +11,83 @@
    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
    See the License for the specific language governing permissions and
    limitations under the License.
-*/
+ */
 package com.isencia.passerelle.runtime.process.impl.executor;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.isencia.passerelle.runtime.process.AdmissionStatistics;
+import com.isencia.passerelle.runtime.process.FlowProcessingService.Priority;
 
 /**
+ * Executes flow executions on a fixed nr of threads, with admission control.
+ * <p>
+ * Flow executions are not handed to the thread pool directly, but are first kept in a bounded queue per
+ * {@link Priority}. Whenever an execution slot is free, the next execution is selected from these queues :
+ * <ul>
+ * <li>executions of a flow that has reached its maximum nr of concurrent executions are skipped, so they do not
+ * block the executions of other flows</li>
+ * <li>the execution with the highest priority is selected, in FIFO order within a same priority</li>
+ * <li>except when an execution has been waiting for longer than the starvation threshold, then the oldest such one is
+ * selected, so low-priority executions are not postponed forever</li>
+ * </ul>
+ * When the queue is full, a new execution waits for at most the admission timeout for a free place, after which it is
+ * rejected with a <code>RejectedExecutionException</code>.
+ * </p>
+ * <p>
+ * Other tasks than flow executions are passed to the thread pool as is.
+ * </p>
+ * 
  * @see JCIP 7.1.7, Listing 7.12
  * 
  * @author erwin
  *
  */
-public class FlowExecutor extends ThreadPoolExecutor {
+public class FlowExecutor extends ThreadPoolExecutor implements AdmissionStatistics {
+
+  private final static Logger LOGGER = LoggerFactory.getLogger(FlowExecutor.class);
+
+  public final static int DEFAULT_MAX_QUEUED_PROCESSES = 1000;
+  public final static long DEFAULT_STARVATION_THRESHOLD_MS = 60000;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notFull = lock.newCondition();
+
+  // all fields below are guarded by the lock
+  private final Map<Priority, Deque<PendingExecution>> pendingExecutions = new EnumMap<Priority, Deque<PendingExecution>>(Priority.class);
+  private int pendingCount;
+  private int runningCount;
+  private final Map<String, Integer> runningCountPerFlow = new HashMap<String, Integer>();
+  private final Map<String, Integer> maxConcurrentPerFlow = new HashMap<String, Integer>();
+  private int defaultMaxConcurrentPerFlow = Integer.MAX_VALUE;
+  private int maxQueuedProcesses = DEFAULT_MAX_QUEUED_PROCESSES;
+  private long admissionTimeoutNanos;
+  private long starvationThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_STARVATION_THRESHOLD_MS);
+
+  private long submittedCount;
+  private long rejectedCount;
+  private final Map<Priority, QueueTimes> queueTimes = new EnumMap<Priority, QueueTimes>(Priority.class);
 
   public FlowExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
     super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+    for (Priority priority : Priority.values()) {
+      pendingExecutions.put(priority, new ArrayDeque<PendingExecution>());
+      queueTimes.put(priority, new QueueTimes());
+    }
   }
 
   protected <T> java.util.concurrent.RunnableFuture<T> newTaskFor(java.util.concurrent.Callable<T> callable) {
@@ -37,4 +97,364 @@ public class FlowExecutor extends ThreadPoolExecutor {
       return super.newTaskFor(callable);
     }
   }
+
+  /**
+   * Queues flow executions until they can be started.
+   * 
+   * @throws RejectedExecutionException
+   *           when the queue remained full for the admission timeout, or when the executor has been shut down
+   */
+  @Override
+  public void execute(Runnable command) {
+    if (!(command instanceof FlowExecutionFuture)) {
+      super.execute(command);
+      return;
+    }
+    FlowExecutionFuture future = (FlowExecutionFuture) command;
+    lock.lock();
+    try {
+      if (isShutdown()) {
+        throw new RejectedExecutionException("FlowExecutor has been shut down");
+      }
+      long nanos = admissionTimeoutNanos;
+      while (pendingCount >= maxQueuedProcesses) {
+        if (nanos <= 0) {
+          rejectedCount++;
+          LOGGER.warn("Context {} - Rejected execution of flow {} : {} executions are queued", new Object[] { future.getProcessContextId(),
+              future.getFlowHandle().getCode(), pendingCount });
+          throw new RejectedExecutionException("Too many queued flow executions");
+        }
+        try {
+          nanos = notFull.awaitNanos(nanos);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          rejectedCount++;
+          throw new RejectedExecutionException("Interrupted while waiting to queue flow execution", e);
+        }
+        if (isShutdown()) {
+          throw new RejectedExecutionException("FlowExecutor has been shut down");
+        }
+      }
+      pendingExecutions.get(future.getPriority()).addLast(new PendingExecution(future));
+      pendingCount++;
+      submittedCount++;
+      dispatch();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  protected void afterExecute(Runnable r, Throwable t) {
+    super.afterExecute(r, t);
+    if (r instanceof FlowExecutionFuture) {
+      lock.lock();
+      try {
+        release(((FlowExecutionFuture) r).getFlowHandle().getCode());
+        dispatch();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Executions that are still queued are cancelled, the running ones are allowed to finish.
+   */
+  @Override
+  public void shutdown() {
+    super.shutdown();
+    cancelPendingExecutions();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    List<Runnable> notExecuted = super.shutdownNow();
+    notExecuted.addAll(cancelPendingExecutions());
+    return notExecuted;
+  }
+
+  /**
+   * @param maxQueuedProcesses
+   *          the maximum nr of executions that can wait for a free execution slot; at least 1
+   */
+  public void setMaxQueuedProcesses(int maxQueuedProcesses) {
+    if (maxQueuedProcesses < 1) {
+      throw new IllegalArgumentException("maxQueuedProcesses must be at least 1");
+    }
+    lock.lock();
+    try {
+      this.maxQueuedProcesses = maxQueuedProcesses;
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param timeout
+   *          the maximum time that a new execution waits for a place in a full queue; 0 means it is rejected directly
+   * @param unit
+   */
+  public void setAdmissionTimeout(long timeout, TimeUnit unit) {
+    lock.lock();
+    try {
+      admissionTimeoutNanos = unit.toNanos(timeout);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param threshold
+   *          the time after which a queued execution is started before executions with a higher priority
+   * @param unit
+   */
+  public void setStarvationThreshold(long threshold, TimeUnit unit) {
+    lock.lock();
+    try {
+      starvationThresholdNanos = unit.toNanos(threshold);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param maxConcurrent
+   *          the maximum nr of concurrent executions of a same flow, for flows without a specific limit
+   */
+  public void setDefaultMaxConcurrentPerFlow(int maxConcurrent) {
+    if (maxConcurrent < 1) {
+      throw new IllegalArgumentException("maxConcurrent must be at least 1");
+    }
+    lock.lock();
+    try {
+      defaultMaxConcurrentPerFlow = maxConcurrent;
+      dispatch();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @param flowCode
+   * @param maxConcurrent
+   *          the maximum nr of concurrent executions of the given flow; a value < 1 removes the specific limit
+   */
+  public void setMaxConcurrentPerFlow(String flowCode, int maxConcurrent) {
+    lock.lock();
+    try {
+      if (maxConcurrent < 1) {
+        maxConcurrentPerFlow.remove(flowCode);
+      } else {
+        maxConcurrentPerFlow.put(flowCode, maxConcurrent);
+      }
+      dispatch();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getActiveProcessCount() {
+    lock.lock();
+    try {
+      return runningCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getQueuedProcessCount() {
+    lock.lock();
+    try {
+      return pendingCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getQueuedProcessCount(Priority priority) {
+    lock.lock();
+    try {
+      return pendingExecutions.get(priority).size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getSubmittedProcessCount() {
+    lock.lock();
+    try {
+      return submittedCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getRejectedProcessCount() {
+    lock.lock();
+    try {
+      return rejectedCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public double getMeanQueueTimeMillis(Priority priority) {
+    lock.lock();
+    try {
+      QueueTimes times = queueTimes.get(priority);
+      return times.count > 0 ? (double) times.totalNanos / times.count / 1000000 : 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getMaxQueueTimeMillis(Priority priority) {
+    lock.lock();
+    try {
+      return TimeUnit.NANOSECONDS.toMillis(queueTimes.get(priority).maxNanos);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void resetStatistics() {
+    lock.lock();
+    try {
+      submittedCount = 0;
+      rejectedCount = 0;
+      for (QueueTimes times : queueTimes.values()) {
+        times.count = 0;
+        times.totalNanos = 0;
+        times.maxNanos = 0;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Starts queued executions, as long as there are free execution slots. Must be called while holding the lock.
+   */
+  private void dispatch() {
+    boolean dequeued = false;
+    while (runningCount < getMaximumPoolSize()) {
+      PendingExecution next = selectNext();
+      if (next == null) {
+        break;
+      }
+      pendingExecutions.get(next.future.getPriority()).remove(next);
+      pendingCount--;
+      dequeued = true;
+      String flowCode = next.future.getFlowHandle().getCode();
+      runningCount++;
+      Integer flowCount = runningCountPerFlow.get(flowCode);
+      runningCountPerFlow.put(flowCode, flowCount != null ? flowCount + 1 : 1);
+      queueTimes.get(next.future.getPriority()).add(System.nanoTime() - next.enqueuedNanos);
+      try {
+        super.execute(next.future);
+      } catch (RejectedExecutionException e) {
+        // the pool has been shut down in the meantime
+        release(flowCode);
+        next.future.cancel(false);
+      }
+    }
+    if (dequeued) {
+      notFull.signalAll();
+    }
+  }
+
+  /**
+   * Removes the cancelled executions from the queues and selects the next one that may be started.
+   * 
+   * @return the selected execution, or null if none is allowed to start now
+   */
+  private PendingExecution selectNext() {
+    long now = System.nanoTime();
+    PendingExecution highest = null;
+    PendingExecution starving = null;
+    for (Priority priority : Priority.values()) {
+      Iterator<PendingExecution> pendingItr = pendingExecutions.get(priority).iterator();
+      while (pendingItr.hasNext()) {
+        PendingExecution pending = pendingItr.next();
+        if (pending.future.isDone()) {
+          // cancelled before it was started
+          pendingItr.remove();
+          pendingCount--;
+          continue;
+        }
+        if (mayStart(pending.future.getFlowHandle().getCode())) {
+          // the first one that may start is also the oldest for this priority
+          if (highest == null) {
+            highest = pending;
+          }
+          if (now - pending.enqueuedNanos > starvationThresholdNanos && (starving == null || pending.enqueuedNanos < starving.enqueuedNanos)) {
+            starving = pending;
+          }
+          break;
+        }
+      }
+    }
+    return starving != null ? starving : highest;
+  }
+
+  private boolean mayStart(String flowCode) {
+    Integer running = runningCountPerFlow.get(flowCode);
+    if (running == null) {
+      return true;
+    }
+    Integer max = maxConcurrentPerFlow.get(flowCode);
+    return running < (max != null ? max : defaultMaxConcurrentPerFlow);
+  }
+
+  private void release(String flowCode) {
+    runningCount--;
+    Integer flowCount = runningCountPerFlow.get(flowCode);
+    if (flowCount == null || flowCount <= 1) {
+      runningCountPerFlow.remove(flowCode);
+    } else {
+      runningCountPerFlow.put(flowCode, flowCount - 1);
+    }
+  }
+
+  private List<Runnable> cancelPendingExecutions() {
+    List<Runnable> cancelled = new ArrayList<Runnable>();
+    lock.lock();
+    try {
+      for (Deque<PendingExecution> pendings : pendingExecutions.values()) {
+        for (PendingExecution pending : pendings) {
+          pending.future.cancel(false);
+          cancelled.add(pending.future);
+        }
+        pendings.clear();
+      }
+      pendingCount = 0;
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    return cancelled;
+  }
+
+  private final static class PendingExecution {
+    private final FlowExecutionFuture future;
+    private final long enqueuedNanos = System.nanoTime();
+
+    PendingExecution(FlowExecutionFuture future) {
+      this.future = future;
+    }
+  }
+
+  private final static class QueueTimes {
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    void add(long nanos) {
+      count++;
+      totalNanos += nanos;
+      maxNanos = Math.max(maxNanos, nanos);
+    }
+  }
 }
@@ -0,0 +1,359 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.runtime.process.impl.executor;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ptolemy.kernel.util.Workspace;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.runtime.FlowHandle;
+import com.isencia.passerelle.runtime.repository.FlowActivationListener;
+
+/**
+ * Keeps a parsed prototype per flow version, together with a small pool of pre-cloned instances of it.
+ * <p>
+ * Each execution needs its own <code>Flow</code> instance. Without this cache, each execution clones the flow of its
+ * <code>FlowHandle</code> when it starts, and for handles that are created by the repository on each lookup, this even
+ * implies reading and parsing the flow definition again. Here a flow version's prototype is obtained only once, and the
+ * clones are prepared in the background, so an execution can normally start with a ready-made instance.
+ * </p>
+ * <p>
+ * Flow versions are identified by their code, version and resource location, and for file resources also by their
+ * modification time, so a flow definition that is overwritten in place is not mistaken for the cached one. Several
+ * versions of a flow can be cached side by side. When the repository reports that another revision of a flow has been
+ * activated, the cached versions other than the active one are dropped. Flows can also be invalidated explicitly, and
+ * the least recently used flow versions are dropped when more than <code>maxCachedFlows</code> are in use.
+ * </p>
+ * <p>
+ * Handles without a resource location or version, e.g. handles on an in-memory flow, can not be told apart from other
+ * handles with the same code, so their flows are not cached but cloned for each execution.
+ * </p>
+ */
+public class FlowPrototypeCache implements FlowPrototypeCacheMBean, FlowActivationListener {
+
+  private final static Logger LOGGER = LoggerFactory.getLogger(FlowPrototypeCache.class);
+
+  public final static int DEFAULT_MAX_CACHED_FLOWS = 32;
+  public final static int DEFAULT_STANDBY_POOL_SIZE = 1;
+
+  private final int maxCachedFlows;
+  private final int standbyPoolSize;
+
+  // in access order, so the eldest entry is the least recently used flow version
+  private final Map<String, PrototypeEntry> entries;
+
+  // prepares the standby clones, one at a time as cloning a large flow is not cheap
+  private final ThreadPoolExecutor refiller;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong loadCount = new AtomicLong();
+  private final AtomicLong invalidationCount = new AtomicLong();
+
+  public FlowPrototypeCache() {
+    this(DEFAULT_MAX_CACHED_FLOWS, DEFAULT_STANDBY_POOL_SIZE);
+  }
+
+  /**
+   * @param maxCachedFlows
+   *          the maximum number of flow versions for which a prototype is kept
+   * @param standbyPoolSize
+   *          the number of pre-cloned instances to keep ready per flow version; 0 means that clones are only made when an
+   *          execution is started
+   */
+  public FlowPrototypeCache(final int maxCachedFlows, int standbyPoolSize) {
+    if (maxCachedFlows < 1) {
+      throw new IllegalArgumentException("maxCachedFlows must be at least 1");
+    }
+    if (standbyPoolSize < 0) {
+      throw new IllegalArgumentException("standbyPoolSize can not be negative");
+    }
+    this.maxCachedFlows = maxCachedFlows;
+    this.standbyPoolSize = standbyPoolSize;
+    entries = new LinkedHashMap<String, PrototypeEntry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PrototypeEntry> eldest) {
+        if (size() > maxCachedFlows) {
+          drop(eldest.getValue());
+          return true;
+        } else {
+          return false;
+        }
+      }
+    };
+    refiller = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "FlowPrototypeCache-refill");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    refiller.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Returns a new instance of the handle's flow, for exclusive use by one execution.
+   * 
+   * @param flowHandle
+   * @return a clone of the handle's flow, in its own workspace
+   * @throws CloneNotSupportedException
+   * @throws IllegalStateException
+   *           when the handle does not provide a flow
+   */
+  public Flow take(FlowHandle flowHandle) throws CloneNotSupportedException {
+    String key = getKey(flowHandle);
+    if (key == null) {
+      missCount.incrementAndGet();
+      Flow flow = flowHandle.getFlow();
+      if (flow == null) {
+        throw new IllegalStateException("No flow available for " + flowHandle);
+      }
+      return (Flow) flow.clone(new Workspace());
+    }
+    PrototypeEntry entry = getEntry(key, flowHandle);
+    Flow flow = entry.standby.poll();
+    if (flow != null) {
+      hitCount.incrementAndGet();
+      LOGGER.trace("Flow {} - using standby instance", entry.key);
+    } else {
+      missCount.incrementAndGet();
+      LOGGER.trace("Flow {} - no standby instance available", entry.key);
+      flow = entry.newClone();
+    }
+    scheduleRefill(entry);
+    return flow;
+  }
+
+  public void invalidate(String flowCode) {
+    List<PrototypeEntry> dropped = new ArrayList<PrototypeEntry>();
+    synchronized (entries) {
+      Iterator<PrototypeEntry> entryItr = entries.values().iterator();
+      while (entryItr.hasNext()) {
+        PrototypeEntry entry = entryItr.next();
+        if (isSameCode(entry.flowCode, flowCode)) {
+          entryItr.remove();
+          dropped.add(entry);
+        }
+      }
+    }
+    for (PrototypeEntry entry : dropped) {
+      drop(entry);
+    }
+  }
+
+  /**
+   * Drops the cached versions of the activated flow, except the active one.
+   */
+  public void flowActivated(FlowHandle activeHandle) {
+    String activeKey = getKey(activeHandle);
+    List<PrototypeEntry> dropped = new ArrayList<PrototypeEntry>();
+    synchronized (entries) {
+      Iterator<PrototypeEntry> entryItr = entries.values().iterator();
+      while (entryItr.hasNext()) {
+        PrototypeEntry entry = entryItr.next();
+        if (isSameCode(entry.flowCode, activeHandle.getCode()) && !entry.key.equals(activeKey)) {
+          entryItr.remove();
+          dropped.add(entry);
+        }
+      }
+    }
+    for (PrototypeEntry entry : dropped) {
+      drop(entry);
+    }
+  }
+
+  public void clear() {
+    List<PrototypeEntry> dropped;
+    synchronized (entries) {
+      dropped = new ArrayList<PrototypeEntry>(entries.values());
+      entries.clear();
+    }
+    for (PrototypeEntry entry : dropped) {
+      drop(entry);
+    }
+  }
+
+  /**
+   * Drops all cached flows and stops the preparation of standby instances.
+   */
+  public void shutdown() {
+    refiller.shutdownNow();
+    clear();
+  }
+
+  public int getMaxCachedFlows() {
+    return maxCachedFlows;
+  }
+
+  public int getStandbyPoolSize() {
+    return standbyPoolSize;
+  }
+
+  public int getCachedFlowCount() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public double getHitRatio() {
+    long hits = hitCount.get();
+    long total = hits + missCount.get();
+    return total > 0 ? (double) hits / total : 0;
+  }
+
+  public long getLoadCount() {
+    return loadCount.get();
+  }
+
+  public long getInvalidationCount() {
+    return invalidationCount.get();
+  }
+
+  public void resetStatistics() {
+    hitCount.set(0);
+    missCount.set(0);
+    loadCount.set(0);
+    invalidationCount.set(0);
+  }
+
+  private PrototypeEntry getEntry(String key, FlowHandle flowHandle) {
+    synchronized (entries) {
+      PrototypeEntry entry = entries.get(key);
+      if (entry == null) {
+        entry = new PrototypeEntry(key, flowHandle);
+        entries.put(key, entry);
+      }
+      return entry;
+    }
+  }
+
+  /**
+   * @param flowHandle
+   * @return the key of the handle's flow version, or null if the handle does not identify a flow version
+   */
+  private String getKey(FlowHandle flowHandle) {
+    URI location = flowHandle.getResourceLocation();
+    if (location == null || flowHandle.getVersion() == null) {
+      return null;
+    }
+    String key = flowHandle.getCode() + "|" + flowHandle.getVersion() + "|" + location;
+    if (location != null && "file".equals(location.getScheme())) {
+      key += "|" + new File(location).lastModified();
+    }
+    return key;
+  }
+
+  private static boolean isSameCode(String code, String otherCode) {
+    return (code == null) ? otherCode == null : code.equals(otherCode);
+  }
+
+  private void drop(PrototypeEntry entry) {
+    if (entry.valid.compareAndSet(true, false)) {
+      invalidationCount.incrementAndGet();
+      entry.standby.clear();
+      LOGGER.debug("Flow {} - dropped cached prototype", entry.key);
+    }
+  }
+
+  private void scheduleRefill(final PrototypeEntry entry) {
+    if (standbyPoolSize > 0 && entry.valid.get() && entry.refillScheduled.compareAndSet(false, true)) {
+      try {
+        refiller.execute(new Runnable() {
+          public void run() {
+            refill(entry);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // the cache has been shut down, executions will just clone their flows themselves
+        entry.refillScheduled.set(false);
+      }
+    }
+  }
+
+  private void refill(PrototypeEntry entry) {
+    try {
+      while (entry.valid.get() && entry.standby.size() < standbyPoolSize && !Thread.currentThread().isInterrupted()) {
+        entry.standby.offer(entry.newClone());
+      }
+    } catch (Exception e) {
+      LOGGER.warn("Flow " + entry.key + " - failed to prepare standby instance", e);
+    } finally {
+      entry.refillScheduled.set(false);
+    }
+    if (!entry.valid.get()) {
+      // the entry may have been dropped while we were adding a clone
+      entry.standby.clear();
+    }
+  }
+
+  private final class PrototypeEntry {
+    private final String key;
+    private final String flowCode;
+    private final FlowHandle flowHandle;
+    private final Queue<Flow> standby = new ConcurrentLinkedQueue<Flow>();
+    private final AtomicBoolean valid = new AtomicBoolean(true);
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+    private Flow prototype;
+
+    PrototypeEntry(String key, FlowHandle flowHandle) {
+      this.key = key;
+      this.flowCode = flowHandle.getCode();
+      this.flowHandle = flowHandle;
+    }
+
+    Flow newClone() throws CloneNotSupportedException {
+      Flow p = getPrototype();
+      return (Flow) p.clone(new Workspace());
+    }
+
+    private synchronized Flow getPrototype() {
+      if (prototype == null) {
+        prototype = flowHandle.getFlow();
+        if (prototype == null) {
+          throw new IllegalStateException("No flow available for " + flowHandle);
+        }
+        loadCount.incrementAndGet();
+        LOGGER.debug("Flow {} - loaded prototype", key);
+      }
+      return prototype;
+    }
+  }
+}
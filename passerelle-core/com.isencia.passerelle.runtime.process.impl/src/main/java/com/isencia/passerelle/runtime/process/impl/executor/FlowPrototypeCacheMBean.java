@@ -0,0 +1,79 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.runtime.process.impl.executor;
+
+/**
+ * Management interface for the {@link FlowPrototypeCache}.
+ */
+public interface FlowPrototypeCacheMBean {
+
+  /**
+   * @return the maximum number of flow versions for which a prototype is kept
+   */
+  int getMaxCachedFlows();
+
+  /**
+   * @return the number of pre-cloned flow instances that is kept ready per flow version
+   */
+  int getStandbyPoolSize();
+
+  /**
+   * @return the number of flow versions for which a prototype is currently cached
+   */
+  int getCachedFlowCount();
+
+  /**
+   * @return the nr of flow instances that were obtained from a standby pool
+   */
+  long getHitCount();
+
+  /**
+   * @return the nr of flow instances that had to be cloned while starting an execution
+   */
+  long getMissCount();
+
+  /**
+   * @return the ratio of hits vs all requested flow instances, or 0 if none were requested yet
+   */
+  double getHitRatio();
+
+  /**
+   * @return the nr of times a flow prototype was obtained from its flow handle
+   */
+  long getLoadCount();
+
+  /**
+   * @return the nr of cached flow versions that were dropped, because of a newer version, an explicit invalidation or
+   *         the cache's size limit
+   */
+  long getInvalidationCount();
+
+  /**
+   * Drops all cached prototypes and standby instances of the given flow.
+   * 
+   * @param flowCode
+   */
+  void invalidate(String flowCode);
+
+  /**
+   * Drops all cached prototypes and standby instances.
+   */
+  void clear();
+
+  /**
+   * Resets the hit/miss/load/invalidation counters.
+   */
+  void resetStatistics();
+}
@@ -0,0 +1,85 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.runtime.repos.impl.filesystem;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.model.FlowManager;
+
+/**
+ * A bounded cache of parsed flows, shared by the handles that a <code>FlowRepositoryServiceImpl</code> returns.
+ * <p>
+ * Flows are cached per model file and its last modification time, so a modified file is parsed again. When the max
+ * size is reached, the least recently used flow is dropped.
+ * </p>
+ */
+class FlowCache {
+
+  private final int maxFlows;
+  private final Map<String, Flow> flows;
+
+  /**
+   * @param maxFlows
+   *          the max nr of parsed flows to keep; 0 means that each request parses the flow again
+   */
+  @SuppressWarnings("serial")
+  FlowCache(final int maxFlows) {
+    this.maxFlows = maxFlows;
+    flows = new LinkedHashMap<String, Flow>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String, Flow> eldest) {
+        return size() > maxFlows;
+      }
+    };
+  }
+
+  /**
+   * Parsing is done outside of the cache's lock, so a slow parse does not block requests for other flows. When two
+   * threads ask for the same new flow at the same time, both parse it and the first result is kept.
+   * 
+   * @param modelFile
+   * @return the parsed flow from the given file
+   * @throws Exception
+   */
+  Flow getFlow(File modelFile) throws Exception {
+    if (maxFlows <= 0) {
+      return FlowManager.readMoml(modelFile.toURI().toURL());
+    }
+    String key = modelFile.getPath() + "@" + modelFile.lastModified();
+    synchronized (flows) {
+      Flow flow = flows.get(key);
+      if (flow != null) {
+        return flow;
+      }
+    }
+    Flow flow = FlowManager.readMoml(modelFile.toURI().toURL());
+    synchronized (flows) {
+      Flow cachedFlow = flows.get(key);
+      if (cachedFlow != null) {
+        return cachedFlow;
+      } else {
+        flows.put(key, flow);
+        return flow;
+      }
+    }
+  }
+
+  void clear() {
+    synchronized (flows) {
+      flows.clear();
+    }
+  }
+}
@@ -33,6 +33,7 @@ public class FlowHandleImpl implements FlowHandle {
   private VersionSpecification version;
   private Flow flow;
   private String moml;
+  private transient FlowCache flowCache;
 
   public FlowHandleImpl(String code, File resourceLocation, VersionSpecification version) {
     this.code = code;
@@ -40,6 +41,14 @@ public class FlowHandleImpl implements FlowHandle {
     this.version = version;
   }
 
+  /**
+   * Creates a handle that obtains its flow from the given cache, i.o. parsing and keeping it itself.
+   */
+  FlowHandleImpl(String code, File resourceLocation, VersionSpecification version, FlowCache flowCache) {
+    this(code, resourceLocation, version);
+    this.flowCache = flowCache;
+  }
+
   @Override
   public URI getResourceLocation() {
     return resourceLocation.toURI();
@@ -57,6 +66,14 @@ public class FlowHandleImpl implements FlowHandle {
 
   @Override
   public Flow getFlow() {
+    if (flowCache != null) {
+      try {
+        return flowCache.getFlow(resourceLocation);
+      } catch (Exception e) {
+        e.printStackTrace();
+        return null;
+      }
+    }
     if (flow == null) {
       try {
         flow = FlowManager.readMoml(getResourceLocation().toURL());
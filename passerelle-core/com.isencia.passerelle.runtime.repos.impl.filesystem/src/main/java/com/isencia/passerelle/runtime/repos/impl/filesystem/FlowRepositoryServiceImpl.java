@@ -23,8 +23,15 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
-import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +40,7 @@ import com.isencia.passerelle.model.Flow;
 import com.isencia.passerelle.runtime.FlowHandle;
 import com.isencia.passerelle.runtime.repository.DuplicateEntryException;
 import com.isencia.passerelle.runtime.repository.EntryNotFoundException;
+import com.isencia.passerelle.runtime.repository.FlowActivationListener;
 import com.isencia.passerelle.runtime.repository.FlowRepositoryService;
 import com.isencia.passerelle.runtime.repository.ThreeDigitVersionSpecification;
 import com.isencia.passerelle.runtime.repository.VersionSpecification;
@@ -42,6 +50,21 @@ import com.isencia.passerelle.runtime.repository.VersionSpecification;
  * <p>
  * Each flow is stored in a subdirectory with the flow's name. Within each flow's directory, separate subdirectories are maintained per version.
  * </p>
+ * <p>
+ * The flow codes, their revisions and their active and most recent versions are kept in an in-memory index. The index
+ * is loaded lazily per flow code, and a <code>FlowRepositoryWatcher</code> marks the parts that have been changed on
+ * disk, by this service or by someone else, so they are reloaded on their next access. Changes made by someone else
+ * become visible as soon as the file system has notified the watcher.
+ * </p>
+ * <p>
+ * The handles from the index are shared between callers, and so are their parsed flows, which are kept in a bounded
+ * cache. Such flows must be treated as read-only prototypes and be cloned before they are modified or executed, as the
+ * FlowProcessingService does.
+ * </p>
+ * <p>
+ * Registered <code>FlowActivationListener</code>s are notified when another revision of a flow is activated via this
+ * service.
+ * </p>
  * 
  * @author erwin
  */
@@ -51,6 +74,8 @@ public class FlowRepositoryServiceImpl implements FlowRepositoryService {
   private static final String VERSION_ACTIVE = "version.active";
   private final static Logger LOGGER = LoggerFactory.getLogger(FlowRepositoryServiceImpl.class);
 
+  public final static int DEFAULT_MAX_CACHED_FLOWS = 50;
+
   private static final class DirectoryFilter implements FileFilter {
     @Override
     public boolean accept(File fileOrFolder) {
@@ -58,13 +83,95 @@ public class FlowRepositoryServiceImpl implements FlowRepositoryService {
     }
   }
 
+  /**
+   * The index entry for one flow code. It is reloaded from disk on its first access after it has been marked stale.
+   */
+  private final class CodeEntry {
+    private final String code;
+    private volatile boolean stale = true;
+    private Map<String, FlowHandle> revisions = new LinkedHashMap<String, FlowHandle>();
+    private String activeVersion;
+    private String mostRecentVersion;
+
+    CodeEntry(String code) {
+      this.code = code;
+    }
+
+    synchronized FlowHandle getRevision(String version) throws EntryNotFoundException {
+      refresh();
+      return (version != null) ? revisions.get(version) : null;
+    }
+
+    synchronized FlowHandle[] getRevisions() throws EntryNotFoundException {
+      refresh();
+      return revisions.values().toArray(new FlowHandle[revisions.size()]);
+    }
+
+    synchronized FlowHandle getActiveFlow() throws EntryNotFoundException {
+      refresh();
+      return (activeVersion != null) ? revisions.get(activeVersion) : null;
+    }
+
+    synchronized FlowHandle getMostRecentFlow() throws EntryNotFoundException {
+      refresh();
+      return (mostRecentVersion != null) ? revisions.get(mostRecentVersion) : null;
+    }
+
+    private void refresh() throws EntryNotFoundException {
+      if (stale || !isWatching()) {
+        // cleared before reading, so changes during the reload mark the entry stale again
+        stale = false;
+        File flowRootFolder = new File(rootFolder, code);
+        if (!flowRootFolder.isDirectory()) {
+          codeEntries.remove(code, this);
+          throw new EntryNotFoundException("Invalid flow code " + code);
+        }
+        if (watcher != null) {
+          watcher.watch(flowRootFolder);
+        }
+        Properties metaData = readMetaData(code);
+        Map<String, FlowHandle> revisions = new LinkedHashMap<String, FlowHandle>();
+        File[] versionFolders = flowRootFolder.listFiles(new DirectoryFilter());
+        if (versionFolders != null) {
+          for (File versionFolder : versionFolders) {
+            if (watcher != null) {
+              watcher.watch(versionFolder);
+            }
+            FlowHandle fh = readAndBuildFlowHandle(code, versionFolder, flowCache);
+            if (fh != null) {
+              revisions.put(versionFolder.getName(), fh);
+            }
+          }
+        }
+        this.revisions = revisions;
+        activeVersion = metaData.getProperty(VERSION_ACTIVE);
+        mostRecentVersion = metaData.getProperty(VERSION_MOSTRECENT);
+      }
+    }
+  }
+
   private File rootFolder;
+  private final FlowCache flowCache;
+  private final ConcurrentMap<String, CodeEntry> codeEntries = new ConcurrentHashMap<String, CodeEntry>();
+  // set when the list of flow codes may have changed since the last scan of the root folder
+  private volatile boolean flowCodesStale = true;
+  private final FlowRepositoryWatcher watcher;
+  private final List<FlowActivationListener> activationListeners = new CopyOnWriteArrayList<FlowActivationListener>();
 
   public FlowRepositoryServiceImpl(String rootFolderPath) {
     this(new File(rootFolderPath));
   }
 
   public FlowRepositoryServiceImpl(File rootFolder) {
+    this(rootFolder, DEFAULT_MAX_CACHED_FLOWS);
+  }
+
+  /**
+   * @param rootFolder
+   * @param maxCachedFlows
+   *          the max nr of parsed flows that are kept in memory
+   */
+  public FlowRepositoryServiceImpl(File rootFolder, int maxCachedFlows) {
     LOGGER.info("Creating FlowRepositoryService on folder {}", rootFolder);
     this.rootFolder = rootFolder;
     if (!rootFolder.exists()) {
@@ -72,14 +179,42 @@ public class FlowRepositoryServiceImpl implements FlowRepositoryService {
     } else if (!rootFolder.isDirectory()) {
       throw new IllegalArgumentException(rootFolder.getPath() + " is not a folder");
     }
+    flowCache = new FlowCache(maxCachedFlows);
+    FlowRepositoryWatcher w = null;
+    try {
+      w = new FlowRepositoryWatcher(this, rootFolder);
+    } catch (Exception e) {
+      LOGGER.warn("Failed to watch folder " + rootFolder + ", the flow repository will be read on each access", e);
+    }
+    watcher = w;
+  }
+
+  /**
+   * Stops watching the repository folders. Afterwards the repository is read from disk on each access.
+   */
+  public void close() {
+    if (watcher != null) {
+      watcher.close();
+    }
+    flowCache.clear();
   }
   
+  public void addFlowActivationListener(FlowActivationListener listener) {
+    activationListeners.add(listener);
+  }
+
+  public void removeFlowActivationListener(FlowActivationListener listener) {
+    activationListeners.remove(listener);
+  }
+
   public void clearRepository() {
     try {
       FileUtils.deleteDirectory(rootFolder);
       rootFolder.mkdirs();
     } catch (IOException e) {
       LOGGER.error("Failed to clear repository directory", e);
+    } finally {
+      indexChanged();
     }
   }
 
@@ -112,6 +247,7 @@ public class FlowRepositoryServiceImpl implements FlowRepositoryService {
         } catch (EntryNotFoundException e) {
           // should not happen
         } finally {
+          flowChanged(flowCode);
           if (outputWriter != null) {
             try {
               outputWriter.flush();
@@ -135,6 +271,8 @@ public class FlowRepositoryServiceImpl implements FlowRepositoryService {
       FileUtils.deleteDirectory(new File(rootFolder, flowCode));
     } catch (IOException e) {
       LOGGER.error("Failed to delete " + flowCode, e);
+    } finally {
+      flowChanged(flowCode);
     }
     return results;
   }
@@ -168,6 +306,7 @@ public class FlowRepositoryServiceImpl implements FlowRepositoryService {
         } catch (IOException e) {
           throw new RuntimeException(e);
         } finally {
+          flowChanged(flowCode);
           if (outputWriter != null) {
             try {
               outputWriter.flush();
@@ -186,46 +325,22 @@ public class FlowRepositoryServiceImpl implements FlowRepositoryService {
 
   @Override
   public FlowHandle getActiveFlow(String flowCode) throws EntryNotFoundException {
-    File flowRootFolder = new File(rootFolder, flowCode);
-    if (!flowRootFolder.isDirectory()) {
-      throw new EntryNotFoundException("Invalid flow code " + flowCode);
-    } else {
-      FlowHandle flow = null;
-      Properties metaData = readMetaData(flowCode);
-      String activeVersion = metaData.getProperty(VERSION_ACTIVE);
-      flow = readAndBuildFlowHandle(flowRootFolder.getName(), activeVersion);
-      return flow;
-    }
+    return getCodeEntry(flowCode).getActiveFlow();
   }
 
   @Override
   public FlowHandle getMostRecentFlow(String flowCode) throws EntryNotFoundException {
-    File flowRootFolder = new File(rootFolder, flowCode);
-    if (!flowRootFolder.isDirectory()) {
-      throw new EntryNotFoundException("Invalid flow code " + flowCode);
-    } else {
-      FlowHandle flow = null;
-      Properties metaData = readMetaData(flowCode);
-      String mostRecentVersion = metaData.getProperty(VERSION_MOSTRECENT);
-      flow = readAndBuildFlowHandle(flowRootFolder.getName(), new File(flowRootFolder, mostRecentVersion));
-      return flow;
-    }
+    return getCodeEntry(flowCode).getMostRecentFlow();
   }
   
   @Override
   public FlowHandle getFlowVersion(String flowCode, VersionSpecification version) throws EntryNotFoundException {
-    File flowRootFolder = new File(rootFolder, flowCode);
-    if (!flowRootFolder.isDirectory()) {
-      throw new EntryNotFoundException("Invalid flow code " + flowCode);
+    String requestedVersion = version.toString();
+    FlowHandle flow = getCodeEntry(flowCode).getRevision(requestedVersion);
+    if(flow==null) {
+      throw new EntryNotFoundException("Version " + requestedVersion + " not found for flow code " + flowCode);
     } else {
-      FlowHandle flow = null;
-      String requestedVersion = version.toString();
-      flow = readAndBuildFlowHandle(flowRootFolder.getName(), new File(flowRootFolder, requestedVersion));
-      if(flow==null) {
-        throw new EntryNotFoundException("Version " + requestedVersion + " not found for flow code " + flowCode);
-      } else {
-        return flow;
-      }
+      return flow;
     }
   }
   
@@ -236,46 +351,134 @@ public class FlowRepositoryServiceImpl implements FlowRepositoryService {
 
   @Override
   public String[] getAllFlowCodes() {
-    File[] subFolders = rootFolder.listFiles(new DirectoryFilter());
-    String[] flowCodes = new String[subFolders.length];
-    for (int i = 0; i < subFolders.length; ++i) {
-      flowCodes[i] = subFolders[i].getName();
+    if (flowCodesStale || !isWatching()) {
+      scanRootFolder();
     }
-    return flowCodes;
+    return codeEntries.keySet().toArray(new String[0]);
   }
 
   @Override
   public FlowHandle[] getAllFlowRevisions(String flowCode) throws EntryNotFoundException {
-    File codeFolder = new File(rootFolder, flowCode);
-    if (!codeFolder.isDirectory()) {
-      throw new EntryNotFoundException("Invalid flow code " + flowCode);
-    } else {
-      ArrayList<FlowHandle> results = new ArrayList<FlowHandle>();
-      File[] versionFolders = codeFolder.listFiles(new DirectoryFilter());
-      for (File versionFolder : versionFolders) {
-        FlowHandle fh = readAndBuildFlowHandle(flowCode, versionFolder);
-        if (fh != null) {
-          results.add(fh);
-        }
-      }
-      return results.toArray(new FlowHandle[results.size()]);
-    }
+    return getCodeEntry(flowCode).getRevisions();
   }
 
   @Override
   public FlowHandle activateFlowRevision(FlowHandle handle) throws EntryNotFoundException {
+    boolean activated = false;
     try {
-      return writeMetaData(handle.getCode(), VERSION_ACTIVE, handle.getVersion().toString());
+      FlowHandle previouslyActive = writeMetaData(handle.getCode(), VERSION_ACTIVE, handle.getVersion().toString());
+      activated = true;
+      return previouslyActive;
     } catch (IOException e) {
       throw new RuntimeException("Error writing activation data", e);
+    } finally {
+      flowChanged(handle.getCode());
+      if (activated) {
+        notifyFlowActivated(handle);
+      }
+    }
+  }
+
+  private void notifyFlowActivated(FlowHandle activeHandle) {
+    for (FlowActivationListener listener : activationListeners) {
+      try {
+        listener.flowActivated(activeHandle);
+      } catch (Exception e) {
+        LOGGER.warn("Error notifying activation of " + activeHandle, e);
+      }
+    }
+  }
+
+  /**
+   * Marks the index entry of the given flow code as stale, so it's reloaded on its next access. To be called after each
+   * change on disk for that code.
+   * 
+   * @param flowCode
+   */
+  synchronized void flowChanged(String flowCode) {
+    CodeEntry entry = codeEntries.get(flowCode);
+    if (entry != null) {
+      entry.stale = true;
+    }
+    if (!new File(rootFolder, flowCode).isDirectory()) {
+      codeEntries.remove(flowCode);
+    } else if (entry == null && !flowCodesStale) {
+      codeEntries.put(flowCode, new CodeEntry(flowCode));
+    }
+  }
+
+  /**
+   * Marks the list of flow codes as stale, so the root folder is scanned again on the next request for all codes.
+   */
+  void flowCodesChanged() {
+    flowCodesStale = true;
+  }
+
+  /**
+   * Marks the complete index as stale.
+   */
+  synchronized void indexChanged() {
+    flowCodesStale = true;
+    for (CodeEntry entry : codeEntries.values()) {
+      entry.stale = true;
+    }
+  }
+
+  private boolean isWatching() {
+    return (watcher != null) && watcher.isWatching();
+  }
+
+  private CodeEntry getCodeEntry(String flowCode) throws EntryNotFoundException {
+    CodeEntry entry = codeEntries.get(flowCode);
+    if (entry == null && (flowCodesStale || !isWatching())) {
+      entry = lookupCodeEntry(flowCode);
+    }
+    if (entry == null) {
+      throw new EntryNotFoundException("Invalid flow code " + flowCode);
+    }
+    return entry;
+  }
+
+  /**
+   * Adds an index entry for a flow code that has not been seen yet, when its folder exists.
+   */
+  private synchronized CodeEntry lookupCodeEntry(String flowCode) {
+    CodeEntry entry = codeEntries.get(flowCode);
+    if (entry == null && new File(rootFolder, flowCode).isDirectory()) {
+      entry = new CodeEntry(flowCode);
+      codeEntries.put(flowCode, entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Aligns the index's flow codes with the folders in the root folder. The revisions of new codes are only loaded when
+   * they are first accessed.
+   */
+  private synchronized void scanRootFolder() {
+    flowCodesStale = false;
+    if (watcher != null) {
+      watcher.watchRootFolder();
+    }
+    Set<String> flowCodes = new HashSet<String>();
+    File[] subFolders = rootFolder.listFiles(new DirectoryFilter());
+    if (subFolders != null) {
+      for (File subFolder : subFolders) {
+        String flowCode = subFolder.getName();
+        flowCodes.add(flowCode);
+        if (!codeEntries.containsKey(flowCode)) {
+          codeEntries.put(flowCode, new CodeEntry(flowCode));
+        }
+      }
     }
+    codeEntries.keySet().retainAll(flowCodes);
   }
 
   private FlowHandle readAndBuildFlowHandle(String code, String version) {
-    return readAndBuildFlowHandle(code, new File(new File(rootFolder, code), version));
+    return readAndBuildFlowHandle(code, new File(new File(rootFolder, code), version), null);
   }
 
-  private FlowHandle readAndBuildFlowHandle(String code, File versionFolder) {
+  private FlowHandle readAndBuildFlowHandle(String code, File versionFolder, FlowCache flowCache) {
     if (!versionFolder.isDirectory()) {
       return null;
     } else {
@@ -288,7 +491,7 @@ public class FlowRepositoryServiceImpl implements FlowRepositoryService {
           }
         });
         File modelFile = modelFiles[0];
-        return new FlowHandleImpl(code, modelFile, vSpec);
+        return new FlowHandleImpl(code, modelFile, vSpec, flowCache);
       } catch (Exception e) {
         return null;
       }
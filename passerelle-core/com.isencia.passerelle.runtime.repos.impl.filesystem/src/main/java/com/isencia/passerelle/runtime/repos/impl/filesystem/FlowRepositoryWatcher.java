@@ -0,0 +1,157 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.runtime.repos.impl.filesystem;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the folders of a <code>FlowRepositoryServiceImpl</code>, and tells the repository which parts of its index
+ * have become stale.
+ * <p>
+ * The root folder, the flow code folders and their version folders are watched. The repository registers them as it
+ * loads them in its index. Any change in a code folder or in one of its version folders marks that flow code as stale.
+ * Changes in the root folder mark the list of flow codes as stale.
+ * </p>
+ * <p>
+ * When a folder can not be watched, e.g. because the OS limit on watches has been reached, the watcher gives up and the
+ * repository goes back to reading the file system on each access.
+ * </p>
+ */
+class FlowRepositoryWatcher implements Runnable {
+  private final static Logger LOGGER = LoggerFactory.getLogger(FlowRepositoryWatcher.class);
+
+  private final FlowRepositoryServiceImpl repository;
+  private final Path rootPath;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> watchedFolders = new ConcurrentHashMap<WatchKey, Path>();
+  private volatile WatchKey rootKey;
+  private volatile boolean failed;
+
+  FlowRepositoryWatcher(FlowRepositoryServiceImpl repository, File rootFolder) throws IOException {
+    this.repository = repository;
+    this.rootPath = rootFolder.toPath();
+    watchService = FileSystems.getDefault().newWatchService();
+    Thread watcherThread = new Thread(this, "FlowRepositoryWatcher-" + rootFolder.getName());
+    watcherThread.setDaemon(true);
+    watcherThread.start();
+  }
+
+  /**
+   * @return true as long as all folders could be watched, i.e. the repository index can be trusted
+   */
+  boolean isWatching() {
+    return !failed;
+  }
+
+  /**
+   * (Re)starts watching the root folder, if it's not yet watched or if it has been deleted and recreated.
+   */
+  void watchRootFolder() {
+    WatchKey key = rootKey;
+    if (key == null || !key.isValid()) {
+      rootKey = watch(rootPath);
+    }
+  }
+
+  void watch(File folder) {
+    watch(folder.toPath());
+  }
+
+  void close() {
+    failed = true;
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      LOGGER.warn("Failed to close watch service for " + rootPath, e);
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        Path folder = watchedFolders.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (OVERFLOW.equals(event.kind()) || folder == null) {
+            repository.indexChanged();
+          } else {
+            folderChanged(folder, (Path) event.context());
+          }
+        }
+        if (!key.reset()) {
+          // the folder has been deleted, which is a change in its parent
+          watchedFolders.remove(key);
+          if (folder != null && folder.getParent() != null) {
+            folderChanged(folder.getParent(), folder.getFileName());
+          }
+          if (key == rootKey) {
+            repository.indexChanged();
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      // stop watching
+    } catch (ClosedWatchServiceException e) {
+      // stop watching
+    }
+    LOGGER.debug("Stopped watching {}", rootPath);
+  }
+
+  private WatchKey watch(Path folder) {
+    if (!failed) {
+      try {
+        WatchKey key = folder.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        watchedFolders.put(key, folder);
+        return key;
+      } catch (ClosedWatchServiceException e) {
+        failed = true;
+      } catch (NoSuchFileException e) {
+        // the folder has just been deleted, its parent will report that
+      } catch (IOException e) {
+        LOGGER.warn("Failed to watch folder " + folder + ", the flow repository will be read on each access", e);
+        failed = true;
+      }
+    }
+    return null;
+  }
+
+  private void folderChanged(Path folder, Path entryName) {
+    if (rootPath.equals(folder)) {
+      repository.flowCodesChanged();
+      repository.flowChanged(entryName.toString());
+    } else if (rootPath.equals(folder.getParent())) {
+      repository.flowChanged(folder.getFileName().toString());
+    } else if (folder.getParent() != null && rootPath.equals(folder.getParent().getParent())) {
+      repository.flowChanged(folder.getParent().getFileName().toString());
+    }
+  }
+}
@@ -18,27 +18,49 @@ import java.io.File;
 import java.util.Hashtable;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
+import org.osgi.util.tracker.ServiceTracker;
 import com.isencia.passerelle.runtime.repos.impl.filesystem.FlowRepositoryServiceImpl;
+import com.isencia.passerelle.runtime.repository.FlowActivationListener;
 import com.isencia.passerelle.runtime.repository.FlowRepositoryService;
 
 public class Activator implements BundleActivator {
 
-  private FlowRepositoryService repoSvc;
+  private FlowRepositoryServiceImpl repoSvc;
   private ServiceRegistration<FlowRepositoryService> repoSvcReg;
+  private ServiceTracker<FlowActivationListener, FlowActivationListener> activationListenerTracker;
 
   public void start(BundleContext context) throws Exception {
     File userHome              = new File(System.getProperty("user.home"));
     File defaultRootFolderPath = new File(userHome, ".passerelle/passerelle-repository");
     String rootFolderPath      = System.getProperty("com.isencia.passerelle.repository.root", defaultRootFolderPath.getAbsolutePath());
-    repoSvc = new FlowRepositoryServiceImpl(rootFolderPath);
+    int maxCachedFlows         = Integer.getInteger("com.isencia.passerelle.repository.maxCachedFlows", FlowRepositoryServiceImpl.DEFAULT_MAX_CACHED_FLOWS);
+    repoSvc = new FlowRepositoryServiceImpl(new File(rootFolderPath), maxCachedFlows);
     Hashtable<String, String> svcProps = new Hashtable<String, String>();
     svcProps.put("type", "FILE");
     repoSvcReg = (ServiceRegistration<FlowRepositoryService>) context.registerService(FlowRepositoryService.class.getName(), repoSvc, svcProps);
+    activationListenerTracker = new ServiceTracker<FlowActivationListener, FlowActivationListener>(context, FlowActivationListener.class, null) {
+      @Override
+      public FlowActivationListener addingService(ServiceReference<FlowActivationListener> reference) {
+        FlowActivationListener listener = super.addingService(reference);
+        repoSvc.addFlowActivationListener(listener);
+        return listener;
+      }
+
+      @Override
+      public void removedService(ServiceReference<FlowActivationListener> reference, FlowActivationListener listener) {
+        repoSvc.removeFlowActivationListener(listener);
+        super.removedService(reference, listener);
+      }
+    };
+    activationListenerTracker.open();
   }
 
   public void stop(BundleContext context) throws Exception {
+    activationListenerTracker.close();
     repoSvcReg.unregister();
+    repoSvc.close();
     repoSvc = null;
   }
   
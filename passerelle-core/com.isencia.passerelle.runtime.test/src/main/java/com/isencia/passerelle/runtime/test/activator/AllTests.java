@@ -14,7 +14,11 @@
 */
 package com.isencia.passerelle.runtime.test.activator;
 
+import com.isencia.passerelle.runtime.test.AdmissionControlTest;
+import com.isencia.passerelle.runtime.test.FlowPrototypeCacheTest;
+import com.isencia.passerelle.runtime.test.FlowRepositoryIndexTest;
 import com.isencia.passerelle.runtime.test.FlowRepositoryTest1;
+import com.isencia.passerelle.runtime.test.ProcessRetentionTest;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -24,6 +28,10 @@ public class AllTests {
     TestSuite suite = new TestSuite(AllTests.class.getName());
     //$JUnit-BEGIN$
     suite.addTestSuite(FlowRepositoryTest1.class);
+    suite.addTestSuite(FlowRepositoryIndexTest.class);
+    suite.addTestSuite(ProcessRetentionTest.class);
+    suite.addTestSuite(AdmissionControlTest.class);
+    suite.addTestSuite(FlowPrototypeCacheTest.class);
     //$JUnit-END$
     return suite;
   }
@@ -0,0 +1,140 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.runtime.test;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import com.isencia.passerelle.domain.et.ETDirector;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.runtime.Event;
+import com.isencia.passerelle.runtime.FlowHandle;
+import com.isencia.passerelle.runtime.ProcessHandle;
+import com.isencia.passerelle.runtime.process.FlowProcessingService;
+import com.isencia.passerelle.runtime.process.FlowProcessingService.Priority;
+import com.isencia.passerelle.runtime.process.FlowProcessingService.StartMode;
+import com.isencia.passerelle.runtime.process.ProcessEvent;
+import com.isencia.passerelle.runtime.process.impl.FlowProcessingServiceImpl;
+import com.isencia.passerelle.runtime.repos.impl.filesystem.FlowRepositoryServiceImpl;
+import com.isencia.passerelle.runtime.repository.FlowRepositoryService;
+import com.isencia.passerelle.testsupport.actor.Const;
+import com.isencia.passerelle.testsupport.actor.Delay;
+import com.isencia.passerelle.testsupport.actor.DevNullActor;
+
+/**
+ * Checks the admission control of the <code>FlowProcessingServiceImpl</code> : queue limit, priorities and per-flow
+ * concurrency limits.
+ */
+public class AdmissionControlTest extends TestCase {
+
+  private File repositoryRootFolder;
+  private FlowRepositoryService repositoryService;
+  private FlowProcessingServiceImpl processingService;
+
+  @Override
+  protected void setUp() throws Exception {
+    repositoryRootFolder = new File(System.getProperty("java.io.tmpdir"), "passerelle-admission-test");
+    FileUtils.deleteDirectory(repositoryRootFolder);
+    repositoryService = new FlowRepositoryServiceImpl(repositoryRootFolder);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    processingService.shutdown();
+    FileUtils.deleteDirectory(repositoryRootFolder);
+  }
+
+  public void testQueueLimit() throws Exception {
+    processingService = new FlowProcessingServiceImpl(1);
+    processingService.setMaxQueuedProcesses(1);
+    FlowHandle flowHandle = repositoryService.commit("testQueueLimit", buildDelayFlow("testQueueLimit", 300));
+    ProcessHandle running = processingService.start(StartMode.RUN, flowHandle, null, null, null);
+    ProcessHandle queued = processingService.start(StartMode.RUN, flowHandle, null, null, null);
+    try {
+      processingService.start(StartMode.RUN, flowHandle, null, null, null);
+      fail("Execution should be rejected when the queue is full");
+    } catch (RejectedExecutionException e) {
+      // this is as it should be
+    }
+    assertEquals(1, processingService.getRejectedProcessCount());
+    assertEquals(2, processingService.getSubmittedProcessCount());
+    processingService.waitUntilFinished(running, 5, TimeUnit.SECONDS);
+    processingService.waitUntilFinished(queued, 5, TimeUnit.SECONDS);
+    assertTrue("Queued execution should have waited for the running one", processingService.getMaxQueueTimeMillis(Priority.NORMAL) >= 200);
+  }
+
+  public void testPriorities() throws Exception {
+    processingService = new FlowProcessingServiceImpl(1);
+    FlowHandle flowHandle = repositoryService.commit("testPriorities", buildDelayFlow("testPriorities", 300));
+    ProcessHandle running = processingService.start(StartMode.RUN, flowHandle, null, null, null);
+    ProcessHandle low = processingService.start(StartMode.RUN, Priority.LOW, flowHandle, null, null, null);
+    Map<String, String> highPriority = new HashMap<String, String>();
+    highPriority.put(FlowProcessingService.PRIORITY_PARAMETER, "high");
+    ProcessHandle high = processingService.start(StartMode.RUN, flowHandle, null, highPriority, null);
+    assertEquals(1, processingService.getQueuedProcessCount(Priority.LOW));
+    assertEquals(1, processingService.getQueuedProcessCount(Priority.HIGH));
+
+    processingService.waitUntilFinished(running, 5, TimeUnit.SECONDS);
+    high = processingService.waitUntilFinished(high, 5, TimeUnit.SECONDS);
+    low = processingService.waitUntilFinished(low, 5, TimeUnit.SECONDS);
+    assertTrue("High priority execution should start before the low priority one",
+        getStartTime(high).before(getStartTime(low)) || getStartTime(high).equals(getStartTime(low)));
+  }
+
+  public void testMaxConcurrentPerFlow() throws Exception {
+    processingService = new FlowProcessingServiceImpl(2);
+    processingService.setMaxConcurrentProcesses("testMaxConcurrentPerFlowA", 1);
+    FlowHandle flowHandleA = repositoryService.commit("testMaxConcurrentPerFlowA", buildDelayFlow("testMaxConcurrentPerFlowA", 300));
+    FlowHandle flowHandleB = repositoryService.commit("testMaxConcurrentPerFlowB", buildDelayFlow("testMaxConcurrentPerFlowB", 300));
+    ProcessHandle a1 = processingService.start(StartMode.RUN, flowHandleA, null, null, null);
+    ProcessHandle a2 = processingService.start(StartMode.RUN, flowHandleA, null, null, null);
+    ProcessHandle b1 = processingService.start(StartMode.RUN, flowHandleB, null, null, null);
+    assertEquals("Flow B should not wait behind the limited flow A", 2, processingService.getActiveProcessCount());
+    assertEquals(1, processingService.getQueuedProcessCount());
+
+    processingService.waitUntilFinished(a1, 5, TimeUnit.SECONDS);
+    processingService.waitUntilFinished(a2, 5, TimeUnit.SECONDS);
+    processingService.waitUntilFinished(b1, 5, TimeUnit.SECONDS);
+  }
+
+  private Date getStartTime(ProcessHandle procHandle) {
+    List<Event> events = processingService.getProcessEvents(procHandle, -1);
+    for (Event event : events) {
+      if (ProcessEvent.Kind.CREATE.equals(((ProcessEvent) event).getKind())) {
+        return event.getCreationTS();
+      }
+    }
+    fail("No start event for " + procHandle);
+    return null;
+  }
+
+  private Flow buildDelayFlow(String flowName, int delay) throws Exception {
+    Flow flow = new Flow(flowName, null);
+    flow.setDirector(new ETDirector(flow, "director"));
+    Const source = new Const(flow, "const");
+    Delay delayActor = new Delay(flow, "delay");
+    delayActor.timeParameter.setExpression(Integer.toString(delay));
+    DevNullActor sink = new DevNullActor(flow, "sink");
+    flow.connect(source, delayActor);
+    flow.connect(delayActor, sink);
+    return flow;
+  }
+}
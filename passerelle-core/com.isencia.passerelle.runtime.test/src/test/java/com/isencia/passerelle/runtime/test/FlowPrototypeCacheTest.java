@@ -0,0 +1,190 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.runtime.test;
+
+import java.io.File;
+import java.net.URI;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import com.isencia.passerelle.domain.et.ETDirector;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.runtime.FlowHandle;
+import com.isencia.passerelle.runtime.process.impl.executor.FlowPrototypeCache;
+import com.isencia.passerelle.runtime.repos.impl.filesystem.FlowRepositoryServiceImpl;
+import com.isencia.passerelle.runtime.repository.VersionSpecification;
+import com.isencia.passerelle.testsupport.actor.Const;
+import com.isencia.passerelle.testsupport.actor.DevNullActor;
+
+/**
+ * Checks that the <code>FlowPrototypeCache</code> reuses the prototype of a flow version, evicts the least recently
+ * used flow versions and drops a flow's prototypes when another version of it is activated.
+ */
+public class FlowPrototypeCacheTest extends TestCase {
+
+  private File repositoryRootFolder;
+  private FlowRepositoryServiceImpl repositoryService;
+  private FlowPrototypeCache cache;
+
+  @Override
+  protected void setUp() throws Exception {
+    repositoryRootFolder = new File(System.getProperty("java.io.tmpdir"), "passerelle-prototype-cache-test");
+    FileUtils.deleteDirectory(repositoryRootFolder);
+    repositoryService = new FlowRepositoryServiceImpl(repositoryRootFolder);
+    // without standby instances, so no clones are made in the background
+    cache = new FlowPrototypeCache(2, 0);
+    repositoryService.addFlowActivationListener(cache);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    repositoryService.removeFlowActivationListener(cache);
+    cache.shutdown();
+    FileUtils.deleteDirectory(repositoryRootFolder);
+  }
+
+  public void testPrototypeReused() throws Exception {
+    FlowHandle flowHandle = repositoryService.commit("testPrototypeReused", buildFlow("testPrototypeReused"));
+    Flow flow1 = cache.take(flowHandle);
+    Flow flow2 = cache.take(flowHandle);
+    Flow flow3 = cache.take(repositoryService.getActiveFlow("testPrototypeReused"));
+    assertNotSame(flow1, flow2);
+    assertNotSame(flow2, flow3);
+    assertNotSame("Each instance should have its own workspace", flow1.workspace(), flow2.workspace());
+    assertEquals("testPrototypeReused", flow3.getName());
+    assertEquals("The prototype should only be loaded once", 1, cache.getLoadCount());
+    assertEquals(1, cache.getCachedFlowCount());
+    assertEquals(3, cache.getMissCount());
+  }
+
+  public void testLeastRecentlyUsedFlowEvicted() throws Exception {
+    FlowHandle flowHandleA = repositoryService.commit("testEvictionA", buildFlow("testEvictionA"));
+    FlowHandle flowHandleB = repositoryService.commit("testEvictionB", buildFlow("testEvictionB"));
+    FlowHandle flowHandleC = repositoryService.commit("testEvictionC", buildFlow("testEvictionC"));
+    cache.take(flowHandleA);
+    cache.take(flowHandleB);
+    // A becomes more recently used than B
+    cache.take(flowHandleA);
+    cache.take(flowHandleC);
+    assertEquals(2, cache.getCachedFlowCount());
+    assertEquals(1, cache.getInvalidationCount());
+    assertEquals(3, cache.getLoadCount());
+
+    cache.take(flowHandleA);
+    assertEquals("A should still be cached", 3, cache.getLoadCount());
+    cache.take(flowHandleB);
+    assertEquals("B should have been evicted", 4, cache.getLoadCount());
+    assertEquals(2, cache.getCachedFlowCount());
+  }
+
+  public void testNewFlowVersionReplacesPrototype() throws Exception {
+    FlowHandle flowHandle = repositoryService.commit("testNewVersion", buildFlow("testNewVersion"));
+    cache.take(flowHandle);
+    Flow updatedFlow = buildFlow("testNewVersion");
+    new DevNullActor(updatedFlow, "otherSink");
+    FlowHandle updatedHandle = repositoryService.update(flowHandle, updatedFlow, true);
+    assertFalse(flowHandle.getVersion().equals(updatedHandle.getVersion()));
+    assertEquals("The previous version should have been dropped on activation", 1, cache.getInvalidationCount());
+    assertEquals(0, cache.getCachedFlowCount());
+
+    Flow flow = cache.take(updatedHandle);
+    assertNotNull("The updated flow should be used", flow.getEntity("otherSink"));
+    assertEquals(2, cache.getLoadCount());
+    assertEquals(1, cache.getCachedFlowCount());
+  }
+
+  public void testInactiveFlowVersionsCachedSideBySide() throws Exception {
+    FlowHandle flowHandle = repositoryService.commit("testSideBySide", buildFlow("testSideBySide"));
+    FlowHandle updatedHandle = repositoryService.update(flowHandle, buildFlow("testSideBySide"), false);
+    cache.take(flowHandle);
+    cache.take(updatedHandle);
+    cache.take(flowHandle);
+    cache.take(updatedHandle);
+    assertEquals("Both versions should remain cached", 2, cache.getLoadCount());
+    assertEquals(2, cache.getCachedFlowCount());
+    assertEquals(0, cache.getInvalidationCount());
+
+    repositoryService.activateFlowRevision(updatedHandle);
+    assertEquals(1, cache.getCachedFlowCount());
+    cache.take(updatedHandle);
+    assertEquals("The active version should have been kept", 2, cache.getLoadCount());
+  }
+
+  public void testInMemoryFlowsNotCached() throws Exception {
+    Flow flow1 = buildFlow("testInMemory");
+    Flow flow2 = buildFlow("testInMemory");
+    new DevNullActor(flow2, "otherSink");
+    Flow instance1 = cache.take(new InMemoryFlowHandle(flow1));
+    Flow instance2 = cache.take(new InMemoryFlowHandle(flow2));
+    assertNull(instance1.getEntity("otherSink"));
+    assertNotNull("Each handle should get a clone of its own flow", instance2.getEntity("otherSink"));
+    assertNotSame(flow2, instance2);
+    assertEquals(0, cache.getCachedFlowCount());
+    assertEquals(0, cache.getLoadCount());
+    assertEquals(2, cache.getMissCount());
+  }
+
+  public void testInvalidate() throws Exception {
+    FlowHandle flowHandle = repositoryService.commit("testInvalidate", buildFlow("testInvalidate"));
+    cache.take(flowHandle);
+    cache.invalidate("testInvalidate");
+    assertEquals(0, cache.getCachedFlowCount());
+    assertEquals(1, cache.getInvalidationCount());
+    cache.take(flowHandle);
+    assertEquals(2, cache.getLoadCount());
+    cache.invalidate(null);
+    assertEquals("Only flows without code should be invalidated", 1, cache.getCachedFlowCount());
+  }
+
+  private Flow buildFlow(String flowName) throws Exception {
+    Flow flow = new Flow(flowName, null);
+    flow.setDirector(new ETDirector(flow, "director"));
+    Const source = new Const(flow, "const");
+    DevNullActor sink = new DevNullActor(flow, "sink");
+    flow.connect(source, sink);
+    return flow;
+  }
+
+  /**
+   * A handle on a flow that is not stored in a repository.
+   */
+  private static class InMemoryFlowHandle implements FlowHandle {
+    private static final long serialVersionUID = 1L;
+    private final Flow flow;
+
+    InMemoryFlowHandle(Flow flow) {
+      this.flow = flow;
+    }
+
+    public URI getResourceLocation() {
+      return null;
+    }
+
+    public String getCode() {
+      return flow.getName();
+    }
+
+    public VersionSpecification getVersion() {
+      return null;
+    }
+
+    public Flow getFlow() {
+      return flow;
+    }
+
+    public String getRawFlowDefinition() {
+      return flow.exportMoML();
+    }
+  }
+}
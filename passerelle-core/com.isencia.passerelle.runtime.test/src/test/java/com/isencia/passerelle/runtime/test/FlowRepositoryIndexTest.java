@@ -0,0 +1,116 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.runtime.test;
+
+import java.io.File;
+import java.util.Arrays;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import com.isencia.passerelle.domain.cap.Director;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.runtime.FlowHandle;
+import com.isencia.passerelle.runtime.repos.impl.filesystem.FlowRepositoryServiceImpl;
+import com.isencia.passerelle.runtime.repository.EntryNotFoundException;
+import com.isencia.passerelle.runtime.repository.VersionSpecification;
+import com.isencia.passerelle.testsupport.actor.Const;
+import com.isencia.passerelle.testsupport.actor.DevNullActor;
+
+/**
+ * Checks that the index of the <code>FlowRepositoryServiceImpl</code> follows changes that are made directly on disk.
+ */
+public class FlowRepositoryIndexTest extends TestCase {
+
+  private static final String HELLO_CODE = "HELLO";
+  // max time to wait for the file system to notify the repository of a change
+  private static final long MAX_WAIT = 10000;
+
+  private File repositoryRootFolder;
+  private FlowRepositoryServiceImpl repositoryService;
+
+  @Override
+  protected void setUp() throws Exception {
+    repositoryRootFolder = new File(System.getProperty("java.io.tmpdir"), "passerelle-index-test");
+    FileUtils.deleteDirectory(repositoryRootFolder);
+    repositoryService = new FlowRepositoryServiceImpl(repositoryRootFolder);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    repositoryService.close();
+    FileUtils.deleteDirectory(repositoryRootFolder);
+  }
+
+  public void testHandlesAndFlowsAreShared() throws Exception {
+    repositoryService.commit(HELLO_CODE, buildTrivialFlow("HelloWorld"));
+    FlowHandle handle1 = repositoryService.getActiveFlow(HELLO_CODE);
+    FlowHandle handle2 = repositoryService.getActiveFlow(HELLO_CODE);
+    assertSame("Repeated lookups should return the indexed handle", handle1, handle2);
+    assertSame("Handles should share the parsed flow", handle1.getFlow(), handle2.getFlow());
+    assertSame(handle1, repositoryService.getFlowVersion(HELLO_CODE, VersionSpecification.parse("1.0.0")));
+  }
+
+  public void testExternallyAddedVersion() throws Exception {
+    FlowHandle handle = repositoryService.commit(HELLO_CODE, buildTrivialFlow("HelloWorld"));
+    assertEquals(1, repositoryService.getAllFlowRevisions(HELLO_CODE).length);
+
+    File codeFolder = new File(repositoryRootFolder, HELLO_CODE);
+    FileUtils.copyDirectory(new File(codeFolder, "1.0.0"), new File(codeFolder, "1.1.0"));
+    long deadline = System.currentTimeMillis() + MAX_WAIT;
+    while (repositoryService.getAllFlowRevisions(HELLO_CODE).length < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertEquals("Externally added version should be found", 2, repositoryService.getAllFlowRevisions(HELLO_CODE).length);
+    assertEquals("Active version should not have changed", handle, repositoryService.getActiveFlow(HELLO_CODE));
+  }
+
+  public void testExternallyAddedAndDeletedCode() throws Exception {
+    repositoryService.commit(HELLO_CODE, buildTrivialFlow("HelloWorld"));
+    assertEquals(Arrays.asList(HELLO_CODE), Arrays.asList(repositoryService.getAllFlowCodes()));
+
+    FileUtils.copyDirectory(new File(repositoryRootFolder, HELLO_CODE), new File(repositoryRootFolder, "HELLO2"));
+    FileUtils.deleteDirectory(new File(repositoryRootFolder, HELLO_CODE));
+    long deadline = System.currentTimeMillis() + MAX_WAIT;
+    while (!Arrays.asList(repositoryService.getAllFlowCodes()).equals(Arrays.asList("HELLO2")) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertEquals(Arrays.asList("HELLO2"), Arrays.asList(repositoryService.getAllFlowCodes()));
+    assertNotNull(repositoryService.getActiveFlow("HELLO2"));
+    try {
+      repositoryService.getActiveFlow(HELLO_CODE);
+      fail("Externally deleted flow code should no longer be found");
+    } catch (EntryNotFoundException e) {
+      // this is what is expected
+    }
+  }
+
+  public void testDeleteAndRecommit() throws Exception {
+    repositoryService.commit(HELLO_CODE, buildTrivialFlow("HelloWorld"));
+    repositoryService.getAllFlowCodes();
+    repositoryService.delete(HELLO_CODE);
+    assertEquals("Deleted code should be gone immediately", 0, repositoryService.getAllFlowCodes().length);
+    FlowHandle handle = repositoryService.commit(HELLO_CODE, buildTrivialFlow("HelloWorld"));
+    assertEquals(handle, repositoryService.getActiveFlow(HELLO_CODE));
+    assertEquals(1, repositoryService.getAllFlowCodes().length);
+  }
+
+  private Flow buildTrivialFlow(String flowName) throws Exception {
+    Flow flow = new Flow(flowName, null);
+    flow.setDirector(new Director(flow, "director"));
+    Const source = new Const(flow, "Constant");
+    DevNullActor sink = new DevNullActor(flow, "sink");
+    flow.connect(source, sink);
+    return flow;
+  }
+}
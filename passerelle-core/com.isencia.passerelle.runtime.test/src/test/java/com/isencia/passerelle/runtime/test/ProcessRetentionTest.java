@@ -0,0 +1,123 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.runtime.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import com.isencia.passerelle.domain.et.ETDirector;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.runtime.Event;
+import com.isencia.passerelle.runtime.EventListener;
+import com.isencia.passerelle.runtime.FlowHandle;
+import com.isencia.passerelle.runtime.ProcessHandle;
+import com.isencia.passerelle.runtime.process.FlowProcessingService.StartMode;
+import com.isencia.passerelle.runtime.process.ProcessEvent;
+import com.isencia.passerelle.runtime.process.ProcessStatus;
+import com.isencia.passerelle.runtime.process.impl.FlowProcessingServiceImpl;
+import com.isencia.passerelle.runtime.repos.impl.filesystem.FlowRepositoryServiceImpl;
+import com.isencia.passerelle.runtime.repository.FlowRepositoryService;
+import com.isencia.passerelle.testsupport.actor.Const;
+import com.isencia.passerelle.testsupport.actor.DevNullActor;
+
+/**
+ * Checks the retention of finished executions and their events in the <code>FlowProcessingServiceImpl</code>.
+ */
+public class ProcessRetentionTest extends TestCase {
+
+  private File repositoryRootFolder;
+  private FlowRepositoryService repositoryService;
+  private FlowProcessingServiceImpl processingService;
+
+  @Override
+  protected void setUp() throws Exception {
+    repositoryRootFolder = new File(System.getProperty("java.io.tmpdir"), "passerelle-retention-test");
+    FileUtils.deleteDirectory(repositoryRootFolder);
+    repositoryService = new FlowRepositoryServiceImpl(repositoryRootFolder);
+    processingService = new FlowProcessingServiceImpl(2);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    processingService.shutdown();
+    FileUtils.deleteDirectory(repositoryRootFolder);
+  }
+
+  public void testEventsOfFinishedProcess() throws Exception {
+    FlowHandle flowHandle = repositoryService.commit("testEventsOfFinishedProcess", buildTrivialFlow("testEventsOfFinishedProcess"));
+    ProcessHandle procHandle = processingService.start(StartMode.RUN, flowHandle, null, null, null);
+    procHandle = processingService.waitUntilFinished(procHandle, 5, TimeUnit.SECONDS);
+    assertEquals(ProcessStatus.FINISHED, procHandle.getExecutionStatus());
+
+    List<Event> events = processingService.getProcessEvents(procHandle.getProcessId(), 10);
+    assertEquals("Should have a create and a terminate event", 2, events.size());
+    assertEquals("Newest event should come first", ProcessEvent.Kind.TERMINATE, ((ProcessEvent) events.get(0)).getKind());
+    assertEquals(ProcessEvent.Kind.CREATE, ((ProcessEvent) events.get(1)).getKind());
+    assertEquals("Events should be limited to maxCount", 1, processingService.getProcessEvents(procHandle, 1).size());
+    assertEquals(ProcessStatus.FINISHED, processingService.getHandle(procHandle.getProcessId()).getExecutionStatus());
+  }
+
+  public void testMaxFinishedProcesses() throws Exception {
+    processingService.setProcessRetention(1, 1, TimeUnit.HOURS);
+    FlowHandle flowHandle = repositoryService.commit("testMaxFinishedProcesses", buildTrivialFlow("testMaxFinishedProcesses"));
+    ProcessHandle procHandle1 = processingService.start(StartMode.RUN, flowHandle, null, null, null);
+    processingService.waitUntilFinished(procHandle1, 5, TimeUnit.SECONDS);
+    ProcessHandle procHandle2 = processingService.start(StartMode.RUN, flowHandle, null, null, null);
+    processingService.waitUntilFinished(procHandle2, 5, TimeUnit.SECONDS);
+
+    assertNull("Oldest finished process should have been evicted", processingService.getHandle(procHandle1.getProcessId()));
+    assertTrue(processingService.getProcessEvents(procHandle1.getProcessId(), 10).isEmpty());
+    assertEquals(ProcessStatus.FINISHED, processingService.getHandle(procHandle2.getProcessId()).getExecutionStatus());
+  }
+
+  public void testMaxAge() throws Exception {
+    FlowHandle flowHandle = repositoryService.commit("testMaxAge", buildTrivialFlow("testMaxAge"));
+    ProcessHandle procHandle = processingService.start(StartMode.RUN, flowHandle, null, null, null);
+    processingService.waitUntilFinished(procHandle, 5, TimeUnit.SECONDS);
+    assertNotNull(processingService.getHandle(procHandle.getProcessId()));
+
+    processingService.setProcessRetention(10, 0, TimeUnit.MILLISECONDS);
+    Thread.sleep(10);
+    assertNull("Expired process should have been evicted", processingService.getHandle(procHandle.getProcessId()));
+  }
+
+  public void testListenerReceivesEvents() throws Exception {
+    final List<Event> received = Collections.synchronizedList(new ArrayList<Event>());
+    EventListener listener = new EventListener() {
+      public void handle(Event event) {
+        received.add(event);
+      }
+    };
+    FlowHandle flowHandle = repositoryService.commit("testListenerReceivesEvents", buildTrivialFlow("testListenerReceivesEvents"));
+    ProcessHandle procHandle = processingService.start(StartMode.RUN, flowHandle, null, null, listener);
+    processingService.waitUntilFinished(procHandle, 5, TimeUnit.SECONDS);
+    assertEquals("Listener should get the create and terminate events", 2, received.size());
+    assertEquals(ProcessEvent.Kind.CREATE, ((ProcessEvent) received.get(0)).getKind());
+    assertEquals(ProcessEvent.Kind.TERMINATE, ((ProcessEvent) received.get(1)).getKind());
+  }
+
+  private Flow buildTrivialFlow(String flowName) throws Exception {
+    Flow flow = new Flow(flowName, null);
+    flow.setDirector(new ETDirector(flow, "director"));
+    Const source = new Const(flow, "const");
+    DevNullActor sink = new DevNullActor(flow, "sink");
+    flow.connect(source, sink);
+    return flow;
+  }
+}
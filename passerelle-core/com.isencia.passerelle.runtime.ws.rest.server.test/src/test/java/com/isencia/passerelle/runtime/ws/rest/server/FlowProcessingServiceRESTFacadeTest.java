@@ -0,0 +1,259 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.runtime.ws.rest.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import com.isencia.passerelle.domain.et.ETDirector;
+import com.isencia.passerelle.model.Flow;
+import com.isencia.passerelle.runtime.FlowHandle;
+import com.isencia.passerelle.runtime.ProcessHandle;
+import com.isencia.passerelle.runtime.process.FlowProcessingService;
+import com.isencia.passerelle.runtime.process.ProcessEvent.Kind;
+import com.isencia.passerelle.runtime.process.ProcessStatus;
+import com.isencia.passerelle.runtime.process.impl.FlowProcessingServiceImpl;
+import com.isencia.passerelle.runtime.repos.impl.filesystem.FlowRepositoryServiceImpl;
+import com.isencia.passerelle.runtime.repository.FlowRepositoryService;
+import com.isencia.passerelle.runtime.ws.rest.FlowHandleResource;
+import com.isencia.passerelle.runtime.ws.rest.InvalidRequestException;
+import com.isencia.passerelle.runtime.ws.rest.ProcessEventResource;
+import com.isencia.passerelle.runtime.ws.rest.ProcessEventResources;
+import com.isencia.passerelle.runtime.ws.rest.ProcessHandleResources;
+import com.isencia.passerelle.testsupport.actor.Const;
+import com.isencia.passerelle.testsupport.actor.Delay;
+import com.isencia.passerelle.testsupport.actor.DevNullActor;
+
+/**
+ * Checks the batch start and the process event requests of the <code>FlowProcessingServiceRESTFacade</code>, on local
+ * services instead of the ones registered in OSGi.
+ */
+public class FlowProcessingServiceRESTFacadeTest extends TestCase {
+
+  private File repositoryRootFolder;
+  private FlowRepositoryService repositoryService;
+  private FlowProcessingServiceImpl processingService;
+  private ProcessEventHub hub;
+  private FlowProcessingServiceRESTFacade facade;
+
+  @Override
+  protected void setUp() throws Exception {
+    repositoryRootFolder = new File(System.getProperty("java.io.tmpdir"), "passerelle-rest-facade-test");
+    FileUtils.deleteDirectory(repositoryRootFolder);
+    repositoryService = new FlowRepositoryServiceImpl(repositoryRootFolder);
+    processingService = new FlowProcessingServiceImpl(2);
+    hub = new ProcessEventHub() {
+      @Override
+      ProcessStatus lookupStatus(String processContextId) {
+        ProcessHandle handle = processingService.getHandle(processContextId);
+        return (handle != null) ? handle.getExecutionStatus() : null;
+      }
+    };
+    facade = new FlowProcessingServiceRESTFacade() {
+      @Override
+      FlowProcessingService getFlowProcessingService() {
+        return processingService;
+      }
+
+      @Override
+      FlowRepositoryService getFlowRepositoryService() {
+        return repositoryService;
+      }
+
+      @Override
+      ProcessEventHub getProcessEventHub() {
+        return hub;
+      }
+    };
+    facade.uriInfo = createUriInfo();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    processingService.shutdown();
+    FileUtils.deleteDirectory(repositoryRootFolder);
+  }
+
+  public void testStartBatch() throws Exception {
+    FlowHandleResource flowHandle = commitDelayFlow("testStartBatch", 100);
+    List<ProcessHandle> handles = facade.startBatch("RUN", flowHandle, 3, null).getProcessHandles();
+    assertEquals(3, handles.size());
+    Set<String> processIds = new HashSet<String>();
+    for (ProcessHandle handle : handles) {
+      processIds.add(handle.getProcessId());
+      processingService.waitUntilFinished(processingService.getHandle(handle.getProcessId()), 5, TimeUnit.SECONDS);
+    }
+    assertEquals("Each execution should have its own process context id", 3, processIds.size());
+  }
+
+  public void testStartBatchInvalidRequests() throws Exception {
+    FlowHandleResource flowHandle = commitDelayFlow("testStartBatchInvalidRequests", 0);
+    assertInvalidBatch(null, flowHandle, 1);
+    assertInvalidBatch("RUN", null, 1);
+    assertInvalidBatch("RUN", flowHandle, 0);
+    assertInvalidBatch("RUN", flowHandle, 1001);
+    assertInvalidBatch("FLY", flowHandle, 1);
+    assertEquals("No executions should have been started", 0, processingService.getSubmittedProcessCount());
+  }
+
+  public void testStartBatchPartlyRejected() throws Exception {
+    // 2 running and 1 queued execution, the next ones are rejected directly
+    processingService.setMaxQueuedProcesses(1);
+    processingService.setAdmissionTimeout(0, TimeUnit.MILLISECONDS);
+    FlowHandleResource flowHandle = commitDelayFlow("testStartBatchPartlyRejected", 1000);
+    ProcessHandleResources result = facade.startBatch("RUN", flowHandle, 5, null);
+    assertEquals("The handles of the started executions should be returned", 3, result.getProcessHandles().size());
+    assertNotNull("The reason of the rejection should be returned", result.getError());
+
+    assertInvalidBatch("RUN", flowHandle, 1);
+    for (ProcessHandle handle : result.getProcessHandles()) {
+      processingService.terminate(processingService.getHandle(handle.getProcessId()));
+    }
+  }
+
+  public void testGetEvents() throws Exception {
+    FlowHandleResource flowHandle = commitDelayFlow("testGetEvents", 0);
+    List<String> processIds = getProcessIds(facade.startBatch("RUN", flowHandle, 2, null).getProcessHandles());
+    long since = 0;
+    Set<String> terminated = new HashSet<String>();
+    long deadline = System.currentTimeMillis() + 10000;
+    while (terminated.size() < 2 && System.currentTimeMillis() < deadline) {
+      ProcessEventResources events = facade.getEvents(processIds, since, 1000);
+      for (ProcessEventResource event : events.getEvents()) {
+        assertTrue("Events should be returned only once", event.getSequence() > since);
+        assertTrue(processIds.contains(event.getProcessContextId()));
+        if (Kind.TERMINATE.equals(event.getKind())) {
+          assertTrue(event.getStatus().isFinalStatus());
+          terminated.add(event.getProcessContextId());
+        }
+      }
+      since = events.getLastSequence();
+    }
+    assertEquals("Both executions should have reported their termination", 2, terminated.size());
+    assertTrue(hub.areAllFinished(processIds));
+
+    ProcessEventResources events = facade.getEvents(processIds, since, 0);
+    assertTrue(events.getEvents().isEmpty());
+    assertEquals(since, events.getLastSequence());
+    try {
+      facade.getEvents(processIds, since, -1);
+      fail("Negative timeout should be refused");
+    } catch (InvalidRequestException e) {
+      // this is as it should be
+    }
+  }
+
+  public void testStreamEndsWhenAllFinished() throws Exception {
+    FlowHandleResource flowHandle = commitDelayFlow("testStreamEndsWhenAllFinished", 100);
+    List<String> processIds = getProcessIds(facade.startBatch("RUN", flowHandle, 2, null).getProcessHandles());
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    long start = System.currentTimeMillis();
+    facade.streamEvents(processIds, 0, 60000).write(output);
+    assertTrue("Stream should end when the executions are finished", System.currentTimeMillis() - start < 30000);
+    String stream = output.toString("UTF-8");
+    assertEquals(2, countOccurrences(stream, "event: TERMINATE\n"));
+    assertTrue(stream.contains("id: 1\n"));
+    assertTrue(stream.endsWith("event: end\ndata: {\"lastSequence\":" + hub.getLastSequence() + "}\n\n"));
+
+    // the client continues after its last received event, for processes that are already finished
+    output = new ByteArrayOutputStream();
+    start = System.currentTimeMillis();
+    facade.streamEvents(processIds, hub.getLastSequence(), 60000).write(output);
+    assertTrue("Stream should not wait for finished executions", System.currentTimeMillis() - start < 1000);
+    assertEquals("event: end\ndata: {\"lastSequence\":" + hub.getLastSequence() + "}\n\n", output.toString("UTF-8"));
+  }
+
+  public void testStreamEndsAtTimeout() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    long start = System.currentTimeMillis();
+    facade.streamEvents(Collections.<String> emptyList(), 5, 200).write(output);
+    assertTrue(System.currentTimeMillis() - start >= 190);
+    assertEquals(": keep-alive\n\nevent: end\ndata: {\"lastSequence\":5}\n\n", output.toString("UTF-8"));
+  }
+
+  private void assertInvalidBatch(String mode, FlowHandleResource flowHandle, int count) throws Exception {
+    try {
+      facade.startBatch(mode, flowHandle, count, null);
+      fail("Batch request should be refused for mode " + mode + " and count " + count);
+    } catch (InvalidRequestException e) {
+      // this is as it should be
+    }
+  }
+
+  private FlowHandleResource commitDelayFlow(String flowName, int delay) throws Exception {
+    Flow flow = new Flow(flowName, null);
+    flow.setDirector(new ETDirector(flow, "director"));
+    Const source = new Const(flow, "const");
+    Delay delayActor = new Delay(flow, "delay");
+    delayActor.timeParameter.setExpression(Integer.toString(delay));
+    DevNullActor sink = new DevNullActor(flow, "sink");
+    flow.connect(source, delayActor);
+    flow.connect(delayActor, sink);
+    FlowHandle flowHandle = repositoryService.commit(flowName, flow);
+    return FlowHandleResource.buildCompactFlowHandleResource(flowHandle);
+  }
+
+  private static List<String> getProcessIds(List<ProcessHandle> handles) {
+    List<String> processIds = new ArrayList<String>();
+    for (ProcessHandle handle : handles) {
+      processIds.add(handle.getProcessId());
+    }
+    return processIds;
+  }
+
+  private static int countOccurrences(String text, String part) {
+    int count = 0;
+    for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+      ++count;
+    }
+    return count;
+  }
+
+  /**
+   * @return a UriInfo without query parameters, i.e. without parameter overrides for the started flows
+   */
+  private static UriInfo createUriInfo() {
+    final MultivaluedMap<?, ?> queryParameters = (MultivaluedMap<?, ?>) Proxy.newProxyInstance(FlowProcessingServiceRESTFacadeTest.class.getClassLoader(),
+        new Class<?>[] { MultivaluedMap.class }, new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("entrySet".equals(method.getName())) {
+              return Collections.emptySet();
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+    return (UriInfo) Proxy.newProxyInstance(FlowProcessingServiceRESTFacadeTest.class.getClassLoader(), new Class<?>[] { UriInfo.class },
+        new InvocationHandler() {
+          public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if ("getQueryParameters".equals(method.getName())) {
+              return queryParameters;
+            }
+            throw new UnsupportedOperationException(method.getName());
+          }
+        });
+  }
+}
@@ -0,0 +1,224 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.runtime.ws.rest.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import junit.framework.TestCase;
+import com.isencia.passerelle.runtime.process.ProcessEvent;
+import com.isencia.passerelle.runtime.process.ProcessEvent.Detail;
+import com.isencia.passerelle.runtime.process.ProcessEvent.Kind;
+import com.isencia.passerelle.runtime.process.ProcessStatus;
+import com.isencia.passerelle.runtime.ws.rest.ProcessEventResource;
+import com.isencia.passerelle.runtime.ws.rest.ProcessEventResources;
+
+public class ProcessEventHubTest extends TestCase {
+
+  // the process statuses as they would be known by the FlowProcessingService
+  private Map<String, ProcessStatus> serviceStatuses = new HashMap<String, ProcessStatus>();
+  private ProcessEventHub hub;
+
+  @Override
+  protected void setUp() throws Exception {
+    hub = createHub(ProcessEventHub.DEFAULT_CAPACITY);
+  }
+
+  public void testSequenceAndSince() throws Exception {
+    hub.handle(new TestProcessEvent("p1", Kind.CREATE, Detail.UNSPECIFIED));
+    hub.handle(new TestProcessEvent("p2", Kind.CREATE, Detail.UNSPECIFIED));
+    hub.handle(new TestProcessEvent("p1", Kind.SUSPEND, Detail.BREAKPOINT));
+    assertEquals(3, hub.getLastSequence());
+
+    ProcessEventResources result = hub.getEvents(null, 0, 0);
+    assertSequences(result, 1, 2, 3);
+    assertEquals(3, result.getLastSequence());
+    assertEquals(ProcessStatus.ACTIVE, result.getEvents().get(0).getStatus());
+    assertEquals(ProcessStatus.SUSPENDED, result.getEvents().get(2).getStatus());
+
+    assertSequences(hub.getEvents(null, 1, 0), 2, 3);
+    assertSequences(hub.getEvents(Collections.<String> emptyList(), 1, 0), 2, 3);
+    result = hub.getEvents(Arrays.asList("p1"), 0, 0);
+    assertSequences(result, 1, 3);
+    assertEquals("The next request should continue after the last event of any process", 3, result.getLastSequence());
+
+    result = hub.getEvents(null, 3, 0);
+    assertSequences(result);
+    assertEquals(3, result.getLastSequence());
+    result = hub.getEvents(null, 10, 0);
+    assertSequences(result);
+    assertEquals("A sequence nr from the client should not be reset", 10, result.getLastSequence());
+  }
+
+  public void testWaitForEvents() throws Exception {
+    long start = System.currentTimeMillis();
+    assertSequences(hub.getEvents(null, 0, 100));
+    assertTrue("Should wait until the timeout expires", System.currentTimeMillis() - start >= 90);
+
+    Thread producer = new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          return;
+        }
+        hub.handle(new TestProcessEvent("p2", Kind.CREATE, Detail.UNSPECIFIED));
+        hub.handle(new TestProcessEvent("p1", Kind.CREATE, Detail.UNSPECIFIED));
+      }
+    };
+    producer.start();
+    start = System.currentTimeMillis();
+    ProcessEventResources result = hub.getEvents(Arrays.asList("p1"), 0, 10000);
+    assertTrue("Should return when a matching event arrives", System.currentTimeMillis() - start < 5000);
+    assertSequences(result, 2);
+    producer.join();
+  }
+
+  public void testCapacityTrimming() throws Exception {
+    hub = createHub(3);
+    for (int i = 1; i <= 5; ++i) {
+      hub.handle(new TestProcessEvent("p" + i, Kind.CREATE, Detail.UNSPECIFIED));
+    }
+    ProcessEventResources result = hub.getEvents(null, 0, 0);
+    assertSequences(result, 3, 4, 5);
+    assertEquals(5, result.getLastSequence());
+    assertSequences(hub.getEvents(null, 4, 0), 5);
+    assertSequences(hub.getEvents(Arrays.asList("p1"), 0, 0));
+
+    hub.handle(new TestProcessEvent("p1", Kind.TERMINATE, Detail.UNSPECIFIED));
+    assertTrue(hub.areAllFinished(Arrays.asList("p1")));
+    hub.handle(new TestProcessEvent("p2", Kind.TERMINATE, Detail.UNSPECIFIED));
+    hub.handle(new TestProcessEvent("p3", Kind.TERMINATE, Detail.UNSPECIFIED));
+    hub.handle(new TestProcessEvent("p4", Kind.TERMINATE, Detail.UNSPECIFIED));
+    assertFalse("The status of the eldest process should have been dropped", hub.areAllFinished(Arrays.asList("p1")));
+    assertTrue(hub.areAllFinished(Arrays.asList("p2", "p3", "p4")));
+  }
+
+  public void testFinalStatusPinned() throws Exception {
+    serviceStatuses.put("p1", ProcessStatus.ERROR);
+    hub.handle(new TestProcessEvent("p1", Kind.CREATE, Detail.UNSPECIFIED));
+    hub.handle(new TestProcessEvent("p1", Kind.TERMINATE, Detail.UNSPECIFIED));
+    // e.g. an explicit termination that arrives after the end of the execution
+    hub.handle(new TestProcessEvent("p1", Kind.TERMINATE, Detail.CLIENT_REQUEST));
+    hub.handle(new TestProcessEvent("p1", Kind.SUSPEND, Detail.UNSPECIFIED));
+    List<ProcessEventResource> events = hub.getEvents(null, 0, 0).getEvents();
+    assertEquals(4, events.size());
+    assertEquals(ProcessStatus.ERROR, events.get(1).getStatus());
+    assertEquals(ProcessStatus.ERROR, events.get(2).getStatus());
+    assertEquals(ProcessStatus.ERROR, events.get(3).getStatus());
+
+    // a client request to terminate an active process only starts its termination
+    hub.handle(new TestProcessEvent("p2", Kind.CREATE, Detail.UNSPECIFIED));
+    hub.handle(new TestProcessEvent("p2", Kind.TERMINATE, Detail.CLIENT_REQUEST));
+    hub.handle(new TestProcessEvent("p2", Kind.TERMINATE, Detail.UNSPECIFIED));
+    events = hub.getEvents(Arrays.asList("p2"), 0, 0).getEvents();
+    assertEquals(ProcessStatus.STOPPING, events.get(1).getStatus());
+    assertEquals("Without a status from the service, a terminated process is finished", ProcessStatus.FINISHED, events.get(2).getStatus());
+  }
+
+  public void testAreAllFinished() throws Exception {
+    hub.handle(new TestProcessEvent("p1", Kind.CREATE, Detail.UNSPECIFIED));
+    hub.handle(new TestProcessEvent("p2", Kind.CREATE, Detail.UNSPECIFIED));
+    assertFalse(hub.areAllFinished(Arrays.asList("p1")));
+    hub.handle(new TestProcessEvent("p1", Kind.TERMINATE, Detail.UNSPECIFIED));
+    assertTrue(hub.areAllFinished(Arrays.asList("p1")));
+    assertFalse(hub.areAllFinished(Arrays.asList("p1", "p2")));
+    assertFalse("Unknown processes are not finished", hub.areAllFinished(Arrays.asList("p1", "p3")));
+    hub.handle(new TestProcessEvent("p2", Kind.TERMINATE, Detail.UNSPECIFIED));
+    assertTrue(hub.areAllFinished(Arrays.asList("p1", "p2")));
+  }
+
+  public void testProcessesWithoutLiveEvents() throws Exception {
+    serviceStatuses.put("p1", ProcessStatus.INTERRUPTED);
+    serviceStatuses.put("p2", ProcessStatus.ACTIVE);
+    ProcessEventResources result = hub.getEvents(Arrays.asList("p1", "p2"), 0, 0);
+    assertSequences(result, 1);
+    ProcessEventResource event = result.getEvents().get(0);
+    assertEquals("p1", event.getProcessContextId());
+    assertEquals(Kind.TERMINATE, event.getKind());
+    assertEquals(ProcessStatus.INTERRUPTED, event.getStatus());
+    assertTrue(hub.areAllFinished(Arrays.asList("p1")));
+
+    assertSequences(hub.getEvents(Arrays.asList("p1", "p2"), 0, 0), 1);
+    assertFalse(hub.areAllFinished(Arrays.asList("p1", "p2")));
+  }
+
+  private ProcessEventHub createHub(int capacity) {
+    return new ProcessEventHub(capacity) {
+      @Override
+      ProcessStatus lookupStatus(String processContextId) {
+        return serviceStatuses.get(processContextId);
+      }
+    };
+  }
+
+  private static void assertSequences(ProcessEventResources result, long... expectedSequences) {
+    List<ProcessEventResource> events = result.getEvents();
+    assertEquals("Wrong nr of events " + events, expectedSequences.length, events.size());
+    for (int i = 0; i < expectedSequences.length; ++i) {
+      assertEquals(expectedSequences[i], events.get(i).getSequence());
+    }
+  }
+
+  @SuppressWarnings("serial")
+  private static class TestProcessEvent implements ProcessEvent {
+    private final String processContextId;
+    private final Kind kind;
+    private final Detail detail;
+    private final Date creationTS = new Date();
+
+    TestProcessEvent(String processContextId, Kind kind, Detail detail) {
+      this.processContextId = processContextId;
+      this.kind = kind;
+      this.detail = detail;
+    }
+
+    public String getTopic() {
+      return TOPIC_PREFIX + processContextId + "/" + kind.name() + "/" + detail.name();
+    }
+
+    public Date getCreationTS() {
+      return creationTS;
+    }
+
+    public Long getDuration() {
+      return 0L;
+    }
+
+    public String getProperty(String propName) {
+      return null;
+    }
+
+    public Iterator<String> getPropertyNames() {
+      return Collections.<String> emptyList().iterator();
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    public Detail getDetail() {
+      return detail;
+    }
+
+    public String getProcessContextId() {
+      return processContextId;
+    }
+  }
+}
@@ -14,11 +14,15 @@
 */
 package com.isencia.passerelle.runtime.ws.rest.server;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -28,6 +32,7 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,12 +46,19 @@ import com.isencia.passerelle.runtime.repository.FlowRepositoryService;
 import com.isencia.passerelle.runtime.ws.rest.ErrorCode;
 import com.isencia.passerelle.runtime.ws.rest.FlowHandleResource;
 import com.isencia.passerelle.runtime.ws.rest.InvalidRequestException;
+import com.isencia.passerelle.runtime.ws.rest.ProcessEventResource;
+import com.isencia.passerelle.runtime.ws.rest.ProcessEventResources;
 import com.isencia.passerelle.runtime.ws.rest.ProcessHandleResource;
+import com.isencia.passerelle.runtime.ws.rest.ProcessHandleResources;
 import com.isencia.passerelle.runtime.ws.rest.server.activator.Activator;
 
 /**
  * A REST service provider (or root resource) mapped on the FlowProcessingService interface.
  * <p>
+ * Besides the operations on individual processes, it offers a batch start and two ways to follow the status transitions
+ * of processes without polling their handles : a long-poll request that returns as soon as new events are available, and
+ * a server-sent events stream. Both are fed by the <code>ProcessEventHub</code> that is registered as listener for the
+ * processes started here.
  * </p>
  * 
  * @author erwin
@@ -58,6 +70,21 @@ public class FlowProcessingServiceRESTFacade {
 
   private static final String BREAKPOINTS = "___breakpoints";
 
+  private static final String COUNT = "___count";
+
+  private static final String SINCE = "___since";
+
+  private static final String TIMEOUT = "___timeout";
+
+  private static final String SERVER_SENT_EVENTS = "text/event-stream";
+
+  // max nr of executions that can be launched in one batch request
+  private static final int MAX_BATCH_SIZE = 1000;
+  // max time in ms that a long-poll or event stream request is kept open
+  private static final long MAX_TIMEOUT = 10 * 60 * 1000L;
+  // interval in ms to write a comment line on an idle event stream, to detect disconnected clients
+  private static final long HEARTBEAT_INTERVAL = 15 * 1000L;
+
   private final static Logger LOGGER = LoggerFactory.getLogger(FlowProcessingServiceRESTFacade.class);
 
   @Context
@@ -92,20 +119,8 @@ public class FlowProcessingServiceRESTFacade {
         FlowHandle handle = getFlowRepositoryService().loadFlowHandleWithContent(flowHandle);
         StartMode _mode = StartMode.valueOf(mode);
         String[] breakpointNames = breakPointStr!=null ? breakPointStr.split(",") : null;
-        
-        Map<String, String> parameterOverrides = new HashMap<String, String>();
-        MultivaluedMap<String,String> queryParameters = uriInfo.getQueryParameters();
-        for(Entry<String,List<String>> qP : queryParameters.entrySet()) {
-          String paramName = qP.getKey();
-          List<String> paramValueList = qP.getValue();
-          String paramValue = ((paramValueList!=null) && (paramValueList.size()>0)) ? paramValueList.get(0) : null;
-          if(!PROCESS_CONTEXT_ID.equals(paramName)
-              && !BREAKPOINTS.equals(paramName)
-              && paramValue!=null) {
-            parameterOverrides.put(paramName, paramValue);
-          }
-        }
-        ProcessHandle localHandle = getFlowProcessingService().start(_mode, handle, processContextId, parameterOverrides, null, breakpointNames);
+        Map<String, String> parameterOverrides = getParameterOverrides();
+        ProcessHandle localHandle = getFlowProcessingService().start(_mode, handle, processContextId, parameterOverrides, getProcessEventHub(), breakpointNames);
         return buildRemoteHandle(localHandle);
       } catch (Exception e) {
         throw new InvalidRequestException(ErrorCode.INVALID_PARAM, "mode");
@@ -113,6 +128,144 @@ public class FlowProcessingServiceRESTFacade {
     }
   }
 
+  /**
+   * Launches a number of executions of the same flow, each with its own generated process context id.
+   * 
+   * @param mode
+   * @param flowHandle
+   * @param count the nr of executions to launch
+   * @param breakPointStr comma-separated concatenated string of actor/port names for breakpoints
+   * @return the handles of the launched executions, in launch order. When an execution could not be started, e.g.
+   *         because too many executions are queued already, the handles of the executions launched before it are
+   *         returned together with the error.
+   * @throws EntryNotFoundException
+   * @throws InvalidRequestException when not even the first execution could be started
+   */
+  @POST
+  @Path("{mode}/batch")
+  public ProcessHandleResources startBatch(@PathParam("mode") String mode, FlowHandleResource flowHandle, 
+      @QueryParam(COUNT) @DefaultValue("1") int count, @QueryParam(BREAKPOINTS) String breakPointStr) throws EntryNotFoundException, InvalidRequestException {
+    if (flowHandle == null) {
+      throw new InvalidRequestException(ErrorCode.MISSING_CONTENT, "flow definition");
+    } else if (mode == null) {
+      throw new InvalidRequestException(ErrorCode.MISSING_PARAM, "mode");
+    } else if (count < 1 || count > MAX_BATCH_SIZE) {
+      throw new InvalidRequestException(ErrorCode.INVALID_PARAM, COUNT);
+    } else {
+      if(LOGGER.isInfoEnabled()) {
+        LOGGER.info("Submitting batch of {} {} requests for flow {}", new Object[]{count, mode, flowHandle.getCode()});
+      }
+      StartMode _mode = null;
+      try {
+        _mode = StartMode.valueOf(mode);
+      } catch (Exception e) {
+        throw new InvalidRequestException(ErrorCode.INVALID_PARAM, "mode");
+      }
+      // the flow content is only loaded once for the complete batch
+      FlowHandle handle = getFlowRepositoryService().loadFlowHandleWithContent(flowHandle);
+      String[] breakpointNames = breakPointStr!=null ? breakPointStr.split(",") : null;
+      Map<String, String> parameterOverrides = getParameterOverrides();
+      List<ProcessHandle> remoteHandles = new ArrayList<ProcessHandle>(count);
+      for (int i = 0; i < count; ++i) {
+        try {
+          ProcessHandle localHandle = getFlowProcessingService().start(_mode, handle, null, parameterOverrides, getProcessEventHub(), breakpointNames);
+          remoteHandles.add(buildRemoteHandle(localHandle));
+        } catch (Exception e) {
+          if (remoteHandles.isEmpty()) {
+            throw new InvalidRequestException(ErrorCode.INVALID_PARAM, "mode");
+          }
+          LOGGER.warn("Batch for flow " + flowHandle.getCode() + " stopped after " + remoteHandles.size() + " of " + count + " executions", e);
+          return new ProcessHandleResources(remoteHandles, e.toString());
+        }
+      }
+      return new ProcessHandleResources(remoteHandles);
+    }
+  }
+
+  /**
+   * Long-poll for process events. The request returns as soon as there are events with a sequence nr higher than
+   * <code>since</code>, or with an empty list when the timeout expires.
+   * 
+   * @param processContextIds the processes to follow; all processes started via this facade when empty
+   * @param since the lastSequence from the previous response, or 0 for a first request
+   * @param timeout max time in ms to wait for events
+   * @return the new events and the sequence nr to pass in the next request
+   * @throws InvalidRequestException
+   */
+  @GET
+  @Path("events")
+  public ProcessEventResources getEvents(@QueryParam(PROCESS_CONTEXT_ID) List<String> processContextIds, 
+      @QueryParam(SINCE) @DefaultValue("0") long since, @QueryParam(TIMEOUT) @DefaultValue("30000") long timeout) throws InvalidRequestException {
+    if (timeout < 0 || timeout > MAX_TIMEOUT) {
+      throw new InvalidRequestException(ErrorCode.INVALID_PARAM, TIMEOUT);
+    }
+    try {
+      return getProcessEventHub().getEvents(processContextIds, since, timeout);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new ProcessEventResources(new ArrayList<ProcessEventResource>(), since);
+    }
+  }
+
+  /**
+   * Streams process events as server-sent events. Each event is sent with its sequence nr as id, its kind as event type
+   * and a JSON representation as data.
+   * <p>
+   * When process context ids are given, the stream is closed once all of them have reached a final status. Otherwise it
+   * stays open until the timeout expires or the client disconnects.
+   * </p>
+   * 
+   * @param processContextIds the processes to follow; all processes started via this facade when empty
+   * @param since the last sequence nr already received by the client
+   * @param timeout max time in ms to keep the stream open
+   * @return
+   * @throws InvalidRequestException
+   */
+  @GET
+  @Path("events/stream")
+  @Produces(SERVER_SENT_EVENTS)
+  public StreamingOutput streamEvents(@QueryParam(PROCESS_CONTEXT_ID) final List<String> processContextIds, 
+      @QueryParam(SINCE) @DefaultValue("0") final long since, @QueryParam(TIMEOUT) @DefaultValue("300000") final long timeout) throws InvalidRequestException {
+    if (timeout < 0 || timeout > MAX_TIMEOUT) {
+      throw new InvalidRequestException(ErrorCode.INVALID_PARAM, TIMEOUT);
+    }
+    final ProcessEventHub hub = getProcessEventHub();
+    return new StreamingOutput() {
+      public void write(OutputStream output) throws IOException {
+        long deadline = System.currentTimeMillis() + timeout;
+        long lastSequence = since;
+        boolean followProcesses = (processContextIds != null) && !processContextIds.isEmpty();
+        boolean allFinished = false;
+        try {
+          long remaining = timeout;
+          while (!allFinished && remaining > 0) {
+            // once all processes are finished, their remaining events are sent without waiting for more
+            boolean finishedBefore = followProcesses && hub.areAllFinished(processContextIds);
+            ProcessEventResources events = hub.getEvents(processContextIds, lastSequence, finishedBefore ? 0 : Math.min(remaining, HEARTBEAT_INTERVAL));
+            StringBuilder frames = new StringBuilder();
+            for (ProcessEventResource event : events.getEvents()) {
+              frames.append("id: ").append(event.getSequence()).append('\n');
+              frames.append("event: ").append(event.getKind()).append('\n');
+              frames.append("data: ").append(toJSON(event)).append("\n\n");
+            }
+            if (frames.length() == 0 && !finishedBefore) {
+              frames.append(": keep-alive\n\n");
+            }
+            output.write(frames.toString().getBytes("UTF-8"));
+            output.flush();
+            lastSequence = events.getLastSequence();
+            allFinished = finishedBefore || (followProcesses && hub.areAllFinished(processContextIds));
+            remaining = deadline - System.currentTimeMillis();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        output.write(("event: end\ndata: {\"lastSequence\":" + lastSequence + "}\n\n").getBytes("UTF-8"));
+        output.flush();
+      }
+    };
+  }
+
   @GET
   @Path("{processContextId}")
   public ProcessHandle getHandle(@PathParam("processContextId") String processContextId) throws FlowNotExecutingException, InvalidRequestException {
@@ -180,13 +333,63 @@ public class FlowProcessingServiceRESTFacade {
     }
   }
   
+  /**
+   * @return the query parameters that are not reserved for the facade, to be used as flow parameter overrides
+   */
+  private Map<String, String> getParameterOverrides() {
+    Map<String, String> parameterOverrides = new HashMap<String, String>();
+    MultivaluedMap<String,String> queryParameters = uriInfo.getQueryParameters();
+    for(Entry<String,List<String>> qP : queryParameters.entrySet()) {
+      String paramName = qP.getKey();
+      List<String> paramValueList = qP.getValue();
+      String paramValue = ((paramValueList!=null) && (paramValueList.size()>0)) ? paramValueList.get(0) : null;
+      if(!PROCESS_CONTEXT_ID.equals(paramName)
+          && !BREAKPOINTS.equals(paramName)
+          && !COUNT.equals(paramName)
+          && paramValue!=null) {
+        parameterOverrides.put(paramName, paramValue);
+      }
+    }
+    return parameterOverrides;
+  }
+
+  private static String toJSON(ProcessEventResource event) {
+    StringBuilder json = new StringBuilder("{");
+    json.append("\"sequence\":").append(event.getSequence());
+    json.append(",\"processContextId\":");
+    appendJSONString(json, event.getProcessContextId());
+    json.append(",\"kind\":\"").append(event.getKind()).append('"');
+    json.append(",\"detail\":\"").append(event.getDetail()).append('"');
+    json.append(",\"status\":\"").append(event.getStatus()).append('"');
+    json.append(",\"creationTS\":").append(event.getCreationTS() != null ? event.getCreationTS().getTime() : 0L);
+    return json.append('}').toString();
+  }
+
+  private static void appendJSONString(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); ++i) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < 0x20) {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    json.append('"');
+  }
+
   private ProcessHandle buildRemoteHandle(ProcessHandle localHandle) {
     return new ProcessHandleResource(localHandle);
   }
-  private FlowProcessingService getFlowProcessingService() {
+  FlowProcessingService getFlowProcessingService() {
     return Activator.getInstance().getFlowProcessingSvc();
   }
-  private FlowRepositoryService getFlowRepositoryService() {
+  FlowRepositoryService getFlowRepositoryService() {
     return Activator.getInstance().getFlowReposSvc();
   }
+  ProcessEventHub getProcessEventHub() {
+    return Activator.getInstance().getProcessEventHub();
+  }
 }
@@ -0,0 +1,250 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.runtime.ws.rest.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import com.isencia.passerelle.runtime.Event;
+import com.isencia.passerelle.runtime.EventListener;
+import com.isencia.passerelle.runtime.ProcessHandle;
+import com.isencia.passerelle.runtime.process.FlowProcessingService;
+import com.isencia.passerelle.runtime.process.ProcessEvent;
+import com.isencia.passerelle.runtime.process.ProcessEvent.Detail;
+import com.isencia.passerelle.runtime.process.ProcessEvent.Kind;
+import com.isencia.passerelle.runtime.process.ProcessStatus;
+import com.isencia.passerelle.runtime.ws.rest.ProcessEventResource;
+import com.isencia.passerelle.runtime.ws.rest.ProcessEventResources;
+import com.isencia.passerelle.runtime.ws.rest.server.activator.Activator;
+
+/**
+ * Collects the events of the processes started via the REST facade, so REST clients can follow process status
+ * transitions without polling the process handles.
+ * <p>
+ * The hub is registered as <code>EventListener</code> for each started process. It keeps a bounded history of the most
+ * recent events, each with a sequence nr and the process status resulting from the event. Clients ask for the events
+ * after a given sequence nr, and their request threads wait on the hub until a matching event arrives or their timeout
+ * expires.
+ * </p>
+ * <p>
+ * For processes that were not started with the hub as listener, no live events are available. When such a process is
+ * requested, its status is looked up once and a terminal event is added to the history when it is already done.
+ * </p>
+ */
+public class ProcessEventHub implements EventListener {
+  private final static Logger LOGGER = LoggerFactory.getLogger(ProcessEventHub.class);
+
+  public final static int DEFAULT_CAPACITY = 10000;
+
+  private final int capacity;
+  private final ArrayDeque<ProcessEventResource> recentEvents;
+  private final Map<String, ProcessStatus> lastStatuses;
+  private long lastSequence;
+
+  public ProcessEventHub() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param capacity
+   *          the max nr of events, and of processes, that the hub remembers
+   */
+  @SuppressWarnings("serial")
+  public ProcessEventHub(final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be > 0");
+    }
+    this.capacity = capacity;
+    recentEvents = new ArrayDeque<ProcessEventResource>();
+    lastStatuses = new LinkedHashMap<String, ProcessStatus>() {
+      protected boolean removeEldestEntry(Map.Entry<String, ProcessStatus> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  @Override
+  public void handle(Event event) {
+    if (event instanceof ProcessEvent) {
+      ProcessEvent processEvent = (ProcessEvent) event;
+      String processContextId = processEvent.getProcessContextId();
+      ProcessStatus status = getStatus(processEvent);
+      add(processContextId, processEvent.getTopic(), processEvent.getKind(), processEvent.getDetail(), status, processEvent.getCreationTS());
+    }
+  }
+
+  /**
+   * Returns the events with a sequence nr higher than <code>since</code>, for the given processes. When there are no such
+   * events yet, the calling thread waits until one arrives, or until the timeout expires.
+   * 
+   * @param processContextIds
+   *          the processes for which events must be returned; all processes when null or empty.
+   * @param since
+   *          the last sequence nr that the client has already received
+   * @param timeout
+   *          the max time in ms to wait for a first event.
+   * @return the matching events, oldest first, together with the sequence nr to use in a next request
+   * @throws InterruptedException
+   */
+  public ProcessEventResources getEvents(Collection<String> processContextIds, long since, long timeout) throws InterruptedException {
+    Set<String> ids = (processContextIds == null || processContextIds.isEmpty()) ? null : new HashSet<String>(processContextIds);
+    if (ids != null) {
+      checkFinishedProcesses(ids);
+    }
+    long deadline = System.currentTimeMillis() + timeout;
+    synchronized (this) {
+      List<ProcessEventResource> events = collectEvents(ids, since);
+      long remaining = deadline - System.currentTimeMillis();
+      while (events.isEmpty() && remaining > 0) {
+        wait(remaining);
+        events = collectEvents(ids, since);
+        remaining = deadline - System.currentTimeMillis();
+      }
+      return new ProcessEventResources(events, Math.max(since, lastSequence));
+    }
+  }
+
+  /**
+   * @param processContextIds
+   * @return true if the last known status of each of the given processes is a final one.
+   */
+  public synchronized boolean areAllFinished(Collection<String> processContextIds) {
+    for (String processContextId : processContextIds) {
+      ProcessStatus status = lastStatuses.get(processContextId);
+      if (status == null || !status.isFinalStatus()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the sequence nr of the last received event
+   */
+  public synchronized long getLastSequence() {
+    return lastSequence;
+  }
+
+  private synchronized void add(String processContextId, String topic, Kind kind, Detail detail, ProcessStatus status, Date creationTS) {
+    ProcessStatus previousStatus = lastStatuses.get(processContextId);
+    if (previousStatus != null && previousStatus.isFinalStatus()) {
+      // a late event, e.g. an explicit termination of a finished process, must not hide the final status
+      status = previousStatus;
+    }
+    recentEvents.addLast(new ProcessEventResource(++lastSequence, processContextId, topic, kind, detail, status, creationTS));
+    if (recentEvents.size() > capacity) {
+      recentEvents.removeFirst();
+    }
+    lastStatuses.put(processContextId, status);
+    notifyAll();
+  }
+
+  private List<ProcessEventResource> collectEvents(Set<String> ids, long since) {
+    List<ProcessEventResource> result = new ArrayList<ProcessEventResource>();
+    Iterator<ProcessEventResource> eventItr = recentEvents.descendingIterator();
+    while (eventItr.hasNext()) {
+      ProcessEventResource event = eventItr.next();
+      if (event.getSequence() <= since) {
+        break;
+      }
+      if (ids == null || ids.contains(event.getProcessContextId())) {
+        result.add(event);
+      }
+    }
+    Collections.reverse(result);
+    return result;
+  }
+
+  /**
+   * Looks up the current status of the given processes for which the hub has not yet received a final status, and adds a
+   * terminal event for those that are done. This covers processes that were not started via the REST facade, and
+   * processes that were terminated before they got started.
+   */
+  private void checkFinishedProcesses(Set<String> ids) {
+    List<String> unfinishedIds = new ArrayList<String>();
+    synchronized (this) {
+      for (String id : ids) {
+        ProcessStatus status = lastStatuses.get(id);
+        if (status == null || !status.isFinalStatus()) {
+          unfinishedIds.add(id);
+        }
+      }
+    }
+    for (String id : unfinishedIds) {
+      ProcessStatus status = lookupStatus(id);
+      if (status != null && status.isFinalStatus()) {
+        synchronized (this) {
+          ProcessStatus lastStatus = lastStatuses.get(id);
+          if (lastStatus == null || !lastStatus.isFinalStatus()) {
+            add(id, ProcessEvent.TOPIC_PREFIX + id + "/" + Kind.TERMINATE.name() + "/" + Detail.UNSPECIFIED.name(), Kind.TERMINATE, Detail.UNSPECIFIED, status,
+                new Date());
+          }
+        }
+      }
+    }
+  }
+
+  private ProcessStatus getStatus(ProcessEvent event) {
+    switch (event.getKind()) {
+    case CREATE:
+    case RESUME:
+      return ProcessStatus.ACTIVE;
+    case SUSPEND:
+      return ProcessStatus.SUSPENDED;
+    case TERMINATE:
+      if (Detail.CLIENT_REQUEST.equals(event.getDetail())) {
+        return ProcessStatus.STOPPING;
+      } else {
+        // the execution has ended, its handle knows how it ended
+        ProcessStatus status = lookupStatus(event.getProcessContextId());
+        return (status != null && status.isFinalStatus()) ? status : ProcessStatus.FINISHED;
+      }
+    default:
+      synchronized (this) {
+        ProcessStatus status = lastStatuses.get(event.getProcessContextId());
+        return status != null ? status : ProcessStatus.ACTIVE;
+      }
+    }
+  }
+
+  /**
+   * @param processContextId
+   * @return the current status of the process, as known by the <code>FlowProcessingService</code>, or null if it is not
+   *         available
+   */
+  ProcessStatus lookupStatus(String processContextId) {
+    Activator activator = Activator.getInstance();
+    FlowProcessingService processingService = (activator != null) ? activator.getFlowProcessingSvc() : null;
+    if (processingService != null) {
+      try {
+        ProcessHandle handle = processingService.getHandle(processContextId);
+        return (handle != null) ? handle.getExecutionStatus() : null;
+      } catch (Exception e) {
+        LOGGER.warn("Context " + processContextId + " - Failed to obtain execution status", e);
+      }
+    }
+    return null;
+  }
+}
@@ -23,6 +23,7 @@ import org.osgi.util.tracker.ServiceTracker;
 import org.osgi.util.tracker.ServiceTrackerCustomizer;
 import com.isencia.passerelle.runtime.process.FlowProcessingService;
 import com.isencia.passerelle.runtime.repository.FlowRepositoryService;
+import com.isencia.passerelle.runtime.ws.rest.server.ProcessEventHub;
 
 public class Activator implements BundleActivator {
 
@@ -37,10 +38,12 @@ public class Activator implements BundleActivator {
 
   private FlowRepositoryService flowRepositorySvc;
   private FlowProcessingService flowProcessingSvc;
+  private ProcessEventHub processEventHub;
 
   public void start(BundleContext bundleContext) throws Exception {
     Activator.context = bundleContext;
     Activator.instance = this;
+    processEventHub = new ProcessEventHub();
     Filter reposSvcFilter = context.createFilter(FLOWREPOS_SERVICE_FILTER);
     Filter processSvcFilter = context.createFilter(FLOWPROC_SERVICE_FILTER);
     flowRepositorySvcTracker = new ServiceTracker<Object, Object>(bundleContext, reposSvcFilter, createSvcTrackerCustomizer());
@@ -68,6 +71,10 @@ public class Activator implements BundleActivator {
     return flowProcessingSvc;
   }
 
+  public ProcessEventHub getProcessEventHub() {
+    return processEventHub;
+  }
+
   private ServiceTrackerCustomizer<Object, Object> createSvcTrackerCustomizer() {
     return new ServiceTrackerCustomizer<Object, Object>() {
       public void removedService(ServiceReference<Object> ref, Object svc) {
@@ -0,0 +1,93 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.runtime.ws.rest;
+
+import java.util.Date;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import com.isencia.passerelle.runtime.process.ProcessEvent.Detail;
+import com.isencia.passerelle.runtime.process.ProcessEvent.Kind;
+import com.isencia.passerelle.runtime.process.ProcessStatus;
+
+/**
+ * A compact representation of a process event, as sent to REST clients that follow process executions.
+ * <p>
+ * Each event gets a sequence nr on the server. Clients can pass the highest sequence nr they have received, to only
+ * obtain newer events in their next request.
+ * </p>
+ */
+@XmlRootElement(name="ProcessEvent")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class ProcessEventResource {
+
+  private long sequence;
+  private String processContextId;
+  private String topic;
+  private Kind kind;
+  private Detail detail;
+  private ProcessStatus status;
+  private Date creationTS;
+
+  public ProcessEventResource() {
+  }
+
+  public ProcessEventResource(long sequence, String processContextId, String topic, Kind kind, Detail detail, ProcessStatus status, Date creationTS) {
+    this.sequence = sequence;
+    this.processContextId = processContextId;
+    this.topic = topic;
+    this.kind = kind;
+    this.detail = detail;
+    this.status = status;
+    this.creationTS = creationTS;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public String getProcessContextId() {
+    return processContextId;
+  }
+
+  public String getTopic() {
+    return topic;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public Detail getDetail() {
+    return detail;
+  }
+
+  /**
+   * @return the process status resulting from the event
+   */
+  public ProcessStatus getStatus() {
+    return status;
+  }
+
+  public Date getCreationTS() {
+    return creationTS;
+  }
+
+  @Override
+  public String toString() {
+    return "ProcessEventResource [sequence=" + sequence + ", processContextId=" + processContextId + ", kind=" + kind + ", detail=" + detail + ", status="
+        + status + "]";
+  }
+}
@@ -0,0 +1,48 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.runtime.ws.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+@XmlRootElement(name="ProcessEvents")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class ProcessEventResources {
+
+  @XmlElement(name="ProcessEvent")
+  private List<ProcessEventResource> events;
+  // the sequence nr to pass in a next request, to only get newer events
+  private long lastSequence;
+
+  public ProcessEventResources() {
+  }
+
+  public ProcessEventResources(List<ProcessEventResource> events, long lastSequence) {
+    this.events = new ArrayList<ProcessEventResource>(events);
+    this.lastSequence = lastSequence;
+  }
+
+  public List<ProcessEventResource> getEvents() {
+    return events;
+  }
+
+  public long getLastSequence() {
+    return lastSequence;
+  }
+}
@@ -0,0 +1,64 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.isencia.passerelle.runtime.ws.rest;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import com.isencia.passerelle.runtime.ProcessHandle;
+
+@XmlRootElement(name="ProcessHandles")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class ProcessHandleResources {
+
+  @XmlElement(type=ProcessHandleResource.class, name="ProcessHandle")
+  private List<ProcessHandle> processHandles;
+
+  @XmlElement(name="Error")
+  private String error;
+
+  public ProcessHandleResources() {
+  }
+
+  public ProcessHandleResources(List<ProcessHandle> processHandles) {
+    this(processHandles, null);
+  }
+
+  /**
+   * @param processHandles
+   * @param error the reason why not all requested processes were started, or null
+   */
+  public ProcessHandleResources(List<ProcessHandle> processHandles, String error) {
+    this.error = error;
+    this.processHandles = new ArrayList<ProcessHandle>();
+    for (ProcessHandle handle : processHandles) {
+      this.processHandles.add((handle instanceof ProcessHandleResource) ? handle : new ProcessHandleResource(handle));
+    }
+  }
+
+  public List<ProcessHandle> getProcessHandles() {
+    return processHandles;
+  }
+
+  /**
+   * @return the reason why not all requested processes were started, or null when all were started
+   */
+  public String getError() {
+    return error;
+  }
+}
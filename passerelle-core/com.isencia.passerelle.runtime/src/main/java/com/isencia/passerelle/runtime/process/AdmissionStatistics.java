@@ -0,0 +1,67 @@
+/* Copyright 2013 - iSencia Belgium NV
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.isencia.passerelle.runtime.process;
+
+import com.isencia.passerelle.runtime.process.FlowProcessingService.Priority;
+
+/**
+ * Statistics about the admission of flow executions, for <code>FlowProcessingService</code> implementations that limit
+ * the nr of concurrent executions.
+ */
+public interface AdmissionStatistics {
+
+  /**
+   * @return the nr of executions that are currently running
+   */
+  int getActiveProcessCount();
+
+  /**
+   * @return the nr of executions that are waiting for a free execution slot
+   */
+  int getQueuedProcessCount();
+
+  /**
+   * @param priority
+   * @return the nr of executions with the given priority that are waiting for a free execution slot
+   */
+  int getQueuedProcessCount(Priority priority);
+
+  /**
+   * @return the nr of executions that have been accepted
+   */
+  long getSubmittedProcessCount();
+
+  /**
+   * @return the nr of executions that have been refused because the queue was full
+   */
+  long getRejectedProcessCount();
+
+  /**
+   * @param priority
+   * @return the mean time in ms that started executions with the given priority have been waiting for a free slot
+   */
+  double getMeanQueueTimeMillis(Priority priority);
+
+  /**
+   * @param priority
+   * @return the maximum time in ms that a started execution with the given priority has been waiting for a free slot
+   */
+  long getMaxQueueTimeMillis(Priority priority);
+
+  /**
+   * Resets the counters and queue times.
+   */
+  void resetStatistics();
+}
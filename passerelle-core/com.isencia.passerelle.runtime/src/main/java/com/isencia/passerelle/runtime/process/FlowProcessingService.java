@@ -37,6 +37,20 @@ public interface FlowProcessingService {
     RUN, DEBUG, STEP;
   }
 
+  /**
+   * The priority classes for flow executions. When executions must wait for a free execution slot, the ones with a
+   * higher priority are started first.
+   */
+  enum Priority {
+    HIGH, NORMAL, LOW;
+  }
+
+  /**
+   * The reserved name of the parameter override that can be used to pass the execution's <code>Priority</code> to
+   * <code>start()</code>, e.g. "HIGH". When absent, executions get the NORMAL priority.
+   */
+  String PRIORITY_PARAMETER = "___priority";
+
   /**
    * Start a process in the specified mode.
    * <p>